@@ -0,0 +1,242 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.benchmark;
+
+import icy.math.ArrayMath;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+import icy.type.collection.array.ByteArrayConvert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks for raw array conversions and math.
+ * 
+ * @author Stephane
+ */
+public class ArrayBenchmarks
+{
+    public static List<Benchmark> getBenchmarks()
+    {
+        final List<Benchmark> result = new ArrayList<Benchmark>();
+
+        result.add(new ByteArrayConvertBenchmark(false));
+        result.add(new ByteArrayConvertBenchmark(true));
+        result.add(new InterleavedByteArrayConvertBenchmark());
+        result.add(new ArrayMathSumBenchmark());
+        result.add(new ArrayMathMedianBenchmark());
+        result.add(new ArrayMathSelectBenchmark());
+
+        return result;
+    }
+
+    /**
+     * ByteArrayConvert.byteArrayTo(...) from raw bytes to typed data (load path).
+     */
+    public static class ByteArrayConvertBenchmark extends Benchmark
+    {
+        private final boolean little;
+        private byte[] src;
+        private Object dest;
+
+        public ByteArrayConvertBenchmark(boolean little)
+        {
+            super("ByteArrayConvert.byteArrayTo" + (little ? " (little endian)" : " (big endian)"));
+
+            this.little = little;
+        }
+
+        @Override
+        public void setup(DataType dataType, int size)
+        {
+            final int len = size * size;
+
+            src = new byte[len * dataType.getSize()];
+            new Random(BenchmarkUtil.SEED).nextBytes(src);
+            dest = Array1DUtil.createArray(dataType, len);
+        }
+
+        @Override
+        public Object run()
+        {
+            return ByteArrayConvert.byteArrayTo(src, dest, little);
+        }
+
+        @Override
+        public void tearDown()
+        {
+            src = null;
+            dest = null;
+        }
+    }
+
+    /**
+     * ByteArrayConvert.byteArrayTo(...) from 3 components interleaved raw bytes (RGB) to typed
+     * data.
+     */
+    public static class InterleavedByteArrayConvertBenchmark extends Benchmark
+    {
+        private byte[] src;
+        private Object[] dest;
+        private int componentByteLen;
+        private int sampleSize;
+
+        public InterleavedByteArrayConvertBenchmark()
+        {
+            super("ByteArrayConvert.byteArrayTo (interleaved)");
+        }
+
+        @Override
+        public void setup(DataType dataType, int size)
+        {
+            final int len = size * size;
+
+            sampleSize = dataType.getSize();
+            componentByteLen = len * sampleSize;
+            src = new byte[componentByteLen * 3];
+            new Random(BenchmarkUtil.SEED).nextBytes(src);
+            dest = new Object[3];
+            for (int c = 0; c < 3; c++)
+                dest[c] = Array1DUtil.createArray(dataType, len);
+        }
+
+        @Override
+        public Object run()
+        {
+            for (int c = 0; c < 3; c++)
+                ByteArrayConvert.byteArrayTo(src, c * sampleSize, 3, dest[c], 0, 1, componentByteLen, false);
+
+            return dest;
+        }
+
+        @Override
+        public void tearDown()
+        {
+            src = null;
+            dest = null;
+        }
+    }
+
+    /**
+     * ArrayMath.sum(...) on native data.
+     */
+    public static class ArrayMathSumBenchmark extends Benchmark
+    {
+        private Object data;
+        private boolean signed;
+
+        public ArrayMathSumBenchmark()
+        {
+            super("ArrayMath.sum");
+        }
+
+        @Override
+        public void setup(DataType dataType, int size)
+        {
+            data = BenchmarkUtil.createRandomArray(dataType, size * size, new Random(BenchmarkUtil.SEED));
+            signed = dataType.isSigned();
+        }
+
+        @Override
+        public Object run()
+        {
+            return Double.valueOf(ArrayMath.sum(data, signed));
+        }
+
+        @Override
+        public void tearDown()
+        {
+            data = null;
+        }
+    }
+
+    /**
+     * ArrayMath.median(...) on native data (radix selection, input preserved).
+     */
+    public static class ArrayMathMedianBenchmark extends Benchmark
+    {
+        private final int[] histogram = new int[ArrayMath.RANK_HISTOGRAM_SIZE];
+        private Object data;
+        private boolean signed;
+
+        public ArrayMathMedianBenchmark()
+        {
+            super("ArrayMath.median");
+        }
+
+        @Override
+        public void setup(DataType dataType, int size)
+        {
+            data = BenchmarkUtil.createRandomArray(dataType, size * size, new Random(BenchmarkUtil.SEED));
+            signed = dataType.isSigned();
+        }
+
+        @Override
+        public Object run()
+        {
+            return Double.valueOf(ArrayMath.median(data, signed, histogram));
+        }
+
+        @Override
+        public void tearDown()
+        {
+            data = null;
+        }
+    }
+
+    /**
+     * ArrayMath.median(double[], true) (legacy copy + select on double data).
+     */
+    public static class ArrayMathSelectBenchmark extends Benchmark
+    {
+        private double[] data;
+
+        public ArrayMathSelectBenchmark()
+        {
+            super("ArrayMath.median (select)");
+        }
+
+        @Override
+        public boolean isDataTypeDependent()
+        {
+            return false;
+        }
+
+        @Override
+        public void setup(DataType dataType, int size)
+        {
+            data = (double[]) BenchmarkUtil.createRandomArray(DataType.DOUBLE, size * size,
+                    new Random(BenchmarkUtil.SEED));
+        }
+
+        @Override
+        public Object run()
+        {
+            return Double.valueOf(ArrayMath.median(data, true));
+        }
+
+        @Override
+        public void tearDown()
+        {
+            data = null;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.benchmark;
+
+import icy.type.DataType;
+
+/**
+ * Base class for a benchmark of the benchmark suite.<br>
+ * A benchmark is executed for each combination of {@link DataType} and image size given to the
+ * {@link BenchmarkRunner}: {@link #setup(DataType, int)} is called once per combination (not timed)
+ * then {@link #run()} is called repeatedly and timed.
+ * 
+ * @author Stephane
+ */
+public abstract class Benchmark
+{
+    protected final String name;
+
+    public Benchmark(String name)
+    {
+        super();
+
+        this.name = name;
+    }
+
+    /**
+     * @return the benchmark name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns <code>true</code> if the benchmark can be executed for the specified data type.<br>
+     * By default all data types are supported, override if needed.
+     */
+    public boolean isSupported(DataType dataType)
+    {
+        return true;
+    }
+
+    /**
+     * Returns <code>false</code> if the benchmark result does not depend on the data type (as mask
+     * operations), in which case the runner executes it only for the first requested data type.
+     */
+    public boolean isDataTypeDependent()
+    {
+        return true;
+    }
+
+    /**
+     * Prepare data for the specified data type and image size (not timed).
+     * 
+     * @param dataType
+     *        data type of tested data
+     * @param size
+     *        image width and height
+     */
+    public abstract void setup(DataType dataType, int size) throws Exception;
+
+    /**
+     * Execute a single operation (timed).<br>
+     * The returned value is consumed by the runner so the JIT can't remove the computation.
+     */
+    public abstract Object run() throws Exception;
+
+    /**
+     * Release resources allocated in {@link #setup(DataType, int)} (not timed).
+     */
+    public void tearDown()
+    {
+        // nothing by default
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
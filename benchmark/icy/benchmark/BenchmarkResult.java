@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.benchmark;
+
+import icy.type.DataType;
+
+/**
+ * Result of a benchmark execution for a given data type and image size.
+ * 
+ * @author Stephane
+ */
+public class BenchmarkResult
+{
+    /**
+     * CSV header matching {@link #toCSV()} output
+     */
+    public static final String CSV_HEADER = "benchmark,dataType,size,iterations,mean_ns,min_ns,max_ns,stddev_ns,ops_per_s";
+
+    public final String benchmark;
+    public final DataType dataType;
+    public final int size;
+    public final long[] timesNs;
+
+    public BenchmarkResult(String benchmark, DataType dataType, int size, long[] timesNs)
+    {
+        super();
+
+        this.benchmark = benchmark;
+        this.dataType = dataType;
+        this.size = size;
+        this.timesNs = timesNs;
+    }
+
+    public double getMean()
+    {
+        double sum = 0d;
+
+        for (long t : timesNs)
+            sum += t;
+
+        return sum / timesNs.length;
+    }
+
+    public long getMin()
+    {
+        long result = Long.MAX_VALUE;
+
+        for (long t : timesNs)
+            result = Math.min(result, t);
+
+        return result;
+    }
+
+    public long getMax()
+    {
+        long result = 0L;
+
+        for (long t : timesNs)
+            result = Math.max(result, t);
+
+        return result;
+    }
+
+    public double getStdDev()
+    {
+        if (timesNs.length < 2)
+            return 0d;
+
+        final double mean = getMean();
+        double var = 0d;
+
+        for (long t : timesNs)
+            var += (t - mean) * (t - mean);
+
+        return Math.sqrt(var / (timesNs.length - 1));
+    }
+
+    /**
+     * Returns the number of operation per second (computed from mean time)
+     */
+    public double getOpsPerSecond()
+    {
+        final double mean = getMean();
+
+        if (mean == 0d)
+            return 0d;
+
+        return 1000000000d / mean;
+    }
+
+    /**
+     * Returns result as a CSV line (see {@link #CSV_HEADER})
+     */
+    public String toCSV()
+    {
+        return benchmark + "," + dataType + "," + size + "," + timesNs.length + "," + (long) getMean() + ","
+                + getMin() + "," + getMax() + "," + (long) getStdDev() + "," + getOpsPerSecond();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%-40s %-7s %6d  %12.3f ms/op  (+/- %.3f)", benchmark, dataType.toString(),
+                Integer.valueOf(size), Double.valueOf(getMean() / 1000000d), Double.valueOf(getStdDev() / 1000000d));
+    }
+}
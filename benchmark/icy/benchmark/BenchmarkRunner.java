@@ -0,0 +1,260 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.benchmark;
+
+import icy.file.FileUtil;
+import icy.type.DataType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headless runner for the Icy kernel benchmark suite.<br>
+ * Each benchmark is executed for every requested data type and image size: a number of warmup
+ * iterations (not recorded) then measured iterations. Results are printed in a human readable form
+ * and written in CSV format so they can be tracked between releases.<br>
+ * <br>
+ * Usage : <code>java -cp icy.jar:benchmark.jar:... icy.benchmark.BenchmarkRunner [options]</code>
+ * <ul>
+ * <li><code>--types (-t) ubyte,ushort,float</code> : tested data types</li>
+ * <li><code>--sizes (-s) 512,2048</code> : tested image sizes (width = height)</li>
+ * <li><code>--warmup (-w) 5</code> : number of warmup iterations</li>
+ * <li><code>--iterations (-i) 10</code> : number of measured iterations</li>
+ * <li><code>--filter (-f) text</code> : only run benchmarks whose name contains the text</li>
+ * <li><code>--output (-o) file.csv</code> : CSV result file (CSV is printed on standard output
+ * if not specified)</li>
+ * </ul>
+ * 
+ * @author Stephane
+ */
+public class BenchmarkRunner
+{
+    DataType[] dataTypes = {DataType.UBYTE, DataType.USHORT, DataType.FLOAT};
+    int[] sizes = {512, 2048};
+    int warmup = 5;
+    int iterations = 10;
+    String filter = null;
+    String output = null;
+
+    /**
+     * Used to consume benchmark results so computations can't be optimized out (volatile so the
+     * JIT can't drop the writes, and reported at the end of the run)
+     */
+    private volatile int sink = 0;
+
+    /**
+     * Returns all benchmarks of the suite
+     */
+    public static List<Benchmark> getAllBenchmarks()
+    {
+        final List<Benchmark> result = new ArrayList<Benchmark>();
+
+        result.addAll(ImageBenchmarks.getBenchmarks());
+        result.addAll(ArrayBenchmarks.getBenchmarks());
+        result.addAll(RoiBenchmarks.getBenchmarks());
+        result.addAll(SequenceBenchmarks.getBenchmarks());
+
+        return result;
+    }
+
+    public static void main(String[] args)
+    {
+        // benchmarks should always run headless
+        System.setProperty("java.awt.headless", "true");
+
+        final BenchmarkRunner runner = new BenchmarkRunner();
+
+        try
+        {
+            runner.parseArgs(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        final List<BenchmarkResult> results = runner.run(getAllBenchmarks());
+        final String csv = toCSV(results);
+
+        // read the sink so results are really consumed
+        System.out.println("Results checksum: " + Integer.toHexString(runner.sink));
+
+        if (runner.output == null)
+        {
+            System.out.println();
+            System.out.print(csv);
+        }
+        else if (!FileUtil.save(runner.output, csv.getBytes(), false))
+            System.exit(1);
+
+        System.exit(0);
+    }
+
+    void parseArgs(String[] args) throws IllegalArgumentException
+    {
+        for (int i = 0; i < args.length; i++)
+        {
+            final String arg = args[i];
+
+            if (i == (args.length - 1))
+                throw new IllegalArgumentException("Missing value for parameter " + arg);
+
+            final String value = args[++i];
+
+            if (arg.equalsIgnoreCase("--types") || arg.equalsIgnoreCase("-t"))
+            {
+                final String[] names = value.split(",");
+
+                dataTypes = new DataType[names.length];
+                for (int j = 0; j < names.length; j++)
+                {
+                    dataTypes[j] = DataType.getDataType(names[j].trim().toLowerCase());
+                    if (dataTypes[j] == DataType.UNDEFINED)
+                        throw new IllegalArgumentException("Unknown data type: " + names[j]);
+                }
+            }
+            else if (arg.equalsIgnoreCase("--sizes") || arg.equalsIgnoreCase("-s"))
+            {
+                final String[] values = value.split(",");
+
+                sizes = new int[values.length];
+                for (int j = 0; j < values.length; j++)
+                    sizes[j] = parseInt(arg, values[j]);
+            }
+            else if (arg.equalsIgnoreCase("--warmup") || arg.equalsIgnoreCase("-w"))
+                warmup = parseInt(arg, value);
+            else if (arg.equalsIgnoreCase("--iterations") || arg.equalsIgnoreCase("-i"))
+                iterations = Math.max(1, parseInt(arg, value));
+            else if (arg.equalsIgnoreCase("--filter") || arg.equalsIgnoreCase("-f"))
+                filter = value;
+            else if (arg.equalsIgnoreCase("--output") || arg.equalsIgnoreCase("-o"))
+                output = value;
+            else
+                throw new IllegalArgumentException("Unknown parameter: " + arg);
+        }
+    }
+
+    private static int parseInt(String arg, String value) throws IllegalArgumentException
+    {
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid value for parameter " + arg + ": " + value);
+        }
+    }
+
+    /**
+     * Execute the specified benchmarks for all data types and sizes and returns results.
+     */
+    public List<BenchmarkResult> run(List<Benchmark> benchmarks)
+    {
+        final List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+
+        for (Benchmark benchmark : benchmarks)
+        {
+            if ((filter != null) && !benchmark.getName().contains(filter))
+                continue;
+
+            for (int size : sizes)
+            {
+                for (DataType dataType : dataTypes)
+                {
+                    if (!benchmark.isSupported(dataType))
+                        continue;
+
+                    try
+                    {
+                        final BenchmarkResult result = run(benchmark, dataType, size);
+
+                        System.out.println(result);
+                        results.add(result);
+                    }
+                    catch (Throwable t)
+                    {
+                        System.err.println(benchmark + " [" + dataType + ", " + size + "] failed:");
+                        t.printStackTrace();
+                    }
+
+                    // data type independent --> only need to run once
+                    if (!benchmark.isDataTypeDependent())
+                        break;
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Execute the specified benchmark for given data type and size.
+     */
+    public BenchmarkResult run(Benchmark benchmark, DataType dataType, int size) throws Exception
+    {
+        final long[] times = new long[iterations];
+
+        benchmark.setup(dataType, size);
+        try
+        {
+            for (int i = 0; i < warmup; i++)
+                consume(benchmark.run());
+
+            for (int i = 0; i < iterations; i++)
+            {
+                final long start = System.nanoTime();
+                final Object result = benchmark.run();
+                times[i] = System.nanoTime() - start;
+
+                consume(result);
+            }
+        }
+        finally
+        {
+            benchmark.tearDown();
+        }
+
+        return new BenchmarkResult(benchmark.getName(), dataType, size, times);
+    }
+
+    private void consume(Object result)
+    {
+        sink ^= System.identityHashCode(result);
+    }
+
+    /**
+     * Returns the specified results in CSV format (with header line).
+     */
+    public static String toCSV(List<BenchmarkResult> results)
+    {
+        final StringBuilder sb = new StringBuilder();
+
+        sb.append(BenchmarkResult.CSV_HEADER);
+        sb.append('\n');
+        for (BenchmarkResult result : results)
+        {
+            sb.append(result.toCSV());
+            sb.append('\n');
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.benchmark;
+
+import icy.image.IcyBufferedImage;
+import icy.sequence.Sequence;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+
+import java.util.Random;
+
+/**
+ * Utilities to generate benchmark data.
+ * 
+ * @author Stephane
+ */
+public class BenchmarkUtil
+{
+    /**
+     * Fixed seed so all runs process the same data
+     */
+    public static final long SEED = 20130101L;
+
+    /**
+     * Returns an array of random values covering the whole range of the specified data type (or
+     * [0..1] range for float types).
+     */
+    public static Object createRandomArray(DataType dataType, int len, Random random)
+    {
+        final double[] values = new double[len];
+        final double min;
+        final double delta;
+
+        if (dataType.isFloat())
+        {
+            min = 0d;
+            delta = 1d;
+        }
+        else
+        {
+            min = dataType.getMinValue();
+            delta = dataType.getMaxValue() - min;
+        }
+
+        for (int i = 0; i < len; i++)
+            values[i] = min + (random.nextDouble() * delta);
+
+        return Array1DUtil.doubleArrayToSafeArray(values, Array1DUtil.createArray(dataType, len),
+                dataType.isSigned());
+    }
+
+    /**
+     * Creates an image of the specified size and data type filled with random values.
+     */
+    public static IcyBufferedImage createRandomImage(DataType dataType, int size, int numChannel, Random random)
+    {
+        final IcyBufferedImage result = new IcyBufferedImage(size, size, numChannel, dataType);
+
+        result.beginUpdate();
+        try
+        {
+            for (int c = 0; c < numChannel; c++)
+                result.setDataXY(c, createRandomArray(dataType, size * size, random));
+        }
+        finally
+        {
+            result.endUpdate();
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates a sequence of <code>sizeZ</code> random images.
+     */
+    public static Sequence createRandomSequence(DataType dataType, int size, int sizeZ, int numChannel,
+            Random random)
+    {
+        final Sequence result = new Sequence("benchmark");
+
+        result.beginUpdate();
+        try
+        {
+            for (int z = 0; z < sizeZ; z++)
+                result.setImage(0, z, createRandomImage(dataType, size, numChannel, random));
+        }
+        finally
+        {
+            result.endUpdate();
+        }
+
+        return result;
+    }
+}
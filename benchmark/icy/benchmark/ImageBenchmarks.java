@@ -0,0 +1,181 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.benchmark;
+
+import icy.image.IcyBufferedImage;
+import icy.image.IcyBufferedImageUtil;
+import icy.image.colorspace.IcyColorSpace;
+import icy.image.lut.LUT;
+import icy.math.Scaler;
+import icy.type.DataType;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks for the image rendering path (scaling, color space and ARGB image building).
+ * 
+ * @author Stephane
+ */
+public class ImageBenchmarks
+{
+    public static List<Benchmark> getBenchmarks()
+    {
+        final List<Benchmark> result = new ArrayList<Benchmark>();
+
+        result.add(new ScalerBenchmark());
+        result.add(new FillARGBBufferBenchmark());
+        result.add(new ARGBImageBenchmark());
+
+        return result;
+    }
+
+    /**
+     * Scaler.scale(...) from native data to [0..255] integer range.
+     */
+    public static class ScalerBenchmark extends Benchmark
+    {
+        private Object src;
+        private int[] dest;
+        private Scaler scaler;
+        private boolean signed;
+
+        public ScalerBenchmark()
+        {
+            super("Scaler.scale");
+        }
+
+        @Override
+        public void setup(DataType dataType, int size)
+        {
+            final int len = size * size;
+
+            src = BenchmarkUtil.createRandomArray(dataType, len, new Random(BenchmarkUtil.SEED));
+            dest = new int[len];
+            signed = dataType.isSigned();
+            if (dataType.isFloat())
+                scaler = new Scaler(0d, 1d, 0d, 255d, true);
+            else
+                scaler = new Scaler(dataType.getMinValue(), dataType.getMaxValue(), 0d, 255d, true);
+        }
+
+        @Override
+        public Object run()
+        {
+            scaler.scale(src, 0, dest, 0, dest.length, signed);
+            return dest;
+        }
+
+        @Override
+        public void tearDown()
+        {
+            src = null;
+            dest = null;
+        }
+    }
+
+    /**
+     * IcyColorSpace.fillARGBBuffer(...) on 3 components (data are already scaled to [0..255] so
+     * result does not depend on data type).
+     */
+    public static class FillARGBBufferBenchmark extends Benchmark
+    {
+        private IcyColorSpace colorSpace;
+        private int[][] src;
+        private int[] dest;
+
+        public FillARGBBufferBenchmark()
+        {
+            super("IcyColorSpace.fillARGBBuffer");
+        }
+
+        @Override
+        public boolean isDataTypeDependent()
+        {
+            return false;
+        }
+
+        @Override
+        public void setup(DataType dataType, int size)
+        {
+            final Random random = new Random(BenchmarkUtil.SEED);
+            final int len = size * size;
+
+            colorSpace = new IcyBufferedImage(1, 1, 3, DataType.UBYTE).getIcyColorModel().getIcyColorSpace();
+            src = new int[3][len];
+            for (int c = 0; c < 3; c++)
+                for (int i = 0; i < len; i++)
+                    src[c][i] = random.nextInt(256);
+            dest = new int[len];
+        }
+
+        @Override
+        public Object run()
+        {
+            colorSpace.fillARGBBuffer(src, dest);
+            return dest;
+        }
+
+        @Override
+        public void tearDown()
+        {
+            src = null;
+            dest = null;
+        }
+    }
+
+    /**
+     * IcyBufferedImage.getARGBImage(...) on a 3 channels image (ARGBImageBuilder).
+     */
+    public static class ARGBImageBenchmark extends Benchmark
+    {
+        private IcyBufferedImage image;
+        private LUT lut;
+        private BufferedImage out;
+
+        public ARGBImageBenchmark()
+        {
+            super("IcyBufferedImage.getARGBImage");
+        }
+
+        @Override
+        public void setup(DataType dataType, int size)
+        {
+            image = BenchmarkUtil.createRandomImage(dataType, size, 3, new Random(BenchmarkUtil.SEED));
+            lut = image.createCompatibleLUT();
+            out = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        @Override
+        public Object run()
+        {
+            return IcyBufferedImageUtil.getARGBImage(image, lut, out);
+        }
+
+        @Override
+        public void tearDown()
+        {
+            image = null;
+            lut = null;
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.benchmark;
+
+import icy.roi.BooleanMask2D;
+import icy.roi.ROI2D;
+import icy.type.DataType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import plugins.kernel.roi.roi2d.ROI2DEllipse;
+
+/**
+ * Benchmarks for ROI mask computation and boolean mask operations.<br>
+ * Size parameter is used as the ROI bounding box size, these benchmarks do not depend on data
+ * type.
+ * 
+ * @author Stephane
+ */
+public class RoiBenchmarks
+{
+    public static List<Benchmark> getBenchmarks()
+    {
+        final List<Benchmark> result = new ArrayList<Benchmark>();
+
+        result.add(new GetBooleanMaskBenchmark());
+        result.add(new MaskOperationBenchmark(MaskOperationBenchmark.UNION));
+        result.add(new MaskOperationBenchmark(MaskOperationBenchmark.INTERSECTION));
+        result.add(new MaskOperationBenchmark(MaskOperationBenchmark.EXCLUSIVE_UNION));
+
+        return result;
+    }
+
+    /**
+     * Base class for data type independent ROI benchmarks
+     */
+    public static abstract class RoiBenchmark extends Benchmark
+    {
+        public RoiBenchmark(String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public boolean isDataTypeDependent()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * ROI2D.getBooleanMask(...) on an ellipse ROI.
+     */
+    public static class GetBooleanMaskBenchmark extends RoiBenchmark
+    {
+        private ROI2D roi;
+
+        public GetBooleanMaskBenchmark()
+        {
+            super("ROI2D.getBooleanMask");
+        }
+
+        @Override
+        public void setup(DataType dataType, int size)
+        {
+            roi = new ROI2DEllipse(0d, 0d, size, size);
+        }
+
+        @Override
+        public Object run()
+        {
+            return roi.getBooleanMask(true);
+        }
+
+        @Override
+        public void tearDown()
+        {
+            roi = null;
+        }
+    }
+
+    /**
+     * BooleanMask2D union / intersection / exclusive union of 2 overlapping ellipse masks.
+     */
+    public static class MaskOperationBenchmark extends RoiBenchmark
+    {
+        public static final int UNION = 0;
+        public static final int INTERSECTION = 1;
+        public static final int EXCLUSIVE_UNION = 2;
+
+        private static final String[] NAMES = {"BooleanMask2D.getUnion", "BooleanMask2D.getIntersection",
+                "BooleanMask2D.getExclusiveUnion"};
+
+        private final int operation;
+        private BooleanMask2D mask1;
+        private BooleanMask2D mask2;
+
+        public MaskOperationBenchmark(int operation)
+        {
+            super(NAMES[operation]);
+
+            this.operation = operation;
+        }
+
+        @Override
+        public void setup(DataType dataType, int size)
+        {
+            mask1 = new ROI2DEllipse(0d, 0d, size, size).getBooleanMask(true);
+            mask2 = new ROI2DEllipse(size / 2d, size / 4d, size * 1.5d, size * 1.25d).getBooleanMask(true);
+        }
+
+        @Override
+        public Object run()
+        {
+            switch (operation)
+            {
+                case UNION:
+                    return BooleanMask2D.getUnion(mask1, mask2);
+                case INTERSECTION:
+                    return BooleanMask2D.getIntersection(mask1, mask2);
+                default:
+                    return BooleanMask2D.getExclusiveUnion(mask1, mask2);
+            }
+        }
+
+        @Override
+        public void tearDown()
+        {
+            mask1 = null;
+            mask2 = null;
+        }
+    }
+}
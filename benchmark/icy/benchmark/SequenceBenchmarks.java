@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.benchmark;
+
+import icy.roi.ROI;
+import icy.sequence.Sequence;
+import icy.sequence.SequenceDataIterator;
+import icy.type.DataType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import plugins.kernel.roi.roi2d.ROI2DEllipse;
+
+/**
+ * Benchmarks for sequence data access.
+ * 
+ * @author Stephane
+ */
+public class SequenceBenchmarks
+{
+    /**
+     * Number of Z slices of the tested sequence
+     */
+    public static final int SIZE_Z = 4;
+
+    public static List<Benchmark> getBenchmarks()
+    {
+        final List<Benchmark> result = new ArrayList<Benchmark>();
+
+        result.add(new DataIteratorBenchmark(false));
+        result.add(new DataIteratorBenchmark(true));
+
+        return result;
+    }
+
+    /**
+     * Full SequenceDataIterator pass over a 1 channel sequence (optionally restricted to an
+     * ellipse ROI).
+     */
+    public static class DataIteratorBenchmark extends Benchmark
+    {
+        private final boolean useRoi;
+        private Sequence sequence;
+        private ROI roi;
+
+        public DataIteratorBenchmark(boolean useRoi)
+        {
+            super("SequenceDataIterator" + (useRoi ? " (ROI)" : ""));
+
+            this.useRoi = useRoi;
+        }
+
+        @Override
+        public void setup(DataType dataType, int size)
+        {
+            sequence = BenchmarkUtil.createRandomSequence(dataType, size, SIZE_Z, 1, new Random(BenchmarkUtil.SEED));
+            if (useRoi)
+                roi = new ROI2DEllipse(0d, 0d, size, size);
+        }
+
+        @Override
+        public Object run()
+        {
+            final SequenceDataIterator it;
+            double sum = 0d;
+
+            if (useRoi)
+                it = new SequenceDataIterator(sequence, roi);
+            else
+                it = new SequenceDataIterator(sequence);
+
+            while (!it.done())
+            {
+                sum += it.get();
+                it.next();
+            }
+
+            return Double.valueOf(sum);
+        }
+
+        @Override
+        public void tearDown()
+        {
+            sequence = null;
+            roi = null;
+        }
+    }
+}
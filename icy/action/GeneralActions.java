@@ -25,7 +25,7 @@ import icy.gui.main.MainFrame;
 import icy.gui.menu.search.SearchBar;
 import icy.gui.viewer.Viewer;
 import icy.image.ImageUtil;
-import icy.imagej.ImageJUtil;
+import icy.imagej.ImageJBridge;
 import icy.main.Icy;
 import icy.network.NetworkUtil;
 import icy.plugin.PluginUpdater;
@@ -231,7 +231,8 @@ public class GeneralActions
 
             if (seq != null)
             {
-                final ImagePlus ip = ImageJUtil.convertToImageJImage(seq, progressFrame);
+                // keep both images linked (shared data)
+                final ImagePlus ip = new ImageJBridge(seq, progressFrame).getImagePlus();
 
                 ThreadUtil.invokeLater(new Runnable()
                 {
@@ -283,7 +284,8 @@ public class GeneralActions
 
             if (ip != null)
             {
-                final Sequence seq = ImageJUtil.convertToIcySequence(ip, progressFrame);
+                // keep both images linked (shared data)
+                final Sequence seq = new ImageJBridge(ip, progressFrame).getSequence();
 
                 ThreadUtil.invokeLater(new Runnable()
                 {
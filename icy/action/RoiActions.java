@@ -23,6 +23,7 @@ import icy.file.FileUtil;
 import icy.gui.dialog.LoadDialog;
 import icy.gui.dialog.MessageDialog;
 import icy.gui.dialog.SaveDialog;
+import icy.gui.frame.progress.ProgressFrame;
 import icy.gui.inspector.RoisPanel;
 import icy.main.Icy;
 import icy.preferences.GeneralPreferences;
@@ -32,6 +33,7 @@ import icy.roi.ROI;
 import icy.roi.ROIUtil;
 import icy.sequence.Sequence;
 import icy.system.SystemUtil;
+import icy.system.thread.ThreadUtil;
 import icy.util.ShapeUtil.BooleanOperator;
 import icy.util.StringUtil;
 import icy.util.XLSUtil;
@@ -541,30 +543,8 @@ public class RoiActions
         @Override
         public boolean doAction(ActionEvent e)
         {
-            final Sequence sequence = Icy.getMainInterface().getActiveSequence();
-            final RoisPanel roisPanel = Icy.getMainInterface().getRoisPanel();
-
-            if ((sequence != null) && (roisPanel != null))
-            {
-                // OR operation
-                sequence.beginUpdate();
-                try
-                {
-                    final List<ROI> selectedROIs = roisPanel.getSelectedRois();
-                    final ROI mergeROI = ROIUtil.merge(selectedROIs, BooleanOperator.OR);
-
-                    sequence.addROI(mergeROI);
-                    sequence.setSelectedROI(mergeROI);
-                }
-                finally
-                {
-                    sequence.endUpdate();
-                }
-
-                return true;
-            }
-
-            return false;
+            // OR operation
+            return mergeSelectedRois(BooleanOperator.OR, "Computing union...");
         }
 
         @Override
@@ -586,30 +566,8 @@ public class RoiActions
         @Override
         public boolean doAction(ActionEvent e)
         {
-            final Sequence sequence = Icy.getMainInterface().getActiveSequence();
-            final RoisPanel roisPanel = Icy.getMainInterface().getRoisPanel();
-
-            if ((sequence != null) && (roisPanel != null))
-            {
-                // AND operation
-                sequence.beginUpdate();
-                try
-                {
-                    final List<ROI> selectedROIs = roisPanel.getSelectedRois();
-                    final ROI mergeROI = ROIUtil.merge(selectedROIs, BooleanOperator.AND);
-
-                    sequence.addROI(mergeROI);
-                    sequence.setSelectedROI(mergeROI);
-                }
-                finally
-                {
-                    sequence.endUpdate();
-                }
-
-                return true;
-            }
-
-            return false;
+            // AND operation
+            return mergeSelectedRois(BooleanOperator.AND, "Computing intersection...");
         }
 
         @Override
@@ -631,30 +589,8 @@ public class RoiActions
         @Override
         public boolean doAction(ActionEvent e)
         {
-            final Sequence sequence = Icy.getMainInterface().getActiveSequence();
-            final RoisPanel roisPanel = Icy.getMainInterface().getRoisPanel();
-
-            if ((sequence != null) && (roisPanel != null))
-            {
-                // XOR operation
-                sequence.beginUpdate();
-                try
-                {
-                    final List<ROI> selectedROIs = roisPanel.getSelectedRois();
-                    final ROI mergeROI = ROIUtil.merge(selectedROIs, BooleanOperator.XOR);
-
-                    sequence.addROI(mergeROI);
-                    sequence.setSelectedROI(mergeROI);
-                }
-                finally
-                {
-                    sequence.endUpdate();
-                }
-
-                return true;
-            }
-
-            return false;
+            // XOR operation
+            return mergeSelectedRois(BooleanOperator.XOR, "Computing exclusive union...");
         }
 
         @Override
@@ -809,6 +745,55 @@ public class RoiActions
         }
     };
 
+    /**
+     * Add to the active sequence a new ROI resulting from the specified boolean operation on the
+     * selected ROIs.<br>
+     * The selection is retrieved from the calling thread (EDT) then the merge is computed in
+     * background as it may take sometime.
+     */
+    static boolean mergeSelectedRois(final BooleanOperator operator, final String processMessage)
+    {
+        final Sequence sequence = Icy.getMainInterface().getActiveSequence();
+        final RoisPanel roisPanel = Icy.getMainInterface().getRoisPanel();
+
+        if ((sequence == null) || (roisPanel == null))
+            return false;
+
+        final List<ROI> selectedROIs = roisPanel.getSelectedRois();
+
+        ThreadUtil.bgRun(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final ProgressFrame progressFrame = new ProgressFrame(processMessage);
+
+                try
+                {
+                    // computed outside the sequence update as it may take sometime
+                    final ROI mergeROI = ROIUtil.merge(selectedROIs, operator);
+
+                    sequence.beginUpdate();
+                    try
+                    {
+                        sequence.addROI(mergeROI);
+                        sequence.setSelectedROI(mergeROI);
+                    }
+                    finally
+                    {
+                        sequence.endUpdate();
+                    }
+                }
+                finally
+                {
+                    progressFrame.close();
+                }
+            }
+        });
+
+        return true;
+    }
+
     /**
      * Return all actions of this class
      */
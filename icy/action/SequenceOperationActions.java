@@ -36,9 +36,11 @@ import icy.roi.ROI;
 import icy.sequence.DimensionId;
 import icy.sequence.Sequence;
 import icy.sequence.SequenceDataIterator;
+import icy.sequence.SequenceEdit.DataEdit;
 import icy.sequence.SequenceUtil;
 import icy.type.DataIteratorUtil;
 import icy.type.DataType;
+import icy.type.rectangle.Rectangle5D;
 import icy.util.OMEUtil;
 
 import java.awt.Image;
@@ -899,11 +901,33 @@ public class SequenceOperationActions
                 if (mainFrame != null)
                 {
                     final double value = mainFrame.getMainRibbon().getSequenceOperationTask().getFillValue();
+                    final List<ROI> rois = sequence.getSelectedROIs();
+                    final DataEdit edit = new DataEdit(sequence, "ROI content filled");
 
-                    for (ROI roi : sequence.getSelectedROIs())
+                    // record planes we are going to modify so the operation can be undone
+                    for (int t = 0; t < sequence.getSizeT(); t++)
+                    {
+                        for (int z = 0; z < sequence.getSizeZ(t); z++)
+                        {
+                            final Rectangle5D plane = new Rectangle5D.Double(0, 0, z, t, 0, sequence.getSizeX(),
+                                    sequence.getSizeY(), 1, 1, sequence.getSizeC());
+
+                            for (ROI roi : rois)
+                            {
+                                if (roi.intersects(plane))
+                                {
+                                    edit.record(t, z);
+                                    break;
+                                }
+                            }
+                        }
+                    }
+
+                    for (ROI roi : rois)
                         DataIteratorUtil.set(new SequenceDataIterator(sequence, roi), value);
 
                     sequence.dataChanged();
+                    edit.end();
 
                     return true;
                 }
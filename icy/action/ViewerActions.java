@@ -3,8 +3,8 @@
  */
 package icy.action;
 
-import icy.canvas.Canvas3D;
 import icy.canvas.IcyCanvas;
+import icy.canvas.IcyCanvas3D;
 import icy.gui.viewer.Viewer;
 import icy.image.lut.LUT;
 import icy.main.Icy;
@@ -55,7 +55,7 @@ public class ViewerActions
                         final LUT newLut = v.getLut();
 
                         // copy LUT
-                        if (canvas instanceof Canvas3D)
+                        if (canvas instanceof IcyCanvas3D)
                         {
                             // don't copy alpha colormap
                             newLut.setColorMaps(oldLut, false);
@@ -665,16 +665,21 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
             /**
              * image cache
              */
-            private BufferedImage imageCache;
+            private volatile BufferedImage imageCache;
 
             /**
              * processor
              */
             private final SingleProcessor processor;
+            /**
+             * frames prefetcher for playback
+             */
+            final PlaybackPrefetcher prefetcher;
             /**
              * internals
              */
             private boolean needRebuild;
+            private int lastT;
 
             public ImageCache()
             {
@@ -684,8 +689,11 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
                 // we want the processor to stay alive for sometime
                 processor.setKeepAliveTime(3, TimeUnit.SECONDS);
 
+                prefetcher = new PlaybackPrefetcher(Canvas2D.this);
+
                 imageCache = null;
                 needRebuild = true;
+                lastT = -1;
                 // build cache
                 processor.submit(this);
             }
@@ -726,8 +734,49 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
                 // important to set it to false at beginning
                 needRebuild = false;
 
-                // build image
-                imageCache = Canvas2D.this.getARGBImage(getPositionT(), getPositionZ(), getPositionC(), imageCache);
+                final int t = getPositionT();
+                final int z = getPositionZ();
+                final int c = getPositionC();
+                final boolean playing = tNav.isPlaying();
+                // try to use prefetched frame when playing
+                final BufferedImage frame = playing ? prefetcher.take(t, z, c) : null;
+
+                if (frame != null)
+                {
+                    final BufferedImage previous = imageCache;
+
+                    imageCache = frame;
+
+                    // the EDT may still be painting the previous image so we recycle it from the EDT :
+                    // any paint started before is done and next ones use the new image
+                    if (previous != null)
+                    {
+                        SwingUtilities.invokeLater(new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                prefetcher.recycle(previous);
+                            }
+                        });
+                    }
+                }
+                else
+                    // build image
+                    imageCache = Canvas2D.this.getARGBImage(t, z, c, imageCache);
+
+                if (playing)
+                {
+                    // prepare next frames
+                    prefetcher.prefetch(t, z, c, getMaxPositionT() + 1, tNav.isRepeat());
+
+                    if (t != lastT)
+                        tNav.frameDisplayed();
+                }
+                else
+                    prefetcher.clear();
+
+                lastT = t;
 
                 // repaint now
                 CanvasView.this.repaint();
@@ -878,6 +927,7 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
             rotationInfoTimer.removeActionListener(this);
             zoomInfoAlphaMover.shutDown();
             rotationInfoAlphaMover.shutDown();
+            imageCache.prefetcher.shutDown();
         }
 
         /**
@@ -1632,6 +1682,15 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
             imageCache.invalidCache();
         }
 
+        /**
+         * Image content changed (LUT or data modification) so prefetched frames are not valid
+         * anymore.
+         */
+        public void framesChanged()
+        {
+            imageCache.prefetcher.invalidate();
+        }
+
         public void layersChanged()
         {
 
@@ -2831,6 +2890,7 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
     @Override
     public void refresh()
     {
+        canvasView.framesChanged();
         canvasView.imageChanged();
         canvasView.layersChanged();
         canvasView.refresh();
@@ -3189,6 +3249,7 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
         // refresh image
         if (canvasView != null)
         {
+            canvasView.framesChanged();
             canvasView.imageChanged();
             canvasView.refresh();
         }
@@ -3232,6 +3293,7 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
         // refresh image
         if (canvasView != null)
         {
+            canvasView.framesChanged();
             canvasView.imageChanged();
             canvasView.refresh();
         }
@@ -28,6 +28,9 @@ import icy.gui.util.ComponentUtil;
 import icy.gui.util.GuiUtil;
 import icy.gui.viewer.Viewer;
 import icy.image.IcyBufferedImage;
+import icy.image.ImageMemoryAccountant;
+import icy.image.ImageMemoryAccountant.MemoryPressure;
+import icy.image.ImageMemoryAccountant.MemoryPressureListener;
 import icy.image.colormap.IcyColorMap;
 import icy.image.lut.LUT;
 import icy.image.lut.LUT.LUTChannel;
@@ -41,6 +44,7 @@ import icy.system.thread.ThreadUtil;
 import icy.type.DataType;
 import icy.type.TypeUtil;
 import icy.type.collection.array.Array1DUtil;
+import icy.type.collection.array.ArrayUtil;
 import icy.util.StringUtil;
 import icy.vtk.IcyVtkPanel;
 import icy.vtk.VtkUtil;
@@ -58,7 +62,9 @@ import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import javax.swing.Box;
@@ -240,6 +246,33 @@ public class Canvas3D extends IcyCanvas3D implements ActionListener, ColorChange
     private vtkVolumeProperty volumeProperty;
     private vtkImageData imageData;
 
+    /**
+     * current volume structure (data itself is only stored in the VTK array)
+     */
+    private int volumeSizeX;
+    private int volumeSizeY;
+    private int volumeSizeZ;
+    private int volumeNumComp;
+    private DataType volumeDataType;
+    private int volumeT;
+    private int volumeC;
+    /**
+     * Z planes of current volume modified since last build
+     */
+    private final Set<Integer> dirtyPlanes;
+    private boolean volumeDirty;
+
+    /**
+     * next T volume data (prefetched for smooth 4D playback), the buffer is recycled once its
+     * content has been transferred to the VTK array
+     */
+    private final Object prefetchLock;
+    private Object prefetchData;
+    private int prefetchT;
+    private int prefetchC;
+    private int prefetchId;
+    private boolean prefetchReady;
+
     /**
      * gui
      */
@@ -267,7 +300,10 @@ public class Canvas3D extends IcyCanvas3D implements ActionListener, ColorChange
      * internals
      */
     final InstanceProcessor processor;
+    final InstanceProcessor prefetchProcessor;
     final Runnable displayRefresher;
+    private final Runnable volumePrefetcher;
+    private final MemoryPressureListener memoryReleaser;
     private final Runnable imageDataBuilder;
     private final Runnable volumeMapperBuilder;
     private final LUT lutSave;
@@ -283,6 +319,17 @@ public class Canvas3D extends IcyCanvas3D implements ActionListener, ColorChange
         // all channel visible at once by default
         posC = -1;
 
+        volumeT = -1;
+        volumeC = -1;
+        dirtyPlanes = new HashSet<Integer>();
+        volumeDirty = true;
+        prefetchLock = new Object();
+        prefetchData = null;
+        prefetchT = -1;
+        prefetchC = -1;
+        prefetchId = 0;
+        prefetchReady = false;
+
         final Sequence seq = getSequence();
 
         // default X, Y, Z scaling for volume
@@ -374,7 +421,27 @@ public class Canvas3D extends IcyCanvas3D implements ActionListener, ColorChange
         processor.setDefaultThreadName("Canvas3D renderer");
         // we want the processor to stay alive for sometime
         processor.setKeepAliveTime(3, TimeUnit.SECONDS);
+        prefetchProcessor = new InstanceProcessor();
+        prefetchProcessor.setDefaultThreadName("Canvas3D prefetcher");
 
+        volumePrefetcher = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                internalPrefetchVolume();
+            }
+        };
+        memoryReleaser = new MemoryPressureListener()
+        {
+            @Override
+            public void memoryPressure(MemoryPressure level, long wanted)
+            {
+                // prefetched volume is only a cache
+                releasePrefetch();
+            }
+        };
+        ImageMemoryAccountant.addMemoryPressureListener(memoryReleaser);
         displayRefresher = new Runnable()
         {
             @Override
@@ -579,201 +646,420 @@ public class Canvas3D extends IcyCanvas3D implements ActionListener, ColorChange
         final DataType dataType = sequence.getDataType_();
         final int posT = getPositionT();
         final int posC = getPositionC();
+        final int numComp = (posC == -1) ? sequence.getSizeC() : 1;
+        final Integer[] modifiedPlanes;
+        final boolean allModified;
+
+        synchronized (dirtyPlanes)
+        {
+            modifiedPlanes = dirtyPlanes.toArray(new Integer[dirtyPlanes.size()]);
+            allModified = volumeDirty;
+            dirtyPlanes.clear();
+            volumeDirty = false;
+        }
+
+        final int planeSize = sizeX * sizeY * numComp;
+        // prefetched volume buffer transferred to VTK (given back to the prefetcher when playing)
+        Object data = null;
+
+        // same volume structure --> reuse the current VTK array
+        if ((imageData != null) && isVtkSupported(dataType) && (sizeX == volumeSizeX) && (sizeY == volumeSizeY)
+                && (sizeZ == volumeSizeZ) && (numComp == volumeNumComp) && (dataType == volumeDataType))
+        {
+            final vtkDataArray array = imageData.GetPointData().GetScalars();
+
+            if ((posT == volumeT) && (posC == volumeC) && !allModified)
+            {
+                // nothing changed
+                if (modifiedPlanes.length == 0)
+                    return;
+
+                final int[] planes = new int[modifiedPlanes.length];
+                int len = 0;
+
+                for (Integer z : modifiedPlanes)
+                    if (z.intValue() < sizeZ)
+                        planes[len++] = z.intValue();
+
+                // only write modified planes in the VTK array
+                setPlanesData(imageData, sequence, posT, posC, Arrays.copyOf(planes, len));
+            }
+            else
+            {
+                data = getPrefetchedVolume(posT, posC, dataType, planeSize * sizeZ);
+
+                if (data != null)
+                    setJavaArray(array, dataType, data);
+                else
+                    setPlanesData(imageData, sequence, posT, posC, getAllPlanes(sizeZ));
+            }
+
+            array.Modified();
+            imageData.Modified();
+            // mark volume as modified
+            volume.Modified();
+        }
+        else
+        {
+            // create a new image data structure
+            final vtkImageData newImageData = new vtkImageData();
+
+            newImageData.SetDimensions(sizeX, sizeY, sizeZ);
+            newImageData.SetNumberOfScalarComponents(numComp);
+            newImageData.SetWholeExtent(0, sizeX - 1, 0, sizeY - 1, 0, sizeZ - 1);
+
+            switch (dataType)
+            {
+                case UBYTE:
+                case BYTE:
+                    // FIXME: signed char not supported by VTK java wrapper ??
+                    newImageData.SetScalarTypeToUnsignedChar();
+                    break;
+
+                case USHORT:
+                    newImageData.SetScalarTypeToUnsignedShort();
+                    break;
+
+                case SHORT:
+                    newImageData.SetScalarTypeToShort();
+                    break;
+
+                case UINT:
+                    newImageData.SetScalarTypeToUnsignedInt();
+                    break;
+
+                case INT:
+                    newImageData.SetScalarTypeToInt();
+                    break;
+
+                // LONG and ULONG not supported because DataBufferLong doesn't exist
 
-        // create a new image data structure
-        final vtkImageData newImageData = new vtkImageData();
+                case FLOAT:
+                    newImageData.SetScalarTypeToFloat();
+                    break;
+
+                case DOUBLE:
+                    newImageData.SetScalarTypeToDouble();
+                    break;
+
+                default:
+                    // we probably have an empty sequence
+                    newImageData.SetDimensions(1, 1, 1);
+                    newImageData.SetNumberOfScalarComponents(1);
+                    newImageData.SetWholeExtent(0, 0, 0, 0, 0, 0);
+                    newImageData.SetScalarTypeToUnsignedChar();
+                    break;
+            }
+
+            // pre-allocate data
+            newImageData.AllocateScalars();
 
-        newImageData.SetDimensions(sizeX, sizeY, sizeZ);
-        // all component ?
-        if (posC == -1)
-            newImageData.SetNumberOfScalarComponents(sequence.getSizeC());
+            if (isVtkSupported(dataType))
+            {
+                // set frame sequence data in the array structure
+                setPlanesData(newImageData, sequence, posT, posC, getAllPlanes(sizeZ));
+            }
+
+            // set connection
+            volumeMapper.SetInput(newImageData);
+            // mark volume as modified
+            volume.Modified();
+
+            // release previous volume data memory
+            if (imageData != null)
+            {
+                final vtkPointData pointData = imageData.GetPointData();
+                if (pointData != null)
+                {
+                    final vtkDataArray dataArray = pointData.GetScalars();
+                    if (dataArray != null)
+                        dataArray.Delete();
+                    pointData.Delete();
+                }
+                imageData.ReleaseData();
+                imageData.Delete();
+            }
+
+            // set to new image data
+            imageData = newImageData;
+        }
+
+        // store current volume structure
+        volumeSizeX = sizeX;
+        volumeSizeY = sizeY;
+        volumeSizeZ = sizeZ;
+        volumeNumComp = numComp;
+        volumeDataType = dataType;
+        volumeT = posT;
+        volumeC = posC;
+
+        // prepare next frame in background only while playing (reusing the transfer buffer)
+        if (tNav.isPlaying() && (sequence.getSizeT() > 1))
+        {
+            if (data != null)
+                recyclePrefetchBuffer(data);
+            prefetchVolume((posT + 1) % sequence.getSizeT(), posC);
+        }
         else
-            newImageData.SetNumberOfScalarComponents(1);
-        newImageData.SetWholeExtent(0, sizeX - 1, 0, sizeY - 1, 0, sizeZ - 1);
+            // don't keep a second volume in memory
+            releasePrefetch();
+    }
+
+    private static int[] getAllPlanes(int sizeZ)
+    {
+        final int[] result = new int[sizeZ];
+
+        for (int z = 0; z < sizeZ; z++)
+            result[z] = z;
+
+        return result;
+    }
 
-        vtkDataArray array;
+    /**
+     * Write the specified Z planes of the sequence directly in the VTK image data.<br>
+     * Data is transferred plane by plane through a plane sized image so we never need a java (or
+     * VTK) copy of the whole volume.
+     */
+    private static void setPlanesData(vtkImageData image, Sequence sequence, int t, int c, int[] planes)
+    {
+        if (planes.length == 0)
+            return;
+
+        final int[] dim = image.GetDimensions();
+        final int numComp = image.GetNumberOfScalarComponents();
+        final DataType dataType = sequence.getDataType_();
+        final int planeSize = dim[0] * dim[1] * numComp;
+        final Object buffer = Array1DUtil.createArray(dataType, planeSize);
+        final vtkImageData planeImage = new vtkImageData();
+
+        planeImage.SetScalarType(image.GetScalarType());
+        planeImage.SetNumberOfScalarComponents(numComp);
+
+        for (int z : planes)
+        {
+            final int[] extent = new int[] {0, dim[0] - 1, 0, dim[1] - 1, z, z};
+
+            // plane image is located at the destination plane position
+            planeImage.SetExtent(extent);
+            // scalars are only allocated the first time (same size for all planes)
+            planeImage.AllocateScalars();
+
+            copyPlaneData(sequence, t, z, c, buffer, 0, planeSize);
+            setJavaArray(planeImage.GetPointData().GetScalars(), dataType, buffer);
+            // copy plane into the volume
+            image.CopyAndCastFrom(planeImage, extent);
+        }
+
+        planeImage.ReleaseData();
+        planeImage.Delete();
+    }
 
+    private static boolean isVtkSupported(DataType dataType)
+    {
         switch (dataType)
         {
             case UBYTE:
-                newImageData.SetScalarTypeToUnsignedChar();
-                // pre-allocate data
-                newImageData.AllocateScalars();
-                // get array structure
-                array = newImageData.GetPointData().GetScalars();
-                // set frame sequence data in the array structure
-                if (posC == -1)
-                    ((vtkUnsignedCharArray) array).SetJavaArray(sequence.getDataCopyCXYZAsByte(posT));
-                else
-                    ((vtkUnsignedCharArray) array).SetJavaArray(sequence.getDataCopyXYZAsByte(posT, posC));
-                break;
+            case BYTE:
+            case USHORT:
+            case SHORT:
+            case UINT:
+            case INT:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+
+            default:
+                return false;
+        }
+    }
 
+    /**
+     * Set the java array data into the specified VTK array
+     */
+    private static void setJavaArray(vtkDataArray array, DataType dataType, Object data)
+    {
+        switch (dataType)
+        {
+            case UBYTE:
             case BYTE:
-                // FIXME: signed char not supported by VTK java wrapper ??
-                // imageData.SetScalarTypeToChar();
-                // // pre-allocate data
-                // imageData.AllocateScalars();
-                // // get array structure
-                // final vtkCharArray array = (vtkCharArray)
-                // imageData.GetPointData().GetScalars();
-                // // set frame sequence data in the array structure
-                // if (posC == -1)
-                // array.SetJavaArray(sequence.getDataCopyCXYZAsByte(posT));
-                // else
-                // array.SetJavaArray(sequence.getDataCopyXYZAsByte(posT, posC));
-
-                newImageData.SetScalarTypeToUnsignedChar();
-                // pre-allocate data
-                newImageData.AllocateScalars();
-                // get array structure
-                array = newImageData.GetPointData().GetScalars();
-                // set frame sequence data in the array structure
-                if (posC == -1)
-                    ((vtkUnsignedCharArray) array).SetJavaArray(sequence.getDataCopyCXYZAsByte(posT));
-                else
-                    ((vtkUnsignedCharArray) array).SetJavaArray(sequence.getDataCopyXYZAsByte(posT, posC));
+                ((vtkUnsignedCharArray) array).SetJavaArray((byte[]) data);
                 break;
 
             case USHORT:
-                newImageData.SetScalarTypeToUnsignedShort();
-                // pre-allocate data
-                newImageData.AllocateScalars();
-                // get array structure
-                array = newImageData.GetPointData().GetScalars();
-                // set frame sequence data in the array structure
-                if (posC == -1)
-                    ((vtkUnsignedShortArray) array).SetJavaArray(sequence.getDataCopyCXYZAsShort(posT));
-                else
-                    ((vtkUnsignedShortArray) array).SetJavaArray(sequence.getDataCopyXYZAsShort(posT, posC));
+                ((vtkUnsignedShortArray) array).SetJavaArray((short[]) data);
                 break;
 
             case SHORT:
-                newImageData.SetScalarTypeToShort();
-                // pre-allocate data
-                newImageData.AllocateScalars();
-                // get array structure
-                array = newImageData.GetPointData().GetScalars();
-                // set frame sequence data in the array structure
-                if (posC == -1)
-                    ((vtkShortArray) array).SetJavaArray(sequence.getDataCopyCXYZAsShort(posT));
-                else
-                    ((vtkShortArray) array).SetJavaArray(sequence.getDataCopyXYZAsShort(posT, posC));
+                ((vtkShortArray) array).SetJavaArray((short[]) data);
                 break;
 
             case UINT:
-                newImageData.SetScalarTypeToUnsignedInt();
-                // pre-allocate data
-                newImageData.AllocateScalars();
-                // get array structure
-                array = newImageData.GetPointData().GetScalars();
-                // set frame sequence data in the array structure
-                if (posC == -1)
-                    ((vtkUnsignedIntArray) array).SetJavaArray(sequence.getDataCopyCXYZAsInt(posT));
-                else
-                    ((vtkUnsignedIntArray) array).SetJavaArray(sequence.getDataCopyXYZAsInt(posT, posC));
+                ((vtkUnsignedIntArray) array).SetJavaArray((int[]) data);
                 break;
 
             case INT:
-                newImageData.SetScalarTypeToInt();
-                // pre-allocate data
-                newImageData.AllocateScalars();
-                // get array structure
-                array = newImageData.GetPointData().GetScalars();
-                // set frame sequence data in the array structure
-                if (posC == -1)
-                    ((vtkIntArray) array).SetJavaArray(sequence.getDataCopyCXYZAsInt(posT));
-                else
-                    ((vtkIntArray) array).SetJavaArray(sequence.getDataCopyXYZAsInt(posT, posC));
+                ((vtkIntArray) array).SetJavaArray((int[]) data);
                 break;
 
-            // not supported because DataBufferLong doesn't exist
-            // case ULONG:
-            // newImageData.SetScalarTypeToUnsignedInt();
-            // // pre-allocate data
-            // newImageData.AllocateScalars();
-            // // get array structure
-            // array = newImageData.GetPointData().GetScalars();
-            // // set frame sequence data in the array structure
-            // if (posC == -1)
-            // ((vtkUnsignedLongArray) array).SetJavaArray(sequence.getDataCopyCXYZAsInt(posT));
-            // else
-            // ((vtkUnsignedLongArray) array).SetJavaArray(sequence.getDataCopyXYZAsInt(posT,
-            // posC));
-            // break;
-
-            // not supported because DataBufferLong doesn't exist
-            // case LONG:
-            // newImageData.SetScalarTypeToInt();
-            // // pre-allocate data
-            // newImageData.AllocateScalars();
-            // // get array structure
-            // array = newImageData.GetPointData().GetScalars();
-            // // set frame sequence data in the array structure
-            // if (posC == -1)
-            // ((vtkLongArray) array).SetJavaArray(sequence.getDataCopyCXYZAsInt(posT));
-            // else
-            // ((vtkLongArray) array).SetJavaArray(sequence.getDataCopyXYZAsInt(posT, posC));
-            // break;
-
             case FLOAT:
-                newImageData.SetScalarTypeToFloat();
-                // pre-allocate data
-                newImageData.AllocateScalars();
-                // get array structure
-                array = newImageData.GetPointData().GetScalars();
-                // set frame sequence data in the array structure
-                if (posC == -1)
-                    ((vtkFloatArray) array).SetJavaArray(sequence.getDataCopyCXYZAsFloat(posT));
-                else
-                    ((vtkFloatArray) array).SetJavaArray(sequence.getDataCopyXYZAsFloat(posT, posC));
+                ((vtkFloatArray) array).SetJavaArray((float[]) data);
                 break;
 
             case DOUBLE:
-                newImageData.SetScalarTypeToDouble();
-                // pre-allocate data
-                newImageData.AllocateScalars();
-                // get array structure
-                array = newImageData.GetPointData().GetScalars();
-                // set frame sequence data in the array structure
-                if (posC == -1)
-                    ((vtkDoubleArray) array).SetJavaArray(sequence.getDataCopyCXYZAsDouble(posT));
-                else
-                    ((vtkDoubleArray) array).SetJavaArray(sequence.getDataCopyXYZAsDouble(posT, posC));
+                ((vtkDoubleArray) array).SetJavaArray((double[]) data);
                 break;
 
             default:
-                // we probably have an empty sequence
-                newImageData.SetDimensions(1, 1, 1);
-                newImageData.SetNumberOfScalarComponents(1);
-                newImageData.SetWholeExtent(0, 0, 0, 0, 0, 0);
-                newImageData.SetScalarTypeToUnsignedChar();
-                // pre-allocate data
-                newImageData.AllocateScalars();
                 break;
         }
+    }
+
+    /**
+     * Returns volume data for the specified T position in VTK layout ([CXYZ] if c = -1, [XYZ]
+     * otherwise).<br>
+     * If <code>out</code> has the correct type and size then it's used to store result.
+     */
+    static Object getVolumeData(Sequence sequence, int t, int c, Object out)
+    {
+        final int sizeZ = sequence.getSizeZ();
+        final int planeSize = sequence.getSizeX() * sequence.getSizeY() * ((c == -1) ? sequence.getSizeC() : 1);
+        final DataType dataType = sequence.getDataType_();
+        Object result = out;
+
+        if ((result == null) || (ArrayUtil.getDataType(result) != dataType.getJavaType())
+                || (ArrayUtil.getLength(result) != (planeSize * sizeZ)))
+            result = Array1DUtil.createArray(dataType, planeSize * sizeZ);
+
+        for (int z = 0; z < sizeZ; z++)
+            copyPlaneData(sequence, t, z, c, result, z * planeSize, planeSize);
+
+        return result;
+    }
+
+    /**
+     * Copy data of the specified plane in VTK layout ([CXY] if c = -1, [XY] otherwise).
+     */
+    static void copyPlaneData(Sequence sequence, int t, int z, int c, Object out, int offset, int planeSize)
+    {
+        // missing image --> clear plane (out may contains previous data)
+        if (sequence.getImage(t, z) == null)
+            Array1DUtil.fill(out, offset, offset + planeSize, 0d);
+        else if (c == -1)
+            sequence.getDataCopyCXY(t, z, out, offset);
+        else
+            sequence.getDataCopyXY(t, z, c, out, offset);
+    }
+
+    /**
+     * Returns the prefetched volume data if it matches the specified position and format
+     * (<code>null</code> otherwise).<br>
+     * The buffer is removed from the prefetcher, give it back with
+     * {@link #recyclePrefetchBuffer(Object)} when done.
+     */
+    private Object getPrefetchedVolume(int t, int c, DataType dataType, int len)
+    {
+        synchronized (prefetchLock)
+        {
+            if (!prefetchReady || (prefetchT != t) || (prefetchC != c) || (prefetchData == null)
+                    || (ArrayUtil.getDataType(prefetchData) != dataType.getJavaType())
+                    || (ArrayUtil.getLength(prefetchData) != len))
+                return null;
+
+            final Object result = prefetchData;
+
+            prefetchData = null;
+            prefetchReady = false;
+            prefetchT = -1;
+
+            return result;
+        }
+    }
+
+    /**
+     * Give a volume buffer to the prefetcher so it can be reused for the next prefetch.
+     */
+    private void recyclePrefetchBuffer(Object buffer)
+    {
+        synchronized (prefetchLock)
+        {
+            if (prefetchData == null)
+                prefetchData = buffer;
+        }
+    }
+
+    private void prefetchVolume(int t, int c)
+    {
+        synchronized (prefetchLock)
+        {
+            // already prefetched (or in progress)
+            if ((prefetchT == t) && (prefetchC == c))
+                return;
+
+            prefetchT = t;
+            prefetchC = c;
+            prefetchId++;
+            prefetchReady = false;
+        }
+
+        prefetchProcessor.submit(volumePrefetcher);
+    }
+
+    private void invalidatePrefetch()
+    {
+        synchronized (prefetchLock)
+        {
+            prefetchT = -1;
+            prefetchId++;
+            prefetchReady = false;
+        }
+    }
+
+    /**
+     * Invalidate and release the prefetched volume buffer.
+     */
+    void releasePrefetch()
+    {
+        synchronized (prefetchLock)
+        {
+            prefetchT = -1;
+            prefetchId++;
+            prefetchReady = false;
+            prefetchData = null;
+        }
+    }
+
+    void internalPrefetchVolume()
+    {
+        final Sequence sequence = getSequence();
+        final int t;
+        final int c;
+        final int id;
+        final Object buffer;
+
+        synchronized (prefetchLock)
+        {
+            t = prefetchT;
+            c = prefetchC;
+            id = prefetchId;
+            buffer = prefetchData;
+            // buffer is being modified
+            prefetchReady = false;
+        }
 
-        // set connection
-        volumeMapper.SetInput(newImageData);
-        // mark volume as modified
-        volume.Modified();
+        if ((sequence == null) || (t == -1))
+            return;
+
+        final Object data = getVolumeData(sequence, t, c, buffer);
 
-        // release previous volume data memory
-        if (imageData != null)
+        synchronized (prefetchLock)
         {
-            final vtkPointData pointData = imageData.GetPointData();
-            if (pointData != null)
+            // no new request or invalidation (or release) in the meantime ?
+            if (prefetchId == id)
             {
-                final vtkDataArray dataArray = pointData.GetScalars();
-                if (dataArray != null)
-                    dataArray.Delete();
-                pointData.Delete();
+                prefetchData = data;
+                prefetchReady = true;
             }
-            imageData.ReleaseData();
-            imageData.Delete();
         }
-
-        // set to new image data
-        imageData = newImageData;
     }
 
     /**
@@ -1357,6 +1643,9 @@ public class Canvas3D extends IcyCanvas3D implements ActionListener, ColorChange
         // restoreColormap(getLut());
 
         // processor.shutdownAndWait();
+        prefetchProcessor.removeAllWaitingTasks();
+        ImageMemoryAccountant.removeMemoryPressureListener(memoryReleaser);
+        releasePrefetch();
 
         // AWTMultiCaster of vtkPanel keep reference of this frame so
         // we have to release as most stuff we can
@@ -1380,6 +1669,12 @@ public class Canvas3D extends IcyCanvas3D implements ActionListener, ColorChange
         volumeProperty = null;
         activeCam = null;
         imageData = null;
+        synchronized (prefetchLock)
+        {
+            prefetchData = null;
+            prefetchT = -1;
+            prefetchReady = false;
+        }
 
         panel3D = null;
         panel = null;
@@ -1492,7 +1787,46 @@ public class Canvas3D extends IcyCanvas3D implements ActionListener, ColorChange
         if (!initialized)
             return;
 
-        // rebuild image data and refresh
+        // prefetched data may be outdated
+        invalidatePrefetch();
+
+        final Sequence sequence = getSequence();
+
+        if ((image != null) && (sequence != null))
+        {
+            final int posT = getPositionT();
+            int planeZ = -1;
+
+            for (int z = 0; z < sequence.getSizeZ(posT); z++)
+            {
+                if (sequence.getImage(posT, z) == image)
+                {
+                    planeZ = z;
+                    break;
+                }
+            }
+
+            // modified image is not part of current volume --> nothing to do
+            if ((planeZ == -1) && (type == SequenceEventType.CHANGED))
+                return;
+
+            synchronized (dirtyPlanes)
+            {
+                if (planeZ == -1)
+                    volumeDirty = true;
+                else
+                    dirtyPlanes.add(Integer.valueOf(planeZ));
+            }
+        }
+        else
+        {
+            synchronized (dirtyPlanes)
+            {
+                volumeDirty = true;
+            }
+        }
+
+        // update image data and refresh
         buildImageData();
         refresh();
     }
@@ -85,6 +85,7 @@ import javax.swing.event.ChangeEvent;
 
 import plugins.kernel.canvas.Canvas2DPlugin;
 import plugins.kernel.canvas.Canvas3DPlugin;
+import plugins.kernel.canvas.SoftwareCanvas3DPlugin;
 
 /**
  * @author Fabrice de Chaumont & Stephane Dallongeville<br>
@@ -143,6 +144,8 @@ public abstract class IcyCanvas extends JPanel implements KeyListener, ViewerLis
         result.add(Canvas2DPlugin.class.getName());
         if (Icy.isVtkLibraryLoaded())
             result.add(Canvas3DPlugin.class.getName());
+        // pure java 3D canvas (always available)
+        result.add(SoftwareCanvas3DPlugin.class.getName());
 
         for (PluginDescriptor plugin : plugins)
         {
@@ -153,6 +156,8 @@ public abstract class IcyCanvas extends JPanel implements KeyListener, ViewerLis
                 continue;
             if (Canvas3DPlugin.class.getName().equals(className))
                 continue;
+            if (SoftwareCanvas3DPlugin.class.getName().equals(className))
+                continue;
 
             CollectionUtil.addUniq(result, plugin.getClassName());
         }
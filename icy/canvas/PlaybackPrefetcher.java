@@ -0,0 +1,348 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.canvas;
+
+import icy.image.ImageMemoryAccountant;
+import icy.image.ImageMemoryAccountant.MemoryPressure;
+import icy.image.ImageMemoryAccountant.MemoryPressureListener;
+import icy.system.thread.Processor;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Renders ahead the next T frames of a {@link Canvas2D} while the sequence is played so the canvas
+ * only has to pick up an already built ARGB image at each playback tick.<br>
+ * Frames are kept in a bounded ring (see {@link #setDepth(int)}), are built in play direction
+ * (wrapping at the end when repeat is enabled) and are automatically discarded when Z or C position
+ * change or when {@link #invalidate()} is called (LUT or data change).<br>
+ * Zoom and rotation do not affect prefetched frames as the canvas image cache is built at image
+ * resolution.
+ * 
+ * @author Stephane
+ */
+public class PlaybackPrefetcher
+{
+    public static final int DEFAULT_DEPTH = 4;
+
+    private class FrameBuilder implements Runnable
+    {
+        final int t;
+        final int z;
+        final int c;
+        final int version;
+
+        FrameBuilder(int t, int z, int c, int version)
+        {
+            super();
+
+            this.t = t;
+            this.z = z;
+            this.c = c;
+            this.version = version;
+        }
+
+        @Override
+        public void run()
+        {
+            BufferedImage buffer;
+
+            synchronized (PlaybackPrefetcher.this)
+            {
+                // frame not anymore wanted ?
+                if ((version != PlaybackPrefetcher.this.version) || !pending.contains(Integer.valueOf(t)))
+                {
+                    pending.remove(Integer.valueOf(t));
+                    return;
+                }
+
+                buffer = getBuffer();
+            }
+
+            BufferedImage image = null;
+
+            try
+            {
+                image = canvas.getARGBImage(t, z, c, buffer);
+            }
+            finally
+            {
+                synchronized (PlaybackPrefetcher.this)
+                {
+                    final boolean wanted = pending.remove(Integer.valueOf(t));
+
+                    if (image != null)
+                    {
+                        // still valid ? store it
+                        if (wanted && (version == PlaybackPrefetcher.this.version) && (frames.size() < depth))
+                            frames.put(Integer.valueOf(t), image);
+                        else
+                            recycle(image);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * canvas we are building frames for
+     */
+    final Canvas2D canvas;
+
+    /**
+     * built frames (T position --> ARGB image)
+     */
+    final Map<Integer, BufferedImage> frames;
+    /**
+     * frames being built or waiting to be built
+     */
+    final Set<Integer> pending;
+    /**
+     * image buffers available for reuse
+     */
+    private final List<BufferedImage> buffers;
+
+    /**
+     * processor (ARGB image building is already parallelized so one thread is enough)
+     */
+    private final Processor processor;
+
+    /**
+     * release prefetched frames when memory is low
+     */
+    private final MemoryPressureListener memoryReleaser;
+
+    /**
+     * internals
+     */
+    int depth;
+    int version;
+    private int posZ;
+    private int posC;
+
+    public PlaybackPrefetcher(Canvas2D canvas)
+    {
+        super();
+
+        this.canvas = canvas;
+
+        frames = new HashMap<Integer, BufferedImage>();
+        pending = new HashSet<Integer>();
+        buffers = new ArrayList<BufferedImage>();
+
+        depth = DEFAULT_DEPTH;
+        version = 0;
+        posZ = -1;
+        posC = -1;
+
+        processor = new Processor(DEFAULT_DEPTH * 4, 1);
+        processor.setDefaultThreadName("Canvas2D prefetcher");
+
+        memoryReleaser = new MemoryPressureListener()
+        {
+            @Override
+            public void memoryPressure(MemoryPressure level, long wanted)
+            {
+                synchronized (PlaybackPrefetcher.this)
+                {
+                    // frames will be rebuilt on next prefetch call if memory allows
+                    invalidate();
+                    buffers.clear();
+                }
+            }
+        };
+        ImageMemoryAccountant.addMemoryPressureListener(memoryReleaser);
+    }
+
+    /**
+     * Returns the maximum number of frames rendered ahead.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * Sets the maximum number of frames rendered ahead.<br>
+     * Each frame retains a ARGB image of the sequence XY size in memory.
+     */
+    public synchronized void setDepth(int value)
+    {
+        depth = Math.max(0, value);
+
+        if (frames.size() > depth)
+            clear();
+    }
+
+    /**
+     * Invalidate all prefetched frames (to call when LUT or sequence data changed).
+     */
+    public synchronized void invalidate()
+    {
+        version++;
+        clear();
+    }
+
+    /**
+     * Release all prefetched frames.
+     */
+    public synchronized void clear()
+    {
+        for (BufferedImage image : frames.values())
+            recycle(image);
+
+        frames.clear();
+        pending.clear();
+        processor.removeAllWaitingTasks();
+    }
+
+    /**
+     * Returns and removes the prefetched frame for the specified position.<br>
+     * Returns <code>null</code> if the frame is not (yet) available.
+     */
+    public synchronized BufferedImage take(int t, int z, int c)
+    {
+        if ((z != posZ) || (c != posC))
+            return null;
+
+        return frames.remove(Integer.valueOf(t));
+    }
+
+    /**
+     * Schedule rendering of the frames following the specified T position.<br>
+     * Frames which are not anymore in the prefetch window are released.
+     * 
+     * @param t
+     *        current T position
+     * @param z
+     *        current Z position
+     * @param c
+     *        current C position (-1 = all)
+     * @param sizeT
+     *        number of frames
+     * @param repeat
+     *        playback loop mode, if enabled we prefetch first frames when we reach the end
+     */
+    public synchronized void prefetch(int t, int z, int c, int sizeT, boolean repeat)
+    {
+        // Z or C position changed --> prefetched frames are not valid anymore
+        if ((z != posZ) || (c != posC))
+        {
+            invalidate();
+            posZ = z;
+            posC = c;
+        }
+
+        final Set<Integer> window = new HashSet<Integer>();
+        final List<Integer> toBuild = new ArrayList<Integer>();
+
+        for (int i = 1; i <= depth; i++)
+        {
+            int nt = t + i;
+
+            if (nt >= sizeT)
+            {
+                if (!repeat)
+                    break;
+
+                nt %= sizeT;
+            }
+            // we did a complete loop
+            if (nt == t)
+                break;
+
+            final Integer key = Integer.valueOf(nt);
+
+            window.add(key);
+            if (!frames.containsKey(key) && !pending.contains(key))
+                toBuild.add(key);
+        }
+
+        // release frames out of window
+        final Iterator<Entry<Integer, BufferedImage>> it = frames.entrySet().iterator();
+        while (it.hasNext())
+        {
+            final Entry<Integer, BufferedImage> entry = it.next();
+
+            if (!window.contains(entry.getKey()))
+            {
+                recycle(entry.getValue());
+                it.remove();
+            }
+        }
+        // and cancel pending ones
+        pending.retainAll(window);
+
+        // then schedule missing frames (closest first)
+        for (Integer key : toBuild)
+        {
+            try
+            {
+                processor.submit(new FrameBuilder(key.intValue(), z, c, version));
+                pending.add(key);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // queue is full, we will retry on next call
+                break;
+            }
+        }
+    }
+
+    /**
+     * Give back an image buffer so it can be reused for next frames.
+     */
+    public synchronized void recycle(BufferedImage image)
+    {
+        if ((image != null) && (buffers.size() < 2))
+            buffers.add(image);
+    }
+
+    BufferedImage getBuffer()
+    {
+        if (buffers.isEmpty())
+            return null;
+
+        return buffers.remove(buffers.size() - 1);
+    }
+
+    /**
+     * Stop prefetching and release resources.
+     */
+    public void shutDown()
+    {
+        ImageMemoryAccountant.removeMemoryPressureListener(memoryReleaser);
+
+        synchronized (this)
+        {
+            clear();
+            buffers.clear();
+        }
+
+        processor.shutdownNow();
+    }
+}
@@ -0,0 +1,590 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.canvas;
+
+import icy.canvas.IcyCanvasEvent.IcyCanvasEventType;
+import icy.gui.component.button.ColorChooserButton;
+import icy.gui.component.button.ColorChooserButton.ColorChangeListener;
+import icy.gui.util.GuiUtil;
+import icy.gui.viewer.Viewer;
+import icy.image.IcyBufferedImage;
+import icy.image.lut.LUT;
+import icy.image.lut.LUT.LUTChannel;
+import icy.image.render.VolumeRenderer;
+import icy.image.render.VolumeRenderer.RenderMode;
+import icy.sequence.Sequence;
+import icy.sequence.SequenceEvent.SequenceEventType;
+import icy.system.thread.InstanceProcessor;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.Box;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JPanel;
+
+/**
+ * 3D canvas using the pure Java {@link VolumeRenderer}.<br>
+ * It does not need any native library so it can be used when VTK is not available. Only the image
+ * volume is rendered (overlays are not displayed).<br>
+ * Rendering is done in background, a low resolution image is displayed first then refined.
+ * 
+ * @author Stephane
+ */
+public class SoftwareCanvas3D extends IcyCanvas3D implements ActionListener, ColorChangeListener
+{
+    private static final long serialVersionUID = -6227372945862939405L;
+
+    /**
+     * subsampling factor for the fast preview rendering
+     */
+    private static final int PREVIEW_SUBSAMPLING = 4;
+    /**
+     * default size for off screen rendering
+     */
+    private static final int DEFAULT_RENDER_SIZE = 512;
+    /**
+     * sample distance choices (in voxel)
+     */
+    private static final double[] SAMPLE_DISTANCES = {0.5d, 1d, 2d, 4d};
+
+    private class RenderPanel extends JPanel implements MouseListener, MouseMotionListener, MouseWheelListener
+    {
+        private static final long serialVersionUID = 2606519582575716449L;
+
+        private Point lastPos;
+
+        public RenderPanel()
+        {
+            super();
+
+            lastPos = null;
+
+            addMouseListener(this);
+            addMouseMotionListener(this);
+            addMouseWheelListener(this);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g)
+        {
+            super.paintComponent(g);
+
+            final BufferedImage image = renderedImage;
+
+            if (image != null)
+                g.drawImage(image, 0, 0, getWidth(), getHeight(), null);
+        }
+
+        @Override
+        public void mouseClicked(MouseEvent e)
+        {
+            //
+        }
+
+        @Override
+        public void mousePressed(MouseEvent e)
+        {
+            lastPos = e.getPoint();
+            requestFocus();
+        }
+
+        @Override
+        public void mouseReleased(MouseEvent e)
+        {
+            lastPos = null;
+        }
+
+        @Override
+        public void mouseEntered(MouseEvent e)
+        {
+            //
+        }
+
+        @Override
+        public void mouseExited(MouseEvent e)
+        {
+            //
+        }
+
+        @Override
+        public void mouseDragged(MouseEvent e)
+        {
+            final Point pos = e.getPoint();
+
+            if (lastPos != null)
+            {
+                // half degree per pixel
+                renderer.getCamera().rotate((pos.x - lastPos.x) / 2d, (pos.y - lastPos.y) / 2d);
+                refresh();
+            }
+
+            lastPos = pos;
+        }
+
+        @Override
+        public void mouseMoved(MouseEvent e)
+        {
+            //
+        }
+
+        @Override
+        public void mouseWheelMoved(MouseWheelEvent e)
+        {
+            final double zoom = renderer.getCamera().getZoom();
+
+            renderer.getCamera().setZoom(zoom * Math.pow(1.1d, -e.getWheelRotation()));
+            refresh();
+        }
+    }
+
+    /**
+     * renderer
+     */
+    final RenderPanel panel3D;
+    final VolumeRenderer renderer;
+    volatile BufferedImage renderedImage;
+    BufferedImage backImage;
+
+    /**
+     * gui
+     */
+    final private ColorChooserButton backGroundColor = new ColorChooserButton();
+    final private JComboBox renderModeCombo = new JComboBox(RenderMode.values());
+    final private String[] volumeInterpolationString = {"Linear", "Nearest"};
+    final private JComboBox volumeInterpolationCombo = new JComboBox(volumeInterpolationString);
+    final private String[] volumeSampleDistanceString = {"0.5 (slow)", "1", "2", "4 (fast)"};
+    final private JComboBox volumeSampleDistanceCombo = new JComboBox(volumeSampleDistanceString);
+    final private JCheckBox perspectiveCheckBox = new JCheckBox("Perspective", false);
+
+    /**
+     * internals
+     */
+    final InstanceProcessor processor;
+    final Runnable displayRefresher;
+    final Runnable volumeBuilder;
+    private final LUT lutSave;
+    private boolean initialized;
+
+    public SoftwareCanvas3D(Viewer viewer)
+    {
+        super(viewer);
+
+        initialized = false;
+
+        // all channel visible at once by default
+        posC = -1;
+
+        final Sequence seq = getSequence();
+
+        renderer = new VolumeRenderer();
+        renderedImage = null;
+        backImage = null;
+
+        panel = GuiUtil.generatePanelWithoutBorder();
+
+        final JPanel settingsPanel = GuiUtil.generatePanel("Volume Rendering Settings");
+
+        backGroundColor.setColorChooseText("3D Background Color");
+        backGroundColor.setColor(Color.black);
+        backGroundColor.addColorChangeListener(this);
+        volumeSampleDistanceCombo.setSelectedIndex(1);
+        volumeSampleDistanceCombo
+                .setToolTipText("Use low value for fine (but slow) render and high value for fast (but draft) render");
+
+        settingsPanel.add(GuiUtil.createLineBoxPanel(Box.createHorizontalStrut(4),
+                GuiUtil.createFixedWidthLabel("Background color", 100), Box.createHorizontalStrut(8), backGroundColor,
+                Box.createHorizontalGlue(), Box.createHorizontalStrut(4)));
+        settingsPanel.add(GuiUtil.createLineBoxPanel(Box.createHorizontalStrut(4),
+                GuiUtil.createFixedWidthLabel("Rendering", 100), Box.createHorizontalStrut(8), renderModeCombo,
+                Box.createHorizontalGlue(), Box.createHorizontalStrut(4)));
+        settingsPanel.add(GuiUtil.createLineBoxPanel(Box.createHorizontalStrut(4),
+                GuiUtil.createFixedWidthLabel("Interpolation", 100), Box.createHorizontalStrut(8),
+                volumeInterpolationCombo, Box.createHorizontalGlue(), Box.createHorizontalStrut(4)));
+        settingsPanel.add(GuiUtil.createLineBoxPanel(Box.createHorizontalStrut(4),
+                GuiUtil.createFixedWidthLabel("Sample", 100), Box.createHorizontalStrut(8),
+                volumeSampleDistanceCombo, Box.createHorizontalGlue(), Box.createHorizontalStrut(4)));
+        settingsPanel.add(GuiUtil.createLineBoxPanel(Box.createHorizontalStrut(4), perspectiveCheckBox,
+                Box.createHorizontalGlue(), Box.createHorizontalStrut(4)));
+
+        renderModeCombo.addActionListener(this);
+        volumeInterpolationCombo.addActionListener(this);
+        volumeSampleDistanceCombo.addActionListener(this);
+        perspectiveCheckBox.addActionListener(this);
+
+        panel.add(settingsPanel);
+        panel.add(Box.createVerticalGlue());
+
+        panel3D = new RenderPanel();
+        panel3D.setBackground(backGroundColor.getColor());
+        panel3D.addKeyListener(this);
+        panel3D.addComponentListener(new ComponentAdapter()
+        {
+            @Override
+            public void componentResized(ComponentEvent e)
+            {
+                refresh();
+            }
+        });
+
+        // set 3D view in center
+        add(panel3D, BorderLayout.CENTER);
+
+        processor = new InstanceProcessor();
+        processor.setDefaultThreadName("SoftwareCanvas3D renderer");
+        // we want the processor to stay alive for sometime
+        processor.setKeepAliveTime(3, TimeUnit.SECONDS);
+
+        displayRefresher = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                renderer.resetCanceled();
+                internalRefresh();
+            }
+        };
+        volumeBuilder = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                renderer.resetCanceled();
+                internalBuildVolume();
+                internalRefresh();
+            }
+        };
+
+        // save lut and prepare for 3D visualization
+        lutSave = seq.createCompatibleLUT();
+        final LUT lut = getLut();
+
+        // save colormap
+        lutSave.setScalers(lut);
+        lutSave.setColorMaps(lut, true);
+        // adjust LUT alpha level for 3D view
+        for (LUTChannel lutChannel : lut.getLutChannels())
+            lutChannel.getColorMap().setDefaultAlphaFor3D();
+
+        // update nav bar & mouse infos
+        mouseInfPanel.setVisible(false);
+        updateZNav();
+        updateTNav();
+
+        setupRenderer();
+
+        initialized = true;
+
+        buildVolume();
+    }
+
+    private void setupRenderer()
+    {
+        renderer.setRenderMode((RenderMode) renderModeCombo.getSelectedItem());
+        renderer.setInterpolate(volumeInterpolationCombo.getSelectedIndex() == 0);
+        renderer.setSampleDistance(SAMPLE_DISTANCES[volumeSampleDistanceCombo.getSelectedIndex()]);
+        renderer.setBackground(backGroundColor.getColor());
+        renderer.getCamera().setPerspective(perspectiveCheckBox.isSelected());
+    }
+
+    /**
+     * @return the volume renderer used by this canvas
+     */
+    public VolumeRenderer getRenderer()
+    {
+        return renderer;
+    }
+
+    /**
+     * Rebuild the volume data and refresh display in background
+     */
+    private void buildVolume()
+    {
+        renderer.cancel();
+        processor.submit(volumeBuilder);
+    }
+
+    void internalBuildVolume()
+    {
+        final Sequence sequence = getSequence();
+
+        if (sequence != null)
+            renderer.setVolume(sequence, getPositionT(), getPositionC(), getLut());
+    }
+
+    void internalRefresh()
+    {
+        final int w = panel3D.getWidth();
+        final int h = panel3D.getHeight();
+
+        if ((w <= 0) || (h <= 0))
+            return;
+
+        // fast low resolution preview first
+        if (!render(w, h, PREVIEW_SUBSAMPLING))
+            return;
+        // a new rendering is already waiting --> don't waste time on full resolution
+        if (processor.hasWaitingTasks())
+            return;
+
+        render(w, h, 1);
+    }
+
+    private boolean render(int w, int h, int subsampling)
+    {
+        final BufferedImage image = renderer.render(backImage, w, h, subsampling);
+
+        if (renderer.isCanceled())
+            return false;
+
+        // swap buffers
+        backImage = renderedImage;
+        renderedImage = image;
+        panel3D.repaint();
+
+        return true;
+    }
+
+    @Override
+    public Component getViewComponent()
+    {
+        return panel3D;
+    }
+
+    @Override
+    public double getMouseImagePosX()
+    {
+        // not supported
+        return 0d;
+    }
+
+    @Override
+    public double getMouseImagePosY()
+    {
+        // not supported
+        return 0d;
+    }
+
+    @Override
+    public double getMouseImagePosZ()
+    {
+        // not supported
+        return 0d;
+    }
+
+    @Override
+    public double getMouseImagePosT()
+    {
+        // not supported
+        return 0d;
+    }
+
+    @Override
+    public double getMouseImagePosC()
+    {
+        // not supported
+        return 0d;
+    }
+
+    @Override
+    protected void setPositionZInternal(int z)
+    {
+        // not supported, Z should stay at -1
+    }
+
+    /**
+     * Render the volume at specified T position and channel (-1 for all channels) with the current
+     * canvas settings.
+     */
+    public BufferedImage getRenderedImage(int t, int c)
+    {
+        final Sequence sequence = getSequence();
+        int w = panel3D.getWidth();
+        int h = panel3D.getHeight();
+
+        // off screen rendering
+        if ((w <= 0) || (h <= 0))
+        {
+            w = DEFAULT_RENDER_SIZE;
+            h = DEFAULT_RENDER_SIZE;
+        }
+
+        final VolumeRenderer r = new VolumeRenderer();
+
+        r.setCamera(renderer.getCamera());
+        r.setRenderMode(renderer.getRenderMode());
+        r.setInterpolate(renderer.isInterpolate());
+        r.setSampleDistance(renderer.getSampleDistance());
+        r.setBackground(renderer.getBackground());
+        if (sequence != null)
+            r.setVolume(sequence, t, c, getLut());
+
+        return r.render(null, w, h, 1);
+    }
+
+    @Override
+    public BufferedImage getRenderedImage(int t, int z, int c, boolean canvasView)
+    {
+        if (z != -1)
+            throw new UnsupportedOperationException(
+                    "Error: getRenderedImage(..) with z != -1 not supported on SoftwareCanvas3D.");
+        if (!canvasView)
+            System.out.println("Warning: getRenderedImage(..) with canvasView = false not supported on SoftwareCanvas3D.");
+
+        return getRenderedImage(t, c);
+    }
+
+    /**
+     * Force render refresh
+     */
+    @Override
+    public void refresh()
+    {
+        if (!initialized)
+            return;
+
+        // cancel current rendering and refresh 3D display in background processing
+        renderer.cancel();
+        processor.submit(displayRefresher);
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e)
+    {
+        setupRenderer();
+        refresh();
+    }
+
+    @Override
+    public void colorChanged(ColorChooserButton source)
+    {
+        if (source == backGroundColor)
+        {
+            panel3D.setBackground(backGroundColor.getColor());
+            setupRenderer();
+            refresh();
+        }
+    }
+
+    @Override
+    public void shutDown()
+    {
+        // stop rendering
+        renderer.cancel();
+        processor.removeAllWaitingTasks();
+
+        super.shutDown();
+
+        // restore opacity
+        final LUT lut = getLut();
+        final int numComp = Math.min(lutSave.getNumChannel(), lut.getNumChannel());
+
+        for (int c = 0; c < numComp; c++)
+            lut.getLutChannel(c).getColorMap().alpha.copyFrom(lutSave.getLutChannel(c).getColorMap().alpha);
+
+        renderedImage = null;
+        backImage = null;
+    }
+
+    @Override
+    public void changed(IcyCanvasEvent event)
+    {
+        super.changed(event);
+
+        // avoid useless process during canvas initialization
+        if (!initialized)
+            return;
+
+        if (event.getType() == IcyCanvasEventType.POSITION_CHANGED)
+        {
+            switch (event.getDim())
+            {
+                case C:
+                case T:
+                    // rebuild volume and refresh
+                    buildVolume();
+                    break;
+
+                default:
+                    break;
+            }
+        }
+    }
+
+    @Override
+    protected void lutChanged(int component)
+    {
+        super.lutChanged(component);
+
+        if (!initialized)
+            return;
+
+        // scalers may have changed so we need to rebuild volume
+        buildVolume();
+    }
+
+    @Override
+    protected void sequenceMetaChanged(String metadataName)
+    {
+        super.sequenceMetaChanged(metadataName);
+
+        if (!initialized)
+            return;
+
+        // pixel size may have changed
+        buildVolume();
+    }
+
+    @Override
+    protected void sequenceTypeChanged()
+    {
+        super.sequenceTypeChanged();
+
+        if (!initialized)
+            return;
+
+        buildVolume();
+    }
+
+    @Override
+    protected void sequenceDataChanged(IcyBufferedImage image, SequenceEventType type)
+    {
+        super.sequenceDataChanged(image, type);
+
+        if (!initialized)
+            return;
+
+        buildVolume();
+    }
+}
@@ -0,0 +1,1082 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.file;
+
+import icy.image.IcyBufferedImage;
+import icy.image.IcyBufferedImageUtil;
+import icy.image.ImageUtil;
+import icy.sequence.MetaDataUtil;
+import icy.system.IcyExceptionHandler;
+import icy.system.thread.Processor;
+import icy.type.DataType;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+import loci.formats.ome.OMEXMLMetadataImpl;
+
+/**
+ * Local catalog of image files metadata and thumbnails.<br>
+ * Entries are keyed by file path and are only valid while the file size and last modification
+ * date did not change. The catalog is persisted in the application directory and is filled on
+ * demand (see {@link #index(File, int)}) or by a background crawler (see
+ * {@link #crawl(File, boolean)}) using a limited number of threads so we don't saturate the I/O
+ * on network drives.<br>
+ * Only metadata are kept in memory: thumbnails are appended to a separate thumbnail file as they
+ * are computed and read back on demand (entries store their offset in this file).<br>
+ * It is used by the loader dialogs so revisiting a folder does not need to open files again.
+ * 
+ * @author Stephane
+ */
+public class DatasetCatalog
+{
+    /**
+     * Metadata of a single serie.
+     */
+    public static class SeriesInfo
+    {
+        public String name;
+        public int sizeX;
+        public int sizeY;
+        public int sizeZ;
+        public int sizeT;
+        public int sizeC;
+        public DataType dataType;
+        public double pixelSizeX;
+        public double pixelSizeY;
+        public double pixelSizeZ;
+        public String[] channelNames;
+
+        /**
+         * position and length of the thumbnail (PNG encoded) in the thumbnail file, only valid
+         * for the thumbnail file generation it was written in (guarded by thumbnailLock)
+         */
+        long thumbnailOffset;
+        int thumbnailLength;
+        long thumbnailGeneration;
+        /**
+         * decoded thumbnail (can be released on low memory)
+         */
+        SoftReference<BufferedImage> thumbnail;
+
+        public SeriesInfo()
+        {
+            super();
+
+            name = "";
+            dataType = DataType.UBYTE;
+            pixelSizeX = 1d;
+            pixelSizeY = 1d;
+            pixelSizeZ = 1d;
+            channelNames = new String[0];
+            thumbnailOffset = -1L;
+            thumbnailLength = 0;
+            thumbnailGeneration = 0L;
+            thumbnail = null;
+        }
+
+        /**
+         * Returns the thumbnail of this serie (<code>null</code> if not available).
+         */
+        public synchronized BufferedImage getThumbnail()
+        {
+            BufferedImage result = (thumbnail != null) ? thumbnail.get() : null;
+
+            if ((result == null) && hasThumbnail())
+            {
+                try
+                {
+                    final byte[] data = readThumbnail(this);
+
+                    if (data != null)
+                    {
+                        result = ImageIO.read(new ByteArrayInputStream(data));
+                        if (result != null)
+                            thumbnail = new SoftReference<BufferedImage>(result);
+                    }
+                }
+                catch (IOException e)
+                {
+                    // corrupted data
+                    result = null;
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Returns true if this serie has a thumbnail.
+         */
+        public boolean hasThumbnail()
+        {
+            synchronized (thumbnailLock)
+            {
+                return isThumbnailStored(this);
+            }
+        }
+
+        synchronized void setThumbnail(BufferedImage image)
+        {
+            final BufferedImage img = getScaledThumbnail(image);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            // keep the decoded image even if we can't store it
+            thumbnail = new SoftReference<BufferedImage>(img);
+
+            try
+            {
+                ImageIO.write(img, "png", out);
+                writeThumbnail(this, out.toByteArray());
+            }
+            catch (IOException e)
+            {
+                // ignore (not persisted)
+            }
+        }
+
+        /**
+         * Returns the dimension string as displayed in loader dialogs.
+         */
+        public String getSizeInfos()
+        {
+            return sizeX + " x " + sizeY + " - " + sizeZ + "Z x " + sizeT + "T";
+        }
+
+        /**
+         * Returns the channel string as displayed in loader dialogs.
+         */
+        public String getChannelInfos()
+        {
+            return sizeC + ((sizeC > 1) ? " channels (" : " channel (") + dataType + ")";
+        }
+    }
+
+    /**
+     * Catalog entry for a single file.
+     */
+    public static class Entry
+    {
+        public final String path;
+        public final long fileSize;
+        public final long lastModified;
+        /**
+         * Format name (<code>null</code> if file is not a supported image file)
+         */
+        public final String format;
+        public final SeriesInfo[] series;
+
+        public Entry(String path, long fileSize, long lastModified, String format, SeriesInfo[] series)
+        {
+            super();
+
+            this.path = path;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.format = format;
+            this.series = series;
+        }
+
+        /**
+         * Returns true if the file is a supported image file.
+         */
+        public boolean isImage()
+        {
+            return (format != null) && (series.length > 0);
+        }
+
+        /**
+         * Returns true if this entry is still valid for the specified file.
+         */
+        public boolean isValid(File file)
+        {
+            return (file.length() == fileSize) && (file.lastModified() == lastModified);
+        }
+    }
+
+    private static class CrawlItem
+    {
+        final File file;
+        final boolean recursive;
+
+        CrawlItem(File file, boolean recursive)
+        {
+            super();
+
+            this.file = file;
+            this.recursive = recursive;
+        }
+    }
+
+    private static class Crawler implements Runnable
+    {
+        public Crawler()
+        {
+            super();
+        }
+
+        @Override
+        public void run()
+        {
+            boolean last = false;
+
+            try
+            {
+                while (true)
+                {
+                    final CrawlItem item;
+
+                    synchronized (pending)
+                    {
+                        item = pending.poll();
+                        if (item == null)
+                        {
+                            numCrawler--;
+                            last = (numCrawler == 0);
+                            break;
+                        }
+                    }
+
+                    try
+                    {
+                        process(item);
+                    }
+                    catch (Throwable t)
+                    {
+                        // ignore errors here, the file will be indexed again next time
+                    }
+                }
+            }
+            finally
+            {
+                // no more pending work --> persist catalog
+                if (last)
+                    save();
+            }
+        }
+
+        private void process(CrawlItem item) throws IOException
+        {
+            final File file = item.file;
+
+            if (file.isDirectory())
+            {
+                final File[] files = file.listFiles();
+
+                if (files == null)
+                    return;
+
+                final List<CrawlItem> items = new ArrayList<CrawlItem>();
+
+                for (File f : files)
+                {
+                    if (f.isHidden())
+                        continue;
+
+                    if (f.isDirectory())
+                    {
+                        if (item.recursive)
+                            items.add(new CrawlItem(f, true));
+                    }
+                    else
+                        items.add(new CrawlItem(f, false));
+                }
+
+                synchronized (pending)
+                {
+                    pending.addAll(items);
+                }
+            }
+            else if (!Loader.canDiscardImageFile(file.getPath()) && (get(file) == null))
+                index(file, MAX_THUMBNAIL_SERIES);
+        }
+    }
+
+    /**
+     * Maximum number of entries kept in the catalog (least recently used are removed first)
+     */
+    public static final int MAX_ENTRIES = 100000;
+    /**
+     * Thumbnail maximum width and height
+     */
+    public static final int THUMBNAIL_SIZE = 128;
+    /**
+     * Maximum number of series thumbnail computed by the crawler for a single file
+     */
+    public static final int MAX_THUMBNAIL_SERIES = 64;
+    /**
+     * Maximum number of file read concurrently by the crawler
+     */
+    public static final int MAX_CRAWLER = 2;
+
+    private static final String CATALOG_FILENAME = "catalog.dat";
+    private static final String THUMBNAIL_FILENAME = "catalog.thb";
+    private static final int CATALOG_MAGIC = 0x49434331;
+    private static final int CATALOG_VERSION = 2;
+    private static final int THUMBNAIL_MAGIC = 0x49435448;
+    /**
+     * thumbnail file header size (magic + generation)
+     */
+    private static final int THUMBNAIL_HEADER_SIZE = 12;
+    /**
+     * the thumbnail file is compacted on save when it is larger than this size and at least half
+     * of it is unused (thumbnails of removed or outdated entries)
+     */
+    private static final long THUMBNAIL_COMPACT_SIZE = 4L * 1024L * 1024L;
+
+    /**
+     * path --> entry (access order)
+     */
+    private static final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(1024, 0.75f, true)
+    {
+        private static final long serialVersionUID = 6536541418392218062L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DatasetCatalog.Entry> eldest)
+        {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    static final LinkedList<CrawlItem> pending = new LinkedList<CrawlItem>();
+    static int numCrawler = 0;
+    private static final Processor processor = new Processor(MAX_CRAWLER, MAX_CRAWLER, Processor.MIN_PRIORITY);
+
+    private static boolean loaded = false;
+    private static boolean dirty = false;
+
+    /**
+     * Thumbnail file, opened on demand.<br>
+     * Its header contains the generation of the catalog file referencing it so a thumbnail file
+     * not matching the catalog (interrupted compaction, lost catalog...) is discarded.
+     */
+    private static final Object thumbnailLock = new Object();
+    private static RandomAccessFile thumbnailStore = null;
+    private static long generation = System.currentTimeMillis();
+
+    static
+    {
+        processor.setDefaultThreadName("Dataset catalog crawler");
+    }
+
+    /**
+     * Returns the file used to persist the catalog.
+     */
+    public static File getCatalogFile()
+    {
+        return new File(FileUtil.getApplicationDirectory() + FileUtil.separator + CATALOG_FILENAME);
+    }
+
+    /**
+     * Returns the file used to store the thumbnails.
+     */
+    static File getThumbnailFile()
+    {
+        return new File(FileUtil.getApplicationDirectory() + FileUtil.separator + THUMBNAIL_FILENAME);
+    }
+
+    /**
+     * Open the thumbnail file if needed (thumbnailLock should be held).<br>
+     * Returns <code>false</code> if the existing file has been reset because it does not match the
+     * current catalog generation.
+     */
+    private static boolean openThumbnailStore() throws IOException
+    {
+        if (thumbnailStore != null)
+            return true;
+
+        final File file = getThumbnailFile();
+
+        FileUtil.ensureParentDirExist(file);
+
+        final RandomAccessFile store = new RandomAccessFile(file, "rw");
+        boolean valid = false;
+
+        try
+        {
+            if (store.length() >= THUMBNAIL_HEADER_SIZE)
+                valid = (store.readInt() == THUMBNAIL_MAGIC) && (store.readLong() == generation);
+
+            if (!valid)
+            {
+                store.setLength(0L);
+                store.seek(0L);
+                store.writeInt(THUMBNAIL_MAGIC);
+                store.writeLong(generation);
+            }
+        }
+        catch (IOException e)
+        {
+            store.close();
+            throw e;
+        }
+
+        thumbnailStore = store;
+
+        return valid;
+    }
+
+    private static void closeThumbnailStore()
+    {
+        if (thumbnailStore != null)
+        {
+            try
+            {
+                thumbnailStore.close();
+            }
+            catch (IOException e)
+            {
+                // ignore
+            }
+
+            thumbnailStore = null;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the serie thumbnail is in the current thumbnail file
+     * (thumbnailLock should be held).
+     */
+    static boolean isThumbnailStored(SeriesInfo info)
+    {
+        return (info.thumbnailOffset >= 0L) && (info.thumbnailGeneration == generation);
+    }
+
+    /**
+     * Returns the PNG data of the specified serie thumbnail (<code>null</code> if none).
+     */
+    static byte[] readThumbnail(SeriesInfo info) throws IOException
+    {
+        synchronized (thumbnailLock)
+        {
+            if (!isThumbnailStored(info))
+                return null;
+
+            openThumbnailStore();
+
+            final byte[] result = new byte[info.thumbnailLength];
+
+            thumbnailStore.seek(info.thumbnailOffset);
+            thumbnailStore.readFully(result);
+
+            return result;
+        }
+    }
+
+    /**
+     * Append the thumbnail PNG data at the end of the thumbnail file and store its position in
+     * the serie.
+     */
+    static void writeThumbnail(SeriesInfo info, byte[] data) throws IOException
+    {
+        synchronized (thumbnailLock)
+        {
+            openThumbnailStore();
+
+            final long offset = thumbnailStore.length();
+
+            thumbnailStore.seek(offset);
+            thumbnailStore.write(data);
+
+            info.thumbnailLength = data.length;
+            info.thumbnailOffset = offset;
+            info.thumbnailGeneration = generation;
+        }
+    }
+
+    /**
+     * Rewrite the thumbnail file with only the thumbnails of the specified entries if it contains
+     * too much unused data (thumbnailLock should be held).<br>
+     * The catalog generation is changed (thumbnails of series not part of the specified entries
+     * are lost), the catalog file should then be saved.
+     */
+    private static void compactThumbnails(List<Entry> toSave) throws IOException
+    {
+        final File file = getThumbnailFile();
+        long used = 0L;
+
+        for (Entry entry : toSave)
+            for (SeriesInfo info : entry.series)
+                if (isThumbnailStored(info))
+                    used += info.thumbnailLength;
+
+        // not worth it
+        if (!file.exists() || (file.length() <= Math.max(THUMBNAIL_COMPACT_SIZE, used * 2L)))
+            return;
+
+        openThumbnailStore();
+
+        final long newGeneration = generation + 1L;
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        final List<SeriesInfo> infos = new ArrayList<SeriesInfo>();
+        final List<Long> offsets = new ArrayList<Long>();
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        long offset = THUMBNAIL_HEADER_SIZE;
+
+        try
+        {
+            out.writeInt(THUMBNAIL_MAGIC);
+            out.writeLong(newGeneration);
+
+            for (Entry entry : toSave)
+            {
+                for (SeriesInfo info : entry.series)
+                {
+                    if (isThumbnailStored(info))
+                    {
+                        final byte[] data = new byte[info.thumbnailLength];
+
+                        thumbnailStore.seek(info.thumbnailOffset);
+                        thumbnailStore.readFully(data);
+                        out.write(data);
+
+                        infos.add(info);
+                        offsets.add(Long.valueOf(offset));
+                        offset += data.length;
+                    }
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        closeThumbnailStore();
+
+        if (!FileUtil.rename(tmpFile, file, true))
+            throw new IOException("Cannot replace " + file.getPath());
+
+        generation = newGeneration;
+        for (int i = 0; i < infos.size(); i++)
+        {
+            final SeriesInfo info = infos.get(i);
+
+            info.thumbnailOffset = offsets.get(i).longValue();
+            info.thumbnailGeneration = newGeneration;
+        }
+    }
+
+    /**
+     * Returns the catalog entry for the specified file.<br>
+     * Returns <code>null</code> if the file is not yet indexed or if the entry is outdated.
+     */
+    public static Entry get(File file)
+    {
+        final Entry result;
+
+        load();
+
+        synchronized (entries)
+        {
+            result = entries.get(file.getAbsolutePath());
+        }
+
+        if ((result != null) && result.isValid(file))
+            return result;
+
+        return null;
+    }
+
+    /**
+     * @see #get(File)
+     */
+    public static Entry get(String path)
+    {
+        return get(new File(path));
+    }
+
+    private static void put(Entry entry)
+    {
+        synchronized (entries)
+        {
+            entries.put(entry.path, entry);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Set the thumbnail of the specified serie for the given file entry (if entry is valid).<br>
+     * Used to complete entries when thumbnail are computed elsewhere.
+     */
+    public static void setThumbnail(String path, int serie, BufferedImage image)
+    {
+        final Entry entry = get(path);
+
+        if ((entry != null) && (serie < entry.series.length) && !entry.series[serie].hasThumbnail())
+        {
+            entry.series[serie].setThumbnail(image);
+
+            synchronized (entries)
+            {
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the thumbnail version (fit in {@link #THUMBNAIL_SIZE}) of the specified image.
+     */
+    static BufferedImage getScaledThumbnail(BufferedImage image)
+    {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+
+        if ((w <= THUMBNAIL_SIZE) && (h <= THUMBNAIL_SIZE))
+            return image;
+
+        final double ratio = Math.min((double) THUMBNAIL_SIZE / w, (double) THUMBNAIL_SIZE / h);
+
+        return ImageUtil.scaleQuality(image, Math.max(1, (int) (w * ratio)), Math.max(1, (int) (h * ratio)));
+    }
+
+    /**
+     * Read metadata (and thumbnails) of the specified file and store them in the catalog.<br>
+     * Unsupported files are stored as well (so we don't need to test them again).
+     * 
+     * @param file
+     *        file to index
+     * @param maxThumbnail
+     *        maximum number of serie thumbnail to compute (others are left empty)
+     * @return the new catalog entry
+     * @throws IOException
+     */
+    public static Entry index(File file, int maxThumbnail) throws IOException
+    {
+        final String path = file.getAbsolutePath();
+        final long fileSize = file.length();
+        final long lastModified = file.lastModified();
+        Entry result;
+
+        // thumbnails are written to the thumbnail file of the loaded catalog
+        load();
+
+        if (!Loader.isImageFile(path))
+            result = new Entry(path, fileSize, lastModified, null, new SeriesInfo[0]);
+        else
+        {
+            try
+            {
+                final IFormatReader reader = Loader.getReader(path);
+
+                // disable file grouping
+                reader.setGroupFiles(false);
+                // prepare meta data store structure
+                reader.setMetadataStore(new OMEXMLMetadataImpl());
+                reader.setId(path);
+
+                try
+                {
+                    final OMEXMLMetadataImpl metadata = (OMEXMLMetadataImpl) reader.getMetadataStore();
+                    final SeriesInfo[] series = new SeriesInfo[reader.getSeriesCount()];
+
+                    for (int i = 0; i < series.length; i++)
+                    {
+                        final SeriesInfo info = new SeriesInfo();
+
+                        reader.setSeries(i);
+
+                        info.name = MetaDataUtil.getName(metadata, i);
+                        info.sizeX = reader.getSizeX();
+                        info.sizeY = reader.getSizeY();
+                        info.sizeZ = reader.getSizeZ();
+                        info.sizeT = reader.getSizeT();
+                        info.sizeC = reader.getSizeC();
+                        info.dataType = DataType.getDataTypeFromFormatToolsType(reader.getPixelType());
+                        info.pixelSizeX = MetaDataUtil.getPixelSizeX(metadata, i, 1d);
+                        info.pixelSizeY = MetaDataUtil.getPixelSizeY(metadata, i, 1d);
+                        info.pixelSizeZ = MetaDataUtil.getPixelSizeZ(metadata, i, 1d);
+
+                        final int numChannel = MetaDataUtil.getNumChannel(metadata, i);
+                        info.channelNames = new String[numChannel];
+                        for (int c = 0; c < numChannel; c++)
+                            info.channelNames[c] = MetaDataUtil.getChannelName(metadata, i, c);
+
+                        if (i < maxThumbnail)
+                        {
+                            try
+                            {
+                                final IcyBufferedImage img = IcyBufferedImage.createThumbnailFrom(reader,
+                                        info.sizeZ / 2, info.sizeT / 2);
+                                info.setThumbnail(IcyBufferedImageUtil.getARGBImage(img));
+                            }
+                            catch (Exception e)
+                            {
+                                // no thumbnail for this serie
+                            }
+                        }
+
+                        series[i] = info;
+                    }
+
+                    result = new Entry(path, fileSize, lastModified, reader.getFormat(), series);
+                }
+                finally
+                {
+                    reader.close();
+                }
+            }
+            catch (FormatException e)
+            {
+                // not readable
+                result = new Entry(path, fileSize, lastModified, null, new SeriesInfo[0]);
+            }
+        }
+
+        put(result);
+
+        return result;
+    }
+
+    /**
+     * Index files of the specified directory in background.<br>
+     * Pending files from a previous crawl are discarded so the last browsed directory is
+     * processed first.
+     * 
+     * @param directory
+     *        directory to index
+     * @param recursive
+     *        also index sub directories
+     */
+    public static void crawl(File directory, boolean recursive)
+    {
+        if ((directory == null) || !directory.isDirectory())
+            return;
+
+        synchronized (pending)
+        {
+            pending.clear();
+            pending.add(new CrawlItem(directory, recursive));
+
+            // start crawlers (bounded I/O concurrency)
+            while (numCrawler < MAX_CRAWLER)
+            {
+                processor.submit(new Crawler());
+                numCrawler++;
+            }
+        }
+    }
+
+    /**
+     * Cancel pending background indexing.
+     */
+    public static void cancelCrawl()
+    {
+        synchronized (pending)
+        {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Returns true if the background crawler is running.
+     */
+    public static boolean isCrawling()
+    {
+        synchronized (pending)
+        {
+            return numCrawler > 0;
+        }
+    }
+
+    /**
+     * Clear the catalog.
+     */
+    public static void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+            dirty = true;
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        if (in.readBoolean())
+            return in.readUTF();
+
+        return null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    /**
+     * Returns the data type from its name (<code>null</code> if unknown).
+     */
+    private static DataType getDataType(String name)
+    {
+        try
+        {
+            return DataType.valueOf(name);
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Load the catalog from disk (only done once).
+     */
+    public static void load()
+    {
+        synchronized (entries)
+        {
+            if (loaded)
+                return;
+
+            loaded = true;
+
+            final File file = getCatalogFile();
+
+            if (!file.exists())
+                return;
+
+            try
+            {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+                try
+                {
+                    if ((in.readInt() != CATALOG_MAGIC) || (in.readInt() != CATALOG_VERSION))
+                        return;
+
+                    final long catalogGeneration = in.readLong();
+                    boolean thumbnailValid;
+
+                    synchronized (thumbnailLock)
+                    {
+                        closeThumbnailStore();
+                        generation = catalogGeneration;
+
+                        try
+                        {
+                            // thumbnail file not matching the catalog is reset
+                            thumbnailValid = openThumbnailStore();
+                        }
+                        catch (IOException e)
+                        {
+                            thumbnailValid = false;
+                        }
+                    }
+
+                    final int numEntry = in.readInt();
+
+                    for (int e = 0; e < numEntry; e++)
+                    {
+                        final String path = in.readUTF();
+                        final long fileSize = in.readLong();
+                        final long lastModified = in.readLong();
+                        final String format = readString(in);
+                        final SeriesInfo[] series = new SeriesInfo[in.readInt()];
+                        boolean valid = true;
+
+                        for (int i = 0; i < series.length; i++)
+                        {
+                            final SeriesInfo info = new SeriesInfo();
+
+                            info.name = readString(in);
+                            info.sizeX = in.readInt();
+                            info.sizeY = in.readInt();
+                            info.sizeZ = in.readInt();
+                            info.sizeT = in.readInt();
+                            info.sizeC = in.readInt();
+                            info.dataType = getDataType(readString(in));
+                            // unknown data type --> entry discarded
+                            valid &= (info.dataType != null);
+                            info.pixelSizeX = in.readDouble();
+                            info.pixelSizeY = in.readDouble();
+                            info.pixelSizeZ = in.readDouble();
+                            info.channelNames = new String[in.readInt()];
+                            for (int c = 0; c < info.channelNames.length; c++)
+                                info.channelNames[c] = readString(in);
+
+                            final long thumbOffset = in.readLong();
+                            final int thumbLen = in.readInt();
+                            if (thumbnailValid && (thumbOffset >= 0L))
+                            {
+                                info.thumbnailOffset = thumbOffset;
+                                info.thumbnailLength = thumbLen;
+                                info.thumbnailGeneration = catalogGeneration;
+                            }
+
+                            series[i] = info;
+                        }
+
+                        if (valid)
+                            entries.put(path, new Entry(path, fileSize, lastModified, format, series));
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            catch (Exception e)
+            {
+                // corrupted catalog --> start from an empty one
+                System.err.println("Cannot load dataset catalog, catalog cleared.");
+                entries.clear();
+
+                // new generation so the thumbnail file is reset
+                synchronized (thumbnailLock)
+                {
+                    closeThumbnailStore();
+                    generation = System.currentTimeMillis();
+                }
+            }
+        }
+    }
+
+    /**
+     * Save the catalog on disk (only if modified).<br>
+     * Only metadata are written here, thumbnails are already in the thumbnail file (which is
+     * compacted when it contains too much unused data).
+     */
+    public static void save()
+    {
+        final List<Entry> toSave;
+        boolean saved = false;
+
+        synchronized (entries)
+        {
+            if (!dirty)
+                return;
+
+            toSave = new ArrayList<Entry>(entries.values());
+            dirty = false;
+        }
+
+        final File file = getCatalogFile();
+        final File tmpFile = new File(file.getPath() + ".tmp");
+
+        // thumbnail positions should not change while we save them
+        synchronized (thumbnailLock)
+        {
+            try
+            {
+                compactThumbnails(toSave);
+                writeCatalog(tmpFile, toSave);
+
+                if (!FileUtil.rename(tmpFile, file, true))
+                    throw new IOException("Cannot replace " + file.getPath());
+
+                saved = true;
+            }
+            catch (IOException e)
+            {
+                System.err.println("Cannot save dataset catalog:");
+                IcyExceptionHandler.showErrorMessage(e, false);
+            }
+        }
+
+        // save again next time
+        if (!saved)
+        {
+            synchronized (entries)
+            {
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Write catalog entries in the specified file (thumbnailLock should be held).
+     */
+    private static void writeCatalog(File file, List<Entry> toSave) throws IOException
+    {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+        try
+        {
+            out.writeInt(CATALOG_MAGIC);
+            out.writeInt(CATALOG_VERSION);
+            out.writeLong(generation);
+            out.writeInt(toSave.size());
+
+            for (Entry entry : toSave)
+            {
+                out.writeUTF(entry.path);
+                out.writeLong(entry.fileSize);
+                out.writeLong(entry.lastModified);
+                writeString(out, entry.format);
+                out.writeInt(entry.series.length);
+
+                for (SeriesInfo info : entry.series)
+                {
+                    writeString(out, info.name);
+                    out.writeInt(info.sizeX);
+                    out.writeInt(info.sizeY);
+                    out.writeInt(info.sizeZ);
+                    out.writeInt(info.sizeT);
+                    out.writeInt(info.sizeC);
+                    writeString(out, info.dataType.name());
+                    out.writeDouble(info.pixelSizeX);
+                    out.writeDouble(info.pixelSizeY);
+                    out.writeDouble(info.pixelSizeZ);
+                    out.writeInt(info.channelNames.length);
+                    for (String name : info.channelNames)
+                        writeString(out, name);
+
+                    // thumbnail position in the thumbnail file
+                    if (isThumbnailStored(info))
+                    {
+                        out.writeLong(info.thumbnailOffset);
+                        out.writeInt(info.thumbnailLength);
+                    }
+                    else
+                    {
+                        out.writeLong(-1L);
+                        out.writeInt(0);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
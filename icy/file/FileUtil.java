@@ -21,19 +21,28 @@ package icy.file;
 import icy.network.NetworkUtil;
 import icy.system.IcyExceptionHandler;
 import icy.system.SystemUtil;
+import icy.system.thread.Parallel;
+import icy.system.thread.Parallel.ForBody;
 import icy.system.thread.ThreadUtil;
 import icy.util.StringUtil;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 /**
  * @author stephane
@@ -43,6 +52,22 @@ public class FileUtil
     public static final char separatorChar = '/';
     public static final String separator = "/";
 
+    /**
+     * Digest algorithm used for file checksum
+     */
+    public static final String CHECKSUM_ALGORITHM = "SHA-256";
+
+    /**
+     * directory walker entry types
+     */
+    private static final byte ENTRY_IGNORED = 0;
+    private static final byte ENTRY_FILE = 1;
+    private static final byte ENTRY_DIRECTORY = 2;
+    /**
+     * minimum number of entries to check them in parallel
+     */
+    private static final int PARALLEL_WALK_MIN_ENTRY = 256;
+
     public static String getGenericPath(String path)
     {
         if (path != null)
@@ -791,28 +816,159 @@ public class FileUtil
     }
 
     /**
-     * Get file list from specified directory applying the specified parameters
+     * Get file list from specified directory applying the specified parameters.<br>
+     * The directory tree is walked level by level: directories of a level are listed in parallel
+     * then their entries are checked (hidden, directory) in parallel, which is much faster on
+     * network file systems. Result order is the same as a depth first walk.
      */
-    private static void getFiles(File f, FileFilter filter, boolean recursive, boolean wantFile, boolean wantDirectory,
-            boolean wantHidden, List<File> list)
+    private static void getFiles(File f, final FileFilter filter, boolean recursive, boolean wantFile,
+            boolean wantDirectory, final boolean wantHidden, List<File> list)
     {
-        final File[] files = f.listFiles(filter);
+        // directory --> entries
+        final Map<File, File[]> contents = new HashMap<File, File[]>();
+        // directory --> entries type
+        final Map<File, byte[]> types = new HashMap<File, byte[]>();
+        List<File> level = new ArrayList<File>();
 
-        if (files != null)
+        level.add(f);
+
+        while (!level.isEmpty())
         {
-            for (File file : files)
+            final File[] dirs = level.toArray(new File[level.size()]);
+            final File[][] listings = new File[dirs.length][];
+
+            final ForBody listBody = new ForBody()
+            {
+                @Override
+                public void run(int from, int to)
+                {
+                    for (int i = from; i < to; i++)
+                        listings[i] = dirs[i].listFiles(filter);
+                }
+            };
+
+            // list directories
+            if (dirs.length > 1)
+                forRangeComplete(dirs.length, 1, listBody);
+            else
+                listBody.run(0, dirs.length);
+
+            int numEntry = 0;
+            for (File[] listing : listings)
+                if (listing != null)
+                    numEntry += listing.length;
+
+            final File[] entries = new File[numEntry];
+            final byte[] entryTypes = new byte[numEntry];
+
+            numEntry = 0;
+            for (File[] listing : listings)
+            {
+                if (listing != null)
+                {
+                    System.arraycopy(listing, 0, entries, numEntry, listing.length);
+                    numEntry += listing.length;
+                }
+            }
+
+            final ForBody typeBody = new ForBody()
+            {
+                @Override
+                public void run(int from, int to)
+                {
+                    for (int i = from; i < to; i++)
+                    {
+                        final File file = entries[i];
+
+                        if (file.isHidden() && !wantHidden)
+                            entryTypes[i] = ENTRY_IGNORED;
+                        else if (file.isDirectory())
+                            entryTypes[i] = ENTRY_DIRECTORY;
+                        else
+                            entryTypes[i] = ENTRY_FILE;
+                    }
+                }
+            };
+
+            // get entries type (not worth for small directories)
+            if (entries.length >= PARALLEL_WALK_MIN_ENTRY)
+                forRangeComplete(entries.length, 0, typeBody);
+            else
+                typeBody.run(0, entries.length);
+
+            // store result and prepare next level
+            level = new ArrayList<File>();
+            numEntry = 0;
+            for (int i = 0; i < dirs.length; i++)
             {
-                if ((!file.isHidden()) || wantHidden)
+                final File[] listing = listings[i];
+
+                if (listing != null)
                 {
-                    if (file.isDirectory())
+                    final byte[] listingTypes = new byte[listing.length];
+
+                    System.arraycopy(entryTypes, numEntry, listingTypes, 0, listing.length);
+                    contents.put(dirs[i], listing);
+                    types.put(dirs[i], listingTypes);
+
+                    if (recursive)
                     {
+                        for (int j = 0; j < listing.length; j++)
+                            if (listingTypes[j] == ENTRY_DIRECTORY)
+                                level.add(listing[j]);
+                    }
+
+                    numEntry += listing.length;
+                }
+            }
+        }
+
+        addFiles(f, contents, types, recursive, wantFile, wantDirectory, list);
+    }
+
+    /**
+     * Process the <code>[0, length[</code> range in parallel.<br>
+     * If the calling thread is interrupted the whole range is processed again on the calling
+     * thread so we never return an incomplete listing (the interrupt state is kept).
+     */
+    private static void forRangeComplete(int length, int grain, ForBody body)
+    {
+        try
+        {
+            Parallel.forRange(0, length, grain, body);
+        }
+        catch (CancellationException e)
+        {
+            body.run(0, length);
+        }
+    }
+
+    private static void addFiles(File f, Map<File, File[]> contents, Map<File, byte[]> types, boolean recursive,
+            boolean wantFile, boolean wantDirectory, List<File> list)
+    {
+        final File[] files = contents.get(f);
+
+        if (files != null)
+        {
+            final byte[] fileTypes = types.get(f);
+
+            for (int i = 0; i < files.length; i++)
+            {
+                final File file = files[i];
+
+                switch (fileTypes[i])
+                {
+                    case ENTRY_DIRECTORY:
                         if (wantDirectory)
                             list.add(file);
                         if (recursive)
-                            getFiles(file, filter, recursive, wantFile, wantDirectory, wantHidden, list);
-                    }
-                    else if (wantFile)
-                        list.add(file);
+                            addFiles(file, contents, types, recursive, wantFile, wantDirectory, list);
+                        break;
+
+                    case ENTRY_FILE:
+                        if (wantFile)
+                            list.add(file);
+                        break;
                 }
             }
         }
@@ -1038,6 +1194,76 @@ public class FileUtil
         return new File(getGenericPath(path)).exists();
     }
 
+    /**
+     * Returns the checksum (SHA-256 digest as lower case hexadecimal string) of the specified file
+     * content.<br>
+     * Returns <code>null</code> if the file doesn't exist or cannot be read.
+     */
+    public static String getChecksum(File file)
+    {
+        if ((file == null) || !file.isFile())
+            return null;
+
+        try
+        {
+            final MessageDigest md = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+            final InputStream in = new FileInputStream(file);
+            final byte[] buffer = new byte[64 * 1024];
+
+            try
+            {
+                int count;
+
+                while ((count = in.read(buffer)) >= 0)
+                    md.update(buffer, 0, count);
+            }
+            finally
+            {
+                in.close();
+            }
+
+            final byte[] digest = md.digest();
+            final StringBuilder result = new StringBuilder(digest.length * 2);
+
+            for (byte b : digest)
+                result.append(StringUtil.toHexaString(b & 0xFF, 2));
+
+            return result.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            IcyExceptionHandler.showErrorMessage(e, false);
+        }
+        catch (IOException e)
+        {
+            // can't read file
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the checksum (SHA-256 digest as lower case hexadecimal string) of the specified file
+     * content.<br>
+     * Returns <code>null</code> if the file doesn't exist or cannot be read.
+     */
+    public static String getChecksum(String path)
+    {
+        return getChecksum(new File(getGenericPath(path)));
+    }
+
+    /**
+     * Returns <code>true</code> if the specified file content matches the specified checksum
+     * (see {@link #getChecksum(File)}).
+     */
+    public static boolean checkChecksum(File file, String checksum)
+    {
+        if (StringUtil.isEmpty(checksum))
+            return false;
+
+        return checksum.trim().equalsIgnoreCase(getChecksum(file));
+    }
+
     public static boolean isLink(String path) throws IOException
     {
         return isLink(new File(getGenericPath(path)));
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.file;
+
+import icy.image.BandPosition;
+import icy.image.ImagePosition;
+import icy.util.StringUtil;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Filename pattern used to retrieve image position from the numbers contained in filename.<br>
+ * A pattern is defined by the literal (non digit) parts of the filename: all files sharing the
+ * same literal parts (as <i>img_t001_z01.tif</i> and <i>img_t002_z05.tif</i>) share the same
+ * pattern. The pattern resolves once which numbers are used as position (and in which order) so
+ * for others files we only need to extract numbers.<br>
+ * Pattern is serializable so it can be stored and reused for another acquisition.
+ * 
+ * @author Stephane
+ */
+public class FilenamePattern implements Serializable
+{
+    private static final long serialVersionUID = -4512963227125368914L;
+
+    /**
+     * Tokenized filename (literal and number parts).
+     */
+    public static class Tokens
+    {
+        /**
+         * literal parts, there is one more literal than number (first and last can be empty)
+         */
+        final String[] literals;
+        /**
+         * number parts (preceded by the last literal character when there is one)
+         */
+        final String[] numbers;
+        /**
+         * pattern key
+         */
+        final String key;
+
+        Tokens(String[] literals, String[] numbers)
+        {
+            super();
+
+            this.literals = literals;
+            this.numbers = numbers;
+
+            final StringBuilder sb = new StringBuilder();
+
+            for (int i = 0; i < numbers.length; i++)
+            {
+                sb.append(literals[i]);
+                // number field (long numbers are discarded so they are part of the key)
+                sb.append('\u0000');
+                sb.append(isDiscarded(numbers[i]) ? 'L' : 'S');
+            }
+            sb.append(literals[numbers.length]);
+
+            key = sb.toString();
+        }
+
+        /**
+         * Returns the key of the pattern matching these tokens.
+         */
+        public String getKey()
+        {
+            return key;
+        }
+    }
+
+    /**
+     * number field with its index (numbers are compared by instance)
+     */
+    private static class NumberField
+    {
+        final String value;
+        final int index;
+
+        NumberField(String value, int index)
+        {
+            super();
+
+            this.value = value;
+            this.index = index;
+        }
+
+        char getIdent()
+        {
+            return Character.toUpperCase(value.charAt(0));
+        }
+    }
+
+    /**
+     * pattern key
+     */
+    private final String key;
+    /**
+     * number of number field
+     */
+    private final int numField;
+    /**
+     * index of number fields used for position (in order)
+     */
+    private final int[] fields;
+
+    /**
+     * Build the pattern for the specified filename (without extension).
+     */
+    public FilenamePattern(String name)
+    {
+        this(tokenize(name));
+    }
+
+    /**
+     * Build the pattern for the specified tokens.
+     */
+    public FilenamePattern(Tokens tokens)
+    {
+        super();
+
+        key = tokens.key;
+        numField = tokens.numbers.length;
+
+        final List<NumberField> numbers = new ArrayList<NumberField>();
+
+        for (int i = 0; i < tokens.numbers.length; i++)
+        {
+            final String number = tokens.numbers[i];
+
+            // add number only if < X10000 (else it can be a date)
+            if (!isDiscarded(number))
+                numbers.add(new NumberField(number, i));
+        }
+
+        // clean up numbers
+        if (numbers.size() > 3)
+        {
+            // find T number
+            int index = getLastIndexOf(ImagePosition.T_ID, numbers);
+            // remove duplicate
+            if (index != -1)
+                removePreviousIdent(ImagePosition.T_ID, numbers, index - 1);
+            // find Z number
+            index = getLastIndexOf(ImagePosition.Z_ID, numbers);
+            // remove duplicate
+            if (index != -1)
+                removePreviousIdent(ImagePosition.Z_ID, numbers, index - 1);
+            // find C number
+            index = getLastIndexOf(BandPosition.C_ID, numbers);
+            // remove duplicate
+            if (index != -1)
+            {
+                // remove duplicate C number
+                removePreviousIdent(BandPosition.C_ID, numbers, index - 1);
+                // remove all C alternate number
+                removePreviousIdent(BandPosition.C_ID, numbers, numbers.size() - 1);
+            }
+            else
+            {
+                // find C alternate number
+                index = getLastIndexOf(BandPosition.C_ID_ALTERNATE, numbers);
+                // remove duplicate
+                if (index != -1)
+                    removePreviousIdent(BandPosition.C_ID_ALTERNATE, numbers, index - 1);
+            }
+        }
+
+        // keep only the last 3 preferred number
+        boolean b = true;
+        while ((numbers.size() > 3) && b)
+            b = removeFirstInvalidIdent(numbers);
+
+        fields = new int[numbers.size()];
+        for (int i = 0; i < fields.length; i++)
+            fields[i] = numbers.get(i).index;
+    }
+
+    static boolean isDiscarded(String number)
+    {
+        return number.length() >= 6;
+    }
+
+    private static int getLastIndexOf(char id, List<NumberField> numbers)
+    {
+        int index = numbers.size() - 1;
+        while (index >= 0)
+        {
+            if (numbers.get(index).getIdent() == id)
+                return index;
+
+            index--;
+        }
+
+        return index;
+    }
+
+    private static void removePreviousIdent(char id, List<NumberField> numbers, int from)
+    {
+        int index = from;
+        while (index >= 0)
+        {
+            if (numbers.get(index).getIdent() == id)
+                numbers.remove(index);
+
+            index--;
+        }
+    }
+
+    private static boolean removeFirstInvalidIdent(List<NumberField> numbers)
+    {
+        final int len = numbers.size();
+        int index = 0;
+
+        while (index < len)
+        {
+            if (!BandPosition.isValidIdentStatic(numbers.get(index).getIdent()))
+            {
+                numbers.remove(index);
+                return true;
+            }
+
+            index++;
+        }
+
+        return false;
+    }
+
+    /**
+     * Split the specified filename (without extension) in literal and number parts.
+     */
+    public static Tokens tokenize(String name)
+    {
+        final List<String> literals = new ArrayList<String>();
+        final List<String> numbers = new ArrayList<String>();
+        final int len = name.length();
+
+        int index = 0;
+        while (index < len)
+        {
+            // get starting digit char index
+            final int startInd = StringUtil.getNextDigitCharIndex(name, index);
+
+            // we find a digit char ?
+            if (startInd >= 0)
+            {
+                // get ending digit char index
+                int endInd = StringUtil.getNextNonDigitCharIndex(name, startInd);
+                if (endInd < 0)
+                    endInd = len;
+
+                literals.add(name.substring(index, startInd));
+                // we want to get number + preceding letter
+                numbers.add(name.substring(Math.max(0, startInd - 1), endInd));
+
+                // adjust index
+                index = endInd;
+            }
+            else
+            {
+                literals.add(name.substring(index));
+                index = len;
+            }
+        }
+
+        // name ends with a number
+        if (literals.size() == numbers.size())
+            literals.add("");
+
+        return new Tokens(literals.toArray(new String[literals.size()]), numbers.toArray(new String[numbers.size()]));
+    }
+
+    /**
+     * Returns the key of this pattern (files with the same key share the same pattern).
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * Returns true if the specified tokens match this pattern.
+     */
+    public boolean matches(Tokens tokens)
+    {
+        return key.equals(tokens.key);
+    }
+
+    /**
+     * Returns true if the specified filename (without extension) matches this pattern.
+     */
+    public boolean matches(String name)
+    {
+        return matches(tokenize(name));
+    }
+
+    /**
+     * Returns the number of position fields (3 maximum).
+     */
+    public int getNumPositionField()
+    {
+        return fields.length;
+    }
+
+    /**
+     * Returns the numbers (preceded by their identifier character if any) used as position for
+     * the specified tokens (in position resolution order).<br>
+     * Returns <code>null</code> if tokens don't match this pattern.
+     */
+    public String[] getPositionNumbers(Tokens tokens)
+    {
+        if ((tokens.numbers.length != numField) || !matches(tokens))
+            return null;
+
+        final String[] result = new String[fields.length];
+
+        for (int i = 0; i < fields.length; i++)
+            result[i] = tokens.numbers[fields[i]];
+
+        return result;
+    }
+
+    /**
+     * Returns the numbers used as position for the specified filename (without extension).
+     * 
+     * @see #getPositionNumbers(Tokens)
+     */
+    public String[] getPositionNumbers(String name)
+    {
+        return getPositionNumbers(tokenize(name));
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj instanceof FilenamePattern)
+        {
+            final FilenamePattern pattern = (FilenamePattern) obj;
+            return key.equals(pattern.key) && Arrays.equals(fields, pattern.fields);
+        }
+
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return key.replace('\u0000', '#');
+    }
+}
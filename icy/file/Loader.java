@@ -26,25 +26,35 @@ import icy.gui.menu.ApplicationMenu;
 import icy.image.BandPosition;
 import icy.image.IcyBufferedImage;
 import icy.image.ImagePosition;
+import icy.image.TiledImage;
 import icy.main.Icy;
 import icy.preferences.GeneralPreferences;
 import icy.sequence.MetaDataUtil;
 import icy.sequence.Sequence;
 import icy.system.IcyExceptionHandler;
+import icy.system.thread.Parallel;
+import icy.system.thread.Parallel.ForBody;
 import icy.system.thread.ThreadUtil;
+import icy.type.DataType;
 import icy.type.collection.CollectionUtil;
+import icy.type.collection.array.Array1DUtil;
+import icy.util.OMEUtil;
 import icy.util.StringUtil;
 
+import java.awt.Rectangle;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 import loci.formats.FormatException;
 import loci.formats.IFormatReader;
-import loci.formats.ImageReader;
 import loci.formats.MissingLibraryException;
 import loci.formats.UnknownFormatException;
 import loci.formats.meta.IMetadata;
@@ -57,6 +67,26 @@ import loci.formats.ome.OMEXMLMetadataImpl;
  */
 public class Loader
 {
+    /**
+     * Maximum number of pixel of a single image plane (java array size limit)
+     */
+    public static final long MAX_PLANE_SIZE = Integer.MAX_VALUE - 16;
+
+    /**
+     * filename pattern cache (pattern key --> pattern)
+     */
+    private static final Map<String, FilenamePattern> filenamePatterns = new LinkedHashMap<String, FilenamePattern>(
+            16, 0.75f, true)
+    {
+        private static final long serialVersionUID = -3297470358432869424L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FilenamePattern> eldest)
+        {
+            return size() > 1024;
+        }
+    };
+
     private static class FilePosition extends BandPosition
     {
         public final File file;
@@ -110,7 +140,6 @@ public class Loader
     private static class SequenceLoader
     {
         final private List<Sequence> sequences;
-        final private ImageReader mainReader;
         IFormatReader lastReader;
         int[] selectedSeries;
         private FileFrame frame;
@@ -120,7 +149,6 @@ public class Loader
             super();
 
             sequences = new ArrayList<Sequence>();
-            mainReader = new ImageReader();
             lastReader = null;
         }
 
@@ -148,8 +176,7 @@ public class Loader
                 if (autoOrder)
                 {
                     // build position list from filename
-                    for (File file : files)
-                        filePositions.add(getPositionFromFilename(file));
+                    filePositions.addAll(getPositionsFromFilenames(files));
                 }
                 else
                 {
@@ -360,12 +387,25 @@ public class Loader
             // });
         }
 
-        private Sequence createNewSequence(String path, int serie, boolean multiSerie)
+        private Sequence createNewSequence(String path, int serie, boolean multiSerie, int subsampling)
         {
             // create a new sequence
             final Sequence result = new Sequence(MetaDataUtil.createOMEMetadata(
                     (IMetadata) lastReader.getMetadataStore(), serie));
 
+            // subsampled overview --> adjust image size and pixel size informations
+            if (subsampling > 1)
+            {
+                final OMEXMLMetadataImpl metadata = result.getMetadata();
+
+                metadata.setPixelsSizeX(
+                        OMEUtil.getPositiveInteger((lastReader.getSizeX() + (subsampling - 1)) / subsampling), 0);
+                metadata.setPixelsSizeY(
+                        OMEUtil.getPositiveInteger((lastReader.getSizeY() + (subsampling - 1)) / subsampling), 0);
+                result.setPixelSizeX(result.getPixelSizeX() * subsampling);
+                result.setPixelSizeY(result.getPixelSizeY() * subsampling);
+            }
+
             // default name
             final String name = FileUtil.getFileName(path, false);
 
@@ -399,7 +439,7 @@ public class Loader
 
             // use the same reader only when we want to concatenate images in same sequence
             if (forceNewSequence || (lastReader == null) || !lastReader.isThisType(path, true))
-                lastReader = mainReader.getReader(path);
+                lastReader = getReader(path);
 
             // set current filename
             if (frame != null)
@@ -453,13 +493,21 @@ public class Loader
 
                     lastReader.setSeries(serieIndex);
 
+                    // plane larger than maximum image size ?
+                    final int subsampling = getMinSubsampling(lastReader.getSizeX(), lastReader.getSizeY());
+
+                    if ((subsampling > 1) && !Icy.isHeadLess())
+                        new AnnounceFrame("Image '" + FileUtil.getFileName(path) + "' is too large, it is loaded "
+                                + "with a subsampling factor of " + subsampling
+                                + " (use Loader.loadTiledImage(..) for full resolution access)", 15);
+
                     // first serie and already have sequence(s) --> concatenate to last one
                     if (firstSerie && (!forceNewSequence) && (numSequence > 0))
                         seq = sequences.get(numSequence - 1);
                     else
                     {
                         // create and add a new sequence
-                        seq = createNewSequence(path, serieIndex, multiSerie);
+                        seq = createNewSequence(path, serieIndex, multiSerie, subsampling);
                         sequences.add(seq);
 
                         // re init position
@@ -512,7 +560,13 @@ public class Loader
                                     position.setZ(position.getZ() + 1);
 
                                 // get composed image
-                                final IcyBufferedImage icyImage = IcyBufferedImage.createFrom(lastReader, z, t);
+                                final IcyBufferedImage icyImage;
+
+                                // plane too large for a single image --> load a subsampled overview
+                                if (subsampling > 1)
+                                    icyImage = loadSubsampledImage(lastReader, z, t, subsampling);
+                                else
+                                    icyImage = IcyBufferedImage.createFrom(lastReader, z, t);
 
                                 // image format is not compatible with this sequence ?
                                 if (!seq.isCompatible(icyImage))
@@ -522,7 +576,7 @@ public class Loader
                                     seq.endUpdate();
 
                                     // and add a new sequence
-                                    seq = createNewSequence(path, serieIndex, multiSerie);
+                                    seq = createNewSequence(path, serieIndex, multiSerie, subsampling);
                                     sequences.add(seq);
                                     seq.beginUpdate();
 
@@ -647,7 +701,7 @@ public class Loader
         if (canDiscardImageFile(path))
             return false;
 
-        return new ImageReader().isThisType(path);
+        return ReaderCache.isSupported(path);
     }
 
     /**
@@ -659,7 +713,7 @@ public class Loader
      */
     public static IFormatReader getReader(String path) throws FormatException, IOException
     {
-        return new ImageReader().getReader(path);
+        return ReaderCache.getReader(path);
     }
 
     /**
@@ -807,6 +861,174 @@ public class Loader
         }
     }
 
+    /**
+     * Load and return the image at given position from the specified reader as a
+     * {@link TiledImage}.<br>
+     * Image is read tile by tile so the plane can exceed the maximum size of an
+     * {@link IcyBufferedImage} (<code>Integer.MAX_VALUE</code> pixels).
+     * 
+     * @param reader
+     *        initialized image reader (file id already set).
+     * @param z
+     *        Z position of the image to open.
+     * @param t
+     *        T position of the image to open.
+     * @return tiled image
+     * @throws IOException
+     * @throws FormatException
+     */
+    public static TiledImage loadTiledImage(IFormatReader reader, int z, int t) throws FormatException, IOException
+    {
+        final int sizeC = reader.getEffectiveSizeC() * reader.getRGBChannelCount();
+        final DataType dataType = DataType.getDataTypeFromFormatToolsType(reader.getPixelType());
+        final TiledImage result = new TiledImage(reader.getSizeX(), reader.getSizeY(), sizeC, dataType);
+
+        for (int ty = 0; ty < result.getNumTileY(); ty++)
+        {
+            for (int tx = 0; tx < result.getNumTileX(); tx++)
+            {
+                final Rectangle r = result.getTileBounds(tx, ty);
+                final IcyBufferedImage tile = result.getTile(tx, ty, true);
+
+                tile.beginUpdate();
+                try
+                {
+                    for (int c = 0; c < sizeC; c++)
+                        tile.copyData(IcyBufferedImage.createFrom(reader, r.x, r.y, r.width, r.height, c, z, t),
+                                null, null, 0, c);
+                }
+                finally
+                {
+                    tile.endUpdate();
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Load and return the image at given position from the specified file as a
+     * {@link TiledImage}.
+     * 
+     * @param file
+     *        image file.
+     * @param z
+     *        Z position of the image to open.
+     * @param t
+     *        T position of the image to open.
+     * @return tiled image
+     * @throws IOException
+     * @throws FormatException
+     * @see #loadTiledImage(IFormatReader, int, int)
+     */
+    public static TiledImage loadTiledImage(File file, int z, int t) throws FormatException, IOException
+    {
+        final String filePath = file.getAbsolutePath();
+        final IFormatReader reader = getReader(filePath);
+
+        // disable file grouping
+        reader.setGroupFiles(false);
+        // set file id
+        reader.setId(filePath);
+        try
+        {
+            return loadTiledImage(reader, z, t);
+        }
+        finally
+        {
+            // close reader
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns the minimum subsampling factor to apply to an image of the specified size so it
+     * can be stored in an {@link IcyBufferedImage}.
+     */
+    public static int getMinSubsampling(int sizeX, int sizeY)
+    {
+        int result = 1;
+
+        while ((((long) ((sizeX + (result - 1)) / result)) * ((sizeY + (result - 1)) / result)) > MAX_PLANE_SIZE)
+            result++;
+
+        return result;
+    }
+
+    /**
+     * Load and return the image at given position from the specified reader, subsampled by the
+     * given factor (nearest neighbor).<br>
+     * Image is read by block so it works for plane larger than the maximum size of an
+     * {@link IcyBufferedImage} (overview image).
+     * 
+     * @param reader
+     *        initialized image reader (file id already set).
+     * @param z
+     *        Z position of the image to open.
+     * @param t
+     *        T position of the image to open.
+     * @param subsampling
+     *        subsampling factor (1 = full resolution)
+     * @return icy image
+     * @throws IOException
+     * @throws FormatException
+     */
+    public static IcyBufferedImage loadSubsampledImage(IFormatReader reader, int z, int t, int subsampling)
+            throws FormatException, IOException
+    {
+        final int sizeX = reader.getSizeX();
+        final int sizeY = reader.getSizeY();
+        final int sub = Math.max(1, subsampling);
+
+        if (sub == 1)
+            return IcyBufferedImage.createFrom(reader, z, t);
+
+        final int sizeC = reader.getEffectiveSizeC() * reader.getRGBChannelCount();
+        final DataType dataType = DataType.getDataTypeFromFormatToolsType(reader.getPixelType());
+        final int outW = (sizeX + (sub - 1)) / sub;
+        final int outH = (sizeY + (sub - 1)) / sub;
+        final IcyBufferedImage result = new IcyBufferedImage(outW, outH, sizeC, dataType);
+        // block size is a multiple of subsampling factor
+        final int blockSize = Math.max(1, TiledImage.DEFAULT_TILE_SIZE / sub) * sub;
+
+        result.beginUpdate();
+        try
+        {
+            for (int by = 0; by < sizeY; by += blockSize)
+            {
+                final int bh = Math.min(blockSize, sizeY - by);
+
+                for (int bx = 0; bx < sizeX; bx += blockSize)
+                {
+                    final int bw = Math.min(blockSize, sizeX - bx);
+
+                    for (int c = 0; c < sizeC; c++)
+                    {
+                        final Object in = IcyBufferedImage.createFrom(reader, bx, by, bw, bh, c, z, t).getDataXY(0);
+                        final Object out = result.getDataXY(c);
+
+                        for (int y = 0; y < bh; y += sub)
+                        {
+                            int outOff = (((by + y) / sub) * outW) + (bx / sub);
+
+                            for (int x = 0; x < bw; x += sub)
+                                Array1DUtil.setValue(out, outOff++, dataType,
+                                        Array1DUtil.getValue(in, (y * bw) + x, dataType));
+                        }
+                    }
+                }
+            }
+        }
+        finally
+        {
+            result.dataChanged();
+            result.endUpdate();
+        }
+
+        return result;
+    }
+
     /**
      * Load a list of sequence from the specified list of file and returns them.<br>
      * As the function can take sometime you should not call it from the AWT EDT.<br>
@@ -1302,137 +1524,123 @@ public class Loader
         }
     }
 
-    private static int getLastIndexOf(char id, ArrayList<String> numbers)
+    /**
+     * Return a FilePosition from the specified filename.
+     */
+    public static FilePosition getPositionFromFilename(File file)
     {
-        int index = numbers.size() - 1;
-        while (index >= 0)
-        {
-            if (Character.toUpperCase(numbers.get(index).charAt(0)) == id)
-                return index;
-
-            index--;
-        }
+        // get filename without extension
+        final FilenamePattern.Tokens tokens = FilenamePattern.tokenize(FileUtil.getFileName(file.getAbsolutePath(),
+                false));
 
-        return index;
+        return getPositionFromTokens(file, tokens, getFilenamePattern(tokens));
     }
 
-    private static void removePreviousIdent(char id, ArrayList<String> numbers, int from)
+    private static FilePosition getPositionFromTokens(File file, FilenamePattern.Tokens tokens,
+            FilenamePattern pattern)
     {
-        int index = from;
-        while (index >= 0)
-        {
-            if (Character.toUpperCase(numbers.get(index).charAt(0)) == id)
-                numbers.remove(index);
+        final FilePosition result = new FilePosition(file);
 
-            index--;
-        }
+        // set numbers to to position
+        for (String number : pattern.getPositionNumbers(tokens))
+            setPositionFromNumberString(result, number);
+
+        return result;
     }
 
-    private static boolean removeFirstInvalidIdent(ArrayList<String> numbers)
+    /**
+     * Returns the filename pattern for the specified tokens (patterns are cached).
+     */
+    static FilenamePattern getFilenamePattern(FilenamePattern.Tokens tokens)
     {
-        final int len = numbers.size();
-        int index = 0;
+        FilenamePattern result;
+
+        synchronized (filenamePatterns)
+        {
+            result = filenamePatterns.get(tokens.getKey());
+        }
 
-        while (index < len)
+        if (result == null)
         {
-            if (!BandPosition.isValidIdentStatic(Character.toUpperCase(numbers.get(index).charAt(0))))
+            result = new FilenamePattern(tokens);
+
+            synchronized (filenamePatterns)
             {
-                numbers.remove(index);
-                return true;
+                filenamePatterns.put(result.getKey(), result);
             }
-
-            index++;
         }
 
-        return false;
+        return result;
     }
 
     /**
-     * Return a FilePosition from the specified filename.
+     * Returns the filename pattern for the specified filename.
      */
-    public static FilePosition getPositionFromFilename(File file)
+    public static FilenamePattern getFilenamePattern(File file)
     {
-        final String filename = file.getAbsolutePath();
-        final ArrayList<String> numbers = new ArrayList<String>();
-        // get filename without extension
-        final String value = FileUtil.getFileName(filename, false);
+        return getFilenamePattern(FilenamePattern.tokenize(FileUtil.getFileName(file.getAbsolutePath(), false)));
+    }
 
-        final int len = value.length();
+    /**
+     * Returns the distinct filename patterns found in the specified file list (grouping index).
+     */
+    public static List<FilenamePattern> getFilenamePatterns(File[] files)
+    {
+        final Map<String, FilenamePattern> result = new LinkedHashMap<String, FilenamePattern>();
 
-        int index = 0;
-        while (index < len)
+        for (File file : files)
         {
-            // get starting digit char index
-            final int startInd = StringUtil.getNextDigitCharIndex(value, index);
+            final FilenamePattern pattern = getFilenamePattern(file);
 
-            // we find a digit char ?
-            if (startInd >= 0)
-            {
-                final String number;
-
-                // get ending digit char index
-                int endInd = StringUtil.getNextNonDigitCharIndex(value, startInd);
-                if (endInd < 0)
-                    endInd = len;
-
-                // we want to get number + preceding letter
-                number = value.substring(Math.max(0, startInd - 1), endInd);
-                // add number only if < X10000 (else it can be a date)
-                if (number.length() < 6)
-                    // add the found number to the list
-                    numbers.add(number);
-
-                // adjust index
-                index = endInd;
-            }
-            else
-                index = len;
+            if (!result.containsKey(pattern.getKey()))
+                result.put(pattern.getKey(), pattern);
         }
 
-        // clean up numbers
-        if (numbers.size() > 3)
+        return new ArrayList<FilenamePattern>(result.values());
+    }
+
+    /**
+     * Return FilePosition for each file of the specified list (computed in parallel).
+     */
+    static List<FilePosition> getPositionsFromFilenames(final File[] files)
+    {
+        final FilePosition[] result = new FilePosition[files.length];
+        final ForBody body = new ForBody()
         {
-            // find T number
-            index = getLastIndexOf(ImagePosition.T_ID, numbers);
-            // remove duplicate
-            if (index != -1)
-                removePreviousIdent(ImagePosition.T_ID, numbers, index - 1);
-            // find Z number
-            index = getLastIndexOf(ImagePosition.Z_ID, numbers);
-            // remove duplicate
-            if (index != -1)
-                removePreviousIdent(ImagePosition.Z_ID, numbers, index - 1);
-            // find C number
-            index = getLastIndexOf(BandPosition.C_ID, numbers);
-            // remove duplicate
-            if (index != -1)
-            {
-                // remove duplicate C number
-                removePreviousIdent(BandPosition.C_ID, numbers, index - 1);
-                // remove all C alternate number
-                removePreviousIdent(BandPosition.C_ID, numbers, numbers.size() - 1);
-            }
-            else
+            @Override
+            public void run(int from, int to)
             {
-                // find C alternate number
-                index = getLastIndexOf(BandPosition.C_ID_ALTERNATE, numbers);
-                // remove duplicate
-                if (index != -1)
-                    removePreviousIdent(BandPosition.C_ID_ALTERNATE, numbers, index - 1);
-            }
-        }
+                // local pattern index (avoid contention on shared cache)
+                final Map<String, FilenamePattern> patterns = new HashMap<String, FilenamePattern>();
 
-        // keep only the last 3 preferred number
-        boolean b = true;
-        while ((numbers.size() > 3) && b)
-            b = removeFirstInvalidIdent(numbers);
+                for (int i = from; i < to; i++)
+                {
+                    final File file = files[i];
+                    final FilenamePattern.Tokens tokens = FilenamePattern.tokenize(FileUtil.getFileName(
+                            file.getAbsolutePath(), false));
+                    FilenamePattern pattern = patterns.get(tokens.getKey());
 
-        final FilePosition result = new FilePosition(file);
+                    if (pattern == null)
+                    {
+                        pattern = getFilenamePattern(tokens);
+                        patterns.put(pattern.getKey(), pattern);
+                    }
 
-        // set numbers to to position
-        for (String number : numbers)
-            setPositionFromNumberString(result, number);
+                    result[i] = getPositionFromTokens(file, tokens, pattern);
+                }
+            }
+        };
 
-        return result;
+        try
+        {
+            Parallel.forRange(0, files.length, 0, body);
+        }
+        catch (CancellationException e)
+        {
+            // interrupted --> compute all positions here (we never return null entries)
+            body.run(0, files.length);
+        }
+
+        return new ArrayList<FilePosition>(Arrays.asList(result));
     }
 }
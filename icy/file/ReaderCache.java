@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.file;
+
+import java.io.IOException;
+
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.UnknownFormatException;
+
+/**
+ * Fast image reader type resolution.<br>
+ * Building an {@link ImageReader} instantiates all Bio-Formats readers so we keep one per thread
+ * and only use it to test file type (its readers are never opened).<br>
+ * Readers are tested in the {@link ImageReader} priority order and the test stops at the first
+ * matching reader, then only the matching reader class is instantiated to read the file.
+ * 
+ * @author Stephane
+ */
+public class ReaderCache
+{
+    /**
+     * per thread readers (used for type detection only)
+     */
+    private static final ThreadLocal<ImageReader> imageReaders = new ThreadLocal<ImageReader>()
+    {
+        @Override
+        protected ImageReader initialValue()
+        {
+            return new ImageReader();
+        }
+    };
+
+    /**
+     * Returns the {@link ImageReader} of the current thread.<br>
+     * It should only be used for type detection and never be opened.
+     */
+    public static ImageReader getImageReader()
+    {
+        return imageReaders.get();
+    }
+
+    /**
+     * Returns the reader (from current thread {@link ImageReader}) which handles the specified
+     * file or <code>null</code> if the file is not supported.<br>
+     * The returned reader is shared and should only be used for type detection, use
+     * {@link #getReader(String)} to obtain a reader you can open.
+     */
+    public static IFormatReader findReader(String path)
+    {
+        // test readers in ImageReader priority order so a specialized reader (OME-TIFF,
+        // Metamorph...) always wins over a generic one (TIFF) for the same suffix
+        for (IFormatReader reader : getImageReader().getReaders())
+            if (reader.isThisType(path))
+                return reader;
+
+        return null;
+    }
+
+    /**
+     * Returns true if the specified file is supported by one of the Bio-Formats readers.
+     */
+    public static boolean isSupported(String path)
+    {
+        return findReader(path) != null;
+    }
+
+    /**
+     * Returns a new reader instance for the specified image file.<br>
+     * Only the matching reader class is instantiated.
+     * 
+     * @throws UnknownFormatException
+     *         if the specified file is not a valid (or supported) image file.
+     * @throws FormatException
+     * @throws IOException
+     */
+    public static IFormatReader getReader(String path) throws FormatException, IOException
+    {
+        final IFormatReader reader = findReader(path);
+
+        if (reader == null)
+            throw new UnknownFormatException("Unknown file format: " + path);
+
+        try
+        {
+            return reader.getClass().newInstance();
+        }
+        catch (Exception e)
+        {
+            // fall back on default behavior
+            return new ImageReader().getReader(path);
+        }
+    }
+}
@@ -621,33 +621,12 @@ public class Saver
             }
             else
             {
-                final String fileExt = FileUtil.getFileExtension(filePath, false);
-                final ImageFileFormat iff;
-
-                if (formatWriter != null)
-                    iff = getImageFileFormat(formatWriter, ImageFileFormat.TIFF);
-                else
-                    iff = ImageFileFormat.getWriteFormat(fileExt, ImageFileFormat.TIFF);
-
-                // force to set correct file extension
-                final String fixedFilePath;
-
-                if (iff.matches(fileExt))
-                    fixedFilePath = filePath;
-                else
-                    fixedFilePath = filePath + "." + iff.getExtensions()[0];
-
-                // default name used --> use filename
-                if (sequence.isDefaultName())
-                    sequence.setName(FileUtil.getFileName(fixedFilePath, false));
-                sequence.setFilename(fixedFilePath);
-
                 // save as multi images file
-                save(formatWriter, sequence, fixedFilePath, zMin, zMax, tMin, tMax, fps, saveFrame);
+                final File savedFile = save(formatWriter, sequence, file, zMin, zMax, tMin, tMax, fps, saveFrame);
 
                 // add as one item to recent file list
                 if (mainMenu != null)
-                    mainMenu.addRecentLoadedFile(new File(fixedFilePath));
+                    mainMenu.addRecentLoadedFile(savedFile);
             }
 
             // Sequence persistence enabled --> save XML
@@ -668,6 +647,70 @@ public class Saver
         }
     }
 
+    /**
+     * Save the specified sequence in the specified file (all images are saved in a single file)
+     * and returns the saved file.<br>
+     * Unlike others save methods this one does not display any progress information nor error
+     * message but throws exception so caller can handle it (batch processing for instance).
+     * 
+     * @param formatWriter
+     *        writer used to save sequence (define the image format).<br>
+     *        If set to <code>null</code> then writer is determined from the file extension.
+     * @param sequence
+     *        sequence to save
+     * @param file
+     *        file where we want to save sequence.<br>
+     *        The file extension is fixed if it does not match the writer format.
+     * @return the saved file (extension may differ from the specified file)
+     */
+    public static File save(IFormatWriter formatWriter, Sequence sequence, File file) throws ServiceException,
+            FormatException, IOException
+    {
+        final File result = save(formatWriter, sequence, file, 0, sequence.getSizeZ() - 1, 0,
+                sequence.getSizeT() - 1, 15, null);
+
+        // Sequence persistence enabled --> save XML
+        if (GeneralPreferences.getSequencePersistence())
+            sequence.saveXMLData();
+
+        return result;
+    }
+
+    /**
+     * Save the specified sequence in the specified file (multi images file) after fixing the file
+     * extension so it matches the writer format and returns the saved file.
+     */
+    private static File save(IFormatWriter formatWriter, Sequence sequence, File file, int zMin, int zMax, int tMin,
+            int tMax, int fps, FileFrame saveFrame) throws ServiceException, FormatException, IOException
+    {
+        final String filePath = file.getAbsolutePath();
+        final String fileExt = FileUtil.getFileExtension(filePath, false);
+        final ImageFileFormat iff;
+
+        if (formatWriter != null)
+            iff = getImageFileFormat(formatWriter, ImageFileFormat.TIFF);
+        else
+            iff = ImageFileFormat.getWriteFormat(fileExt, ImageFileFormat.TIFF);
+
+        // force to set correct file extension
+        final String fixedFilePath;
+
+        if (iff.matches(fileExt))
+            fixedFilePath = filePath;
+        else
+            fixedFilePath = filePath + "." + iff.getExtensions()[0];
+
+        // default name used --> use filename
+        if (sequence.isDefaultName())
+            sequence.setName(FileUtil.getFileName(fixedFilePath, false));
+        sequence.setFilename(fixedFilePath);
+
+        // save as multi images file
+        save(formatWriter, sequence, fixedFilePath, zMin, zMax, tMin, tMax, fps, saveFrame);
+
+        return new File(fixedFilePath);
+    }
+
     /**
      * Save a single image from bytes buffer to the specified file.
      */
@@ -18,6 +18,7 @@
  */
 package icy.gui.dialog;
 
+import icy.file.DatasetCatalog;
 import icy.file.ImageFileFormat;
 import icy.file.Loader;
 import icy.main.Icy;
@@ -135,6 +136,9 @@ public class ImageLoaderDialog extends JFileChooser implements PropertyChangeLis
         // listen file filter change
         addPropertyChangeListener(this);
 
+        // index current directory in background
+        DatasetCatalog.crawl(getCurrentDirectory(), false);
+
         setDialogTitle("Icy - Load image file");
 
         // display loader
@@ -230,6 +234,12 @@ public class ImageLoaderDialog extends JFileChooser implements PropertyChangeLis
 
             updateOptionPanel((f != null) && f.isDirectory());
         }
+        else if (prop.equals(JFileChooser.DIRECTORY_CHANGED_PROPERTY))
+        {
+            // index new directory in background
+            DatasetCatalog.crawl((File) evt.getNewValue(), false);
+            updateOptionPanel(getSelectedFiles().length > 1);
+        }
         else
             updateOptionPanel(getSelectedFiles().length > 1);
     }
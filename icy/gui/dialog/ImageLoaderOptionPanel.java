@@ -18,17 +18,15 @@
  */
 package icy.gui.dialog;
 
-import icy.file.Loader;
+import icy.file.DatasetCatalog;
 import icy.gui.component.ThumbnailComponent;
-import icy.image.IcyBufferedImage;
-import icy.image.IcyBufferedImageUtil;
 import icy.resource.ResourceUtil;
-import icy.type.DataType;
 
 import java.awt.BorderLayout;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
+import java.io.File;
 import java.io.IOException;
 
 import javax.swing.BorderFactory;
@@ -39,8 +37,6 @@ import javax.swing.border.Border;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
-import loci.formats.IFormatReader;
-
 public class ImageLoaderOptionPanel extends JPanel
 {
     private class PreviewUpdater extends Thread
@@ -66,41 +62,28 @@ public class ImageLoaderOptionPanel extends JPanel
 
                 try
                 {
-                    final IFormatReader reader = Loader.getReader(fileId);
-
-                    // disable file grouping
-                    reader.setGroupFiles(false);
-                    reader.setId(fileId);
-
-                    try
-                    {
-                        reader.setSeries(0);
-
-                        final int sizeC = reader.getSizeC();
-
-                        // load metadata first
-                        preview.setTitle(reader.getFormat());
-                        preview.setInfos(reader.getSizeX() + " x " + reader.getSizeY() + " - " + reader.getSizeZ()
-                                + "Z x " + reader.getSizeT() + "T");
-                        preview.setInfos2(sizeC + ((sizeC > 1) ? " channels (" : " channel (")
-                                + DataType.getDataTypeFromFormatToolsType(reader.getPixelType()) + ")");
-
-                        // then image
-                        final IcyBufferedImage img = IcyBufferedImage.createThumbnailFrom(reader,
-                                reader.getSizeZ() / 2, reader.getSizeT() / 2);
-                        preview.setImage(IcyBufferedImageUtil.getARGBImage(img));
-                    }
-                    finally
-                    {
-                        try
-                        {
-                            reader.close();
-                        }
-                        catch (IOException e)
-                        {
-                            // ignore
-                        }
-                    }
+                    final File file = new File(fileId);
+                    DatasetCatalog.Entry entry = DatasetCatalog.get(file);
+
+                    // not yet in catalog --> index it now (only first serie thumbnail needed)
+                    if (entry == null)
+                        entry = DatasetCatalog.index(file, 1);
+
+                    if (!entry.isImage())
+                        throw new IOException("Unsupported image file");
+
+                    final DatasetCatalog.SeriesInfo info = entry.series[0];
+
+                    // metadata
+                    preview.setTitle(entry.format);
+                    preview.setInfos(info.getSizeInfos());
+                    preview.setInfos2(info.getChannelInfos());
+
+                    // then image
+                    if (info.hasThumbnail())
+                        preview.setImage(info.getThumbnail());
+                    else
+                        preview.setImage(ResourceUtil.ICON_PICTURE);
                 }
                 catch (Exception e)
                 {
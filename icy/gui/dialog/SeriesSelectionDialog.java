@@ -18,6 +18,7 @@
  */
 package icy.gui.dialog;
 
+import icy.file.DatasetCatalog;
 import icy.gui.component.ThumbnailComponent;
 import icy.gui.util.ComponentUtil;
 import icy.image.IcyBufferedImage;
@@ -31,6 +32,7 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.GridLayout;
+import java.awt.image.BufferedImage;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
@@ -323,6 +325,9 @@ public class SeriesSelectionDialog extends ActionDialog implements Runnable
                 }
             }
 
+            final String path = reader.getCurrentFile();
+            final DatasetCatalog.Entry entry = (path != null) ? DatasetCatalog.get(path) : null;
+
             // then try to load thumbnail
             for (int i = 0; i < serieComponents.length; i++)
             {
@@ -332,11 +337,22 @@ public class SeriesSelectionDialog extends ActionDialog implements Runnable
 
                 try
                 {
-                    reader.setSeries(i);
+                    // use catalog thumbnail when available
+                    if ((entry != null) && (i < entry.series.length) && entry.series[i].hasThumbnail())
+                        serieComponents[i].setImage(entry.series[i].getThumbnail());
+                    else
+                    {
+                        reader.setSeries(i);
 
-                    final IcyBufferedImage img = IcyBufferedImage.createThumbnailFrom(reader, reader.getSizeZ() / 2,
-                            reader.getSizeT() / 2);
-                    serieComponents[i].setImage(IcyBufferedImageUtil.getARGBImage(img));
+                        final IcyBufferedImage img = IcyBufferedImage.createThumbnailFrom(reader,
+                                reader.getSizeZ() / 2, reader.getSizeT() / 2);
+                        final BufferedImage thumb = IcyBufferedImageUtil.getARGBImage(img);
+
+                        serieComponents[i].setImage(thumb);
+                        // store it for next time
+                        if (entry != null)
+                            DatasetCatalog.setThumbnail(path, i, thumb);
+                    }
                 }
                 catch (Throwable e)
                 {
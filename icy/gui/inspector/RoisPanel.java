@@ -38,10 +38,13 @@ import icy.roi.ROIEvent;
 import icy.roi.ROIEvent.ROIEventType;
 import icy.roi.ROIListener;
 import icy.roi.ROIUtil;
+import icy.roi.ShapeDescriptor;
 import icy.sequence.Sequence;
 import icy.sequence.SequenceEvent;
 import icy.sequence.SequenceEvent.SequenceEventSourceType;
 import icy.sequence.SequenceEvent.SequenceEventType;
+import icy.system.thread.Parallel;
+import icy.system.thread.Parallel.ForBody;
 import icy.system.thread.ThreadUtil;
 import icy.type.rectangle.Rectangle5D;
 import icy.util.StringUtil;
@@ -53,10 +56,12 @@ import java.awt.event.KeyEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Semaphore;
 
 import javax.swing.ActionMap;
@@ -91,7 +96,8 @@ public class RoisPanel extends ExternalizablePanel implements ActiveSequenceList
 
     static final String[] columnNames = {"", "Name", "Type", "Position X", "Position Y", "Position Z", "Position T",
             "Position C", "Size X", "Size Y", "Size Z", "Size T", "Size C", "Contour", "Interior", "Perimeter", "Area",
-            "Surface Area", "Volume", "Min Intensity", "Mean Intensity", "Max Intensity", "Std Deviation"};
+            "Surface Area", "Volume", "Min Intensity", "Mean Intensity", "Max Intensity", "Std Deviation",
+            "Major Axis", "Minor Axis", "Orientation", "Eccentricity", "Max Feret", "Min Feret", "Solidity", "Convexity"};
 
     private static final String PREF_ID = "ROIPanel";
 
@@ -118,6 +124,14 @@ public class RoisPanel extends ExternalizablePanel implements ActiveSequenceList
     private static final String ID_COLUMN_MEAN_INT = "col_mean_int";
     private static final String ID_COLUMN_MAX_INT = "col_max_int";
     private static final String ID_COLUMN_STANDARD_DEV = "col_standard_dev";
+    private static final String ID_COLUMN_MAJOR_AXIS = "col_major_axis";
+    private static final String ID_COLUMN_MINOR_AXIS = "col_minor_axis";
+    private static final String ID_COLUMN_ORIENTATION = "col_orientation";
+    private static final String ID_COLUMN_ECCENTRICITY = "col_eccentricity";
+    private static final String ID_COLUMN_MAX_FERET = "col_max_feret";
+    private static final String ID_COLUMN_MIN_FERET = "col_min_feret";
+    private static final String ID_COLUMN_SOLIDITY = "col_solidity";
+    private static final String ID_COLUMN_CONVEXITY = "col_convexity";
 
     // GUI
     AbstractTableModel tableModel;
@@ -250,6 +264,22 @@ public class RoisPanel extends ExternalizablePanel implements ActiveSequenceList
                         return roiInfo.getMaxIntensities();
                     case 22: // standard deviation
                         return roiInfo.getStandardDeviation();
+                    case 23: // major axis
+                        return roiInfo.getMajorAxisLength();
+                    case 24: // minor axis
+                        return roiInfo.getMinorAxisLength();
+                    case 25: // orientation
+                        return roiInfo.getOrientation();
+                    case 26: // eccentricity
+                        return roiInfo.getEccentricity();
+                    case 27: // max feret
+                        return roiInfo.getMaxFeretDiameter();
+                    case 28: // min feret
+                        return roiInfo.getMinFeretDiameter();
+                    case 29: // solidity
+                        return roiInfo.getSolidity();
+                    case 30: // convexity
+                        return roiInfo.getConvexity();
                 }
 
                 return "";
@@ -290,6 +320,14 @@ public class RoisPanel extends ExternalizablePanel implements ActiveSequenceList
                         return Icon.class;
                     case 13: // contour points
                     case 14: // points
+                    case 23: // major axis
+                    case 24: // minor axis
+                    case 25: // orientation
+                    case 26: // eccentricity
+                    case 27: // max feret
+                    case 28: // min feret
+                    case 29: // solidity
+                    case 30: // convexity
                         return Double.class;
                     case 19: // min intensity
                     case 20: // mean intensity
@@ -490,6 +528,62 @@ public class RoisPanel extends ExternalizablePanel implements ActiveSequenceList
         col.setComparator(daComparator);
         col.setToolTipText("Standard deviation (per channel)");
         col.addPropertyChangeListener(this);
+        // major axis
+        col = table.getColumnExt(23);
+        col.setIdentifier(ID_COLUMN_MAJOR_AXIS);
+        col.setPreferredWidth(80);
+        col.setMinWidth(40);
+        col.setToolTipText("Major axis length of the fitted ellipse (ellipsoid)");
+        col.addPropertyChangeListener(this);
+        // minor axis
+        col = table.getColumnExt(24);
+        col.setIdentifier(ID_COLUMN_MINOR_AXIS);
+        col.setPreferredWidth(80);
+        col.setMinWidth(40);
+        col.setToolTipText("Minor axis length of the fitted ellipse (ellipsoid)");
+        col.addPropertyChangeListener(this);
+        // orientation
+        col = table.getColumnExt(25);
+        col.setIdentifier(ID_COLUMN_ORIENTATION);
+        col.setPreferredWidth(80);
+        col.setMinWidth(40);
+        col.setToolTipText("Angle (in degree) between the fitted ellipse major axis and the X axis");
+        col.addPropertyChangeListener(this);
+        // eccentricity
+        col = table.getColumnExt(26);
+        col.setIdentifier(ID_COLUMN_ECCENTRICITY);
+        col.setPreferredWidth(80);
+        col.setMinWidth(40);
+        col.setToolTipText("Eccentricity of the fitted ellipse (0 for a circle)");
+        col.addPropertyChangeListener(this);
+        // max feret
+        col = table.getColumnExt(27);
+        col.setIdentifier(ID_COLUMN_MAX_FERET);
+        col.setPreferredWidth(80);
+        col.setMinWidth(40);
+        col.setToolTipText("Maximum caliper diameter");
+        col.addPropertyChangeListener(this);
+        // min feret
+        col = table.getColumnExt(28);
+        col.setIdentifier(ID_COLUMN_MIN_FERET);
+        col.setPreferredWidth(80);
+        col.setMinWidth(40);
+        col.setToolTipText("Minimum caliper diameter");
+        col.addPropertyChangeListener(this);
+        // solidity
+        col = table.getColumnExt(29);
+        col.setIdentifier(ID_COLUMN_SOLIDITY);
+        col.setPreferredWidth(80);
+        col.setMinWidth(40);
+        col.setToolTipText("Area / convex hull area");
+        col.addPropertyChangeListener(this);
+        // convexity
+        col = table.getColumnExt(30);
+        col.setIdentifier(ID_COLUMN_CONVEXITY);
+        col.setPreferredWidth(80);
+        col.setMinWidth(40);
+        col.setToolTipText("Convex hull perimeter / perimeter");
+        col.addPropertyChangeListener(this);
 
         // set selection model
         tableSelectionModel = table.getSelectionModel();
@@ -610,6 +704,14 @@ public class RoisPanel extends ExternalizablePanel implements ActiveSequenceList
         loadColumnVisibility(pref, ID_COLUMN_MEAN_INT, false);
         loadColumnVisibility(pref, ID_COLUMN_MAX_INT, false);
         loadColumnVisibility(pref, ID_COLUMN_STANDARD_DEV, false);
+        loadColumnVisibility(pref, ID_COLUMN_MAJOR_AXIS, false);
+        loadColumnVisibility(pref, ID_COLUMN_MINOR_AXIS, false);
+        loadColumnVisibility(pref, ID_COLUMN_ORIENTATION, false);
+        loadColumnVisibility(pref, ID_COLUMN_ECCENTRICITY, false);
+        loadColumnVisibility(pref, ID_COLUMN_MAX_FERET, false);
+        loadColumnVisibility(pref, ID_COLUMN_MIN_FERET, false);
+        loadColumnVisibility(pref, ID_COLUMN_SOLIDITY, false);
+        loadColumnVisibility(pref, ID_COLUMN_CONVEXITY, false);
     }
 
     public void setNameFilter(String name)
@@ -697,28 +799,47 @@ public class RoisPanel extends ExternalizablePanel implements ActiveSequenceList
     {
         while (true)
         {
-            final ROIInfo roiInfo;
+            final ROIInfo[] roiInfos;
 
             synchronized (roisToCompute)
             {
-                if (!roisToCompute.isEmpty())
-                    roiInfo = roisToCompute.get(0);
-                else
-                    roiInfo = null;
+                roiInfos = roisToCompute.toArray(new ROIInfo[roisToCompute.size()]);
             }
 
-            if (roiInfo != null)
+            if (roiInfos.length > 1)
             {
-                roiInfo.compute();
-
-                // remove it from the compute list
-                synchronized (roisToCompute)
+                try
+                {
+                    // compute all pending ROIs in parallel
+                    Parallel.forEach(0, roiInfos.length, new ForBody()
+                    {
+                        @Override
+                        public void run(int from, int to)
+                        {
+                            for (int i = from; i < to; i++)
+                                roiInfos[i].compute();
+                        }
+                    });
+                }
+                catch (CancellationException e)
                 {
-                    roisToCompute.remove(roiInfo);
+                    // interrupted --> stop computing
+                    return;
                 }
             }
+            else if (roiInfos.length == 1)
+                roiInfos[0].compute();
             else
                 ThreadUtil.sleep(10);
+
+            if (roiInfos.length > 0)
+            {
+                // remove them from the compute list
+                synchronized (roisToCompute)
+                {
+                    roisToCompute.removeAll(Arrays.asList(roiInfos));
+                }
+            }
         }
     }
 
@@ -1112,12 +1233,16 @@ public class RoisPanel extends ExternalizablePanel implements ActiveSequenceList
         private ROI roi;
         private double[] standardDeviation;
         private IntensityInfo[] intensityInfos;
+        private ShapeDescriptor shapeDescriptor;
 
         // cached
         private double numberContourPoints;
         private double numberPoints;
         private boolean sequenceInfInvalid;
         private boolean roiInfInvalid;
+        private boolean shapeInfInvalid;
+        // shape descriptors are only computed when displayed
+        private boolean shapeInfRequested;
 
         public ROIInfo(ROI roi)
         {
@@ -1127,8 +1252,11 @@ public class RoisPanel extends ExternalizablePanel implements ActiveSequenceList
             numberPoints = 0d;
             standardDeviation = new double[0];
             intensityInfos = new IntensityInfo[0];
+            shapeDescriptor = null;
             sequenceInfInvalid = true;
             roiInfInvalid = true;
+            shapeInfInvalid = true;
+            shapeInfRequested = false;
 
             roi.addListener(this);
         }
@@ -1155,6 +1283,12 @@ public class RoisPanel extends ExternalizablePanel implements ActiveSequenceList
                     roiInfInvalid = false;
                 }
 
+                if (shapeInfInvalid && shapeInfRequested)
+                {
+                    shapeDescriptor = ROIUtil.getShapeDescriptor(roi);
+                    shapeInfInvalid = false;
+                }
+
                 if (sequenceInfInvalid)
                 {
                     final Sequence sequence = Icy.getMainInterface().getActiveSequence();
@@ -1280,6 +1414,101 @@ public class RoisPanel extends ExternalizablePanel implements ActiveSequenceList
             return ROIUtil.getContourSize(Icy.getMainInterface().getActiveSequence(), getNumberOfPoints(), roi, 3, 5);
         }
 
+        /**
+         * Returns the shape descriptors of the ROI (can be <code>null</code> if not yet computed
+         * or if the ROI is not a 2D or 3D ROI).
+         */
+        public ShapeDescriptor getShapeDescriptor()
+        {
+            shapeInfRequested = true;
+
+            // need to recompute
+            if (shapeInfInvalid)
+                requestCompute();
+
+            return shapeDescriptor;
+        }
+
+        public double getMajorAxisLength()
+        {
+            final ShapeDescriptor sd = getShapeDescriptor();
+
+            if (sd == null)
+                return Double.NaN;
+
+            return MathUtil.roundSignificant(sd.majorAxisLength, 5);
+        }
+
+        public double getMinorAxisLength()
+        {
+            final ShapeDescriptor sd = getShapeDescriptor();
+
+            if (sd == null)
+                return Double.NaN;
+
+            return MathUtil.roundSignificant(sd.minorAxisLength, 5);
+        }
+
+        public double getOrientation()
+        {
+            final ShapeDescriptor sd = getShapeDescriptor();
+
+            if (sd == null)
+                return Double.NaN;
+
+            return MathUtil.roundSignificant(Math.toDegrees(sd.orientation), 5);
+        }
+
+        public double getEccentricity()
+        {
+            final ShapeDescriptor sd = getShapeDescriptor();
+
+            if (sd == null)
+                return Double.NaN;
+
+            return MathUtil.roundSignificant(sd.eccentricity, 5);
+        }
+
+        public double getMaxFeretDiameter()
+        {
+            final ShapeDescriptor sd = getShapeDescriptor();
+
+            if (sd == null)
+                return Double.NaN;
+
+            return MathUtil.roundSignificant(sd.maxFeretDiameter, 5);
+        }
+
+        public double getMinFeretDiameter()
+        {
+            final ShapeDescriptor sd = getShapeDescriptor();
+
+            if (sd == null)
+                return Double.NaN;
+
+            return MathUtil.roundSignificant(sd.minFeretDiameter, 5);
+        }
+
+        public double getSolidity()
+        {
+            final ShapeDescriptor sd = getShapeDescriptor();
+
+            if (sd == null)
+                return Double.NaN;
+
+            return MathUtil.roundSignificant(sd.solidity, 5);
+        }
+
+        public double getConvexity()
+        {
+            final ShapeDescriptor sd = getShapeDescriptor();
+
+            if (sd == null)
+                return Double.NaN;
+
+            return MathUtil.roundSignificant(sd.convexity, 5);
+        }
+
         public double[] getMinIntensities()
         {
             // need to recompute
@@ -1581,6 +1810,7 @@ public class RoisPanel extends ExternalizablePanel implements ActiveSequenceList
 
                     sequenceInfInvalid = true;
                     roiInfInvalid = true;
+                    shapeInfInvalid = true;
                     requestCompute();
                     break;
 
@@ -30,6 +30,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import javax.swing.DefaultComboBoxModel;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JSpinner;
@@ -59,6 +60,8 @@ public class NetworkPreferencePanel extends PreferencePanel implements ActionLis
     private JSpinner ftpPortField;
     private IcyTextField socksHostField;
     private JSpinner socksPortField;
+    private JSpinner maxDownloadsField;
+    private JCheckBox offlineCheckBox;
 
     public NetworkPreferencePanel(PreferenceFrame parent)
     {
@@ -86,9 +89,9 @@ public class NetworkPreferencePanel extends PreferencePanel implements ActionLis
     {
         GridBagLayout gridBagLayout = new GridBagLayout();
         gridBagLayout.columnWidths = new int[] {69, 239, 97, 0, 0};
-        gridBagLayout.rowHeights = new int[] {0, 0, 0, 0, 0, 0, 0};
+        gridBagLayout.rowHeights = new int[] {0, 0, 0, 0, 0, 0, 0, 0, 0};
         gridBagLayout.columnWeights = new double[] {0.0, 0.0, 0.0, 1.0, Double.MIN_VALUE};
-        gridBagLayout.rowWeights = new double[] {0.0, 0.0, 0.0, 0.0, 0.0, 1.0, Double.MIN_VALUE};
+        gridBagLayout.rowWeights = new double[] {0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 1.0, Double.MIN_VALUE};
         mainPanel.setLayout(gridBagLayout);
 
         JLabel lblProxy = new JLabel("Proxy");
@@ -221,6 +224,33 @@ public class NetworkPreferencePanel extends PreferencePanel implements ActionLis
         gbc_socksPortField.gridx = 2;
         gbc_socksPortField.gridy = 4;
         mainPanel.add(socksPortField, gbc_socksPortField);
+
+        JLabel lblDownloads = new JLabel("Downloads");
+        GridBagConstraints gbc_lblDownloads = new GridBagConstraints();
+        gbc_lblDownloads.anchor = GridBagConstraints.EAST;
+        gbc_lblDownloads.insets = new Insets(0, 0, 5, 5);
+        gbc_lblDownloads.gridx = 0;
+        gbc_lblDownloads.gridy = 5;
+        mainPanel.add(lblDownloads, gbc_lblDownloads);
+
+        maxDownloadsField = new JSpinner();
+        maxDownloadsField.setModel(new SpinnerNumberModel(4, 1, 16, 1));
+        maxDownloadsField.setToolTipText("Maximum number of concurrent downloads (updates and plugins installation)");
+        GridBagConstraints gbc_maxDownloadsField = new GridBagConstraints();
+        gbc_maxDownloadsField.insets = new Insets(0, 0, 5, 5);
+        gbc_maxDownloadsField.fill = GridBagConstraints.HORIZONTAL;
+        gbc_maxDownloadsField.gridx = 2;
+        gbc_maxDownloadsField.gridy = 5;
+        mainPanel.add(maxDownloadsField, gbc_maxDownloadsField);
+
+        offlineCheckBox = new JCheckBox("Offline mode");
+        offlineCheckBox.setToolTipText("Don't access network, only use cached online resources (plugin repository...)");
+        GridBagConstraints gbc_offlineCheckBox = new GridBagConstraints();
+        gbc_offlineCheckBox.anchor = GridBagConstraints.WEST;
+        gbc_offlineCheckBox.insets = new Insets(0, 0, 5, 5);
+        gbc_offlineCheckBox.gridx = 1;
+        gbc_offlineCheckBox.gridy = 6;
+        mainPanel.add(offlineCheckBox, gbc_offlineCheckBox);
     }
 
     private void updateComponentsState()
@@ -274,6 +304,8 @@ public class NetworkPreferencePanel extends PreferencePanel implements ActionLis
         ftpPortField.setValue(Integer.valueOf(NetworkPreferences.getProxyFTPPort()));
         socksHostField.setText(NetworkPreferences.getProxySOCKSHost());
         socksPortField.setValue(Integer.valueOf(NetworkPreferences.getProxySOCKSPort()));
+        maxDownloadsField.setValue(Integer.valueOf(NetworkPreferences.getMaxDownloads()));
+        offlineCheckBox.setSelected(NetworkPreferences.getOffline());
     }
 
     @Override
@@ -288,6 +320,8 @@ public class NetworkPreferencePanel extends PreferencePanel implements ActionLis
         NetworkPreferences.setProxyFTPPort(((Integer) ftpPortField.getValue()).intValue());
         NetworkPreferences.setProxySOCKSHost(socksHostField.getText());
         NetworkPreferences.setProxySOCKSPort(((Integer) socksPortField.getValue()).intValue());
+        NetworkPreferences.setMaxDownloads(((Integer) maxDownloadsField.getValue()).intValue());
+        NetworkPreferences.setOffline(offlineCheckBox.isSelected());
 
         NetworkUtil.updateNetworkSetting();
     }
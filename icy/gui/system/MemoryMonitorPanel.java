@@ -18,12 +18,14 @@
  */
 package icy.gui.system;
 
+import icy.image.ImageMemoryAccountant;
 import icy.image.ImageUtil;
 import icy.math.UnitUtil;
 import icy.network.NetworkUtil;
 import icy.resource.ResourceUtil;
 import icy.system.SystemUtil;
 import icy.util.ColorUtil;
+import icy.util.EventUtil;
 import icy.util.GraphicsUtil;
 
 import java.awt.BasicStroke;
@@ -87,6 +89,8 @@ public class MemoryMonitorPanel extends JPanel implements MouseListener
         setPreferredSize(new Dimension(140, 55));
 
         addMouseListener(this);
+        // register to tooltip manager (text is computed on demand)
+        setToolTipText("");
 
         updateTimer.scheduleAtFixedRate(new TimerTask()
         {
@@ -98,6 +102,13 @@ public class MemoryMonitorPanel extends JPanel implements MouseListener
         }, 100, 100);
     }
 
+    @Override
+    public String getToolTipText()
+    {
+        return "Image data: " + UnitUtil.getBytesString(ImageMemoryAccountant.getImageBytes()) + "  (Peak: "
+                + UnitUtil.getBytesString(ImageMemoryAccountant.getPeakImageBytes()) + ")";
+    }
+
     @Override
     protected void paintComponent(Graphics g)
     {
@@ -199,7 +210,7 @@ public class MemoryMonitorPanel extends JPanel implements MouseListener
 
         if (displayHelpMessage)
         {
-            text = "click to force a garbage collector event";
+            text = "click: force GC / right click: task monitor";
             g2.setColor(Color.black);
             GraphicsUtil.drawHCenteredString(g2, text, (w / 2) + 1, 44 + 1, false);
             g2.setColor(Color.white);
@@ -251,6 +262,12 @@ public class MemoryMonitorPanel extends JPanel implements MouseListener
     @Override
     public void mouseClicked(MouseEvent arg0)
     {
+        if (EventUtil.isRightMouseButton(arg0))
+        {
+            ProcessorMonitorPanel.showFrame();
+            return;
+        }
+
         final double freeBefore = SystemUtil.getJavaFreeMemory();
         System.gc();
         final double freeAfter = SystemUtil.getJavaFreeMemory();
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.gui.system;
+
+import icy.gui.frame.IcyFrame;
+import icy.system.thread.Processor;
+import icy.system.thread.ProcessorMonitor;
+import icy.system.thread.ProcessorStatistics.TaskStatistics;
+import icy.system.thread.ProcessorStatistics.TimeHistogram;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Display state and execution statistics of all {@link Processor}.<br>
+ * Values are refreshed every second while the panel is displayed.
+ * 
+ * @author Stephane
+ */
+public class ProcessorMonitorPanel extends JPanel implements ActionListener
+{
+    private static final long serialVersionUID = -4376245014436392516L;
+
+    static class RowTableModel extends AbstractTableModel
+    {
+        private static final long serialVersionUID = 2853018592431795034L;
+
+        final String[] columnNames;
+        final Class<?>[] columnClasses;
+        List<Object[]> rows;
+
+        public RowTableModel(String[] columnNames, Class<?>[] columnClasses)
+        {
+            super();
+
+            this.columnNames = columnNames;
+            this.columnClasses = columnClasses;
+            rows = new ArrayList<Object[]>();
+        }
+
+        public void setRows(List<Object[]> rows)
+        {
+            this.rows = rows;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount()
+        {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount()
+        {
+            return columnNames.length;
+        }
+
+        @Override
+        public String getColumnName(int column)
+        {
+            return columnNames[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int columnIndex)
+        {
+            return columnClasses[columnIndex];
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex)
+        {
+            return rows.get(rowIndex)[columnIndex];
+        }
+    }
+
+    /**
+     * Show the processor monitor in a new frame.
+     */
+    public static IcyFrame showFrame()
+    {
+        final IcyFrame result = new IcyFrame("Task monitor", true, true, true, true);
+
+        result.getContentPane().setLayout(new BorderLayout());
+        result.getContentPane().add(new ProcessorMonitorPanel(), BorderLayout.CENTER);
+        result.setPreferredSize(new Dimension(720, 400));
+        result.addToMainDesktopPane();
+        result.pack();
+        result.center();
+        result.setVisible(true);
+        result.requestFocus();
+
+        return result;
+    }
+
+    final JCheckBox enabledCheckBox;
+    final JButton resetButton;
+    final RowTableModel processorModel;
+    final RowTableModel taskModel;
+    final Timer refreshTimer;
+
+    public ProcessorMonitorPanel()
+    {
+        super();
+
+        enabledCheckBox = new JCheckBox("Record task timing", ProcessorMonitor.isEnabled());
+        enabledCheckBox.setToolTipText("Record queue latency and execution time of tasks (small overhead)");
+        enabledCheckBox.addActionListener(this);
+        resetButton = new JButton("Reset");
+        resetButton.setToolTipText("Clear all statistics");
+        resetButton.addActionListener(this);
+
+        processorModel = new RowTableModel(new String[] {"Processor", "Active", "Max", "Waiting", "Completed",
+                "Rejected"}, new Class<?>[] {String.class, Integer.class, Integer.class, Integer.class, Long.class,
+                Long.class});
+        taskModel = new RowTableModel(new String[] {"Processor", "Task", "Count", "Queue mean (ms)",
+                "Queue p95 (ms)", "Queue max (ms)", "Exec mean (ms)", "Exec p95 (ms)", "Exec max (ms)",
+                "Exec total (ms)"}, new Class<?>[] {String.class, String.class, Long.class, Double.class,
+                Double.class, Double.class, Double.class, Double.class, Double.class, Double.class});
+
+        final JTable processorTable = new JTable(processorModel);
+        processorTable.setAutoCreateRowSorter(true);
+        final JTable taskTable = new JTable(taskModel);
+        taskTable.setAutoCreateRowSorter(true);
+
+        final JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        topPanel.add(enabledCheckBox);
+        topPanel.add(resetButton);
+
+        final JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(processorTable),
+                new JScrollPane(taskTable));
+        splitPane.setResizeWeight(0.4d);
+
+        setLayout(new BorderLayout());
+        add(topPanel, BorderLayout.NORTH);
+        add(splitPane, BorderLayout.CENTER);
+
+        refreshTimer = new Timer(1000, this);
+        refreshTimer.setInitialDelay(0);
+    }
+
+    @Override
+    public void addNotify()
+    {
+        super.addNotify();
+
+        refreshTimer.start();
+    }
+
+    @Override
+    public void removeNotify()
+    {
+        // no need to refresh anymore
+        refreshTimer.stop();
+
+        super.removeNotify();
+    }
+
+    void refresh()
+    {
+        final List<Object[]> processorRows = new ArrayList<Object[]>();
+        final List<Object[]> taskRows = new ArrayList<Object[]>();
+
+        for (Processor processor : ProcessorMonitor.getProcessors())
+        {
+            final String name = processor.getDefaultThreadName();
+
+            processorRows.add(new Object[] {name, Integer.valueOf(processor.getActiveCount()),
+                    Integer.valueOf(processor.getMaximumPoolSize()),
+                    Integer.valueOf(processor.getWaitingTasksCount()),
+                    Long.valueOf(processor.getCompletedTaskCount()),
+                    Long.valueOf(processor.getStatistics().getRejectedCount())});
+
+            for (TaskStatistics stats : processor.getStatistics().getTaskStatistics())
+            {
+                final TimeHistogram queue = stats.getQueueTime();
+                final TimeHistogram exec = stats.getExecutionTime();
+
+                taskRows.add(new Object[] {name, stats.getTaskClassName(), Long.valueOf(stats.getCount()),
+                        Double.valueOf(ProcessorMonitor.toMs(queue.getMean())),
+                        Double.valueOf(ProcessorMonitor.toMs(queue.getPercentile(95d))),
+                        Double.valueOf(ProcessorMonitor.toMs(queue.getMax())),
+                        Double.valueOf(ProcessorMonitor.toMs(exec.getMean())),
+                        Double.valueOf(ProcessorMonitor.toMs(exec.getPercentile(95d))),
+                        Double.valueOf(ProcessorMonitor.toMs(exec.getMax())),
+                        Double.valueOf(ProcessorMonitor.toMs(exec.getTotal()))});
+            }
+        }
+
+        processorModel.setRows(processorRows);
+        taskModel.setRows(taskRows);
+        enabledCheckBox.setSelected(ProcessorMonitor.isEnabled());
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e)
+    {
+        final Object source = e.getSource();
+
+        if (source == enabledCheckBox)
+            ProcessorMonitor.setEnabled(enabledCheckBox.isSelected());
+        else if (source == resetButton)
+            ProcessorMonitor.reset();
+
+        refresh();
+    }
+}
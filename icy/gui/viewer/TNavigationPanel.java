@@ -23,6 +23,7 @@ import icy.gui.component.button.IcyButton;
 import icy.gui.component.button.IcyToggleButton;
 import icy.gui.util.ComponentUtil;
 import icy.gui.util.GuiUtil;
+import icy.math.FPSMeter;
 import icy.resource.icon.IcyIcon;
 import icy.system.thread.ThreadUtil;
 
@@ -66,8 +67,13 @@ public class TNavigationPanel extends JPanel
     final IcyButton play, stop;
     final IcyToggleButton loop;
     final JSpinner frameRate;
+    final JLabel frameRateLabel;
 
     final Timer timer;
+    /**
+     * effective playback frame rate (frames really displayed)
+     */
+    final FPSMeter fpsMeter;
 
     public TNavigationPanel()
     {
@@ -97,6 +103,7 @@ public class TNavigationPanel extends JPanel
         });
         ComponentUtil.setFixedHeight(slider, 22);
 
+        fpsMeter = new FPSMeter();
         timer = new Timer(1000 / DEFAULT_FRAME_RATE, new ActionListener()
         {
             @Override
@@ -104,6 +111,8 @@ public class TNavigationPanel extends JPanel
             {
                 final int oldT = getTPosition();
 
+                frameRateLabel.setToolTipText("Frames Per Second (achieved : " + getAchievedFrameRate() + ")");
+
                 incTPosition();
 
                 // end reached ?
@@ -209,7 +218,7 @@ public class TNavigationPanel extends JPanel
         final JPanel rightPanel = new JPanel();
         rightPanel.setLayout(new BoxLayout(rightPanel, BoxLayout.LINE_AXIS));
 
-        final JLabel frameRateLabel = new JLabel("FPS");
+        frameRateLabel = new JLabel("FPS");
         frameRateLabel.setToolTipText("Frames Per Second");
 
         rightPanel.add(rightLabel);
@@ -280,6 +289,29 @@ public class TNavigationPanel extends JPanel
         frameRate.setValue(Integer.valueOf(fps));
     }
 
+    /**
+     * Returns the frame rate (given in frame per second) really achieved by the display during
+     * play command.
+     * 
+     * @see #getFrameRate()
+     * @see #frameDisplayed()
+     */
+    public int getAchievedFrameRate()
+    {
+        return fpsMeter.getFPS();
+    }
+
+    /**
+     * Notify that a new frame has been displayed, used to compute the achieved frame rate during
+     * play command.
+     * 
+     * @see #getAchievedFrameRate()
+     */
+    public void frameDisplayed()
+    {
+        fpsMeter.update();
+    }
+
     /**
      * Returns true if <code>repeat</code> is enabled for play command.
      */
@@ -312,6 +344,7 @@ public class TNavigationPanel extends JPanel
      */
     public void startPlay()
     {
+        fpsMeter.reset();
         timer.start();
         play.setVisible(false);
         stop.setVisible(true);
@@ -327,6 +360,7 @@ public class TNavigationPanel extends JPanel
         timer.stop();
         stop.setVisible(false);
         play.setVisible(true);
+        frameRateLabel.setToolTipText("Frames Per Second");
     }
 
     /**
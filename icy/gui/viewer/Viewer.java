@@ -1029,6 +1029,20 @@ public class Viewer extends IcyFrame implements KeyListener, SequenceListener, I
             tNav.setFrameRate(fps);
     }
 
+    /**
+     * Returns the frame rate (given in frame per second) really achieved by the display during
+     * play command.
+     */
+    public int getAchievedFrameRate()
+    {
+        final TNavigationPanel tNav = getTNavigationPanel();
+
+        if (tNav != null)
+            return tNav.getAchievedFrameRate();
+
+        return 0;
+    }
+
     /**
      * Returns true if <code>repeat</code> is enabled for play command.
      */
@@ -20,9 +20,8 @@ package icy.image;
 
 import icy.image.lut.LUT;
 import icy.math.Scaler;
-import icy.system.SystemUtil;
-import icy.system.thread.Processor;
-import icy.system.thread.ThreadUtil;
+import icy.system.thread.Parallel;
+import icy.system.thread.Parallel.ForBody;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
@@ -33,156 +32,30 @@ import java.awt.image.DataBufferInt;
 class ARGBImageBuilder
 {
     private static final int BLOC_SIZE = 256 * 256;
-    private static final int PARALLEL_PROCESS = SystemUtil.getAvailableProcessors() * 2;
 
-    private class BlockBuilder implements Runnable
-    {
-        /**
-         * working buffer
-         */
-        int[][] componentValues;
-
-        /**
-         * processor
-         */
-        private Processor processor;
-
-        /**
-         * processing flag
-         */
-        boolean processing;
-
-        /**
-         * cached variables
-         */
-        private IcyBufferedImage image;
-        private LUT lut;
-        private int dest[];
-        private int offset;
-        private int length;
-        private int numChannel;
-
-        BlockBuilder()
-        {
-            super();
-
-            // default
-            componentValues = new int[0][0];
-
-            // no queue
-            processor = new Processor(1, 1);
-            processor.setDefaultThreadName("ARGB Image builder");
-            // don't change priority else our image won't never be build if
-            // normal priority thread take all available time
-            // processor.setPriority(Processor.MIN_PRIORITY + 1);
-            processing = false;
-        }
-
-        private boolean prepare(IcyBufferedImage image, LUT lut, int[] dest, int offset, int length)
-        {
-            this.image = image;
-            // use internal lut if specified lut is null
-            if (lut == null)
-                this.lut = image.getLUT();
-            else
-                this.lut = lut;
-            this.dest = dest;
-            this.offset = offset;
-            this.length = length;
-
-            numChannel = image.getSizeC();
-
-            if (lut.getNumChannel() != numChannel)
-            {
-                System.err.println("ARGBImageBuilder.prepare(...): LUT.numChannel != IMAGE.numChannel");
-                return false;
-            }
-
-            return true;
-        }
+    /**
+     * working buffer (per thread)
+     */
+    static final ThreadLocal<int[][]> componentValues = new ThreadLocal<int[][]>();
 
-        private void clean()
-        {
-            // release reference
-            image = null;
-            lut = null;
-            dest = null;
-        }
+    static int[][] getComponentValues(int numChannel)
+    {
+        int[][] result = componentValues.get();
 
-        boolean build(IcyBufferedImage image, LUT lut, int dest[], int offset, int length)
+        // rebuild buffer if needed
+        if ((result == null) || (result.length != numChannel))
         {
-            synchronized (this)
-            {
-                if (processing)
-                    return false;
-                processing = true;
-            }
-
-            // prepare variables
-            if (prepare(image, lut, dest, offset, length))
-            {
-                // add task
-                if (processor.submit(this) != null)
-                    return true;
-
-                synchronized (this)
-                {
-                    processing = false;
-                }
-
-                // task not added
-                return false;
-            }
-
-            synchronized (this)
-            {
-                processing = false;
-            }
-
-            // error while preparing (synchronization error) --> ignore
-            return true;
-        }
-
-        @Override
-        public void run()
-        {
-            try
-            {
-                // rebuild buffer if needed
-                if (componentValues.length != numChannel)
-                    componentValues = new int[numChannel][BLOC_SIZE];
-
-                // update output image buffer
-                final Scaler[] scalers = lut.getScalers();
-                final boolean signed = image.getIcyColorModel().getDataType_().isSigned();
-
-                // scale component values
-                for (int comp = 0; comp < numChannel; comp++)
-                    scalers[comp].scale(image.getDataXY(comp), offset, componentValues[comp], 0, length, signed);
-
-                // build ARGB destination buffer
-                lut.getColorSpace().fillARGBBuffer(componentValues, dest, offset, length);
-            }
-            catch (Exception E)
-            {
-                // we just ignore any exceptions here as we can be in asynch process
-            }
-            finally
-            {
-                // clean up
-                clean();
-
-                synchronized (this)
-                {
-                    processing = false;
-                }
-            }
+            result = new int[numChannel][BLOC_SIZE];
+            componentValues.set(result);
         }
 
+        return result;
     }
 
-    // builders
-    private final BlockBuilder builders[];
+    /**
+     * processing flag
+     */
+    private volatile boolean processing;
 
     /**
      * 
@@ -191,9 +64,7 @@ class ARGBImageBuilder
     {
         super();
 
-        builders = new BlockBuilder[PARALLEL_PROCESS];
-        for (int i = 0; i < PARALLEL_PROCESS; i++)
-            builders[i] = new BlockBuilder();
+        processing = false;
     }
 
     private BufferedImage getImage(IcyBufferedImage in, BufferedImage out)
@@ -204,75 +75,64 @@ class ARGBImageBuilder
         return new BufferedImage(in.getWidth(), in.getHeight(), BufferedImage.TYPE_INT_ARGB);
     }
 
-    synchronized BufferedImage buildARGBImage(IcyBufferedImage image, LUT lut, BufferedImage out)
+    synchronized BufferedImage buildARGBImage(final IcyBufferedImage image, LUT lut, BufferedImage out)
     {
+        // use internal lut if specified lut is null
+        final LUT l = (lut == null) ? image.getLUT() : lut;
         // planar size
         final int imageSize = image.getSizeX() * image.getSizeY();
-        final int step = imageSize / BLOC_SIZE;
+        final int numChannel = image.getSizeC();
         final BufferedImage result = getImage(image, out);
         // destination buffer
         final int[] dest = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
 
-        int offset = 0;
-        for (int i = 0; i < step; i++)
+        if (l.getNumChannel() != numChannel)
         {
-            // build bloc
-            sendBuild(image, lut, dest, offset, BLOC_SIZE);
-            offset += BLOC_SIZE;
+            System.err.println("ARGBImageBuilder.buildARGBImage(...): LUT.numChannel != IMAGE.numChannel");
+            return result;
         }
 
-        // last bloc
-        if (offset < imageSize)
-            sendBuild(image, lut, dest, offset, imageSize - offset);
-
-        // wait until image is built
-        waitCompletion();
+        final Scaler[] scalers = l.getScalers();
+        final boolean signed = image.getIcyColorModel().getDataType_().isSigned();
 
-        return result;
-    }
-
-    private void sendBuild(IcyBufferedImage image, LUT lut, int dest[], int offset, int length)
-    {
-        boolean done = false;
-
-        while (!done)
+        processing = true;
+        try
         {
-            final BlockBuilder builder = getAvailableBuilder();
-            done = builder.build(image, lut, dest, offset, length);
+            // build blocs in parallel (shared pool, the calling thread works too)
+            Parallel.forRange(0, imageSize, BLOC_SIZE, new ForBody()
+            {
+                @Override
+                public void run(int from, int to)
+                {
+                    try
+                    {
+                        final int[][] values = getComponentValues(numChannel);
+                        final int length = to - from;
+
+                        // scale component values
+                        for (int comp = 0; comp < numChannel; comp++)
+                            scalers[comp].scale(image.getDataXY(comp), from, values[comp], 0, length, signed);
+
+                        // build ARGB destination buffer
+                        l.getColorSpace().fillARGBBuffer(values, dest, from, length);
+                    }
+                    catch (Exception E)
+                    {
+                        // we just ignore any exceptions here as we can be in asynch process
+                    }
+                }
+            });
         }
-    }
-
-    /**
-     * Get first available builder, wait until we get one
-     */
-    private BlockBuilder getAvailableBuilder()
-    {
-        while (true)
+        finally
         {
-            for (BlockBuilder builder : builders)
-                if (!builder.processing)
-                    return builder;
-
-            // allow other thread to process
-            ThreadUtil.sleep(1);
+            processing = false;
         }
-    }
-
-    boolean isProcessing()
-    {
-        for (BlockBuilder builder : builders)
-            if (builder.processing)
-                return true;
 
-        return false;
+        return result;
     }
 
-    /**
-     * wait until all process ended
-     */
-    private void waitCompletion()
+    boolean isProcessing()
     {
-        while (isProcessing())
-            ThreadUtil.sleep(1);
+        return processing;
     }
 }
@@ -367,7 +367,8 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
                     {
                         ByteArrayConvert.byteArrayTo(byteData, inOffset, rgbChanCount, data[c + sc], 0, 1,
                                 componentByteLen, little);
-                        inOffset++;
+                        // interleaved components are one sample (not one byte) apart
+                        inOffset += dataType.getSize();
                     }
                 }
                 else
@@ -496,7 +497,8 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
 
         // build data array
         if (interleaved)
-            ByteArrayConvert.byteArrayTo(byteData, subC, rgbChanCount, data, 0, 1, componentByteLen, little);
+            ByteArrayConvert.byteArrayTo(byteData, subC * dataType.getSize(), rgbChanCount, data, 0, 1, componentByteLen,
+                    little);
         else
             ByteArrayConvert.byteArrayTo(byteData, subC * componentByteLen, 1, data, 0, 1, componentByteLen, little);
 
@@ -587,7 +589,8 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
                 {
                     ByteArrayConvert.byteArrayTo(byteData, inOffset, rgbChanCount, data[c + sc], 0, 1,
                             componentByteLen, little);
-                    inOffset++;
+                    // interleaved components are one sample (not one byte) apart
+                    inOffset += dataType.getSize();
                 }
             }
             else
@@ -751,6 +754,10 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
      * listeners
      */
     private final EventListenerList listeners;
+    /**
+     * memory accounting
+     */
+    final ImageMemoryAccountant.ImageEntry memoryEntry;
 
     /**
      * Build an Icy formatted BufferedImage, takes an IcyColorModel and a WritableRaster as input
@@ -777,6 +784,10 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
 
         // add listener to colorModel
         cm.addListener(this);
+
+        // account image data memory
+        memoryEntry = ImageMemoryAccountant.track(this, (long) wr.getWidth() * (long) wr.getHeight()
+                * cm.getNumComponents() * cm.getDataType_().getSize());
     }
 
     /**
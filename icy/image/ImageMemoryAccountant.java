@@ -0,0 +1,601 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image;
+
+import icy.math.UnitUtil;
+import icy.system.SystemUtil;
+import icy.system.thread.ThreadUtil;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EventListener;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.swing.event.EventListenerList;
+
+/**
+ * Keep trace of the memory used by {@link IcyBufferedImage} data.<br>
+ * Each image is accounted from its creation until it is garbage collected and can be attributed to
+ * an owner (the {@link icy.sequence.Sequence} it belongs to for instance) so we know where the
+ * memory goes.<br>
+ * <br>
+ * Caches (prefetched frames, rendering buffers...) can register a
+ * {@link MemoryPressureListener} to be notified when the heap is getting full so they can release
+ * memory before we hit an <code>OutOfMemoryError</code>.
+ * 
+ * @author Stephane
+ */
+public class ImageMemoryAccountant
+{
+    /**
+     * Memory pressure level.
+     */
+    public static enum MemoryPressure
+    {
+        /**
+         * enough free memory
+         */
+        NONE,
+        /**
+         * heap is getting full, caches should release what they don't really need
+         */
+        MODERATE,
+        /**
+         * heap is almost full, caches should release everything they can
+         */
+        CRITICAL
+    }
+
+    /**
+     * Listener notified when memory is getting low.
+     */
+    public interface MemoryPressureListener extends EventListener
+    {
+        /**
+         * Memory is getting low, release some memory.<br>
+         * Called from a background thread.
+         * 
+         * @param level
+         *        pressure level
+         * @param wanted
+         *        amount of memory (in bytes) we would like to get back (0 if unknown)
+         */
+        public void memoryPressure(MemoryPressure level, long wanted);
+    }
+
+    /**
+     * Accounting of a single image (cleared when the image is garbage collected).
+     */
+    static class ImageEntry extends WeakReference<IcyBufferedImage>
+    {
+        final long size;
+        volatile WeakReference<Object> owner;
+
+        ImageEntry(IcyBufferedImage image, long size, ReferenceQueue<IcyBufferedImage> queue)
+        {
+            super(image, queue);
+
+            this.size = size;
+            owner = null;
+        }
+
+        Object getOwner()
+        {
+            final WeakReference<Object> ref = owner;
+
+            if (ref == null)
+                return null;
+
+            return ref.get();
+        }
+    }
+
+    /**
+     * heap usage ratio for pressure levels
+     */
+    public static final double MODERATE_RATIO = 0.75d;
+    public static final double CRITICAL_RATIO = 0.90d;
+
+    /**
+     * minimum delay between 2 notifications of the same level (ms)
+     */
+    private static final long NOTIFICATION_DELAY = 2000L;
+    /**
+     * amount of image data (in bytes) allocated between 2 heap usage checks
+     */
+    private static final long CHECK_BYTES = 16L * 1024L * 1024L;
+
+    private static final ReferenceQueue<IcyBufferedImage> queue = new ReferenceQueue<IcyBufferedImage>();
+    private static final Set<ImageEntry> entries = Collections
+            .newSetFromMap(new ConcurrentHashMap<ImageEntry, Boolean>());
+    private static final EventListenerList listeners = new EventListenerList();
+
+    private static final AtomicLong imageBytes = new AtomicLong(0L);
+    private static final AtomicLong peakImageBytes = new AtomicLong(0L);
+    private static final AtomicLong uncheckedBytes = new AtomicLong(0L);
+
+    private static final Object notificationLock = new Object();
+    private static long lastNotification = 0L;
+    private static MemoryPressure lastLevel = MemoryPressure.NONE;
+
+    /**
+     * tenured (old generation) heap pool
+     */
+    private static final MemoryPoolMXBean tenuredPool = findTenuredPool();
+
+    static
+    {
+        installUsageThresholds();
+    }
+
+    /**
+     * Returns the tenured (old generation) heap pool, that is the heap pool supporting usage
+     * thresholds (eden and survivor pools don't), or <code>null</code> if not found.
+     */
+    private static MemoryPoolMXBean findTenuredPool()
+    {
+        try
+        {
+            MemoryPoolMXBean result = null;
+
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            {
+                if ((pool.getType() == MemoryType.HEAP) && pool.isUsageThresholdSupported()
+                        && pool.isCollectionUsageThresholdSupported())
+                {
+                    final String name = pool.getName();
+
+                    // several candidates --> prefer the one named as the old generation
+                    if ((result == null) || name.contains("Old") || name.contains("Tenured"))
+                        result = pool;
+                }
+            }
+
+            return result;
+        }
+        catch (Throwable t)
+        {
+            // not supported here
+            return null;
+        }
+    }
+
+    /**
+     * Ask the JVM to notify us when the tenured pool usage after garbage collection exceeds the
+     * moderate ratio (this is the most reliable information as it does not count garbage).
+     */
+    private static void installUsageThresholds()
+    {
+        if (tenuredPool == null)
+            return;
+
+        try
+        {
+            final long max = tenuredPool.getUsage().getMax();
+
+            if (max > 0)
+            {
+                // don't override a threshold defined by someone else
+                if (tenuredPool.getCollectionUsageThreshold() == 0)
+                    tenuredPool.setCollectionUsageThreshold((long) (max * MODERATE_RATIO));
+
+                ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(
+                        new NotificationListener()
+                        {
+                            @Override
+                            public void handleNotification(Notification notification, Object handback)
+                            {
+                                if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification
+                                        .getType()))
+                                    return;
+
+                                final MemoryNotificationInfo info = MemoryNotificationInfo
+                                        .from((CompositeData) notification.getUserData());
+
+                                // only consider the tenured pool (threshold may be set on others)
+                                if (tenuredPool.getName().equals(info.getPoolName()))
+                                    checkMemoryPressure(0L, true);
+                            }
+                        }, null, null);
+            }
+        }
+        catch (Throwable t)
+        {
+            // not supported here, we will only rely on allocation checks
+        }
+    }
+
+    /**
+     * Register a new image (called by {@link IcyBufferedImage} constructor).<br>
+     * Lock free, the heap usage is only checked each time {@link #CHECK_BYTES} of image data have
+     * been allocated.
+     */
+    static ImageEntry track(IcyBufferedImage image, long size)
+    {
+        final ImageEntry result = new ImageEntry(image, size, queue);
+
+        purge();
+
+        entries.add(result);
+        updatePeak(imageBytes.addAndGet(size));
+
+        // quick check on heap usage
+        if (uncheckedBytes.addAndGet(size) >= CHECK_BYTES)
+        {
+            uncheckedBytes.set(0L);
+
+            if (getHeapUsageRatio() > MODERATE_RATIO)
+                checkMemoryPressure(0L, false);
+        }
+
+        return result;
+    }
+
+    private static void updatePeak(long bytes)
+    {
+        long peak = peakImageBytes.get();
+
+        while ((bytes > peak) && !peakImageBytes.compareAndSet(peak, bytes))
+            peak = peakImageBytes.get();
+    }
+
+    /**
+     * Remove entries of garbage collected images.
+     */
+    private static void purge()
+    {
+        Reference<? extends IcyBufferedImage> ref;
+
+        while ((ref = queue.poll()) != null)
+        {
+            if (entries.remove(ref))
+                imageBytes.addAndGet(-((ImageEntry) ref).size);
+        }
+    }
+
+    /**
+     * Set the owner of the specified image (a {@link icy.sequence.Sequence} for instance).<br>
+     * The owner is weakly referenced.
+     */
+    public static void setOwner(IcyBufferedImage image, Object owner)
+    {
+        final ImageEntry entry = image.memoryEntry;
+
+        if (entry != null)
+        {
+            if (owner == null)
+                entry.owner = null;
+            else
+                entry.owner = new WeakReference<Object>(owner);
+        }
+    }
+
+    /**
+     * Remove the owner of the specified image if it is the specified one.
+     */
+    public static void releaseOwner(IcyBufferedImage image, Object owner)
+    {
+        final ImageEntry entry = image.memoryEntry;
+
+        if ((entry != null) && (entry.getOwner() == owner))
+            entry.owner = null;
+    }
+
+    /**
+     * Returns the owner of the specified image (<code>null</code> if none).
+     */
+    public static Object getOwner(IcyBufferedImage image)
+    {
+        final ImageEntry entry = image.memoryEntry;
+
+        if (entry != null)
+            return entry.getOwner();
+
+        return null;
+    }
+
+    /**
+     * Returns the amount of memory (in bytes) used by image data which has not yet been garbage
+     * collected.
+     */
+    public static long getImageBytes()
+    {
+        purge();
+        return imageBytes.get();
+    }
+
+    /**
+     * Returns the high-water mark of memory (in bytes) used by image data.
+     */
+    public static long getPeakImageBytes()
+    {
+        return peakImageBytes.get();
+    }
+
+    /**
+     * Reset the high-water mark to the current memory usage.
+     */
+    public static void resetPeakImageBytes()
+    {
+        purge();
+        peakImageBytes.set(imageBytes.get());
+    }
+
+    /**
+     * Returns the number of images accounted.
+     */
+    public static int getImageCount()
+    {
+        purge();
+        return entries.size();
+    }
+
+    /**
+     * Returns the amount of memory (in bytes) used by image data of the specified owner
+     * (<code>null</code> for images without owner).
+     */
+    public static long getOwnerBytes(Object owner)
+    {
+        long result = 0L;
+
+        purge();
+
+        for (ImageEntry entry : entries)
+            if ((entry.get() != null) && (entry.getOwner() == owner))
+                result += entry.size;
+
+        return result;
+    }
+
+    /**
+     * Returns the amount of memory (in bytes) used by image data for each owner (images without
+     * owner are accounted with the <code>null</code> key).
+     */
+    public static Map<Object, Long> getBytesPerOwner()
+    {
+        final Map<Object, Long> result = new IdentityHashMap<Object, Long>();
+
+        purge();
+
+        for (ImageEntry entry : entries)
+        {
+            if (entry.get() == null)
+                continue;
+
+            final Object owner = entry.getOwner();
+            final Long value = result.get(owner);
+
+            if (value == null)
+                result.put(owner, Long.valueOf(entry.size));
+            else
+                result.put(owner, Long.valueOf(value.longValue() + entry.size));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a human readable memory report (one line per owner).
+     */
+    public static List<String> getReport()
+    {
+        final List<String> result = new ArrayList<String>();
+
+        result.add("Image data: " + UnitUtil.getBytesString(getImageBytes()) + " (peak: "
+                + UnitUtil.getBytesString(getPeakImageBytes()) + ", images: " + getImageCount() + ")");
+
+        for (Entry<Object, Long> entry : getBytesPerOwner().entrySet())
+        {
+            final Object owner = entry.getKey();
+            final String name = (owner == null) ? "not owned" : owner.toString();
+
+            result.add("  " + name + ": " + UnitUtil.getBytesString(entry.getValue().longValue()));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the current heap usage ratio (used / max).
+     */
+    public static double getHeapUsageRatio()
+    {
+        final double max = SystemUtil.getJavaMaxMemory();
+
+        if (max <= 0d)
+            return 0d;
+
+        return (SystemUtil.getJavaTotalMemory() - SystemUtil.getJavaFreeMemory()) / max;
+    }
+
+    /**
+     * Returns the tenured (old generation) pool usage ratio measured after the last garbage
+     * collection (does not count garbage) or the current heap usage ratio if not available.
+     */
+    public static double getCollectedHeapUsageRatio()
+    {
+        double result = -1d;
+
+        if (tenuredPool != null)
+        {
+            try
+            {
+                final MemoryUsage usage = tenuredPool.getCollectionUsage();
+
+                if ((usage != null) && (usage.getMax() > 0))
+                    result = (double) usage.getUsed() / (double) usage.getMax();
+            }
+            catch (Throwable t)
+            {
+                // ignore
+            }
+        }
+
+        if (result < 0d)
+            return getHeapUsageRatio();
+
+        return result;
+    }
+
+    /**
+     * Returns the current memory pressure level.
+     */
+    public static MemoryPressure getMemoryPressure()
+    {
+        // heap usage may contains garbage so take the lowest value
+        final double ratio = Math.min(getHeapUsageRatio(), getCollectedHeapUsageRatio());
+
+        if (ratio >= CRITICAL_RATIO)
+            return MemoryPressure.CRITICAL;
+        if (ratio >= MODERATE_RATIO)
+            return MemoryPressure.MODERATE;
+
+        return MemoryPressure.NONE;
+    }
+
+    /**
+     * Check if we can allocate the specified amount of memory without going over the critical
+     * memory level, if not registered listeners are asked to release memory.<br>
+     * Use it before a large allocation.
+     * 
+     * @param bytes
+     *        amount of memory we want to allocate
+     * @return <code>true</code> if enough memory seems available
+     */
+    public static boolean ensureAvailable(long bytes)
+    {
+        final double max = SystemUtil.getJavaMaxMemory();
+        final double used = SystemUtil.getJavaTotalMemory() - SystemUtil.getJavaFreeMemory();
+        final double available = (max * CRITICAL_RATIO) - used;
+
+        if (available >= bytes)
+            return true;
+
+        // synchronous notification as we want the memory now
+        fireMemoryPressure(MemoryPressure.CRITICAL, (long) (bytes - available));
+
+        return ((max * CRITICAL_RATIO) - (SystemUtil.getJavaTotalMemory() - SystemUtil.getJavaFreeMemory())) >= bytes;
+    }
+
+    /**
+     * Check memory pressure and notify listeners if needed.
+     * 
+     * @param wanted
+     *        amount of memory we would like to get back (0 if unknown)
+     * @param collected
+     *        <code>true</code> if the check is done just after a garbage collection
+     */
+    static void checkMemoryPressure(final long wanted, boolean collected)
+    {
+        final MemoryPressure level;
+
+        if (collected)
+        {
+            final double ratio = getCollectedHeapUsageRatio();
+
+            if (ratio >= CRITICAL_RATIO)
+                level = MemoryPressure.CRITICAL;
+            else if (ratio >= MODERATE_RATIO)
+                level = MemoryPressure.MODERATE;
+            else
+                level = MemoryPressure.NONE;
+        }
+        else
+            level = getMemoryPressure();
+
+        if (level == MemoryPressure.NONE)
+            return;
+
+        synchronized (notificationLock)
+        {
+            final long now = System.currentTimeMillis();
+
+            // avoid notification flood (except if pressure is increasing)
+            if ((level.compareTo(lastLevel) <= 0) && ((now - lastNotification) < NOTIFICATION_DELAY))
+                return;
+
+            lastLevel = level;
+            lastNotification = now;
+        }
+
+        // notify in background (we can be in the middle of an allocation)
+        ThreadUtil.bgRunSingle(ImageMemoryAccountant.class, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                fireMemoryPressure(level, wanted);
+            }
+        });
+    }
+
+    /**
+     * Add a memory pressure listener.<br>
+     * Don't forget to remove it when the listener is not anymore used.
+     */
+    public static void addMemoryPressureListener(MemoryPressureListener listener)
+    {
+        listeners.add(MemoryPressureListener.class, listener);
+    }
+
+    /**
+     * Remove a memory pressure listener.
+     */
+    public static void removeMemoryPressureListener(MemoryPressureListener listener)
+    {
+        listeners.remove(MemoryPressureListener.class, listener);
+    }
+
+    /**
+     * Notify all listeners about memory pressure.
+     */
+    public static void fireMemoryPressure(MemoryPressure level, long wanted)
+    {
+        for (MemoryPressureListener listener : listeners.getListeners(MemoryPressureListener.class))
+        {
+            try
+            {
+                listener.memoryPressure(level, wanted);
+            }
+            catch (Throwable t)
+            {
+                // a listener should not prevent others to release memory
+                System.err.println("ImageMemoryAccountant: error while releasing memory (" + t + ")");
+            }
+        }
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image;
+
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 2D multi channel image stored as fixed size tiles.<br>
+ * Each tile is a separate {@link IcyBufferedImage} (allocated on first write, a missing tile
+ * contains only 0 values) so the whole plane can exceed the maximum java array size
+ * (<code>Integer.MAX_VALUE</code> samples per channel) which is the limit of
+ * {@link IcyBufferedImage}.<br>
+ * Data is accessed by region, accessors walk the tiles intersecting the region and work tile by
+ * tile.
+ * 
+ * @author Stephane
+ */
+public class TiledImage
+{
+    /**
+     * Default tile width and height
+     */
+    public static final int DEFAULT_TILE_SIZE = 1024;
+
+    protected final int sizeX;
+    protected final int sizeY;
+    protected final int sizeC;
+    protected final DataType dataType;
+    protected final int tileWidth;
+    protected final int tileHeight;
+    protected final int numTileX;
+    protected final int numTileY;
+    protected final AtomicReferenceArray<IcyBufferedImage> tiles;
+
+    /**
+     * Create a new tiled image.
+     * 
+     * @param sizeX
+     *        image width
+     * @param sizeY
+     *        image height
+     * @param sizeC
+     *        number of channel
+     * @param dataType
+     *        data type
+     * @param tileWidth
+     *        width of a tile
+     * @param tileHeight
+     *        height of a tile
+     */
+    public TiledImage(int sizeX, int sizeY, int sizeC, DataType dataType, int tileWidth, int tileHeight)
+    {
+        super();
+
+        if ((sizeX <= 0) || (sizeY <= 0) || (sizeC <= 0))
+            throw new IllegalArgumentException("Image size should be > 0");
+        if ((tileWidth <= 0) || (tileHeight <= 0))
+            throw new IllegalArgumentException("Tile size should be > 0");
+
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeC = sizeC;
+        this.dataType = dataType;
+        this.tileWidth = Math.min(tileWidth, sizeX);
+        this.tileHeight = Math.min(tileHeight, sizeY);
+
+        numTileX = (int) ((sizeX + (this.tileWidth - 1L)) / this.tileWidth);
+        numTileY = (int) ((sizeY + (this.tileHeight - 1L)) / this.tileHeight);
+
+        final long numTiles = (long) numTileX * (long) numTileY;
+        if (numTiles > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Tile size is too small for this image");
+
+        tiles = new AtomicReferenceArray<IcyBufferedImage>((int) numTiles);
+    }
+
+    /**
+     * Create a new tiled image with default tile size.
+     */
+    public TiledImage(int sizeX, int sizeY, int sizeC, DataType dataType)
+    {
+        this(sizeX, sizeY, sizeC, dataType, DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE);
+    }
+
+    public int getSizeX()
+    {
+        return sizeX;
+    }
+
+    public int getSizeY()
+    {
+        return sizeY;
+    }
+
+    public int getSizeC()
+    {
+        return sizeC;
+    }
+
+    /**
+     * Returns the number of pixel of the image (can exceed <code>Integer.MAX_VALUE</code>).
+     */
+    public long getNumberOfPixels()
+    {
+        return (long) sizeX * (long) sizeY;
+    }
+
+    public DataType getDataType_()
+    {
+        return dataType;
+    }
+
+    public Rectangle getBounds()
+    {
+        return new Rectangle(0, 0, sizeX, sizeY);
+    }
+
+    public int getTileWidth()
+    {
+        return tileWidth;
+    }
+
+    public int getTileHeight()
+    {
+        return tileHeight;
+    }
+
+    public int getNumTileX()
+    {
+        return numTileX;
+    }
+
+    public int getNumTileY()
+    {
+        return numTileY;
+    }
+
+    /**
+     * Returns the region covered by the specified tile.
+     */
+    public Rectangle getTileBounds(int tileX, int tileY)
+    {
+        final int x = tileX * tileWidth;
+        final int y = tileY * tileHeight;
+
+        return new Rectangle(x, y, Math.min(tileWidth, sizeX - x), Math.min(tileHeight, sizeY - y));
+    }
+
+    /**
+     * Returns the specified tile.
+     * 
+     * @param create
+     *        if <code>true</code> the tile is allocated if needed, otherwise <code>null</code> is
+     *        returned for a never written tile (contains only 0 values).
+     */
+    public IcyBufferedImage getTile(int tileX, int tileY, boolean create)
+    {
+        final int index = (tileY * numTileX) + tileX;
+        final IcyBufferedImage result = tiles.get(index);
+
+        if ((result != null) || !create)
+            return result;
+
+        final Rectangle r = getTileBounds(tileX, tileY);
+        final IcyBufferedImage tile = new IcyBufferedImage(r.width, r.height, sizeC, dataType);
+
+        // another thread may have created it in the meantime
+        if (tiles.compareAndSet(index, null, tile))
+            return tile;
+
+        return tiles.get(index);
+    }
+
+    /**
+     * Return the value located at (x, y, c) position as a double whatever is the internal data
+     * type.
+     */
+    public double getData(int x, int y, int c)
+    {
+        final int tx = x / tileWidth;
+        final int ty = y / tileHeight;
+        final IcyBufferedImage tile = getTile(tx, ty, false);
+
+        if (tile == null)
+            return 0d;
+
+        return tile.getData(x - (tx * tileWidth), y - (ty * tileHeight), c);
+    }
+
+    /**
+     * Set the value located at (x, y, c) position as a double whatever is the internal data type.
+     */
+    public void setData(int x, int y, int c, double value)
+    {
+        final int tx = x / tileWidth;
+        final int ty = y / tileHeight;
+
+        getTile(tx, ty, true).setData(x - (tx * tileWidth), y - (ty * tileHeight), c, value);
+    }
+
+    /**
+     * Returns a copy of the data of the specified region for the given channel (as a 1D array of
+     * the image data type).<br>
+     * The region size should not exceed the maximum java array size.
+     */
+    public Object getDataXY(int c, Rectangle region)
+    {
+        final Rectangle r = region.intersection(getBounds());
+
+        if (r.isEmpty())
+            return Array1DUtil.createArray(dataType, 0);
+
+        final long len = (long) r.width * (long) r.height;
+        if (len > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Region is too large to be stored in a single array");
+
+        final Object result = Array1DUtil.createArray(dataType, (int) len);
+        final int tx0 = r.x / tileWidth;
+        final int tx1 = (r.x + r.width - 1) / tileWidth;
+        final int ty0 = r.y / tileHeight;
+        final int ty1 = (r.y + r.height - 1) / tileHeight;
+
+        for (int ty = ty0; ty <= ty1; ty++)
+        {
+            for (int tx = tx0; tx <= tx1; tx++)
+            {
+                final IcyBufferedImage tile = getTile(tx, ty, false);
+
+                // empty tile: result already contains 0
+                if (tile == null)
+                    continue;
+
+                final Rectangle tr = getTileBounds(tx, ty).intersection(r);
+                final Object in = tile.getDataXY(c);
+                final int tw = tile.getSizeX();
+                int inOff = ((tr.y - (ty * tileHeight)) * tw) + (tr.x - (tx * tileWidth));
+                int outOff = ((tr.y - r.y) * r.width) + (tr.x - r.x);
+
+                for (int y = 0; y < tr.height; y++)
+                {
+                    System.arraycopy(in, inOff, result, outOff, tr.width);
+                    inOff += tw;
+                    outOff += r.width;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the specified region as an {@link IcyBufferedImage} (all channels), subsampled by
+     * the given factor (nearest neighbor).<br>
+     * This is the method to use to display the image (visible region at current zoom level).
+     * 
+     * @param region
+     *        region to retrieve (whole image if <code>null</code>)
+     * @param subsampling
+     *        subsampling factor (1 = full resolution)
+     */
+    public IcyBufferedImage getImage(Rectangle region, int subsampling)
+    {
+        final Rectangle r;
+
+        if (region == null)
+            r = getBounds();
+        else
+            r = region.intersection(getBounds());
+
+        final int sub = Math.max(1, subsampling);
+        final int outW = Math.max(1, (r.width + (sub - 1)) / sub);
+        final int outH = Math.max(1, (r.height + (sub - 1)) / sub);
+
+        if (((long) outW * (long) outH) > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Region is too large for the given subsampling factor");
+
+        final Object[] data = new Object[sizeC];
+
+        for (int c = 0; c < sizeC; c++)
+        {
+            if (sub == 1)
+                data[c] = getDataXY(c, r);
+            else
+            {
+                final Object out = Array1DUtil.createArray(dataType, outW * outH);
+
+                for (int oy = 0; oy < outH; oy++)
+                {
+                    final int y = r.y + (oy * sub);
+                    final int ty = y / tileHeight;
+                    final int ly = y - (ty * tileHeight);
+                    int outOff = oy * outW;
+
+                    for (int ox = 0; ox < outW;)
+                    {
+                        final int x = r.x + (ox * sub);
+                        final int tx = x / tileWidth;
+                        final int tileEnd = Math.min(sizeX, (tx + 1) * tileWidth);
+                        final IcyBufferedImage tile = getTile(tx, ty, false);
+
+                        // process all samples of this tile for the row
+                        if (tile == null)
+                        {
+                            while ((ox < outW) && ((r.x + (ox * sub)) < tileEnd))
+                            {
+                                ox++;
+                                outOff++;
+                            }
+                        }
+                        else
+                        {
+                            final Object in = tile.getDataXY(c);
+                            final int inOff = (ly * tile.getSizeX()) - (tx * tileWidth);
+
+                            while ((ox < outW) && ((r.x + (ox * sub)) < tileEnd))
+                            {
+                                Array1DUtil.setValue(out, outOff++, dataType,
+                                        Array1DUtil.getValue(in, inOff + r.x + (ox * sub), dataType));
+                                ox++;
+                            }
+                        }
+                    }
+                }
+
+                data[c] = out;
+            }
+        }
+
+        return new IcyBufferedImage(outW, outH, data, dataType.isSigned());
+    }
+
+    /**
+     * Copy data from an image (all channels).
+     * 
+     * @param srcImage
+     *        source image
+     * @param srcRect
+     *        source region to copy (assume whole image if null)
+     * @param dstPt
+     *        destination X,Y position (assume [0,0] if null)
+     */
+    public void copyData(IcyBufferedImage srcImage, Rectangle srcRect, Point dstPt)
+    {
+        if (srcImage == null)
+            return;
+
+        final Rectangle src;
+        final Point dst;
+
+        if (srcRect == null)
+            src = new Rectangle(srcImage.getSizeX(), srcImage.getSizeY());
+        else
+            src = srcRect.intersection(new Rectangle(srcImage.getSizeX(), srcImage.getSizeY()));
+        if (dstPt == null)
+            dst = new Point(0, 0);
+        else
+            dst = dstPt;
+
+        // destination region
+        final Rectangle r = new Rectangle(dst.x, dst.y, src.width, src.height).intersection(getBounds());
+
+        if (r.isEmpty())
+            return;
+
+        final int tx0 = r.x / tileWidth;
+        final int tx1 = (r.x + r.width - 1) / tileWidth;
+        final int ty0 = r.y / tileHeight;
+        final int ty1 = (r.y + r.height - 1) / tileHeight;
+
+        for (int ty = ty0; ty <= ty1; ty++)
+        {
+            for (int tx = tx0; tx <= tx1; tx++)
+            {
+                final Rectangle tb = getTileBounds(tx, ty);
+                final Rectangle tr = tb.intersection(r);
+                final Rectangle srcPart = new Rectangle((tr.x - dst.x) + src.x, (tr.y - dst.y) + src.y, tr.width,
+                        tr.height);
+
+                getTile(tx, ty, true).copyData(srcImage, srcPart, new Point(tr.x - tb.x, tr.y - tb.y));
+            }
+        }
+    }
+}
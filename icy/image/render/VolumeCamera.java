@@ -0,0 +1,186 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image.render;
+
+/**
+ * Simple orbital camera used by {@link VolumeRenderer}.<br>
+ * The camera always looks at the volume center, its orientation is defined by an azimuth (rotation
+ * around the vertical axis) and an elevation (rotation around the horizontal axis) expressed in
+ * degree. With azimuth and elevation at 0 the volume is seen as in the 2D canvas (X axis to the
+ * right, Y axis to the bottom, looking through Z).
+ * 
+ * @author Stephane
+ */
+public class VolumeCamera
+{
+    public static final double DEFAULT_FIELD_OF_VIEW = 30d;
+
+    private double azimuth;
+    private double elevation;
+    private double zoom;
+    private boolean perspective;
+    private double fieldOfView;
+
+    public VolumeCamera()
+    {
+        super();
+
+        azimuth = 0d;
+        elevation = 0d;
+        zoom = 1d;
+        perspective = false;
+        fieldOfView = DEFAULT_FIELD_OF_VIEW;
+    }
+
+    /**
+     * Copy constructor
+     */
+    public VolumeCamera(VolumeCamera camera)
+    {
+        super();
+
+        azimuth = camera.azimuth;
+        elevation = camera.elevation;
+        zoom = camera.zoom;
+        perspective = camera.perspective;
+        fieldOfView = camera.fieldOfView;
+    }
+
+    /**
+     * @return the azimuth (in degree)
+     */
+    public double getAzimuth()
+    {
+        return azimuth;
+    }
+
+    /**
+     * Set the azimuth (in degree)
+     */
+    public void setAzimuth(double value)
+    {
+        azimuth = value % 360d;
+    }
+
+    /**
+     * @return the elevation (in degree)
+     */
+    public double getElevation()
+    {
+        return elevation;
+    }
+
+    /**
+     * Set the elevation (in degree)
+     */
+    public void setElevation(double value)
+    {
+        elevation = value % 360d;
+    }
+
+    /**
+     * Rotate the camera from the specified azimuth and elevation delta (in degree)
+     */
+    public void rotate(double deltaAzimuth, double deltaElevation)
+    {
+        setAzimuth(azimuth + deltaAzimuth);
+        setElevation(elevation + deltaElevation);
+    }
+
+    /**
+     * @return the zoom factor (1 = whole volume visible)
+     */
+    public double getZoom()
+    {
+        return zoom;
+    }
+
+    /**
+     * Set the zoom factor (1 = whole volume visible)
+     */
+    public void setZoom(double value)
+    {
+        zoom = Math.max(0.01d, Math.min(100d, value));
+    }
+
+    /**
+     * @return <code>true</code> for perspective projection, <code>false</code> for orthographic
+     *         projection.
+     */
+    public boolean isPerspective()
+    {
+        return perspective;
+    }
+
+    /**
+     * Set perspective (<code>true</code>) or orthographic (<code>false</code>) projection.
+     */
+    public void setPerspective(boolean value)
+    {
+        perspective = value;
+    }
+
+    /**
+     * @return the vertical field of view (in degree) used in perspective projection
+     */
+    public double getFieldOfView()
+    {
+        return fieldOfView;
+    }
+
+    /**
+     * Set the field of view (in degree) used in perspective projection
+     */
+    public void setFieldOfView(double value)
+    {
+        fieldOfView = Math.max(1d, Math.min(170d, value));
+    }
+
+    /**
+     * Returns the camera basis as <code>{forward, right, up}</code> unit vectors.
+     */
+    double[][] getBasis()
+    {
+        final double az = Math.toRadians(azimuth);
+        final double el = Math.toRadians(elevation);
+        final double cosAz = Math.cos(az);
+        final double sinAz = Math.sin(az);
+        final double cosEl = Math.cos(el);
+        final double sinEl = Math.sin(el);
+
+        // default basis (2D view) : forward = +Z, right = +X, up = -Y
+        final double[][] result = new double[][] { {0d, 0d, 1d}, {1d, 0d, 0d}, {0d, -1d, 0d}};
+
+        for (double[] v : result)
+        {
+            // elevation : rotation around X axis
+            final double y = (v[1] * cosEl) - (v[2] * sinEl);
+            final double z1 = (v[1] * sinEl) + (v[2] * cosEl);
+            // azimuth : rotation around Y axis
+            final double x = (v[0] * cosAz) + (z1 * sinAz);
+            final double z = (-v[0] * sinAz) + (z1 * cosAz);
+
+            v[0] = x;
+            v[1] = y;
+            v[2] = z;
+        }
+
+        return result;
+    }
+}
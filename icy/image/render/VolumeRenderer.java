@@ -0,0 +1,905 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image.render;
+
+import icy.image.colormap.IcyColorMap;
+import icy.image.colormap.IcyColorMap.IcyColorMapType;
+import icy.image.lut.LUT;
+import icy.image.lut.LUT.LUTChannel;
+import icy.math.Scaler;
+import icy.sequence.Sequence;
+import icy.system.thread.Parallel;
+import icy.system.thread.Parallel.ForBody;
+import icy.type.collection.array.ArrayUtil;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pure Java volume renderer.<br>
+ * It does not require any native library (as VTK) so it can be used as fallback for 3D display or
+ * to produce 3D snapshots and movies in headless mode.<br>
+ * <br>
+ * The volume is first converted to colormap indexes (using the {@link LUT} scalers) then rendered
+ * by ray casting either in Maximum Intensity Projection or in alpha compositing mode (using the
+ * colormap alpha as opacity). The output image is divided in horizontal tiles rendered in
+ * parallel and a subsampling factor can be used to quickly get a low resolution preview before
+ * the full resolution rendering.
+ * 
+ * @author Stephane
+ */
+public class VolumeRenderer
+{
+    public static enum RenderMode
+    {
+        MIP
+        {
+            @Override
+            public String toString()
+            {
+                return "Maximum intensity";
+            }
+        },
+        COMPOSITE
+        {
+            @Override
+            public String toString()
+            {
+                return "Composite";
+            }
+        };
+    }
+
+    /**
+     * number of image row rendered in a single task
+     */
+    private static final int TILE_HEIGHT = 16;
+    /**
+     * accumulated opacity from which a ray is considered as opaque (composite mode)
+     */
+    private static final float OPACITY_THRESHOLD = 0.99f;
+
+    /**
+     * Render the specified sequence volume and return it as an ARGB image.<br>
+     * This method can be used in headless mode.
+     * 
+     * @param sequence
+     *        sequence to render
+     * @param t
+     *        T position of the volume to render
+     * @param lut
+     *        LUT used for rendering, if <code>null</code> a default LUT (with 3D opacity) is used
+     * @param camera
+     *        camera, if <code>null</code> a default camera is used
+     * @param mode
+     *        rendering mode
+     * @param width
+     *        wanted image width
+     * @param height
+     *        wanted image height
+     */
+    public static BufferedImage renderSnapshot(Sequence sequence, int t, LUT lut, VolumeCamera camera,
+            RenderMode mode, int width, int height)
+    {
+        final VolumeRenderer renderer = new VolumeRenderer();
+
+        if (camera != null)
+            renderer.setCamera(camera);
+        renderer.setRenderMode(mode);
+        renderer.setVolume(sequence, t, -1, (lut != null) ? lut : createDefaultLUT(sequence));
+
+        return renderer.render(null, width, height, 1);
+    }
+
+    /**
+     * Render a 360 degree rotation (around the vertical axis) of the specified sequence volume.<br>
+     * The result sequence contains one ARGB image per frame (T dimension) and can be directly
+     * saved as movie. This method can be used in headless mode.
+     * 
+     * @param sequence
+     *        sequence to render
+     * @param t
+     *        T position of the volume to render
+     * @param lut
+     *        LUT used for rendering, if <code>null</code> a default LUT (with 3D opacity) is used
+     * @param camera
+     *        start camera, if <code>null</code> a default camera is used
+     * @param mode
+     *        rendering mode
+     * @param width
+     *        wanted image width
+     * @param height
+     *        wanted image height
+     * @param numFrame
+     *        number of frame of the rotation
+     */
+    public static Sequence renderRotation(Sequence sequence, int t, LUT lut, VolumeCamera camera, RenderMode mode,
+            int width, int height, int numFrame)
+    {
+        final VolumeRenderer renderer = new VolumeRenderer();
+        final VolumeCamera cam = renderer.getCamera();
+        final Sequence result = new Sequence(sequence.getName() + " - 3D rendering");
+
+        if (camera != null)
+            renderer.setCamera(camera);
+        renderer.setRenderMode(mode);
+        renderer.setVolume(sequence, t, -1, (lut != null) ? lut : createDefaultLUT(sequence));
+
+        final double startAzimuth = cam.getAzimuth();
+
+        result.beginUpdate();
+        try
+        {
+            for (int i = 0; i < numFrame; i++)
+            {
+                cam.setAzimuth(startAzimuth + ((360d * i) / numFrame));
+                result.setImage(i, 0, renderer.render(null, width, height, 1));
+            }
+        }
+        finally
+        {
+            result.endUpdate();
+        }
+
+        return result;
+    }
+
+    /**
+     * Create a default LUT for 3D rendering of the specified sequence.
+     */
+    public static LUT createDefaultLUT(Sequence sequence)
+    {
+        final LUT result = sequence.createCompatibleLUT();
+
+        for (LUTChannel lutChannel : result.getLutChannels())
+            lutChannel.getColorMap().setDefaultAlphaFor3D();
+
+        return result;
+    }
+
+    /**
+     * settings
+     */
+    private final VolumeCamera camera;
+    private RenderMode renderMode;
+    private boolean interpolate;
+    private double sampleDistance;
+    private int background;
+
+    /**
+     * volume data
+     */
+    private int sizeX;
+    private int sizeY;
+    private int sizeZ;
+    private double scaleX;
+    private double scaleY;
+    private double scaleZ;
+    /**
+     * colormap index for each voxel : [channel][z][xy]
+     */
+    private byte[][][] data;
+    /**
+     * normalized colormap for each channel : [channel][index]
+     */
+    private float[][] reds;
+    private float[][] greens;
+    private float[][] blues;
+    private float[][] alphas;
+
+    /**
+     * internals
+     */
+    private volatile boolean canceled;
+
+    public VolumeRenderer()
+    {
+        super();
+
+        camera = new VolumeCamera();
+        renderMode = RenderMode.MIP;
+        interpolate = false;
+        sampleDistance = 1d;
+        background = 0xFF000000;
+
+        sizeX = 0;
+        sizeY = 0;
+        sizeZ = 0;
+        scaleX = 1d;
+        scaleY = 1d;
+        scaleZ = 1d;
+        data = new byte[0][][];
+        reds = new float[0][];
+        greens = new float[0][];
+        blues = new float[0][];
+        alphas = new float[0][];
+
+        canceled = false;
+    }
+
+    /**
+     * @return the camera (modifications are used for next rendering)
+     */
+    public VolumeCamera getCamera()
+    {
+        return camera;
+    }
+
+    /**
+     * Copy settings of the specified camera into the renderer camera.
+     */
+    public void setCamera(VolumeCamera value)
+    {
+        camera.setAzimuth(value.getAzimuth());
+        camera.setElevation(value.getElevation());
+        camera.setZoom(value.getZoom());
+        camera.setPerspective(value.isPerspective());
+        camera.setFieldOfView(value.getFieldOfView());
+    }
+
+    /**
+     * @return the render mode
+     */
+    public RenderMode getRenderMode()
+    {
+        return renderMode;
+    }
+
+    /**
+     * Set the render mode
+     */
+    public void setRenderMode(RenderMode value)
+    {
+        if (value != null)
+            renderMode = value;
+    }
+
+    /**
+     * @return <code>true</code> if trilinear interpolation is used for sampling (nearest neighbor
+     *         otherwise).
+     */
+    public boolean isInterpolate()
+    {
+        return interpolate;
+    }
+
+    /**
+     * Use trilinear interpolation (<code>true</code>) or nearest neighbor (<code>false</code>)
+     * for volume sampling.
+     */
+    public void setInterpolate(boolean value)
+    {
+        interpolate = value;
+    }
+
+    /**
+     * @return the distance between 2 samples along a ray (in voxel)
+     */
+    public double getSampleDistance()
+    {
+        return sampleDistance;
+    }
+
+    /**
+     * Set the distance between 2 samples along a ray (in voxel)
+     */
+    public void setSampleDistance(double value)
+    {
+        sampleDistance = Math.max(0.1d, value);
+    }
+
+    /**
+     * @return the background color
+     */
+    public Color getBackground()
+    {
+        return new Color(background, true);
+    }
+
+    /**
+     * Set the background color
+     */
+    public void setBackground(Color value)
+    {
+        background = value.getRGB();
+    }
+
+    /**
+     * Cancel the current rendering (if any).<br>
+     * The cancel state is kept until {@link #resetCanceled()} is called so a cancel issued just
+     * before a rendering starts is not lost: the next {@link #render(BufferedImage, int, int, int)}
+     * call returns immediately.
+     */
+    public void cancel()
+    {
+        canceled = true;
+    }
+
+    /**
+     * Returns <code>true</code> if the last rendering has been canceled.
+     */
+    public boolean isCanceled()
+    {
+        return canceled;
+    }
+
+    /**
+     * Clear the cancel state, should be called when a new rendering request is processed (before
+     * calling {@link #render(BufferedImage, int, int, int)}).
+     */
+    public void resetCanceled()
+    {
+        canceled = false;
+    }
+
+    /**
+     * Set the volume to render.
+     * 
+     * @param sequence
+     *        source sequence
+     * @param t
+     *        T position of the volume
+     * @param c
+     *        channel to render, -1 for all channels
+     * @param lut
+     *        LUT used to convert data to colormap index and colors
+     */
+    public synchronized void setVolume(final Sequence sequence, final int t, int c, LUT lut)
+    {
+        final int numC = Math.min(sequence.getSizeC(), lut.getNumChannel());
+        final List<Integer> channels = new ArrayList<Integer>();
+
+        for (int ch = 0; ch < numC; ch++)
+        {
+            if ((c == -1) || (c == ch))
+            {
+                final IcyColorMap colorMap = lut.getLutChannel(ch).getColorMap();
+
+                // alpha channel is not a displayable channel
+                if (colorMap.isEnabled() && (colorMap.getType() != IcyColorMapType.ALPHA))
+                    channels.add(Integer.valueOf(ch));
+            }
+        }
+
+        final int numChannel = channels.size();
+
+        sizeX = sequence.getSizeX();
+        sizeY = sequence.getSizeY();
+        sizeZ = sequence.getSizeZ(t);
+
+        // normalize pixel size so the smallest one is 1
+        final double psx = getValidPixelSize(sequence.getPixelSizeX());
+        final double psy = getValidPixelSize(sequence.getPixelSizeY());
+        final double psz = getValidPixelSize(sequence.getPixelSizeZ());
+        final double min = Math.min(psx, Math.min(psy, psz));
+
+        scaleX = psx / min;
+        scaleY = psy / min;
+        scaleZ = psz / min;
+
+        final byte[][][] newData = new byte[numChannel][sizeZ][];
+        final Scaler[] scalers = lut.getScalers();
+        final boolean signed = sequence.isSignedDataType();
+        final int numZ = sizeZ;
+        final int planeSize = sizeX * sizeY;
+
+        // one index per (channel, z) plane
+        Parallel.forEach(0, numChannel * numZ, new ForBody()
+        {
+            @Override
+            public void run(int from, int to)
+            {
+                for (int index = from; index < to; index++)
+                {
+                    final int i = index / numZ;
+                    final int z = index % numZ;
+                    final int ch = channels.get(i).intValue();
+                    final Object src = sequence.getDataXY(t, z, ch);
+
+                    // missing image --> empty plane
+                    if (src == null)
+                        newData[i][z] = new byte[planeSize];
+                    else
+                        newData[i][z] = toColorMapIndex(src, scalers[ch], signed);
+                }
+            }
+        });
+
+        data = newData;
+        setColorMaps(lut, channels);
+    }
+
+    /**
+     * Refresh colormaps from the specified LUT.<br>
+     * Use it when only colormaps changed, scalers or channel visibility changes require a new
+     * {@link #setVolume(Sequence, int, int, LUT)} call.
+     */
+    public synchronized void setColorMaps(LUT lut, int c)
+    {
+        final List<Integer> channels = new ArrayList<Integer>();
+
+        for (int ch = 0; ch < lut.getNumChannel(); ch++)
+        {
+            if ((c == -1) || (c == ch))
+            {
+                final IcyColorMap colorMap = lut.getLutChannel(ch).getColorMap();
+
+                if (colorMap.isEnabled() && (colorMap.getType() != IcyColorMapType.ALPHA))
+                    channels.add(Integer.valueOf(ch));
+            }
+        }
+
+        // channel visibility changed --> ignore (volume should be rebuilt)
+        if (channels.size() == data.length)
+            setColorMaps(lut, channels);
+    }
+
+    private void setColorMaps(LUT lut, List<Integer> channels)
+    {
+        final int numChannel = channels.size();
+
+        reds = new float[numChannel][];
+        greens = new float[numChannel][];
+        blues = new float[numChannel][];
+        alphas = new float[numChannel][];
+
+        for (int i = 0; i < numChannel; i++)
+        {
+            final IcyColorMap colorMap = lut.getLutChannel(channels.get(i).intValue()).getColorMap();
+
+            reds[i] = new float[IcyColorMap.SIZE];
+            greens[i] = new float[IcyColorMap.SIZE];
+            blues[i] = new float[IcyColorMap.SIZE];
+            alphas[i] = new float[IcyColorMap.SIZE];
+
+            for (int index = 0; index < IcyColorMap.SIZE; index++)
+            {
+                reds[i][index] = colorMap.getNormalizedRed(index);
+                greens[i][index] = colorMap.getNormalizedGreen(index);
+                blues[i][index] = colorMap.getNormalizedBlue(index);
+                alphas[i][index] = colorMap.getNormalizedAlpha(index);
+            }
+        }
+    }
+
+    /**
+     * Render the volume.
+     * 
+     * @param image
+     *        destination image, reused if it is a {@link BufferedImage#TYPE_INT_ARGB} image with the
+     *        wanted size, a new one is allocated otherwise.
+     * @param width
+     *        wanted image width
+     * @param height
+     *        wanted image height
+     * @param subsampling
+     *        subsampling factor (1 = full resolution), a ray is cast for each
+     *        <code>subsampling x subsampling</code> block of pixel.
+     * @return the rendered image (partially rendered if rendering has been canceled in the
+     *         meantime)
+     */
+    public synchronized BufferedImage render(BufferedImage image, int width, int height, int subsampling)
+    {
+        final BufferedImage result;
+
+        if ((image != null) && (image.getWidth() == width) && (image.getHeight() == height)
+                && (image.getType() == BufferedImage.TYPE_INT_ARGB))
+            result = image;
+        else
+            result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        final int[] dest = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+
+        // canceled before we started
+        if (canceled)
+            return result;
+
+        // nothing to render
+        if ((data.length == 0) || (sizeX == 0) || (sizeY == 0) || (sizeZ == 0))
+        {
+            Arrays.fill(dest, background);
+            return result;
+        }
+
+        final RayCaster caster = new RayCaster(dest, width, height, Math.max(1, subsampling));
+
+        // render tiles of rows in parallel
+        Parallel.forRange(0, height, TILE_HEIGHT * caster.step, new ForBody()
+        {
+            @Override
+            public void run(int from, int to)
+            {
+                caster.render(from, to);
+            }
+        });
+
+        return result;
+    }
+
+    private static double getValidPixelSize(double value)
+    {
+        if (Double.isNaN(value) || Double.isInfinite(value) || (value <= 0d))
+            return 1d;
+
+        return value;
+    }
+
+    static byte[] toColorMapIndex(Object src, Scaler scaler, boolean signed)
+    {
+        final int len = ArrayUtil.getLength(src);
+        final int[] indexes = new int[len];
+        final byte[] result = new byte[len];
+
+        scaler.scale(src, 0, indexes, 0, len, signed);
+
+        for (int i = 0; i < len; i++)
+            result[i] = (byte) indexes[i];
+
+        return result;
+    }
+
+    /**
+     * Cast rays for a given rendering (all parameters are fixed at construction time).
+     */
+    private class RayCaster
+    {
+        final int[] dest;
+        final int width;
+        final int height;
+        final int step;
+
+        final boolean mip;
+        final boolean perspective;
+        final boolean linear;
+        final int numChannel;
+        final int maxX;
+        final int maxY;
+        final int maxZ;
+
+        // camera
+        final double[] forward;
+        final double[] right;
+        final double[] up;
+        final double[] eye;
+        final double halfW;
+        final double halfH;
+        final double pixelSize;
+
+        // ray marching
+        final double stepLength;
+        final float[][] stepAlphas;
+        final float bgR;
+        final float bgG;
+        final float bgB;
+
+        RayCaster(int[] dest, int width, int height, int step)
+        {
+            super();
+
+            this.dest = dest;
+            this.width = width;
+            this.height = height;
+            this.step = step;
+
+            mip = (renderMode == RenderMode.MIP);
+            perspective = camera.isPerspective();
+            linear = interpolate;
+            numChannel = data.length;
+            maxX = sizeX - 1;
+            maxY = sizeY - 1;
+            maxZ = sizeZ - 1;
+
+            final double[][] basis = camera.getBasis();
+            forward = basis[0];
+            right = basis[1];
+            up = basis[2];
+
+            // volume center and diagonal (world unit)
+            final double ex = sizeX * scaleX;
+            final double ey = sizeY * scaleY;
+            final double ez = sizeZ * scaleZ;
+            final double[] center = new double[] {(ex / 2d) - (scaleX / 2d), (ey / 2d) - (scaleY / 2d),
+                    (ez / 2d) - (scaleZ / 2d)};
+            final double diag = Math.sqrt((ex * ex) + (ey * ey) + (ez * ez));
+            final double minSize = Math.max(1, Math.min(width, height));
+
+            halfW = width / 2d;
+            halfH = height / 2d;
+            eye = new double[3];
+
+            if (perspective)
+            {
+                final double tan = Math.tan(Math.toRadians(camera.getFieldOfView()) / 2d);
+                // whole volume visible at zoom 1
+                final double dist = (diag / 2d) + ((diag / (2d * tan)) / camera.getZoom());
+
+                // pixel size in tangent unit
+                pixelSize = (2d * tan) / minSize;
+                for (int i = 0; i < 3; i++)
+                    eye[i] = center[i] - (forward[i] * dist);
+            }
+            else
+            {
+                // pixel size in world unit
+                pixelSize = (diag / camera.getZoom()) / minSize;
+                // rays start from plane just outside the volume
+                for (int i = 0; i < 3; i++)
+                    eye[i] = center[i] - (forward[i] * diag);
+            }
+
+            // use larger step for low resolution preview
+            stepLength = sampleDistance * step;
+
+            // opacity correction for step length (opacity is defined for a distance of 1 voxel)
+            stepAlphas = new float[numChannel][IcyColorMap.SIZE];
+            for (int ch = 0; ch < numChannel; ch++)
+                for (int i = 0; i < IcyColorMap.SIZE; i++)
+                    stepAlphas[ch][i] = (float) (1d - Math.pow(1d - Math.min(1f, alphas[ch][i]), stepLength));
+
+            bgR = ((background >> 16) & 0xFF) / 255f;
+            bgG = ((background >> 8) & 0xFF) / 255f;
+            bgB = ((background >> 0) & 0xFF) / 255f;
+        }
+
+        void render(int startY, int endY)
+        {
+            final double[] origin = new double[3];
+            final double[] dir = new double[3];
+            final int[] maxIndexes = new int[numChannel];
+
+            for (int y = startY; y < endY; y += step)
+            {
+                if (canceled)
+                    return;
+
+                final int bh = Math.min(step, height - y);
+
+                for (int x = 0; x < width; x += step)
+                {
+                    final int bw = Math.min(step, width - x);
+                    final int argb = castRay(x + (bw / 2d), y + (bh / 2d), origin, dir, maxIndexes);
+
+                    // fill block
+                    for (int j = 0; j < bh; j++)
+                    {
+                        int offset = ((y + j) * width) + x;
+                        for (int i = 0; i < bw; i++)
+                            dest[offset++] = argb;
+                    }
+                }
+            }
+        }
+
+        private int castRay(double px, double py, double[] origin, double[] dir, int[] maxIndexes)
+        {
+            final double u = (px - halfW) * pixelSize;
+            final double v = (halfH - py) * pixelSize;
+
+            if (perspective)
+            {
+                double len = 0d;
+
+                for (int i = 0; i < 3; i++)
+                {
+                    origin[i] = eye[i];
+                    dir[i] = forward[i] + (right[i] * u) + (up[i] * v);
+                    len += dir[i] * dir[i];
+                }
+
+                len = Math.sqrt(len);
+                for (int i = 0; i < 3; i++)
+                    dir[i] /= len;
+            }
+            else
+            {
+                for (int i = 0; i < 3; i++)
+                {
+                    origin[i] = eye[i] + (right[i] * u) + (up[i] * v);
+                    dir[i] = forward[i];
+                }
+            }
+
+            // go to voxel space
+            origin[0] /= scaleX;
+            origin[1] /= scaleY;
+            origin[2] /= scaleZ;
+            dir[0] /= scaleX;
+            dir[1] /= scaleY;
+            dir[2] /= scaleZ;
+
+            // intersect with volume bounds
+            double tNear = 0d;
+            double tFar = Double.MAX_VALUE;
+
+            for (int i = 0; i < 3; i++)
+            {
+                final double max = ((i == 0) ? maxX : (i == 1) ? maxY : maxZ) + 0.5d;
+
+                if (dir[i] == 0d)
+                {
+                    if ((origin[i] < -0.5d) || (origin[i] > max))
+                        return background;
+                }
+                else
+                {
+                    double t1 = (-0.5d - origin[i]) / dir[i];
+                    double t2 = (max - origin[i]) / dir[i];
+
+                    if (t1 > t2)
+                    {
+                        final double tmp = t1;
+                        t1 = t2;
+                        t2 = tmp;
+                    }
+
+                    if (t1 > tNear)
+                        tNear = t1;
+                    if (t2 < tFar)
+                        tFar = t2;
+                }
+            }
+
+            if (tNear > tFar)
+                return background;
+
+            if (mip)
+                return castMIP(origin, dir, tNear, tFar, maxIndexes);
+
+            return castComposite(origin, dir, tNear, tFar);
+        }
+
+        private int castMIP(double[] origin, double[] dir, double tNear, double tFar, int[] maxIndexes)
+        {
+            Arrays.fill(maxIndexes, 0);
+
+            int saturated = 0;
+
+            for (double t = tNear; (t <= tFar) && (saturated < numChannel); t += stepLength)
+            {
+                final double vx = origin[0] + (dir[0] * t);
+                final double vy = origin[1] + (dir[1] * t);
+                final double vz = origin[2] + (dir[2] * t);
+
+                for (int ch = 0; ch < numChannel; ch++)
+                {
+                    final int index = sample(data[ch], vx, vy, vz);
+
+                    if (index > maxIndexes[ch])
+                    {
+                        maxIndexes[ch] = index;
+                        if (index == IcyColorMap.MAX_INDEX)
+                            saturated++;
+                    }
+                }
+            }
+
+            float r = 0f;
+            float g = 0f;
+            float b = 0f;
+
+            for (int ch = 0; ch < numChannel; ch++)
+            {
+                final int index = maxIndexes[ch];
+
+                r += reds[ch][index];
+                g += greens[ch][index];
+                b += blues[ch][index];
+            }
+
+            return toARGB(r, g, b);
+        }
+
+        private int castComposite(double[] origin, double[] dir, double tNear, double tFar)
+        {
+            float r = 0f;
+            float g = 0f;
+            float b = 0f;
+            float a = 0f;
+
+            for (double t = tNear; (t <= tFar) && (a < OPACITY_THRESHOLD); t += stepLength)
+            {
+                final double vx = origin[0] + (dir[0] * t);
+                final double vy = origin[1] + (dir[1] * t);
+                final double vz = origin[2] + (dir[2] * t);
+
+                for (int ch = 0; ch < numChannel; ch++)
+                {
+                    final int index = sample(data[ch], vx, vy, vz);
+                    final float alpha = stepAlphas[ch][index];
+
+                    if (alpha > 0f)
+                    {
+                        // front to back compositing
+                        final float w = (1f - a) * alpha;
+
+                        r += w * reds[ch][index];
+                        g += w * greens[ch][index];
+                        b += w * blues[ch][index];
+                        a += w;
+                    }
+                }
+            }
+
+            // blend with background
+            final float bgW = 1f - a;
+
+            return toARGB(r + (bgW * bgR), g + (bgW * bgG), b + (bgW * bgB));
+        }
+
+        private int sample(byte[][] volume, double vx, double vy, double vz)
+        {
+            if (linear)
+            {
+                final double x = Math.max(0d, Math.min(maxX, vx));
+                final double y = Math.max(0d, Math.min(maxY, vy));
+                final double z = Math.max(0d, Math.min(maxZ, vz));
+                final int x0 = (int) x;
+                final int y0 = (int) y;
+                final int z0 = (int) z;
+                final int x1 = (x0 < maxX) ? x0 + 1 : x0;
+                final int y1 = (y0 < maxY) ? y0 + 1 : y0;
+                final int z1 = (z0 < maxZ) ? z0 + 1 : z0;
+                final double fx = x - x0;
+                final double fy = y - y0;
+                final double fz = z - z0;
+                final int off00 = (y0 * sizeX) + x0;
+                final int off01 = (y0 * sizeX) + x1;
+                final int off10 = (y1 * sizeX) + x0;
+                final int off11 = (y1 * sizeX) + x1;
+                final byte[] p0 = volume[z0];
+                final byte[] p1 = volume[z1];
+
+                final double v0 = bilinear(p0[off00] & 0xFF, p0[off01] & 0xFF, p0[off10] & 0xFF,
+                        p0[off11] & 0xFF, fx, fy);
+                final double v1 = bilinear(p1[off00] & 0xFF, p1[off01] & 0xFF, p1[off10] & 0xFF,
+                        p1[off11] & 0xFF, fx, fy);
+
+                return (int) (v0 + ((v1 - v0) * fz) + 0.5d);
+            }
+
+            // nearest (coordinates are >= -0.5 here)
+            final int x = Math.min(maxX, (int) (vx + 0.5d));
+            final int y = Math.min(maxY, (int) (vy + 0.5d));
+            final int z = Math.min(maxZ, (int) (vz + 0.5d));
+
+            return volume[z][(y * sizeX) + x] & 0xFF;
+        }
+
+        private double bilinear(int v00, int v01, int v10, int v11, double fx, double fy)
+        {
+            final double v0 = v00 + ((v01 - v00) * fx);
+            final double v1 = v10 + ((v11 - v10) * fx);
+
+            return v0 + ((v1 - v0) * fy);
+        }
+
+        private int toARGB(float r, float g, float b)
+        {
+            final int ir = (int) (Math.min(1f, r) * 255f);
+            final int ig = (int) (Math.min(1f, g) * 255f);
+            final int ib = (int) (Math.min(1f, b) * 255f);
+
+            return 0xFF000000 | (ir << 16) | (ig << 8) | ib;
+        }
+    }
+}
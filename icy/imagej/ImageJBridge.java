@@ -0,0 +1,471 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.imagej;
+
+import icy.common.listener.ProgressListener;
+import icy.image.IcyBufferedImage;
+import icy.sequence.Sequence;
+import icy.sequence.SequenceEvent;
+import icy.sequence.SequenceEvent.SequenceEventSourceType;
+import icy.sequence.SequenceListener;
+import icy.system.thread.ThreadUtil;
+import icy.type.DataType;
+import icy.type.collection.array.Array2DUtil;
+import icy.type.collection.array.ArrayUtil;
+import ij.ImageListener;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Live link between an Icy {@link Sequence} and an ImageJ {@link ImagePlus}.<br>
+ * Both images share the same pixel arrays (no copy) and data changes are propagated in both
+ * directions:<br>
+ * - Icy --> ImageJ : sequence data changed event calls {@link ImagePlus#updateAndDraw()}<br>
+ * - ImageJ --> Icy : ImageJ image updated event calls {@link IcyBufferedImage#dataChanged()} on
+ * the image containing the current ImageJ slice<br>
+ * When one side replaces a plane array (new image in the sequence, new pixels in the ImageJ
+ * stack) the other side is rebound to the new array.<br>
+ * Only 16 bits signed (ImageJ stores them with a 32768 offset) and RGB images need a copy, they
+ * are converted again on each change. ImageJ 8 bits indexed color images are copied to Icy as RGB
+ * images and the ImageJ stack is replaced by a shared one on the first Icy change.<br>
+ * The link is released as soon as the sequence or the ImageJ image is closed or when
+ * {@link #dispose()} is called.
+ * 
+ * @author Stephane
+ */
+public class ImageJBridge implements SequenceListener, ImageListener
+{
+    protected final Sequence sequence;
+    protected final ImagePlus image;
+
+    /**
+     * ImageJ 16 bits signed image (data is not shared)
+     */
+    protected boolean signed16;
+    /**
+     * ImageJ RGB image (data is not shared)
+     */
+    protected boolean rgb;
+    /**
+     * ImageJ 8 bits indexed color image (data is not shared)
+     */
+    protected boolean indexed;
+
+    /**
+     * internals
+     */
+    volatile boolean updating;
+    volatile boolean disposed;
+    /**
+     * number of pending ImageJ refresh (the ImageJ update events they generate are ignored)
+     */
+    final AtomicInteger pendingRefresh;
+
+    /**
+     * Create a bridge from the specified Icy {@link Sequence}.<br>
+     * The ImageJ image is created from the sequence data (shared).
+     */
+    public ImageJBridge(Sequence sequence, ProgressListener progressListener)
+    {
+        this(sequence, ImageJUtil.convertToImageJImage(sequence, progressListener));
+    }
+
+    /**
+     * Create a bridge from the specified Icy {@link Sequence}.
+     */
+    public ImageJBridge(Sequence sequence)
+    {
+        this(sequence, (ProgressListener) null);
+    }
+
+    /**
+     * Create a bridge from the specified ImageJ {@link ImagePlus}.<br>
+     * The Icy sequence is created from the ImageJ image data (shared).
+     */
+    public ImageJBridge(ImagePlus image, ProgressListener progressListener)
+    {
+        this(ImageJUtil.convertToIcySequence(image, progressListener), image);
+    }
+
+    /**
+     * Create a bridge from the specified ImageJ {@link ImagePlus}.
+     */
+    public ImageJBridge(ImagePlus image)
+    {
+        this(image, (ProgressListener) null);
+    }
+
+    /**
+     * Create a bridge between the specified Icy {@link Sequence} and ImageJ {@link ImagePlus}
+     * (they should have the same dimensions and share the same data).
+     */
+    protected ImageJBridge(Sequence sequence, ImagePlus image)
+    {
+        super();
+
+        this.sequence = sequence;
+        this.image = image;
+
+        signed16 = image.getLocalCalibration().isSigned16Bit();
+        rgb = (image.getType() == ImagePlus.COLOR_RGB);
+        indexed = (image.getType() == ImagePlus.COLOR_256);
+        updating = false;
+        disposed = false;
+        pendingRefresh = new AtomicInteger(0);
+
+        sequence.addListener(this);
+        ImagePlus.addImageListener(this);
+    }
+
+    /**
+     * Returns the Icy sequence.
+     */
+    public Sequence getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Returns the ImageJ image.
+     */
+    public ImagePlus getImagePlus()
+    {
+        return image;
+    }
+
+    /**
+     * Returns true if both images share the same pixel arrays.
+     */
+    public boolean isShared()
+    {
+        return !(signed16 || rgb || indexed);
+    }
+
+    /**
+     * Release the link between the sequence and the ImageJ image.
+     */
+    public synchronized void dispose()
+    {
+        if (disposed)
+            return;
+
+        disposed = true;
+        sequence.removeListener(this);
+        ImagePlus.removeImageListener(this);
+    }
+
+    /**
+     * Returns true if ImageJ image dimensions match the sequence ones.
+     */
+    protected boolean isSameDimension()
+    {
+        return (image.getWidth() == sequence.getSizeX()) && (image.getHeight() == sequence.getSizeY())
+                && (image.getNChannels() == ((rgb || indexed) ? 1 : sequence.getSizeC()))
+                && (image.getNSlices() == sequence.getSizeZ()) && (image.getNFrames() == sequence.getSizeT());
+    }
+
+    /**
+     * Push sequence data to ImageJ image.
+     * 
+     * @param changed
+     *        the modified image, <code>null</code> to update all images
+     */
+    protected void updateImageJ(IcyBufferedImage changed)
+    {
+        final int sizeT = sequence.getSizeT();
+        final int sizeZ = sequence.getSizeZ();
+        final int sizeC = sequence.getSizeC();
+
+        // indexed color cannot be updated from Icy data (RGB)
+        if (indexed || !isSameDimension()
+                || (!rgb && (ArrayUtil.getDataType(image.getStack().getPixels(1)) != sequence.getDataType_()
+                        .getJavaType())))
+        {
+            // structure changed --> rebuild ImageJ stack (shared data)
+            final ImagePlus newImage = ImageJUtil.convertToImageJImage(sequence, null);
+
+            signed16 = false;
+            rgb = false;
+            indexed = false;
+            image.setStack(newImage.getStack());
+            image.setDimensions(sizeC, sizeZ, sizeT);
+        }
+        else
+        {
+            final ImageStack stack = image.getStack();
+
+            for (int t = 0; t < sizeT; t++)
+            {
+                for (int z = 0; z < sizeZ; z++)
+                {
+                    final IcyBufferedImage icyImage = sequence.getImage(t, z);
+
+                    if ((changed == null) || (icyImage == changed))
+                        updateImageJ(stack, icyImage, t, z, sizeZ, sizeC);
+                }
+            }
+
+            // processor of current slice should use the stack array
+            final ImageProcessor ip = image.getProcessor();
+            final Object pixels = stack.getPixels(image.getCurrentSlice());
+
+            if ((ip != null) && (ip.getPixels() != pixels))
+                ip.setPixels(pixels);
+        }
+
+        refreshImageJ();
+    }
+
+    /**
+     * Push the specified sequence image data to the ImageJ stack.
+     */
+    protected void updateImageJ(ImageStack stack, IcyBufferedImage icyImage, int t, int z, int sizeZ, int sizeC)
+    {
+        if (icyImage == null)
+            return;
+
+        if (rgb)
+        {
+            final Object pixels = stack.getPixels(ImageJUtil.getStackIndex(t, z, 0, sizeZ, 1));
+
+            // convert to packed RGB
+            if ((icyImage.getDataType_().getJavaType() == DataType.BYTE) && (pixels instanceof int[]))
+                ImageJUtil.packRGB(icyImage, (int[]) pixels);
+        }
+        else
+        {
+            for (int c = 0; c < sizeC; c++)
+            {
+                final int index = ImageJUtil.getStackIndex(t, z, c, sizeZ, sizeC);
+
+                if (signed16)
+                    ImageJUtil.flipSigned16(icyImage.getDataXYAsShort(c), (short[]) stack.getPixels(index));
+                else
+                {
+                    final Object data = icyImage.getDataXY(c);
+
+                    // array replaced --> rebind
+                    if (stack.getPixels(index) != data)
+                        stack.setPixels(data, index);
+                }
+            }
+        }
+    }
+
+    /**
+     * Refresh the ImageJ image display.<br>
+     * The ImageJ update events it generates (synchronously or later on the EDT) are the echo of
+     * our own change so they are ignored.
+     */
+    protected void refreshImageJ()
+    {
+        pendingRefresh.incrementAndGet();
+
+        ThreadUtil.invokeLater(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    image.updateAndDraw();
+                }
+                finally
+                {
+                    // queued after the events posted by updateAndDraw()
+                    SwingUtilities.invokeLater(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            pendingRefresh.decrementAndGet();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Push ImageJ image data to sequence.<br>
+     * ImageJ does not tell which slices were modified (a command can process the whole stack) so
+     * all planes are propagated, events are merged by the sequence update.
+     */
+    protected void updateIcy()
+    {
+        final ImageStack stack = image.getStack();
+        final int sizeC = (rgb || indexed) ? 1 : image.getNChannels();
+        final int sizeZ = image.getNSlices();
+        final int sizeT = image.getNFrames();
+        final boolean sameDim = isSameDimension();
+        final int cur = image.getCurrentSlice();
+
+        // current slice processor may use its own array
+        final ImageProcessor ip = image.getProcessor();
+        if ((ip != null) && (ip.getPixels() != null) && (stack.getSize() > 1))
+        {
+            if (ip.getPixels() != stack.getPixels(cur))
+                stack.setPixels(ip.getPixels(), cur);
+        }
+
+        sequence.beginUpdate();
+        try
+        {
+            if (sameDim)
+            {
+                // copy or notify each plane
+                for (int t = 0; t < sizeT; t++)
+                    for (int z = 0; z < sizeZ; z++)
+                        updateIcy(stack, sequence.getImage(t, z), t, z, sizeZ, sizeC);
+            }
+            else
+            {
+                // structure changed --> rebuild sequence
+                sequence.removeAllImages();
+
+                for (int t = 0; t < sizeT; t++)
+                    for (int z = 0; z < sizeZ; z++)
+                        updateIcy(stack, null, t, z, sizeZ, sizeC);
+            }
+        }
+        finally
+        {
+            sequence.endUpdate();
+        }
+    }
+
+    /**
+     * Push ImageJ stack data to the specified sequence image (<code>null</code> to create a new
+     * image).
+     */
+    protected void updateIcy(ImageStack stack, IcyBufferedImage icyImage, int t, int z, int sizeZ, int sizeC)
+    {
+        if (rgb || indexed)
+        {
+            final int index = ImageJUtil.getStackIndex(t, z, 0, sizeZ, 1);
+            final IcyBufferedImage img = IcyBufferedImage.createFrom(stack.getProcessor(index).getBufferedImage());
+
+            if ((icyImage != null) && (icyImage.getSizeC() == img.getSizeC())
+                    && (icyImage.getDataType_() == img.getDataType_()))
+                icyImage.copyData(img);
+            else
+                sequence.setImage(t, z, img);
+        }
+        else
+        {
+            final Object[] datas = new Object[sizeC];
+            boolean rebind = (icyImage == null);
+
+            for (int c = 0; c < sizeC; c++)
+            {
+                final Object pixels = stack.getPixels(ImageJUtil.getStackIndex(t, z, c, sizeZ, sizeC));
+
+                if (signed16)
+                {
+                    if (icyImage != null)
+                        datas[c] = ImageJUtil.flipSigned16((short[]) pixels, icyImage.getDataXYAsShort(c));
+                    else
+                        datas[c] = ImageJUtil.flipSigned16((short[]) pixels, null);
+                }
+                else
+                {
+                    datas[c] = pixels;
+                    // array replaced --> rebind
+                    if ((icyImage != null) && (icyImage.getDataXY(c) != pixels))
+                        rebind = true;
+                }
+            }
+
+            if (rebind)
+            {
+                final DataType dataType = ArrayUtil.getDataType(datas[0]);
+                final Object[] data = Array2DUtil.createArray(dataType, sizeC);
+
+                System.arraycopy(datas, 0, data, 0, sizeC);
+                sequence.setImage(t, z, new IcyBufferedImage(image.getWidth(), image.getHeight(), data, signed16));
+            }
+            else
+                icyImage.dataChanged();
+        }
+    }
+
+    @Override
+    public void sequenceChanged(SequenceEvent sequenceEvent)
+    {
+        if (updating || disposed)
+            return;
+
+        if (sequenceEvent.getSourceType() == SequenceEventSourceType.SEQUENCE_DATA)
+        {
+            final Object source = sequenceEvent.getSource();
+
+            updating = true;
+            try
+            {
+                updateImageJ((source instanceof IcyBufferedImage) ? (IcyBufferedImage) source : null);
+            }
+            finally
+            {
+                updating = false;
+            }
+        }
+    }
+
+    @Override
+    public void sequenceClosed(Sequence seq)
+    {
+        dispose();
+    }
+
+    @Override
+    public void imageOpened(ImagePlus imp)
+    {
+        // nothing to do here
+    }
+
+    @Override
+    public void imageClosed(ImagePlus imp)
+    {
+        if (imp == image)
+            dispose();
+    }
+
+    @Override
+    public void imageUpdated(ImagePlus imp)
+    {
+        // ignore our own refresh
+        if ((imp != image) || updating || disposed || (pendingRefresh.get() > 0))
+            return;
+
+        updating = true;
+        try
+        {
+            updateIcy();
+        }
+        finally
+        {
+            updating = false;
+        }
+    }
+}
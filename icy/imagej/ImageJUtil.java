@@ -20,7 +20,6 @@ package icy.imagej;
 
 import icy.common.listener.ProgressListener;
 import icy.image.IcyBufferedImage;
-import icy.math.ArrayMath;
 import icy.roi.ROI;
 import icy.roi.ROI2D;
 import icy.sequence.Sequence;
@@ -122,6 +121,64 @@ public class ImageJUtil
         // ip.setMinAndMax(seq.getChannelMin(0) displayMin, displayMax);
     }
 
+    /**
+     * Convert 16 bits signed data between ImageJ (unsigned data with 32768 offset) and Icy
+     * (signed data) representation.<br>
+     * The conversion is the same in both direction (flip of the sign bit).
+     * 
+     * @param in
+     *        input data
+     * @param out
+     *        output data (allocated if <code>null</code>, can be the same as <code>in</code>)
+     */
+    public static short[] flipSigned16(short[] in, short[] out)
+    {
+        final short[] result;
+
+        if (out == null)
+            result = new short[in.length];
+        else
+            result = out;
+
+        for (int i = 0; i < in.length; i++)
+            result[i] = (short) (in[i] ^ 0x8000);
+
+        return result;
+    }
+
+    /**
+     * Pack the 3 first channels (R, G, B) of the specified 8 bits image in the specified ImageJ RGB
+     * array.
+     */
+    public static int[] packRGB(IcyBufferedImage image, int[] out)
+    {
+        final int len = image.getSizeX() * image.getSizeY();
+        final int[] result;
+
+        if (out == null)
+            result = new int[len];
+        else
+            result = out;
+
+        final int sizeC = image.getSizeC();
+        final byte[] r = image.getDataXYAsByte(0);
+        final byte[] g = (sizeC > 1) ? image.getDataXYAsByte(1) : r;
+        final byte[] b = (sizeC > 2) ? image.getDataXYAsByte(2) : g;
+
+        for (int i = 0; i < len; i++)
+            result[i] = 0xFF000000 | ((r[i] & 0xFF) << 16) | ((g[i] & 0xFF) << 8) | (b[i] & 0xFF);
+
+        return result;
+    }
+
+    /**
+     * Returns the ImageJ stack index (1 based) for the specified Icy position.
+     */
+    public static int getStackIndex(int t, int z, int c, int sizeZ, int sizeC)
+    {
+        return (((t * sizeZ) + z) * sizeC) + c + 1;
+    }
+
     /**
      * Convert the specified ImageJ {@link ImagePlus} object to Icy {@link Sequence}.<br>
      * Data can be shared between source and result image so modify one can impact on the other.
@@ -166,20 +223,20 @@ public class ImageJUtil
                         final DataType dataType = ArrayUtil.getDataType(data);
                         final Object[] datas = Array2DUtil.createArray(dataType, sizeC);
 
-                        // first channel data
+                        // first channel data (shared)
                         datas[0] = data;
                         // special case of 16 bits signed data --> subtract 32768
                         if (signed16)
-                            datas[0] = ArrayMath.subtract(datas[0], Double.valueOf(32768));
+                            datas[0] = flipSigned16((short[]) datas[0], null);
 
-                        // others channels data
+                        // others channels data (shared)
                         for (int c = 1; c < sizeC; c++)
                         {
                             image.setPosition(c + 1, z + 1, t + 1);
                             datas[c] = image.getProcessor().getPixels();
                             // special case of 16 bits signed data --> subtract 32768
                             if (signed16)
-                                datas[c] = ArrayMath.subtract(datas, Double.valueOf(32768));
+                                datas[c] = flipSigned16((short[]) datas[c], null);
                         }
 
                         // create a single image from all channels
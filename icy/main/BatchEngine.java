@@ -0,0 +1,840 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.main;
+
+import icy.common.listener.ProgressListener;
+import icy.file.FileUtil;
+import icy.file.Loader;
+import icy.file.Saver;
+import icy.gui.main.MainInterface;
+import icy.plugin.PluginDescriptor;
+import icy.plugin.abstract_.Plugin;
+import icy.plugin.interface_.PluginBatch;
+import icy.sequence.Sequence;
+import icy.system.IcyExceptionHandler;
+import icy.system.thread.Processor;
+import icy.system.thread.ThreadUtil;
+import icy.util.StringUtil;
+import icy.util.XMLUtil;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+import javax.script.Bindings;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Batch engine: process a list of image files through a plugin (or a script).<br>
+ * <br>
+ * Each file is loaded with {@link Loader}, processed then the result is saved with {@link Saver}
+ * in the output directory, keeping the input files directory structure (relative to their common
+ * parent directory). The output file takes the input file name with the output extension, the
+ * input extension is kept in the name when needed to avoid collisions (<code>a.png</code> and
+ * <code>a.jpg</code>) or to not overwrite an input file. Files are processed concurrently but at
+ * most
+ * <code>maxSequences</code> sequences are kept in memory at the same time (a file is not loaded
+ * until a previous sequence has been released) and at most <code>maxLoading</code> files are
+ * loaded at the same time.<br>
+ * Per file timings and failures can be written in a XML report (see {@link #saveReport(File)}).<br>
+ * <br>
+ * The plugin should implement {@link PluginBatch} (a new instance is created for each file).<br>
+ * Others plugins ({@link icy.plugin.interface_.PluginImageAnalysis} or {@link Runnable}) are
+ * supported for backward compatibility: the sequence is set as the active sequence then the
+ * plugin is executed, which means they are processed one at a time. If the plugin publishes a new
+ * sequence (<code>addSequence(..)</code>) then this sequence is saved, else the input sequence is
+ * saved.<br>
+ * A script is evaluated (engine is retrieved from the script file extension) with the
+ * <code>sequence</code> and <code>file</code> variables defined. The script can set the
+ * <code>result</code> variable to define the sequence to save, else <code>sequence</code> is
+ * saved.
+ * 
+ * @author Stephane
+ */
+public class BatchEngine
+{
+    public static final String ID_BATCH = "batch";
+    public static final String ID_ITEM = "item";
+    public static final String ID_PLUGIN = "plugin";
+    public static final String ID_SCRIPT = "script";
+    public static final String ID_FILE = "file";
+    public static final String ID_OUTPUT = "output";
+    public static final String ID_STATUS = "status";
+    public static final String ID_LOAD_TIME = "loadTime";
+    public static final String ID_PROCESS_TIME = "processTime";
+    public static final String ID_SAVE_TIME = "saveTime";
+    public static final String ID_ERROR = "error";
+    public static final String ID_TOTAL_TIME = "totalTime";
+    public static final String ID_SUCCEED = "succeed";
+    public static final String ID_FAILED = "failed";
+
+    public static final String DEFAULT_OUTPUT_EXTENSION = "tif";
+
+    /**
+     * Item status
+     */
+    public static enum BatchStatus
+    {
+        WAITING, LOADING, PROCESSING, SAVING, SUCCEED, FAILED, CANCELED;
+
+        @Override
+        public String toString()
+        {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * used to execute non {@link PluginBatch} plugin one at a time (they use the active sequence)
+     */
+    private static final Object legacyLock = new Object();
+
+    /**
+     * A single file of the batch.
+     */
+    public class BatchItem implements Runnable
+    {
+        final File file;
+        File target;
+        File output;
+        volatile BatchStatus status;
+        long loadTime;
+        long processTime;
+        long saveTime;
+        Throwable error;
+
+        BatchItem(File file)
+        {
+            super();
+
+            this.file = file;
+            target = null;
+            output = null;
+            status = BatchStatus.WAITING;
+            loadTime = 0;
+            processTime = 0;
+            saveTime = 0;
+            error = null;
+        }
+
+        @Override
+        public void run()
+        {
+            if (canceled)
+            {
+                status = BatchStatus.CANCELED;
+                return;
+            }
+
+            Sequence sequence = null;
+            Sequence result = null;
+
+            try
+            {
+                long start = System.currentTimeMillis();
+
+                // limit the number of concurrent load
+                loadingSemaphore.acquire();
+                try
+                {
+                    status = BatchStatus.LOADING;
+                    sequence = Loader.loadSequence(file, 0, false);
+                }
+                finally
+                {
+                    loadingSemaphore.release();
+                }
+
+                loadTime = System.currentTimeMillis() - start;
+
+                if (sequence == null)
+                    throw new Exception("Cannot load image file (see output console for details).");
+                if (canceled)
+                {
+                    status = BatchStatus.CANCELED;
+                    return;
+                }
+
+                status = BatchStatus.PROCESSING;
+                start = System.currentTimeMillis();
+                result = process(sequence, file);
+                processTime = System.currentTimeMillis() - start;
+
+                if ((result != null) && (target != null))
+                {
+                    status = BatchStatus.SAVING;
+                    start = System.currentTimeMillis();
+                    FileUtil.ensureParentDirExist(target);
+                    output = Saver.save(null, result, target);
+                    saveTime = System.currentTimeMillis() - start;
+                }
+
+                status = BatchStatus.SUCCEED;
+            }
+            catch (Throwable t)
+            {
+                error = t;
+                status = BatchStatus.FAILED;
+
+                System.err.println("Batch: failed to process '" + file.getAbsolutePath() + "' :");
+                IcyExceptionHandler.showErrorMessage(t, true);
+            }
+            finally
+            {
+                // release sequence resources as soon as possible
+                if (sequence != null)
+                    Icy.getMainInterface().closeSequence(sequence);
+                if ((result != null) && (result != sequence))
+                    Icy.getMainInterface().closeSequence(result);
+            }
+        }
+
+        /**
+         * @return the input file
+         */
+        public File getFile()
+        {
+            return file;
+        }
+
+        /**
+         * @return the file where the result is saved (extension may be modified to match the
+         *         output format), <code>null</code> if results are not saved
+         */
+        public File getTarget()
+        {
+            return target;
+        }
+
+        /**
+         * @return the saved file (null if nothing has been saved)
+         */
+        public File getOutput()
+        {
+            return output;
+        }
+
+        /**
+         * @return the status
+         */
+        public BatchStatus getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * @return true if this item is done (whatever is the result)
+         */
+        public boolean isDone()
+        {
+            return (status == BatchStatus.SUCCEED) || (status == BatchStatus.FAILED)
+                    || (status == BatchStatus.CANCELED);
+        }
+
+        /**
+         * @return the loading time (in ms)
+         */
+        public long getLoadTime()
+        {
+            return loadTime;
+        }
+
+        /**
+         * @return the processing time (in ms)
+         */
+        public long getProcessTime()
+        {
+            return processTime;
+        }
+
+        /**
+         * @return the saving time (in ms)
+         */
+        public long getSaveTime()
+        {
+            return saveTime;
+        }
+
+        /**
+         * @return the error if the process failed
+         */
+        public Throwable getError()
+        {
+            return error;
+        }
+    }
+
+    final List<BatchItem> items;
+    final File inputDirectory;
+    final File outputDirectory;
+    final int maxSequences;
+    int maxLoading;
+    String outputExtension;
+
+    PluginDescriptor plugin;
+    File script;
+    ScriptEngineManager scriptManager;
+
+    Semaphore loadingSemaphore;
+    long totalTime;
+    volatile boolean canceled;
+
+    /**
+     * Create a new batch engine.
+     * 
+     * @param files
+     *        image files to process
+     * @param outputDirectory
+     *        directory where results are saved (<code>null</code> means results are not saved)
+     * @param maxSequences
+     *        maximum number of sequences processed (and so kept in memory) at the same time
+     */
+    public BatchEngine(List<File> files, File outputDirectory, int maxSequences)
+    {
+        super();
+
+        items = new ArrayList<BatchItem>();
+        for (File file : files)
+            items.add(new BatchItem(file));
+
+        inputDirectory = getCommonDirectory(files);
+        this.outputDirectory = outputDirectory;
+        this.maxSequences = Math.max(1, maxSequences);
+        maxLoading = Math.min(2, this.maxSequences);
+        outputExtension = DEFAULT_OUTPUT_EXTENSION;
+
+        plugin = null;
+        script = null;
+        scriptManager = null;
+        totalTime = 0;
+        canceled = false;
+    }
+
+    /**
+     * Returns the list of image files from the specified input which can be a file, a directory
+     * or a file name pattern using wildcard characters (<code>'*'</code> and <code>'?'</code>) in
+     * the last path element (<code>/data/images/*.tif</code> for instance).
+     */
+    public static List<File> getInputFiles(String input, boolean recursive)
+    {
+        final String path = FileUtil.getGenericPath(input);
+        final File file = new File(path);
+
+        if (file.isFile())
+            return Collections.singletonList(file);
+
+        final File directory;
+        final String pattern;
+
+        if (file.isDirectory())
+        {
+            directory = file;
+            pattern = null;
+        }
+        else
+        {
+            String dir = FileUtil.getDirectory(path);
+            if (StringUtil.isEmpty(dir))
+                dir = ".";
+
+            directory = new File(dir);
+            pattern = StringUtil.wildcardToRegex(FileUtil.getFileName(path));
+        }
+
+        final File[] files = FileUtil.getFiles(directory, new FileFilter()
+        {
+            @Override
+            public boolean accept(File f)
+            {
+                if (f.isDirectory())
+                    return true;
+                if (Loader.canDiscardImageFile(f.getName()))
+                    return false;
+
+                return (pattern == null) || f.getName().matches(pattern);
+            }
+        }, recursive, false, false);
+
+        final List<File> result = new ArrayList<File>();
+
+        for (File f : files)
+            result.add(f);
+
+        Collections.sort(result);
+
+        return result;
+    }
+
+    /**
+     * @return the plugin used to process sequences
+     */
+    public PluginDescriptor getPlugin()
+    {
+        return plugin;
+    }
+
+    /**
+     * Set the plugin used to process sequences (clear the script).
+     */
+    public void setPlugin(PluginDescriptor plugin)
+    {
+        this.plugin = plugin;
+        script = null;
+    }
+
+    /**
+     * @return the script used to process sequences
+     */
+    public File getScript()
+    {
+        return script;
+    }
+
+    /**
+     * Set the script used to process sequences (clear the plugin).<br>
+     * The script engine is retrieved from the file extension (<code>.js</code> for JavaScript
+     * for instance).
+     */
+    public void setScript(File script)
+    {
+        this.script = script;
+        plugin = null;
+    }
+
+    /**
+     * @return the maximum number of concurrent file loading
+     */
+    public int getMaxLoading()
+    {
+        return maxLoading;
+    }
+
+    /**
+     * Set the maximum number of concurrent file loading (2 by default).
+     */
+    public void setMaxLoading(int value)
+    {
+        maxLoading = Math.max(1, Math.min(maxSequences, value));
+    }
+
+    /**
+     * @return the output file extension (define the output image format)
+     */
+    public String getOutputExtension()
+    {
+        return outputExtension;
+    }
+
+    /**
+     * Set the output file extension (define the output image format, "tif" by default).
+     */
+    public void setOutputExtension(String value)
+    {
+        if (StringUtil.isEmpty(value))
+            outputExtension = DEFAULT_OUTPUT_EXTENSION;
+        else if (value.startsWith("."))
+            outputExtension = value.substring(1);
+        else
+            outputExtension = value;
+    }
+
+    /**
+     * @return batch items
+     */
+    public List<BatchItem> getItems()
+    {
+        return new ArrayList<BatchItem>(items);
+    }
+
+    /**
+     * @return the number of done items
+     */
+    public int getDoneCount()
+    {
+        int result = 0;
+
+        for (BatchItem item : items)
+            if (item.isDone())
+                result++;
+
+        return result;
+    }
+
+    /**
+     * @return the number of failed items
+     */
+    public int getFailedCount()
+    {
+        int result = 0;
+
+        for (BatchItem item : items)
+            if (item.getStatus() == BatchStatus.FAILED)
+                result++;
+
+        return result;
+    }
+
+    /**
+     * @return the total processing time (in ms)
+     */
+    public long getTotalTime()
+    {
+        return totalTime;
+    }
+
+    /**
+     * Cancel the batch process (items being processed are completed).
+     */
+    public void cancel()
+    {
+        canceled = true;
+    }
+
+    /**
+     * @return true if the batch process has been canceled
+     */
+    public boolean isCanceled()
+    {
+        return canceled;
+    }
+
+    /**
+     * Returns the deepest directory containing all the specified files (<code>null</code> if
+     * none).
+     */
+    static File getCommonDirectory(List<File> files)
+    {
+        File result = null;
+
+        for (File file : files)
+        {
+            final File dir = file.getAbsoluteFile().getParentFile();
+
+            if (result == null)
+                result = dir;
+            else
+            {
+                while ((result != null) && !isAncestor(result, dir))
+                    result = result.getParentFile();
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isAncestor(File directory, File file)
+    {
+        for (File f = file; f != null; f = f.getParentFile())
+            if (f.equals(directory))
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Returns the output file for the specified input file: same relative path (from the input
+     * directory) in the output directory with the output extension.
+     * 
+     * @param keepExtension
+     *        if <code>true</code> the input file extension is kept in the output file name
+     */
+    File getOutputFile(File file, boolean keepExtension)
+    {
+        String relativeDir = "";
+
+        for (File f = file.getAbsoluteFile().getParentFile(); (f != null) && !f.equals(inputDirectory); f = f
+                .getParentFile())
+            relativeDir = f.getName() + FileUtil.separator + relativeDir;
+
+        return new File(outputDirectory, relativeDir + FileUtil.getFileName(file.getAbsolutePath(), keepExtension)
+                + "." + outputExtension);
+    }
+
+    private static String getFileKey(File file)
+    {
+        // case insensitive file systems are common
+        return file.getAbsolutePath().toLowerCase();
+    }
+
+    /**
+     * Define output file of all items.<br>
+     * Items for which we cannot find an output file which does not collide with another output or
+     * an input file are marked as failed.
+     */
+    void setOutputFiles()
+    {
+        final Set<String> inputs = new HashSet<String>();
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+        for (BatchItem item : items)
+        {
+            final String key = getFileKey(getOutputFile(item.file, false));
+            final Integer count = counts.get(key);
+
+            inputs.add(getFileKey(item.file));
+            counts.put(key, Integer.valueOf((count == null) ? 1 : count.intValue() + 1));
+        }
+
+        final Set<String> used = new HashSet<String>();
+
+        for (BatchItem item : items)
+        {
+            File target = getOutputFile(item.file, false);
+            String key = getFileKey(target);
+
+            // name collision or input overwrite --> keep input extension
+            if ((counts.get(key).intValue() > 1) || inputs.contains(key))
+            {
+                target = getOutputFile(item.file, true);
+                key = getFileKey(target);
+            }
+
+            if (inputs.contains(key) || !used.add(key))
+            {
+                item.target = null;
+                item.error = new Exception("Output file '" + target.getAbsolutePath()
+                        + "' collides with another input or output file.");
+                item.status = BatchStatus.FAILED;
+            }
+            else
+                item.target = target;
+        }
+    }
+
+    /**
+     * Process the specified sequence and returns the sequence to save.
+     */
+    Sequence process(Sequence sequence, File file) throws Exception
+    {
+        if (script != null)
+            return processScript(sequence, file);
+        if (plugin != null)
+            return processPlugin(sequence);
+
+        // nothing to do, just save (conversion)
+        return sequence;
+    }
+
+    @SuppressWarnings("deprecation")
+    private Sequence processPlugin(Sequence sequence) throws Exception
+    {
+        final Plugin instance = plugin.getPluginClass().getDeclaredConstructor().newInstance();
+
+        if (instance instanceof PluginBatch)
+            return ((PluginBatch) instance).process(sequence);
+
+        // backward compatibility: plugin works on the active sequence
+        synchronized (legacyLock)
+        {
+            final MainInterface mainInterface = Icy.getMainInterface();
+            final List<Sequence> published = new ArrayList<Sequence>();
+
+            mainInterface.addSequence(sequence);
+            mainInterface.registerPlugin(instance);
+            try
+            {
+                final List<Sequence> before = mainInterface.getSequences();
+
+                if (instance instanceof icy.plugin.interface_.PluginImageAnalysis)
+                    ((icy.plugin.interface_.PluginImageAnalysis) instance).compute();
+                else if (instance instanceof Runnable)
+                    ((Runnable) instance).run();
+                else
+                    throw new Exception("Plugin '" + plugin.getName() + "' cannot be used in batch mode.");
+
+                // get sequences published by the plugin
+                for (Sequence seq : mainInterface.getSequences())
+                    if ((seq != sequence) && !before.contains(seq))
+                        published.add(seq);
+            }
+            finally
+            {
+                mainInterface.unRegisterPlugin(instance);
+            }
+
+            if (!published.isEmpty())
+            {
+                final Sequence result = published.get(published.size() - 1);
+
+                // only the last published sequence is saved
+                for (Sequence seq : published)
+                    if (seq != result)
+                        mainInterface.closeSequence(seq);
+
+                return result;
+            }
+        }
+
+        return sequence;
+    }
+
+    private Sequence processScript(Sequence sequence, File file) throws Exception
+    {
+        final ScriptEngine engine;
+
+        synchronized (this)
+        {
+            if (scriptManager == null)
+                scriptManager = new ScriptEngineManager();
+
+            // use a new engine for each file so we don't have any concurrency issue
+            engine = scriptManager.getEngineByExtension(FileUtil.getFileExtension(script.getPath(), false));
+        }
+
+        if (engine == null)
+            throw new Exception("No script engine found for '" + script.getPath() + "'.");
+
+        final Bindings bindings = engine.createBindings();
+        bindings.put("sequence", sequence);
+        bindings.put("file", file);
+
+        final Reader reader = new FileReader(script);
+        try
+        {
+            engine.eval(reader, bindings);
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        final Object result = bindings.get("result");
+
+        if (result instanceof Sequence)
+            return (Sequence) result;
+
+        return sequence;
+    }
+
+    /**
+     * Process all files and returns <code>true</code> if all files have been successfully
+     * processed.
+     * 
+     * @param listener
+     *        progress listener (position and length are given in number of files), processing can
+     *        be canceled through the listener.
+     */
+    public boolean process(ProgressListener listener)
+    {
+        if (items.isEmpty())
+            return true;
+
+        if (outputDirectory != null)
+        {
+            FileUtil.createDir(outputDirectory);
+            setOutputFiles();
+        }
+
+        final long start = System.currentTimeMillis();
+        // one processing thread per sequence in memory (back-pressure is given by the thread count)
+        final Processor processor = new Processor(items.size(), Math.min(maxSequences, items.size()));
+        processor.setDefaultThreadName("Batch");
+        loadingSemaphore = new Semaphore(maxLoading);
+        canceled = false;
+
+        try
+        {
+            for (BatchItem item : items)
+                if (!item.isDone())
+                    processor.submit(item);
+
+            int done;
+            while ((done = getDoneCount()) < items.size())
+            {
+                if ((listener != null) && !canceled)
+                {
+                    if (!listener.notifyProgress(done, items.size()))
+                        cancel();
+                }
+
+                ThreadUtil.sleep(100);
+            }
+        }
+        finally
+        {
+            processor.shutdown();
+            totalTime = System.currentTimeMillis() - start;
+        }
+
+        if (listener != null)
+            listener.notifyProgress(items.size(), items.size());
+
+        if (canceled)
+            return false;
+
+        return getFailedCount() == 0;
+    }
+
+    /**
+     * Returns the XML report of the batch process (per file timings and failures).
+     */
+    public Document getReport()
+    {
+        final Document result = XMLUtil.createDocument(false);
+        final Element root = XMLUtil.createRootElement(result, ID_BATCH);
+
+        if (plugin != null)
+            XMLUtil.setAttributeValue(root, ID_PLUGIN, plugin.getClassName());
+        if (script != null)
+            XMLUtil.setAttributeValue(root, ID_SCRIPT, script.getAbsolutePath());
+        if (outputDirectory != null)
+            XMLUtil.setAttributeValue(root, ID_OUTPUT, outputDirectory.getAbsolutePath());
+        XMLUtil.setAttributeLongValue(root, ID_TOTAL_TIME, totalTime);
+        XMLUtil.setAttributeIntValue(root, ID_SUCCEED, getDoneCount() - getFailedCount());
+        XMLUtil.setAttributeIntValue(root, ID_FAILED, getFailedCount());
+
+        for (BatchItem item : items)
+        {
+            final Element node = XMLUtil.addElement(root, ID_ITEM);
+
+            XMLUtil.setAttributeValue(node, ID_FILE, item.getFile().getAbsolutePath());
+            XMLUtil.setAttributeValue(node, ID_STATUS, item.getStatus().toString());
+            if (item.getOutput() != null)
+                XMLUtil.setAttributeValue(node, ID_OUTPUT, item.getOutput().getAbsolutePath());
+            XMLUtil.setAttributeLongValue(node, ID_LOAD_TIME, item.getLoadTime());
+            XMLUtil.setAttributeLongValue(node, ID_PROCESS_TIME, item.getProcessTime());
+            XMLUtil.setAttributeLongValue(node, ID_SAVE_TIME, item.getSaveTime());
+            if (item.getError() != null)
+                XMLUtil.setAttributeValue(node, ID_ERROR, IcyExceptionHandler.getErrorMessage(item.getError(), false));
+        }
+
+        return result;
+    }
+
+    /**
+     * Save the XML report of the batch process in the specified file.
+     */
+    public boolean saveReport(File file)
+    {
+        return XMLUtil.saveDocument(getReport(), file);
+    }
+}
@@ -20,6 +20,7 @@ package icy.main;
 
 import icy.action.ActionManager;
 import icy.common.Version;
+import icy.file.DatasetCatalog;
 import icy.file.FileUtil;
 import icy.file.Loader;
 import icy.gui.dialog.ConfirmDialog;
@@ -38,7 +39,9 @@ import icy.gui.main.MainInterfaceGui;
 import icy.gui.util.LookAndFeelUtil;
 import icy.imagej.ImageJPatcher;
 import icy.math.UnitUtil;
+import icy.network.HttpCache;
 import icy.network.NetworkUtil;
+import icy.plugin.PluginDescriptor;
 import icy.plugin.PluginInstaller;
 import icy.plugin.PluginLauncher;
 import icy.plugin.PluginLoader;
@@ -63,6 +66,7 @@ import ij.ImageJ;
 import java.io.File;
 import java.nio.channels.FileLock;
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.JDesktopPane;
 import javax.swing.JFrame;
@@ -139,12 +143,37 @@ public class Icy
     static String startupPlugin;
     static String startupImage;
 
+    /**
+     * Batch parameters
+     */
+    static String batchInput;
+    static String batchOutput;
+    static String batchScript;
+    static String batchReport;
+    static int batchMaxSequences;
+
     /**
      * internals
      */
     static ExitFrame exitFrame = null;
     static Thread terminer = null;
 
+    /**
+     * Startup phases
+     */
+    static StartupScheduler startup = null;
+
+    private static final String PHASE_PREFERENCES = "preferences";
+    private static final String PHASE_NETWORK = "network";
+    private static final String PHASE_PLUGINS = "plugins loading";
+    private static final String PHASE_WORKSPACES = "workspaces loading";
+    private static final String PHASE_IMAGEJ = "ImageJ patching";
+    private static final String PHASE_NATIVE_LIBRARIES = "native libraries";
+    private static final String PHASE_MAIN_INTERFACE = "main interface";
+    private static final String PHASE_LOOK_AND_FEEL = "look and feel";
+    private static final String PHASE_INTERFACE_INIT = "interface init";
+    private static final String PHASE_SYSTEM = "system init";
+
     /**
      * @param args
      *        Received from the command line.
@@ -200,60 +229,35 @@ public class Icy
                 });
             }
 
-            // initialize preferences
-            IcyPreferences.init();
-
-            // initialize network (need preferences)
-            NetworkUtil.init();
-
-            // load plugins classes (need preferences init)
-            PluginLoader.reloadAsynch();
-            WorkspaceLoader.reloadAsynch();
-
-            // patches ImageJ classes
-            ImageJPatcher.applyPatches();
-
-            // build main interface
-            if (headless)
-                mainInterface = new MainInterfaceBatch();
-            else
-                mainInterface = new MainInterfaceGui();
-        }
-        catch (Throwable t)
-        {
-            // any error at this point is fatal
-            fatalError(t);
-        }
-
-        if (!headless)
-        {
-            // do it on AWT thread NOW as this is what we want first
-            ThreadUtil.invokeNow(new Runnable()
+            // AWT should be initialized before others threads start to load native libraries
+            // (see above)
+            if (!headless && (splashScreen == null))
             {
-                @Override
-                public void run()
+                ThreadUtil.invokeNow(new Runnable()
                 {
-                    try
-                    {
-                        // init Look And Feel (need mainInterface instance)
-                        LookAndFeelUtil.init();
-                        // init need "mainInterface" variable to be initialized
-                        getMainInterface().init();
-                    }
-                    catch (Throwable t)
+                    @Override
+                    public void run()
                     {
-                        // any error here is fatal
-                        fatalError(t);
+                        // nothing to do
                     }
-                }
-            });
+                });
+            }
         }
-        else
+        catch (Throwable t)
         {
-            // simple main interface init
-            getMainInterface().init();
+            // any error at this point is fatal
+            fatalError(t);
         }
 
+        // run startup phases (independent phases are executed concurrently)
+        startup = createStartupScheduler();
+
+        final Throwable error = startup.run();
+
+        // any error in main phases is fatal
+        if (error != null)
+            fatalError(error);
+
         // splash screen initialized --> hide it
         if (splashScreen != null)
         {
@@ -283,17 +287,8 @@ public class Icy
             System.out.println("Headless mode.");
         System.out.println();
 
-        // initialize OSX specific stuff
-        if (SystemUtil.isMac())
-            AppleUtil.init();
-        // initialize security
-        IcySecurityManager.init();
-        // initialize exception handler
-        IcyExceptionHandler.init();
-        // initialize action manager
-        ActionManager.init();
-        // prepare native library files (need preferences init)
-        nativeLibrariesInit();
+        // startup timing
+        System.out.println(startup.getReport());
 
         // check for core update
         if (GeneralPreferences.getAutomaticUpdate())
@@ -317,18 +312,214 @@ public class Icy
             Icy.getMainInterface().addSequence(
                     Loader.loadSequence(new File(FileUtil.getGenericPath(startupImage)), 0, true));
         }
-        if (startupPlugin != null)
+        if (batchInput != null)
+            runBatch();
+        else if (startupPlugin != null)
         {
             PluginLoader.waitWhileLoading();
             PluginLauncher.start(startupPlugin);
         }
     }
 
+    /**
+     * Run the batch process defined by startup parameters.<br>
+     * In headless mode the application exits when the batch is done (exit code is 1 if some files
+     * failed).
+     */
+    private static void runBatch()
+    {
+        final List<File> files = BatchEngine.getInputFiles(batchInput, false);
+        final File output = (batchOutput != null) ? new File(FileUtil.getGenericPath(batchOutput)) : null;
+        final BatchEngine batch = new BatchEngine(files, output, batchMaxSequences);
+
+        if (batchScript != null)
+            batch.setScript(new File(FileUtil.getGenericPath(batchScript)));
+        else if (startupPlugin != null)
+        {
+            PluginLoader.waitWhileLoading();
+
+            final PluginDescriptor plugin = PluginLoader.getPlugin(startupPlugin);
+
+            if (plugin == null)
+            {
+                System.err.println("Batch: plugin '" + startupPlugin + "' not found !");
+                if (headless)
+                    System.exit(1);
+                return;
+            }
+
+            batch.setPlugin(plugin);
+        }
+
+        System.out.println("Batch: processing " + files.size() + " file(s)...");
+
+        final boolean result = batch.process(null);
+
+        System.out.println("Batch: " + (batch.getDoneCount() - batch.getFailedCount()) + " file(s) processed, "
+                + batch.getFailedCount() + " failed (" + batch.getTotalTime() + " ms).");
+
+        if (batchReport != null)
+            batch.saveReport(new File(FileUtil.getGenericPath(batchReport)));
+
+        if (headless)
+            System.exit(result ? 0 : 1);
+    }
+
+    /**
+     * Build the startup phases with their dependencies
+     */
+    private static StartupScheduler createStartupScheduler()
+    {
+        final StartupScheduler result = new StartupScheduler();
+
+        result.addPhase(PHASE_PREFERENCES, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // initialize preferences
+                IcyPreferences.init();
+            }
+        }, false, true);
+        result.addPhase(PHASE_NETWORK, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // initialize network (need preferences)
+                NetworkUtil.init();
+            }
+        }, false, true, PHASE_PREFERENCES);
+        result.addPhase(PHASE_PLUGINS, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // load plugins classes (need preferences init), done asynchronously so startup
+                // does not wait for it
+                PluginLoader.reloadAsynch();
+            }
+        }, PHASE_PREFERENCES);
+        result.addPhase(PHASE_WORKSPACES, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // load workspaces (need preferences init), done asynchronously so startup does
+                // not wait for it
+                WorkspaceLoader.reloadAsynch();
+            }
+        }, PHASE_PREFERENCES);
+        result.addPhase(PHASE_IMAGEJ, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // patches ImageJ classes
+                ImageJPatcher.applyPatches();
+            }
+        }, false, true);
+        result.addPhase(PHASE_NATIVE_LIBRARIES, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // prepare native library files (need preferences init)
+                nativeLibrariesInit();
+            }
+        }, PHASE_PREFERENCES);
+        result.addPhase(PHASE_MAIN_INTERFACE, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // build main interface
+                if (headless)
+                    mainInterface = new MainInterfaceBatch();
+                else
+                    mainInterface = new MainInterfaceGui();
+            }
+        }, false, true, PHASE_PREFERENCES);
+
+        if (!headless)
+        {
+            result.addPhase(PHASE_LOOK_AND_FEEL, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    // init Look And Feel (need mainInterface instance)
+                    LookAndFeelUtil.init();
+                }
+            }, true, true, PHASE_MAIN_INTERFACE);
+            result.addPhase(PHASE_INTERFACE_INIT, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    // init need "mainInterface" variable to be initialized (and ImageJ classes to be
+                    // patched as the interface uses ImageJ, native libraries state is used to
+                    // build available canvas list)
+                    getMainInterface().init();
+                }
+            }, true, true, PHASE_LOOK_AND_FEEL, PHASE_IMAGEJ, PHASE_NATIVE_LIBRARIES);
+        }
+        else
+        {
+            result.addPhase(PHASE_INTERFACE_INIT, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    // simple main interface init
+                    getMainInterface().init();
+                }
+            }, false, true, PHASE_MAIN_INTERFACE, PHASE_IMAGEJ, PHASE_NATIVE_LIBRARIES);
+        }
+
+        result.addPhase(PHASE_SYSTEM, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // initialize OSX specific stuff
+                if (SystemUtil.isMac())
+                    AppleUtil.init();
+                // initialize security
+                IcySecurityManager.init();
+                // initialize exception handler
+                IcyExceptionHandler.init();
+                // initialize action manager
+                ActionManager.init();
+            }
+        }, PHASE_INTERFACE_INIT);
+
+        return result;
+    }
+
+    /**
+     * Returns the startup timing report (see {@link StartupScheduler#getReport()}).<br>
+     * Returns an empty string if startup is not yet done.
+     */
+    public static String getStartupReport()
+    {
+        if (startup == null)
+            return "";
+
+        return startup.getReport();
+    }
+
     private static void handleAppArgs(String[] args)
     {
         startupImage = null;
         startupPlugin = null;
+        batchInput = null;
+        batchOutput = null;
+        batchScript = null;
+        batchReport = null;
+        batchMaxSequences = SystemUtil.getAvailableProcessors();
         boolean execute = false;
+        String batchOption = null;
 
         for (String arg : args)
         {
@@ -337,6 +528,21 @@ public class Icy
                 startupPlugin = arg;
                 execute = false;
             }
+            else if (batchOption != null)
+            {
+                if (batchOption.equals("input"))
+                    batchInput = arg;
+                else if (batchOption.equals("output"))
+                    batchOutput = arg;
+                else if (batchOption.equals("script"))
+                    batchScript = arg;
+                else if (batchOption.equals("report"))
+                    batchReport = arg;
+                else if (batchOption.equals("sequences"))
+                    batchMaxSequences = StringUtil.parseInt(arg, batchMaxSequences);
+
+                batchOption = null;
+            }
             else
             {
                 // special flag to disabled JCL (needed for development)
@@ -348,9 +554,24 @@ public class Icy
                 // disable splash-screen
                 else if (arg.equalsIgnoreCase("--nosplash") || arg.equalsIgnoreCase("-ns"))
                     noSplash = true;
+                // offline mode (only cached online resources are used)
+                else if (arg.equalsIgnoreCase("--offline") || arg.equalsIgnoreCase("-off"))
+                    HttpCache.setForceOffline(true);
                 // execute plugin
                 else if (arg.equalsIgnoreCase("--execute") || arg.equalsIgnoreCase("-x"))
                     execute = true;
+                // batch process (input files, output directory, script, report and number of
+                // sequences in memory)
+                else if (arg.equalsIgnoreCase("--batch") || arg.equalsIgnoreCase("-b"))
+                    batchOption = "input";
+                else if (arg.equalsIgnoreCase("--output") || arg.equalsIgnoreCase("-o"))
+                    batchOption = "output";
+                else if (arg.equalsIgnoreCase("--script") || arg.equalsIgnoreCase("-s"))
+                    batchOption = "script";
+                else if (arg.equalsIgnoreCase("--report") || arg.equalsIgnoreCase("-r"))
+                    batchOption = "report";
+                else if (arg.equalsIgnoreCase("--sequences") || arg.equalsIgnoreCase("-n"))
+                    batchOption = "sequences";
                 // image name ?
                 else
                     startupImage = arg;
@@ -596,6 +817,8 @@ public class Icy
 
                 // save preferences
                 IcyPreferences.save();
+                // save dataset catalog
+                DatasetCatalog.save();
 
                 // clean up native library files
                 // unPrepareNativeLibraries();
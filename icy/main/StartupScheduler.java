@@ -0,0 +1,376 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.main;
+
+import icy.system.IcyExceptionHandler;
+import icy.system.thread.ThreadUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Run the application startup phases.<br>
+ * Each phase declares the phases it depends on and is started as soon as all of them are
+ * completed, so independent phases are executed concurrently. Phases can be executed on the AWT
+ * event dispatch thread (look and feel, interface construction...) while others keep running in
+ * background.<br>
+ * The start and duration of each phase are recorded to build a startup timing report (see
+ * {@link #getReport()}).
+ * 
+ * @author Stephane
+ */
+public class StartupScheduler
+{
+    public static class Phase
+    {
+        final String name;
+        final Runnable task;
+        final boolean onEDT;
+        final boolean fatal;
+        final List<Phase> dependencies;
+        final CountDownLatch completed;
+
+        long startTime;
+        long endTime;
+        Throwable error;
+        boolean skipped;
+
+        Phase(String name, Runnable task, boolean onEDT, boolean fatal, List<Phase> dependencies)
+        {
+            super();
+
+            this.name = name;
+            this.task = task;
+            this.onEDT = onEDT;
+            this.fatal = fatal;
+            this.dependencies = dependencies;
+
+            completed = new CountDownLatch(1);
+            startTime = 0L;
+            endTime = 0L;
+            error = null;
+            skipped = false;
+        }
+
+        void execute(final long origin)
+        {
+            try
+            {
+                // wait for dependencies
+                for (Phase dep : dependencies)
+                {
+                    dep.completed.await();
+
+                    // a required phase failed --> don't execute
+                    if (dep.skipped || (dep.error != null))
+                        skipped = true;
+                }
+
+                if (skipped)
+                    return;
+
+                final Runnable runnable = new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        startTime = System.nanoTime() - origin;
+
+                        try
+                        {
+                            task.run();
+                        }
+                        catch (Throwable t)
+                        {
+                            error = t;
+                        }
+                        finally
+                        {
+                            endTime = System.nanoTime() - origin;
+                        }
+                    }
+                };
+
+                if (onEDT)
+                    ThreadUtil.invokeNow(runnable);
+                else
+                    runnable.run();
+
+                // non fatal error --> just display it
+                if ((error != null) && !fatal)
+                {
+                    System.err.println("Startup phase '" + name + "' failed:");
+                    IcyExceptionHandler.showErrorMessage(error, true);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                skipped = true;
+            }
+            finally
+            {
+                completed.countDown();
+            }
+        }
+
+        /**
+         * @return the phase name
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return phase start time (in ms) relative to the startup beginning
+         */
+        public double getStartTime()
+        {
+            return startTime / 1000000d;
+        }
+
+        /**
+         * @return phase execution time (in ms)
+         */
+        public double getDuration()
+        {
+            return (endTime - startTime) / 1000000d;
+        }
+
+        /**
+         * @return the error thrown by the phase (<code>null</code> if none)
+         */
+        public Throwable getError()
+        {
+            return error;
+        }
+
+        /**
+         * @return <code>true</code> if the phase has not been executed because one of its
+         *         dependencies failed
+         */
+        public boolean isSkipped()
+        {
+            return skipped;
+        }
+    }
+
+    private final Map<String, Phase> phases;
+    private long totalTime;
+
+    public StartupScheduler()
+    {
+        super();
+
+        phases = new LinkedHashMap<String, Phase>();
+        totalTime = 0L;
+    }
+
+    /**
+     * Add a startup phase.
+     * 
+     * @param name
+     *        phase name (should be unique)
+     * @param task
+     *        phase task
+     * @param onEDT
+     *        if <code>true</code> the task is executed on the AWT event dispatch thread
+     * @param fatal
+     *        if <code>true</code> an error in this phase is returned by {@link #run()}, otherwise
+     *        the error is only displayed
+     * @param dependencies
+     *        name of the phases (previously added) which should be completed before starting this
+     *        one
+     */
+    public Phase addPhase(String name, Runnable task, boolean onEDT, boolean fatal, String... dependencies)
+    {
+        final List<Phase> deps = new ArrayList<Phase>();
+
+        for (String dep : dependencies)
+        {
+            final Phase phase = phases.get(dep);
+
+            if (phase == null)
+                throw new IllegalArgumentException("StartupScheduler.addPhase('" + name + "'): unknown dependency '"
+                        + dep + "'");
+
+            deps.add(phase);
+        }
+
+        final Phase result = new Phase(name, task, onEDT, fatal, deps);
+
+        phases.put(name, result);
+
+        return result;
+    }
+
+    /**
+     * Add a background startup phase.
+     * 
+     * @see #addPhase(String, Runnable, boolean, boolean, String...)
+     */
+    public Phase addPhase(String name, Runnable task, String... dependencies)
+    {
+        return addPhase(name, task, false, false, dependencies);
+    }
+
+    /**
+     * Returns the phase of specified name (<code>null</code> if not found)
+     */
+    public Phase getPhase(String name)
+    {
+        return phases.get(name);
+    }
+
+    /**
+     * Returns all phases (in declaration order)
+     */
+    public List<Phase> getPhases()
+    {
+        return new ArrayList<Phase>(phases.values());
+    }
+
+    /**
+     * Execute all phases and wait for their completion.<br>
+     * Returns the error of the first failing fatal phase (<code>null</code> if no fatal error
+     * happened).
+     */
+    public Throwable run()
+    {
+        final long origin = System.nanoTime();
+        final List<Thread> threads = new ArrayList<Thread>();
+
+        for (final Phase phase : phases.values())
+        {
+            final Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    phase.execute(origin);
+                }
+            }, "Startup - " + phase.name);
+
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads)
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                // ignore
+            }
+        }
+
+        totalTime = System.nanoTime() - origin;
+
+        for (Phase phase : phases.values())
+            if (phase.fatal && (phase.error != null))
+                return phase.error;
+
+        return null;
+    }
+
+    /**
+     * @return total startup time (in ms)
+     */
+    public double getTotalTime()
+    {
+        return totalTime / 1000000d;
+    }
+
+    /**
+     * Returns the critical path: the chain of phases which determined the startup duration (the
+     * last completed phase then for each phase the dependency which completed last).
+     */
+    public List<Phase> getCriticalPath()
+    {
+        final List<Phase> result = new ArrayList<Phase>();
+        Phase current = null;
+
+        for (Phase phase : phases.values())
+            if ((current == null) || (phase.endTime > current.endTime))
+                current = phase;
+
+        while (current != null)
+        {
+            result.add(0, current);
+
+            Phase last = null;
+            for (Phase dep : current.dependencies)
+                if ((last == null) || (dep.endTime > last.endTime))
+                    last = dep;
+
+            current = last;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the startup timing report (one line per phase with start time and duration).
+     */
+    public String getReport()
+    {
+        final StringBuilder result = new StringBuilder();
+
+        result.append("Startup timing (total " + Math.round(getTotalTime()) + " ms):\n");
+
+        for (Phase phase : phases.values())
+        {
+            result.append("  " + phase.name + " : ");
+
+            if (phase.skipped)
+                result.append("skipped");
+            else
+            {
+                result.append("start " + Math.round(phase.getStartTime()) + " ms, duration "
+                        + Math.round(phase.getDuration()) + " ms");
+                if (phase.onEDT)
+                    result.append(" (EDT)");
+                if (phase.error != null)
+                    result.append(" - failed");
+            }
+
+            result.append("\n");
+        }
+
+        result.append("  critical path : ");
+
+        final List<Phase> path = getCriticalPath();
+        for (int i = 0; i < path.size(); i++)
+        {
+            if (i > 0)
+                result.append(" > ");
+            result.append(path.get(i).name);
+        }
+
+        result.append("\n");
+
+        return result.toString();
+    }
+}
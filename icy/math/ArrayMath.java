@@ -22,6 +22,8 @@ import icy.type.TypeUtil;
 import icy.type.collection.array.Array1DUtil;
 import icy.type.collection.array.ArrayUtil;
 
+import java.util.Arrays;
+
 /**
  * Class defining basic arithmetic and statistic operations on 1D double arrays.
  * 
@@ -2563,6 +2565,926 @@ public class ArrayMath
         }
     }
 
+    /**
+     * Size of the histogram work buffer used by the radix based rank selection methods
+     * ({@link #valueAtRank(byte[], boolean, int, int[])}, {@link #percentile(Object, boolean, double, int[])}...)
+     */
+    public static final int RANK_HISTOGRAM_SIZE = 256;
+
+    /**
+     * Returns the index (0 based rank) of the specified percentile for a population of the given
+     * size.<br>
+     * The percentile is taken as the value located at rank <code>round((size - 1) * percent / 100)</code> in
+     * the sorted population (no interpolation is done so the result is always a value of the
+     * population).
+     * 
+     * @param size
+     *        population size
+     * @param percent
+     *        percentile in [0..100] range
+     */
+    public static int percentileRank(int size, double percent)
+    {
+        if ((percent < 0d) || (percent > 100d))
+            throw new IllegalArgumentException("Percentile must be in [0..100] range: " + percent);
+
+        return (int) Math.round(((size - 1) * percent) / 100d);
+    }
+
+    private static void checkRank(int rank, int size)
+    {
+        if ((rank < 0) || (rank >= size))
+            throw new IllegalArgumentException("Rank " + rank + " is out of bounds [0.." + (size - 1) + "]");
+    }
+
+    /**
+     * Returns the index of the histogram bin containing the specified rank.
+     */
+    private static int findRankBin(int[] histogram, int rank)
+    {
+        int r = rank;
+        int bin = 0;
+
+        while (r >= histogram[bin])
+            r -= histogram[bin++];
+
+        return bin;
+    }
+
+    /**
+     * Returns the rank relative to the start of the specified histogram bin (rank decremented by
+     * the number of elements in the preceding bins).
+     */
+    private static int rankInBin(int[] histogram, int bin, int rank)
+    {
+        int r = rank;
+
+        for (int i = 0; i < bin; i++)
+            r -= histogram[i];
+
+        return r;
+    }
+
+    /**
+     * Converts a float value to an integer key preserving ordering when keys are compared as
+     * unsigned integers (NaN values are sorted at the end).
+     */
+    private static int floatToKey(float value)
+    {
+        final int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) | Integer.MIN_VALUE);
+    }
+
+    private static float keyToFloat(int key)
+    {
+        return Float.intBitsToFloat(key ^ (((~key) >> 31) | Integer.MIN_VALUE));
+    }
+
+    /**
+     * Converts a double value to a long key preserving ordering when keys are compared as
+     * unsigned long (NaN values are sorted at the end).
+     */
+    private static long doubleToKey(double value)
+    {
+        final long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    private static double keyToDouble(long key)
+    {
+        return Double.longBitsToDouble(key ^ (((~key) >> 63) | Long.MIN_VALUE));
+    }
+
+    /**
+     * Returns the value located at the specified rank (0 based) if the array was sorted.<br>
+     * Contrary to {@link #select(int, double[])} the input array is not modified and no copy is
+     * done: a single counting pass is performed over the data.
+     * 
+     * @param array
+     *        input array (not modified)
+     * @param signed
+     *        signed / unsigned flag
+     * @param rank
+     *        rank (0 based) of the wanted value
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @throws IllegalArgumentException
+     *         if rank is out of bounds
+     */
+    public static int valueAtRank(byte[] array, boolean signed, int rank, int[] histogram)
+            throws IllegalArgumentException
+    {
+        checkRank(rank, array.length);
+
+        final int[] hist = Array1DUtil.allocIfNull(histogram, RANK_HISTOGRAM_SIZE);
+        final int flip = signed ? 0x80 : 0;
+
+        Arrays.fill(hist, 0);
+        for (byte v : array)
+            hist[(v ^ flip) & 0xFF]++;
+
+        final int key = findRankBin(hist, rank);
+
+        if (signed)
+            return (byte) (key ^ flip);
+
+        return key;
+    }
+
+    /**
+     * Returns the value located at the specified rank (0 based) if the array was sorted.<br>
+     * Contrary to {@link #select(int, double[])} the input array is not modified and no copy is
+     * done: the value is found with at most 2 counting passes over the data (radix selection).
+     * 
+     * @param array
+     *        input array (not modified)
+     * @param signed
+     *        signed / unsigned flag
+     * @param rank
+     *        rank (0 based) of the wanted value
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @throws IllegalArgumentException
+     *         if rank is out of bounds
+     */
+    public static int valueAtRank(short[] array, boolean signed, int rank, int[] histogram)
+            throws IllegalArgumentException
+    {
+        checkRank(rank, array.length);
+
+        final int[] hist = Array1DUtil.allocIfNull(histogram, RANK_HISTOGRAM_SIZE);
+        int r = rank;
+        final int flip = signed ? 0x8000 : 0;
+
+        // high byte
+        Arrays.fill(hist, 0);
+        for (short v : array)
+            hist[((v ^ flip) >> 8) & 0xFF]++;
+
+        final int high = findRankBin(hist, r);
+        r = rankInBin(hist, high, r);
+
+        // low byte
+        Arrays.fill(hist, 0);
+        for (short v : array)
+        {
+            final int key = (v ^ flip) & 0xFFFF;
+            if ((key >> 8) == high)
+                hist[key & 0xFF]++;
+        }
+
+        final int key = (high << 8) | findRankBin(hist, r);
+
+        if (signed)
+            return (short) (key ^ flip);
+
+        return key;
+    }
+
+    /**
+     * Returns the value located at the specified rank (0 based) if the array was sorted.<br>
+     * Contrary to {@link #select(int, double[])} the input array is not modified and no copy is
+     * done: the value is found with at most 4 counting passes over the data (radix selection).
+     * 
+     * @param array
+     *        input array (not modified)
+     * @param signed
+     *        signed / unsigned flag
+     * @param rank
+     *        rank (0 based) of the wanted value
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @throws IllegalArgumentException
+     *         if rank is out of bounds
+     */
+    public static long valueAtRank(int[] array, boolean signed, int rank, int[] histogram)
+            throws IllegalArgumentException
+    {
+        checkRank(rank, array.length);
+
+        final int[] hist = Array1DUtil.allocIfNull(histogram, RANK_HISTOGRAM_SIZE);
+        int r = rank;
+        final int flip = signed ? Integer.MIN_VALUE : 0;
+        int prefix = 0;
+        int mask = 0;
+
+        for (int shift = 24; shift >= 0; shift -= 8)
+        {
+            Arrays.fill(hist, 0);
+            for (int v : array)
+            {
+                final int key = v ^ flip;
+                if ((key & mask) == prefix)
+                    hist[(key >>> shift) & 0xFF]++;
+            }
+
+            final int bin = findRankBin(hist, r);
+            r = rankInBin(hist, bin, r);
+
+            prefix |= bin << shift;
+            mask |= 0xFF << shift;
+
+            // only one candidate left --> directly find it
+            if ((hist[bin] == 1) && (shift > 0))
+            {
+                for (int v : array)
+                {
+                    if (((v ^ flip) & mask) == prefix)
+                    {
+                        prefix = v ^ flip;
+                        break;
+                    }
+                }
+                break;
+            }
+        }
+
+        if (signed)
+            return prefix ^ flip;
+
+        return TypeUtil.unsign(prefix);
+    }
+
+    /**
+     * Returns the value located at the specified rank (0 based) if the array was sorted.<br>
+     * Contrary to {@link #select(int, double[])} the input array is not modified and no copy is
+     * done: the value is found with at most 8 counting passes over the data (radix selection).
+     * 
+     * @param array
+     *        input array (not modified)
+     * @param signed
+     *        signed / unsigned flag
+     * @param rank
+     *        rank (0 based) of the wanted value
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @throws IllegalArgumentException
+     *         if rank is out of bounds
+     */
+    public static long valueAtRank(long[] array, boolean signed, int rank, int[] histogram)
+            throws IllegalArgumentException
+    {
+        checkRank(rank, array.length);
+
+        final int[] hist = Array1DUtil.allocIfNull(histogram, RANK_HISTOGRAM_SIZE);
+        final long flip = signed ? Long.MIN_VALUE : 0L;
+
+        return selectLongKey(array, flip, rank, hist) ^ flip;
+    }
+
+    private static long selectLongKey(long[] array, long flip, int rank, int[] hist)
+    {
+        int r = rank;
+        long prefix = 0L;
+        long mask = 0L;
+
+        for (int shift = 56; shift >= 0; shift -= 8)
+        {
+            Arrays.fill(hist, 0);
+            for (long v : array)
+            {
+                final long key = v ^ flip;
+                if ((key & mask) == prefix)
+                    hist[(int) (key >>> shift) & 0xFF]++;
+            }
+
+            final int bin = findRankBin(hist, r);
+            r = rankInBin(hist, bin, r);
+
+            prefix |= ((long) bin) << shift;
+            mask |= 0xFFL << shift;
+
+            // only one candidate left --> directly find it
+            if ((hist[bin] == 1) && (shift > 0))
+            {
+                for (long v : array)
+                {
+                    if (((v ^ flip) & mask) == prefix)
+                        return v ^ flip;
+                }
+            }
+        }
+
+        return prefix;
+    }
+
+    /**
+     * Returns the value located at the specified rank (0 based) if the array was sorted (NaN values
+     * are considered greater than any other value).<br>
+     * Contrary to {@link #select(int, double[])} the input array is not modified and no copy is
+     * done: the value is found with at most 4 counting passes over the data (radix selection).
+     * 
+     * @param array
+     *        input array (not modified)
+     * @param rank
+     *        rank (0 based) of the wanted value
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @throws IllegalArgumentException
+     *         if rank is out of bounds
+     */
+    public static float valueAtRank(float[] array, int rank, int[] histogram) throws IllegalArgumentException
+    {
+        checkRank(rank, array.length);
+
+        final int[] hist = Array1DUtil.allocIfNull(histogram, RANK_HISTOGRAM_SIZE);
+        int r = rank;
+        int prefix = 0;
+        int mask = 0;
+
+        for (int shift = 24; shift >= 0; shift -= 8)
+        {
+            Arrays.fill(hist, 0);
+            for (float v : array)
+            {
+                final int key = floatToKey(v);
+                if ((key & mask) == prefix)
+                    hist[(key >>> shift) & 0xFF]++;
+            }
+
+            final int bin = findRankBin(hist, r);
+            r = rankInBin(hist, bin, r);
+
+            prefix |= bin << shift;
+            mask |= 0xFF << shift;
+
+            // only one candidate left --> directly find it
+            if ((hist[bin] == 1) && (shift > 0))
+            {
+                for (float v : array)
+                {
+                    if ((floatToKey(v) & mask) == prefix)
+                        return v;
+                }
+            }
+        }
+
+        return keyToFloat(prefix);
+    }
+
+    /**
+     * Returns the value located at the specified rank (0 based) if the array was sorted (NaN values
+     * are considered greater than any other value).<br>
+     * Contrary to {@link #select(int, double[])} the input array is not modified and no copy is
+     * done: the value is found with at most 8 counting passes over the data (radix selection).
+     * 
+     * @param array
+     *        input array (not modified)
+     * @param rank
+     *        rank (0 based) of the wanted value
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @throws IllegalArgumentException
+     *         if rank is out of bounds
+     */
+    public static double valueAtRank(double[] array, int rank, int[] histogram) throws IllegalArgumentException
+    {
+        checkRank(rank, array.length);
+
+        final int[] hist = Array1DUtil.allocIfNull(histogram, RANK_HISTOGRAM_SIZE);
+
+        return selectDoubleKey(array, 0d, false, rank, hist);
+    }
+
+    /**
+     * Radix selection on double values (or on absolute deviation from <code>center</code> if
+     * <code>deviation</code> is set).
+     */
+    private static double selectDoubleKey(double[] array, double center, boolean deviation, int rank, int[] hist)
+    {
+        int r = rank;
+        long prefix = 0L;
+        long mask = 0L;
+
+        for (int shift = 56; shift >= 0; shift -= 8)
+        {
+            Arrays.fill(hist, 0);
+            for (double v : array)
+            {
+                final long key = doubleToKey(deviation ? Math.abs(v - center) : v);
+                if ((key & mask) == prefix)
+                    hist[(int) (key >>> shift) & 0xFF]++;
+            }
+
+            final int bin = findRankBin(hist, r);
+            r = rankInBin(hist, bin, r);
+
+            prefix |= ((long) bin) << shift;
+            mask |= 0xFFL << shift;
+
+            // only one candidate left --> directly find it
+            if ((hist[bin] == 1) && (shift > 0))
+            {
+                for (double v : array)
+                {
+                    final double d = deviation ? Math.abs(v - center) : v;
+                    if ((doubleToKey(d) & mask) == prefix)
+                        return d;
+                }
+            }
+        }
+
+        return keyToDouble(prefix);
+    }
+
+    /**
+     * Radix selection on absolute deviation from <code>center</code> for float values.
+     */
+    private static double selectDeviation(float[] array, double center, int rank, int[] hist)
+    {
+        int r = rank;
+        long prefix = 0L;
+        long mask = 0L;
+
+        for (int shift = 56; shift >= 0; shift -= 8)
+        {
+            Arrays.fill(hist, 0);
+            for (float v : array)
+            {
+                final long key = doubleToKey(Math.abs(v - center));
+                if ((key & mask) == prefix)
+                    hist[(int) (key >>> shift) & 0xFF]++;
+            }
+
+            final int bin = findRankBin(hist, r);
+            r = rankInBin(hist, bin, r);
+
+            prefix |= ((long) bin) << shift;
+            mask |= 0xFFL << shift;
+
+            // only one candidate left --> directly find it
+            if ((hist[bin] == 1) && (shift > 0))
+            {
+                for (float v : array)
+                {
+                    final double d = Math.abs(v - center);
+                    if ((doubleToKey(d) & mask) == prefix)
+                        return d;
+                }
+            }
+        }
+
+        return keyToDouble(prefix);
+    }
+
+    /**
+     * Radix selection on absolute deviation from <code>center</code> for integer values.<br>
+     * Deviation is always positive and lower than 2^32 so we only need to process the 32 low bits.
+     */
+    private static long selectDeviation(int[] array, boolean signed, long center, int rank, int[] hist)
+    {
+        int r = rank;
+        long prefix = 0L;
+        long mask = 0L;
+
+        for (int shift = 24; shift >= 0; shift -= 8)
+        {
+            Arrays.fill(hist, 0);
+            for (int v : array)
+            {
+                final long key = Math.abs((signed ? v : TypeUtil.unsign(v)) - center);
+                if ((key & mask) == prefix)
+                    hist[(int) (key >>> shift) & 0xFF]++;
+            }
+
+            final int bin = findRankBin(hist, r);
+            r = rankInBin(hist, bin, r);
+
+            prefix |= ((long) bin) << shift;
+            mask |= 0xFFL << shift;
+        }
+
+        return prefix;
+    }
+
+    /**
+     * Returns the specified percentile of the array (the input array is not modified).
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag (ignored for float and double data)
+     * @param percent
+     *        percentile in [0..100] range
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the percentile value or NaN if the array is empty
+     * @see #percentileRank(int, double)
+     */
+    public static double percentile(Object array, boolean signed, double percent, int[] histogram)
+    {
+        switch (ArrayUtil.getDataType(array))
+        {
+            case BYTE:
+                return percentile((byte[]) array, signed, percent, histogram);
+            case SHORT:
+                return percentile((short[]) array, signed, percent, histogram);
+            case INT:
+                return percentile((int[]) array, signed, percent, histogram);
+            case LONG:
+                return percentile((long[]) array, signed, percent, histogram);
+            case FLOAT:
+                return percentile((float[]) array, percent, histogram);
+            case DOUBLE:
+                return percentile((double[]) array, percent, histogram);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Returns the specified percentile of the array (the input array is not modified).
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag (ignored for float and double data)
+     * @param percent
+     *        percentile in [0..100] range
+     * @return the percentile value or NaN if the array is empty
+     * @see #percentileRank(int, double)
+     */
+    public static double percentile(Object array, boolean signed, double percent)
+    {
+        return percentile(array, signed, percent, null);
+    }
+
+    /**
+     * Returns the specified percentile of the array (the input array is not modified).
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag
+     * @param percent
+     *        percentile in [0..100] range
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the percentile value or NaN if the array is empty
+     * @see #percentileRank(int, double)
+     */
+    public static double percentile(byte[] array, boolean signed, double percent, int[] histogram)
+    {
+        if (array.length == 0)
+            return Double.NaN;
+
+        return valueAtRank(array, signed, percentileRank(array.length, percent), histogram);
+    }
+
+    /**
+     * Returns the specified percentile of the array (the input array is not modified).
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag
+     * @param percent
+     *        percentile in [0..100] range
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the percentile value or NaN if the array is empty
+     * @see #percentileRank(int, double)
+     */
+    public static double percentile(short[] array, boolean signed, double percent, int[] histogram)
+    {
+        if (array.length == 0)
+            return Double.NaN;
+
+        return valueAtRank(array, signed, percentileRank(array.length, percent), histogram);
+    }
+
+    /**
+     * Returns the specified percentile of the array (the input array is not modified).
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag
+     * @param percent
+     *        percentile in [0..100] range
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the percentile value or NaN if the array is empty
+     * @see #percentileRank(int, double)
+     */
+    public static double percentile(int[] array, boolean signed, double percent, int[] histogram)
+    {
+        if (array.length == 0)
+            return Double.NaN;
+
+        return valueAtRank(array, signed, percentileRank(array.length, percent), histogram);
+    }
+
+    /**
+     * Returns the specified percentile of the array (the input array is not modified).
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag
+     * @param percent
+     *        percentile in [0..100] range
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the percentile value or NaN if the array is empty
+     * @see #percentileRank(int, double)
+     */
+    public static double percentile(long[] array, boolean signed, double percent, int[] histogram)
+    {
+        if (array.length == 0)
+            return Double.NaN;
+
+        final long result = valueAtRank(array, signed, percentileRank(array.length, percent), histogram);
+
+        if (signed)
+            return result;
+
+        return TypeUtil.unsign(result);
+    }
+
+    /**
+     * Returns the specified percentile of the array (the input array is not modified).
+     * 
+     * @param array
+     *        an array
+     * @param percent
+     *        percentile in [0..100] range
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the percentile value or NaN if the array is empty
+     * @see #percentileRank(int, double)
+     */
+    public static double percentile(float[] array, double percent, int[] histogram)
+    {
+        if (array.length == 0)
+            return Double.NaN;
+
+        return valueAtRank(array, percentileRank(array.length, percent), histogram);
+    }
+
+    /**
+     * Returns the specified percentile of the array (the input array is not modified).
+     * 
+     * @param array
+     *        an array
+     * @param percent
+     *        percentile in [0..100] range
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the percentile value or NaN if the array is empty
+     * @see #percentileRank(int, double)
+     */
+    public static double percentile(double[] array, double percent, int[] histogram)
+    {
+        if (array.length == 0)
+            return Double.NaN;
+
+        return valueAtRank(array, percentileRank(array.length, percent), histogram);
+    }
+
+    /**
+     * Returns the median value of the array (the input array is not modified).<br>
+     * This is the 50th percentile so for even sized array the upper median value is returned.
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag (ignored for float and double data)
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the median value or NaN if the array is empty
+     */
+    public static double median(Object array, boolean signed, int[] histogram)
+    {
+        return percentile(array, signed, 50d, histogram);
+    }
+
+    /**
+     * Returns the median value of the array (the input array is not modified).<br>
+     * This is the 50th percentile so for even sized array the upper median value is returned.
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag (ignored for float and double data)
+     * @return the median value or NaN if the array is empty
+     */
+    public static double median(Object array, boolean signed)
+    {
+        return percentile(array, signed, 50d, null);
+    }
+
+    /**
+     * Computes the Median Absolute Deviation aka MAD of the given array without modifying nor
+     * copying it (long data is not supported).
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag (ignored for float and double data)
+     * @param normalPopulation
+     *        normalizes the population by 1.4826
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the MAD value or NaN if the array is empty
+     * @see #median(Object, boolean, int[])
+     */
+    public static double mad(Object array, boolean signed, boolean normalPopulation, int[] histogram)
+    {
+        switch (ArrayUtil.getDataType(array))
+        {
+            case BYTE:
+                return mad((byte[]) array, signed, normalPopulation, histogram);
+            case SHORT:
+                return mad((short[]) array, signed, normalPopulation, histogram);
+            case INT:
+                return mad((int[]) array, signed, normalPopulation, histogram);
+            case FLOAT:
+                return mad((float[]) array, normalPopulation, histogram);
+            case DOUBLE:
+                return mad((double[]) array, normalPopulation, histogram);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Computes the Median Absolute Deviation aka MAD of the given array without modifying nor
+     * copying it.
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag
+     * @param normalPopulation
+     *        normalizes the population by 1.4826
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the MAD value or NaN if the array is empty
+     */
+    public static double mad(byte[] array, boolean signed, boolean normalPopulation, int[] histogram)
+    {
+        if (array.length == 0)
+            return Double.NaN;
+
+        final int[] hist = Array1DUtil.allocIfNull(histogram, RANK_HISTOGRAM_SIZE);
+        final int rank = percentileRank(array.length, 50d);
+        final int median = valueAtRank(array, signed, rank, hist);
+
+        // deviation is in [0..255] range so a single pass is enough
+        Arrays.fill(hist, 0);
+        if (signed)
+        {
+            for (byte v : array)
+                hist[Math.abs(v - median)]++;
+        }
+        else
+        {
+            for (byte v : array)
+                hist[Math.abs(TypeUtil.unsign(v) - median)]++;
+        }
+
+        final double result = findRankBin(hist, rank);
+
+        if (normalPopulation)
+            return 1.4826d * result;
+
+        return result;
+    }
+
+    /**
+     * Computes the Median Absolute Deviation aka MAD of the given array without modifying nor
+     * copying it.
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag
+     * @param normalPopulation
+     *        normalizes the population by 1.4826
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the MAD value or NaN if the array is empty
+     */
+    public static double mad(short[] array, boolean signed, boolean normalPopulation, int[] histogram)
+    {
+        if (array.length == 0)
+            return Double.NaN;
+
+        final int[] hist = Array1DUtil.allocIfNull(histogram, RANK_HISTOGRAM_SIZE);
+        int r = percentileRank(array.length, 50d);
+        final int median = valueAtRank(array, signed, r, hist);
+
+        // deviation is in [0..65535] range so 2 passes are enough
+        Arrays.fill(hist, 0);
+        for (short v : array)
+            hist[Math.abs((signed ? v : TypeUtil.unsign(v)) - median) >> 8]++;
+
+        final int high = findRankBin(hist, r);
+        r = rankInBin(hist, high, r);
+
+        Arrays.fill(hist, 0);
+        for (short v : array)
+        {
+            final int dev = Math.abs((signed ? v : TypeUtil.unsign(v)) - median);
+            if ((dev >> 8) == high)
+                hist[dev & 0xFF]++;
+        }
+
+        final double result = (high << 8) | findRankBin(hist, r);
+
+        if (normalPopulation)
+            return 1.4826d * result;
+
+        return result;
+    }
+
+    /**
+     * Computes the Median Absolute Deviation aka MAD of the given array without modifying nor
+     * copying it.
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag
+     * @param normalPopulation
+     *        normalizes the population by 1.4826
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the MAD value or NaN if the array is empty
+     */
+    public static double mad(int[] array, boolean signed, boolean normalPopulation, int[] histogram)
+    {
+        if (array.length == 0)
+            return Double.NaN;
+
+        final int[] hist = Array1DUtil.allocIfNull(histogram, RANK_HISTOGRAM_SIZE);
+        final int rank = percentileRank(array.length, 50d);
+        final long median = valueAtRank(array, signed, rank, hist);
+        final double result = selectDeviation(array, signed, median, rank, hist);
+
+        if (normalPopulation)
+            return 1.4826d * result;
+
+        return result;
+    }
+
+    /**
+     * Computes the Median Absolute Deviation aka MAD of the given array without modifying nor
+     * copying it.
+     * 
+     * @param array
+     *        an array
+     * @param normalPopulation
+     *        normalizes the population by 1.4826
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the MAD value or NaN if the array is empty
+     */
+    public static double mad(float[] array, boolean normalPopulation, int[] histogram)
+    {
+        if (array.length == 0)
+            return Double.NaN;
+
+        final int[] hist = Array1DUtil.allocIfNull(histogram, RANK_HISTOGRAM_SIZE);
+        final int rank = percentileRank(array.length, 50d);
+        final float median = valueAtRank(array, rank, hist);
+        final double result = selectDeviation(array, median, rank, hist);
+
+        if (normalPopulation)
+            return 1.4826d * result;
+
+        return result;
+    }
+
+    /**
+     * Computes the Median Absolute Deviation aka MAD of the given array without modifying nor
+     * copying it.
+     * 
+     * @param array
+     *        an array
+     * @param normalPopulation
+     *        normalizes the population by 1.4826
+     * @param histogram
+     *        work buffer of size {@link #RANK_HISTOGRAM_SIZE} (allocated if <code>null</code>)
+     * @return the MAD value or NaN if the array is empty
+     */
+    public static double mad(double[] array, boolean normalPopulation, int[] histogram)
+    {
+        if (array.length == 0)
+            return Double.NaN;
+
+        final int[] hist = Array1DUtil.allocIfNull(histogram, RANK_HISTOGRAM_SIZE);
+        final int rank = percentileRank(array.length, 50d);
+        final double median = valueAtRank(array, rank, hist);
+        final double result = selectDoubleKey(array, median, true, rank, hist);
+
+        if (normalPopulation)
+            return 1.4826d * result;
+
+        return result;
+    }
+
     /**
      * Computes the sum of all values from the specified input array.
      * 
@@ -19,14 +19,15 @@
 package icy.math;
 
 /**
- * Uses this class to maintain and calculate a rate.
+ * Uses this class to maintain and calculate a rate.<br>
+ * Counters can be updated and read from different threads (ex: render thread and EDT).
  * 
  * @author stephane
  */
 public class RateMeter
 {
     private double lastCnt;
-    private double rate;
+    private volatile double rate;
     private double rateCnt;
     private double lastRateCnt;
 
@@ -40,7 +41,7 @@ public class RateMeter
     /**
      * Reset counter
      */
-    public void reset()
+    public synchronized void reset()
     {
         lastCnt = System.nanoTime();
         rate = 0;
@@ -52,7 +53,7 @@ public class RateMeter
      * Update rate from delta<br>
      * Return current rate
      */
-    public double updateFromDelta(double delta)
+    public synchronized double updateFromDelta(double delta)
     {
         return updateFromTotal(rateCnt + delta);
     }
@@ -61,7 +62,7 @@ public class RateMeter
      * Update rate from total<br>
      * Return current rate
      */
-    public double updateFromTotal(double total)
+    public synchronized double updateFromTotal(double total)
     {
         final double curCnt = System.nanoTime();
         final double difCnt = curCnt - lastCnt;
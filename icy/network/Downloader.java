@@ -0,0 +1,297 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.network;
+
+import icy.common.listener.ProgressListener;
+import icy.preferences.NetworkPreferences;
+import icy.system.IcyExceptionHandler;
+import icy.system.thread.Processor;
+import icy.system.thread.ThreadUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Download a set of files concurrently (with a maximum number of simultaneous transfers).<br>
+ * Each file is downloaded through
+ * {@link NetworkUtil#download(String, String, String, File, String, ProgressListener, boolean)} so
+ * it is written to a temporary file, resumed on transfer error and verified against its checksum
+ * (if known) before replacing the destination file.
+ * 
+ * @author Stephane
+ */
+public class Downloader
+{
+    /**
+     * Number of attempt for a single file (transfer is resumed on each new attempt)
+     */
+    public static final int MAX_ATTEMPT = 3;
+
+    public class Download implements Runnable, ProgressListener
+    {
+        final String path;
+        final String login;
+        final String pass;
+        final File dest;
+        final String checksum;
+
+        volatile double position;
+        volatile double length;
+        volatile boolean done;
+        volatile boolean succeed;
+
+        Download(String path, String login, String pass, File dest, String checksum)
+        {
+            super();
+
+            this.path = path;
+            this.login = login;
+            this.pass = pass;
+            this.dest = dest;
+            this.checksum = checksum;
+
+            position = 0d;
+            length = -1d;
+            done = false;
+            succeed = false;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                for (int attempt = 1; (attempt <= MAX_ATTEMPT) && !canceled; attempt++)
+                {
+                    // only display error on last attempt
+                    succeed = NetworkUtil.download(path, login, pass, dest, checksum, this, displayError
+                            && (attempt == MAX_ATTEMPT));
+
+                    if (succeed || canceled)
+                        break;
+
+                    // wait a bit before retrying
+                    ThreadUtil.sleep(attempt * 1000);
+                }
+            }
+            catch (Throwable t)
+            {
+                if (displayError)
+                    IcyExceptionHandler.showErrorMessage(t, false, false);
+            }
+            finally
+            {
+                done = true;
+            }
+        }
+
+        @Override
+        public boolean notifyProgress(double position, double length)
+        {
+            this.position = position;
+            this.length = length;
+
+            return !canceled;
+        }
+
+        /**
+         * @return the download path (URL)
+         */
+        public String getPath()
+        {
+            return path;
+        }
+
+        /**
+         * @return the destination file
+         */
+        public File getDestination()
+        {
+            return dest;
+        }
+
+        /**
+         * @return <code>true</code> if download is terminated (successfully or not)
+         */
+        public boolean isDone()
+        {
+            return done;
+        }
+
+        /**
+         * @return <code>true</code> if file was correctly downloaded
+         */
+        public boolean isSucceed()
+        {
+            return succeed;
+        }
+    }
+
+    private final List<Download> downloads;
+    private final int maxConcurrent;
+
+    volatile boolean canceled;
+    boolean displayError;
+
+    /**
+     * Create a new downloader with the specified maximum number of concurrent downloads.
+     */
+    public Downloader(int maxConcurrent)
+    {
+        super();
+
+        downloads = new ArrayList<Download>();
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        canceled = false;
+        displayError = true;
+    }
+
+    /**
+     * Create a new downloader using the maximum number of concurrent downloads from preferences.
+     */
+    public Downloader()
+    {
+        this(NetworkPreferences.getMaxDownloads());
+    }
+
+    /**
+     * Add a file to download.
+     * 
+     * @param path
+     *        download path (URL)
+     * @param login
+     *        login if the connection requires authentication (can be <code>null</code>)
+     * @param pass
+     *        password if the connection requires authentication (can be <code>null</code>)
+     * @param dest
+     *        destination file
+     * @param checksum
+     *        expected checksum of the file (see {@link icy.file.FileUtil#getChecksum(File)}), can
+     *        be <code>null</code> if unknown.
+     */
+    public Download add(String path, String login, String pass, File dest, String checksum)
+    {
+        final Download result = new Download(path, login, pass, dest, checksum);
+
+        downloads.add(result);
+
+        return result;
+    }
+
+    /**
+     * Returns all downloads
+     */
+    public List<Download> getDownloads()
+    {
+        return new ArrayList<Download>(downloads);
+    }
+
+    /**
+     * Returns number of terminated downloads
+     */
+    public int getDoneCount()
+    {
+        int result = 0;
+
+        for (Download download : downloads)
+            if (download.isDone())
+                result++;
+
+        return result;
+    }
+
+    /**
+     * Cancel downloads
+     */
+    public void cancel()
+    {
+        canceled = true;
+    }
+
+    /**
+     * @return <code>true</code> if downloads has been canceled
+     */
+    public boolean isCanceled()
+    {
+        return canceled;
+    }
+
+    /**
+     * Download all files and wait for completion.<br>
+     * The specified listener is notified with the total number of downloaded bytes (length is
+     * <code>-1</code> while some of the file length are still unknown), returning <code>false</code>
+     * from the listener cancel all downloads.
+     * 
+     * @return <code>true</code> if all files were correctly downloaded
+     */
+    public boolean download(ProgressListener listener, boolean displayError)
+    {
+        if (downloads.isEmpty())
+            return true;
+
+        this.displayError = displayError;
+
+        final Processor processor = new Processor(downloads.size(), Math.min(maxConcurrent, downloads.size()));
+        processor.setDefaultThreadName("Downloader");
+
+        try
+        {
+            for (Download download : downloads)
+                processor.submit(download);
+
+            while (getDoneCount() < downloads.size())
+            {
+                if ((listener != null) && !canceled)
+                {
+                    double position = 0d;
+                    double length = 0d;
+
+                    for (Download download : downloads)
+                    {
+                        position += download.position;
+
+                        if ((length >= 0d) && (download.length > 0d))
+                            length += download.length;
+                        else
+                            length = -1d;
+                    }
+
+                    if (!listener.notifyProgress(position, length))
+                        cancel();
+                }
+
+                ThreadUtil.sleep(100);
+            }
+        }
+        finally
+        {
+            processor.shutdown();
+        }
+
+        if (canceled)
+            return false;
+
+        for (Download download : downloads)
+            if (!download.isSucceed())
+                return false;
+
+        return true;
+    }
+}
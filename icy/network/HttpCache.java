@@ -0,0 +1,476 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.network;
+
+import icy.common.listener.ProgressListener;
+import icy.file.FileUtil;
+import icy.system.IcyExceptionHandler;
+import icy.util.StringUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * On-disk HTTP cache for network resources (repository index, plugin descriptor, icons...).<br>
+ * Each cached resource is revalidated with a conditional GET request (<code>If-None-Match</code> /
+ * <code>If-Modified-Since</code>) so unchanged resources are not downloaded again (HTTP 304).<br>
+ * When network is not available (or in offline mode) the cached copy is returned as it is.
+ * 
+ * @author Stephane
+ */
+public class HttpCache
+{
+    public static final String CACHE_DIRECTORY = "cache" + FileUtil.separator + "http";
+
+    private static final String DATA_EXTENSION = ".dat";
+    private static final String INFO_EXTENSION = ".info";
+
+    private static final String ID_URL = "url";
+    private static final String ID_ETAG = "etag";
+    private static final String ID_LASTMODIFIED = "lastModified";
+    private static final String ID_DATE = "date";
+
+    /**
+     * offline mode flag (from network preferences)
+     */
+    private static volatile boolean offline = false;
+    /**
+     * offline mode forced for the current session (<code>--offline</code> command line parameter)
+     */
+    private static volatile boolean forceOffline = false;
+
+    /**
+     * Returns <code>true</code> if offline mode is enabled (only cached resources are used).
+     */
+    public static boolean isOffline()
+    {
+        return offline || forceOffline;
+    }
+
+    /**
+     * Enable / disable offline mode.<br>
+     * When offline mode is enabled no network access is done and only cached resources are
+     * returned.<br>
+     * This is set from the network preferences by {@link NetworkUtil#updateNetworkSetting()}.
+     */
+    public static void setOffline(boolean value)
+    {
+        offline = value;
+    }
+
+    /**
+     * Force offline mode for the current session whatever is the preference setting.
+     * 
+     * @see #setOffline(boolean)
+     */
+    public static void setForceOffline(boolean value)
+    {
+        forceOffline = value;
+    }
+
+    /**
+     * Returns <code>true</code> if network can be used to validate or retrieve resources.
+     */
+    public static boolean isNetworkAvailable()
+    {
+        return !isOffline() && NetworkUtil.hasInternetAccess();
+    }
+
+    /**
+     * Returns the cache key (file name without extension) for the specified URL.
+     */
+    private static String getKey(URL url)
+    {
+        final String s = url.toString();
+
+        try
+        {
+            final MessageDigest md = MessageDigest.getInstance("SHA-1");
+            final byte[] digest = md.digest(s.getBytes("UTF-8"));
+            final StringBuilder result = new StringBuilder(digest.length * 2);
+
+            for (byte b : digest)
+                result.append(StringUtil.toHexaString(b & 0xFF, 2));
+
+            return result.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // should not happen
+        }
+        catch (IOException e)
+        {
+            // should not happen
+        }
+
+        return StringUtil.toHexaString(s.hashCode(), 8);
+    }
+
+    private static File getDataFile(String key)
+    {
+        return new File(CACHE_DIRECTORY + FileUtil.separator + key + DATA_EXTENSION);
+    }
+
+    private static File getInfoFile(String key)
+    {
+        return new File(CACHE_DIRECTORY + FileUtil.separator + key + INFO_EXTENSION);
+    }
+
+    private static Properties loadInfo(String key)
+    {
+        final Properties result = new Properties();
+        final File file = getInfoFile(key);
+
+        if (file.exists())
+        {
+            try
+            {
+                final InputStream in = new FileInputStream(file);
+
+                try
+                {
+                    result.load(in);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            catch (IOException e)
+            {
+                // corrupted info, ignore
+                result.clear();
+            }
+        }
+
+        return result;
+    }
+
+    private static void saveInfo(String key, Properties info)
+    {
+        final File file = getInfoFile(key);
+        final File tmp = new File(file.getPath() + ".tmp");
+
+        try
+        {
+            FileUtil.ensureParentDirExist(tmp);
+
+            final OutputStream out = new FileOutputStream(tmp);
+
+            try
+            {
+                info.store(out, null);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            FileUtil.rename(tmp, file, true);
+        }
+        catch (IOException e)
+        {
+            // not critical, resource will be downloaded again next time
+            FileUtil.delete(tmp, false);
+        }
+    }
+
+    /**
+     * Returns the cached copy of the specified URL resource (no network access is done).<br>
+     * Returns <code>null</code> if the resource is not in the cache.
+     */
+    public static File getCachedFile(URL url)
+    {
+        if (url == null)
+            return null;
+
+        final File result = getDataFile(getKey(url));
+
+        if (result.exists())
+            return result;
+
+        return null;
+    }
+
+    /**
+     * Returns <code>true</code> if the specified URL resource is present in the cache.
+     */
+    public static boolean isCached(URL url)
+    {
+        return getCachedFile(url) != null;
+    }
+
+    /**
+     * Returns a local file containing the resource at specified URL.<br>
+     * The cached copy is revalidated with a conditional GET request when network is available,
+     * the resource is downloaded again (directly to disk) only if it changed.<br>
+     * If the network is not available or if an error occurred, the cached copy is returned if it
+     * exists.<br>
+     * File URL are directly returned as file.
+     * 
+     * @param url
+     *        resource URL
+     * @param auth
+     *        authentication informations (can be <code>null</code>)
+     * @param listener
+     *        download progress listener (can be <code>null</code>)
+     * @param displayError
+     *        display error message in console if something wrong happen
+     * @return local file containing the resource or <code>null</code> if the resource cannot be
+     *         retrieved.
+     */
+    public static File getFile(URL url, AuthenticationInfo auth, ProgressListener listener, boolean displayError)
+    {
+        if (url == null)
+            return null;
+
+        // direct access for file
+        if (URLUtil.isFileURL(url))
+        {
+            try
+            {
+                final File result = new File(url.toURI());
+
+                if (result.exists())
+                    return result;
+            }
+            catch (URISyntaxException e)
+            {
+                // ignore
+            }
+
+            if (displayError)
+                System.out.println("Can't access '" + url + "', file not found !");
+
+            return null;
+        }
+
+        final String key = getKey(url);
+        final File dataFile = getDataFile(key);
+        final boolean cached = dataFile.exists();
+
+        // can't use network --> use cached copy
+        if (!isNetworkAvailable())
+        {
+            if (cached)
+                return dataFile;
+
+            if (displayError)
+            {
+                if (isOffline())
+                    System.out.println("Can't access '" + url + "' (offline mode and no cached copy).");
+                else
+                    System.out.println("Can't access '" + url + "' (no internet connection).");
+            }
+
+            return null;
+        }
+
+        final Properties info = cached ? loadInfo(key) : new Properties();
+        final URLConnection uc = NetworkUtil.openConnection(url, auth, true, displayError);
+
+        if (uc == null)
+            return cached ? dataFile : null;
+
+        // conditional request
+        if (cached)
+        {
+            final String etag = info.getProperty(ID_ETAG);
+            final String lastModified = info.getProperty(ID_LASTMODIFIED);
+
+            if (!StringUtil.isEmpty(etag))
+                uc.setRequestProperty("If-None-Match", etag);
+            if (!StringUtil.isEmpty(lastModified))
+                uc.setRequestProperty("If-Modified-Since", lastModified);
+        }
+
+        File tmpFile = null;
+
+        try
+        {
+            uc.connect();
+
+            // we have to test that as sometime url are automatically modified / fixed by host!
+            if (!uc.getURL().toString().equalsIgnoreCase(url.toString()))
+            {
+                System.out.println("Host URL change rejected : " + url + " --> " + uc.getURL());
+                return cached ? dataFile : null;
+            }
+
+            if (uc instanceof HttpURLConnection)
+            {
+                final HttpURLConnection huc = (HttpURLConnection) uc;
+                final int code = huc.getResponseCode();
+
+                // not modified --> use cached copy
+                if (cached && (code == HttpURLConnection.HTTP_NOT_MODIFIED))
+                {
+                    huc.disconnect();
+                    info.setProperty(ID_DATE, Long.toString(System.currentTimeMillis()));
+                    saveInfo(key, info);
+
+                    return dataFile;
+                }
+
+                if (code != HttpURLConnection.HTTP_OK)
+                {
+                    if (displayError)
+                    {
+                        System.out.println("Error while connecting to '" + url + "':");
+                        System.out.println(huc.getResponseMessage());
+                    }
+
+                    return cached ? dataFile : null;
+                }
+            }
+
+            // download to temporary file first so the cached copy stay valid on error
+            FileUtil.createDir(CACHE_DIRECTORY);
+            tmpFile = File.createTempFile(key, ".tmp", new File(CACHE_DIRECTORY));
+
+            if (!NetworkUtil.download(uc.getInputStream(), uc.getContentLength(), tmpFile, listener))
+            {
+                // interrupted
+                FileUtil.delete(tmpFile, false);
+                return null;
+            }
+
+            if (!FileUtil.rename(tmpFile, dataFile, true))
+            {
+                FileUtil.delete(tmpFile, false);
+                return null;
+            }
+
+            final String etag = uc.getHeaderField("ETag");
+            final String lastModified = uc.getHeaderField("Last-Modified");
+
+            info.clear();
+            info.setProperty(ID_URL, url.toString());
+            if (!StringUtil.isEmpty(etag))
+                info.setProperty(ID_ETAG, etag);
+            if (!StringUtil.isEmpty(lastModified))
+                info.setProperty(ID_LASTMODIFIED, lastModified);
+            info.setProperty(ID_DATE, Long.toString(System.currentTimeMillis()));
+            saveInfo(key, info);
+
+            return dataFile;
+        }
+        catch (Exception e)
+        {
+            if (tmpFile != null)
+                FileUtil.delete(tmpFile, false);
+
+            // use cached copy on error
+            if (cached && dataFile.exists())
+                return dataFile;
+
+            if (displayError)
+            {
+                System.out.println("Error while downloading from '" + url + "' :");
+                IcyExceptionHandler.showErrorMessage(e, false, false);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Returns a local file containing the resource at specified URL.
+     * 
+     * @see #getFile(URL, AuthenticationInfo, ProgressListener, boolean)
+     */
+    public static File getFile(URL url, AuthenticationInfo auth, boolean displayError)
+    {
+        return getFile(url, auth, null, displayError);
+    }
+
+    /**
+     * Returns a new {@link InputStream} on the (cached) resource at specified URL.<br>
+     * Returns <code>null</code> if the resource cannot be retrieved.
+     * 
+     * @see #getFile(URL, AuthenticationInfo, ProgressListener, boolean)
+     */
+    public static InputStream getInputStream(URL url, AuthenticationInfo auth, boolean displayError)
+    {
+        final File file = getFile(url, auth, null, displayError);
+
+        if (file != null)
+        {
+            try
+            {
+                return new FileInputStream(file);
+            }
+            catch (FileNotFoundException e)
+            {
+                // removed in between
+                if (displayError)
+                    System.out.println("Can't access '" + url + "', cached file not found !");
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Remove the specified URL resource from the cache.
+     */
+    public static void remove(URL url)
+    {
+        if (url == null)
+            return;
+
+        final String key = getKey(url);
+
+        FileUtil.delete(getDataFile(key), false);
+        FileUtil.delete(getInfoFile(key), false);
+    }
+
+    /**
+     * Clear the whole cache.
+     */
+    public static void clear()
+    {
+        FileUtil.delete(CACHE_DIRECTORY, true);
+    }
+
+    /**
+     * Returns the size (in bytes) of the cache on disk.
+     */
+    public static long getSize()
+    {
+        long result = 0;
+
+        for (File file : FileUtil.getFiles(new File(CACHE_DIRECTORY), null, false, false, false))
+            result += file.length();
+
+        return result;
+    }
+}
@@ -36,9 +36,11 @@ import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
@@ -121,6 +123,18 @@ public class NetworkUtil
 
     static final String REPORT_URL = WEBSITE_URL + "index.php";
 
+    /**
+     * Extension of partially downloaded file (used to resume download)
+     */
+    public static final String PARTIAL_EXT = ".part";
+    /**
+     * Extension of the file storing the validator (ETag or Last-Modified) of a partially
+     * downloaded file, appended to {@link #PARTIAL_EXT}
+     */
+    public static final String PARTIAL_VALIDATOR_EXT = ".validator";
+
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
     /**
      * Parameters id
      */
@@ -217,6 +231,8 @@ public class NetworkUtil
     {
         final int proxySetting = NetworkPreferences.getProxySetting();
 
+        HttpCache.setOffline(NetworkPreferences.getOffline());
+
         if (proxySetting == NO_PROXY)
         {
             // no proxy
@@ -668,6 +684,342 @@ public class NetworkUtil
         return download(in, -1, null);
     }
 
+    /**
+     * Download data from specified InputStream and write it directly in the specified file (data
+     * is streamed to disk so it doesn't need to fit in memory).<br>
+     * Returns <code>false</code> if load operation was interrupted by user (destination file is
+     * then deleted).
+     */
+    public static boolean download(InputStream in, long len, File dest, ProgressListener listener) throws IOException
+    {
+        final boolean result;
+
+        try
+        {
+            result = download(in, len, dest, false, listener);
+        }
+        catch (IOException e)
+        {
+            // remove partial file
+            FileUtil.delete(dest, false);
+            throw e;
+        }
+
+        if (!result)
+            FileUtil.delete(dest, false);
+
+        return result;
+    }
+
+    /**
+     * Download data from specified InputStream and write it directly in the specified file (data
+     * is streamed to disk so it doesn't need to fit in memory).<br>
+     * If <code>append</code> is <code>true</code> data is appended to the existing file content
+     * (used to resume a download).<br>
+     * Written data is kept on error or interruption so download can be resumed later.<br>
+     * Returns <code>false</code> if load operation was interrupted by user.
+     */
+    public static boolean download(InputStream in, long len, File dest, boolean append, ProgressListener listener)
+            throws IOException
+    {
+        final int READ_BLOCKSIZE = 64 * 1024;
+        // read per block of 64 KB
+        final byte[] data = new byte[READ_BLOCKSIZE];
+
+        FileUtil.ensureParentDirExist(dest);
+
+        try
+        {
+            final OutputStream out = new FileOutputStream(dest, append);
+
+            try
+            {
+                long off = 0;
+                int count = 0;
+
+                while (count >= 0)
+                {
+                    count = in.read(data);
+                    if (count < 0)
+                    {
+                        // unexpected length
+                        if ((len != -1) && (off != len))
+                            throw new EOFException("Unexpected end of file at " + off + " (" + len + " expected)");
+                    }
+                    else
+                        off += count;
+
+                    // write to file
+                    if (count > 0)
+                        out.write(data, 0, count);
+
+                    if (listener != null)
+                    {
+                        // download canceled ?
+                        if (!listener.notifyProgress(off, len))
+                        {
+                            System.out.println("Interrupted by user.");
+                            return false;
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return true;
+    }
+
+    /**
+     * Download data from specified URL string and write it directly in the specified file.<br>
+     * Process authentication process if login / pass are not null.<br>
+     * Data is first written in a temporary file which is renamed to <code>dest</code> once
+     * download is complete so <code>dest</code> is never left partially written.<br>
+     * Returns <code>false</code> if an error occurred or if operation was interrupted by user.
+     */
+    public static boolean download(String path, String login, String pass, File dest, ProgressListener listener,
+            boolean displayError)
+    {
+        return download(path, login, pass, dest, null, listener, displayError);
+    }
+
+    /**
+     * Download data from specified URL string and write it directly in the specified file.<br>
+     * Process authentication process if login / pass are not null.<br>
+     * Data is first written in a temporary file (<code>dest.part</code>) which is renamed to
+     * <code>dest</code> once download is complete and verified against the specified checksum (see
+     * {@link FileUtil#getChecksum(File)}) so <code>dest</code> is never left partially written.<br>
+     * If a previous download was interrupted the transfer is resumed (HTTP range request) from the
+     * existing temporary file.<br>
+     * Returns <code>false</code> if an error occurred or if operation was interrupted by user.
+     * 
+     * @param checksum
+     *        expected checksum of the downloaded file (can be <code>null</code> or empty if
+     *        unknown).
+     */
+    public static boolean download(String path, String login, String pass, File dest, String checksum,
+            ProgressListener listener, boolean displayError)
+    {
+        final File file = new File(FileUtil.getGenericPath(path));
+
+        // path define a file ?
+        if (file.exists())
+            return FileUtil.copy(file, dest, true, false);
+
+        final URL url = URLUtil.getURL(path);
+
+        // error while building URL ?
+        if (url == null)
+        {
+            if (displayError)
+                System.out.println("Can't download '" + path + "', incorrect path !");
+
+            return false;
+        }
+
+        return download(url, login, pass, dest, checksum, listener, displayError);
+    }
+
+    /**
+     * Download data from specified URL and write it directly in the specified file.<br>
+     * Process authentication process if login / pass are not null.<br>
+     * Data is first written in a temporary file which is renamed to <code>dest</code> once
+     * download is complete so <code>dest</code> is never left partially written.<br>
+     * Returns <code>false</code> if an error occurred or if operation was interrupted by user.
+     */
+    public static boolean download(URL url, String login, String pass, File dest, ProgressListener listener,
+            boolean displayError)
+    {
+        return download(url, login, pass, dest, null, listener, displayError);
+    }
+
+    /**
+     * Download data from specified URL and write it directly in the specified file.<br>
+     * Process authentication process if login / pass are not null.<br>
+     * Data is first written in a temporary file (<code>dest.part</code>) which is renamed to
+     * <code>dest</code> once download is complete and verified against the specified checksum (see
+     * {@link FileUtil#getChecksum(File)}) so <code>dest</code> is never left partially written.<br>
+     * If a previous download was interrupted the transfer is resumed (HTTP range request) from the
+     * existing temporary file.<br>
+     * Returns <code>false</code> if an error occurred or if operation was interrupted by user.
+     * 
+     * @param checksum
+     *        expected checksum of the downloaded file (can be <code>null</code> or empty if
+     *        unknown).
+     */
+    public static boolean download(URL url, String login, String pass, File dest, String checksum,
+            ProgressListener listener, boolean displayError)
+    {
+        // check if this is a file
+        if ((url != null) && URLUtil.isFileURL(url))
+        {
+            try
+            {
+                return FileUtil.copy(new File(url.toURI()), dest, true, false);
+            }
+            catch (URISyntaxException e)
+            {
+                if (displayError)
+                    System.out.println("Can't download from '" + url + "', incorrect path !");
+
+                return false;
+            }
+        }
+
+        final File tmp = new File(dest.getPath() + PARTIAL_EXT);
+        final File validatorFile = new File(tmp.getPath() + PARTIAL_VALIDATOR_EXT);
+        long resumeOffset = tmp.exists() ? tmp.length() : 0L;
+        String validator = null;
+
+        if (resumeOffset > 0)
+        {
+            if (validatorFile.exists())
+                validator = new String(FileUtil.load(validatorFile, false)).trim();
+
+            // we can't verify that partial data still match the remote resource --> restart
+            if (StringUtil.isEmpty(validator) && StringUtil.isEmpty(checksum))
+            {
+                FileUtil.delete(tmp, false);
+                resumeOffset = 0L;
+            }
+        }
+
+        // get connection object
+        final URLConnection uc = openConnection(url, login, pass, true, displayError);
+
+        // error --> exit
+        if (uc == null)
+            return false;
+
+        // resume previous download
+        if (resumeOffset > 0)
+        {
+            uc.setRequestProperty("Range", "bytes=" + resumeOffset + "-");
+            // server sends the whole resource if it changed since the partial download
+            if (!StringUtil.isEmpty(validator))
+                uc.setRequestProperty("If-Range", validator);
+        }
+
+        // can't connect --> exit
+        if (!connect(uc, displayError && (resumeOffset == 0)))
+        {
+            // resume failed (range not satisfiable) --> restart from zero
+            if ((resumeOffset > 0) && (uc instanceof HttpURLConnection)
+                    && (getResponseCode((HttpURLConnection) uc) == HTTP_RANGE_NOT_SATISFIABLE))
+            {
+                FileUtil.delete(tmp, false);
+                FileUtil.delete(validatorFile, false);
+                return download(url, login, pass, dest, checksum, listener, displayError);
+            }
+
+            return false;
+        }
+
+        // server accepted the range request ?
+        final boolean resumed = (resumeOffset > 0) && (uc instanceof HttpURLConnection)
+                && (getResponseCode((HttpURLConnection) uc) == HttpURLConnection.HTTP_PARTIAL);
+
+        // new transfer --> store the resource validator so it can be safely resumed later
+        if (!resumed)
+        {
+            final String newValidator = getValidator(uc);
+
+            if (StringUtil.isEmpty(newValidator) || !FileUtil.save(validatorFile, newValidator.getBytes(), false))
+                FileUtil.delete(validatorFile, false);
+        }
+
+        // get input stream
+        final InputStream ip = getInputStream(uc, displayError);
+
+        // error --> exit
+        if (ip == null)
+            return false;
+
+        try
+        {
+            if (!download(ip, uc.getContentLength(), tmp, resumed, listener))
+                return false;
+        }
+        catch (Exception e)
+        {
+            // keep partial file so download can be resumed
+            if (displayError)
+            {
+                System.out.println("Error while downloading from '" + uc.getURL() + "' :");
+                IcyExceptionHandler.showErrorMessage(e, false, false);
+            }
+
+            return false;
+        }
+
+        // verify content before replacing destination
+        if (!StringUtil.isEmpty(checksum) && !FileUtil.checkChecksum(tmp, checksum))
+        {
+            // corrupted data, can't be resumed
+            FileUtil.delete(tmp, false);
+            FileUtil.delete(validatorFile, false);
+
+            if (displayError)
+                System.out.println("Error while downloading from '" + uc.getURL() + "' : checksum mismatch.");
+
+            return false;
+        }
+
+        FileUtil.delete(validatorFile, false);
+
+        if (!FileUtil.rename(tmp, dest, true))
+        {
+            FileUtil.delete(tmp, false);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the validator (strong ETag or Last-Modified date) of the resource retrieved by the
+     * specified connection to be used in a <code>If-Range</code> header (<code>null</code> if
+     * none).
+     */
+    private static String getValidator(URLConnection uc)
+    {
+        final String etag = uc.getHeaderField("ETag");
+
+        // weak ETag can't be used for range requests
+        if (!StringUtil.isEmpty(etag) && !etag.startsWith("W/"))
+            return etag;
+
+        return uc.getHeaderField("Last-Modified");
+    }
+
+    /**
+     * Returns <code>true</code> if the specified file is a partial download file (or its validator
+     * file).
+     */
+    public static boolean isPartialDownloadFile(String path)
+    {
+        return path.endsWith(PARTIAL_EXT) || path.endsWith(PARTIAL_EXT + PARTIAL_VALIDATOR_EXT);
+    }
+
+    private static int getResponseCode(HttpURLConnection uc)
+    {
+        try
+        {
+            return uc.getResponseCode();
+        }
+        catch (IOException e)
+        {
+            return -1;
+        }
+    }
+
     /**
      * Returns a new {@link URLConnection} from specified URL (null if an error occurred).
      * 
@@ -803,8 +1155,10 @@ public class NetworkUtil
             {
                 final HttpURLConnection huc = (HttpURLConnection) uc;
 
-                // not ok ?
-                if (huc.getResponseCode() != HttpURLConnection.HTTP_OK)
+                final int code = huc.getResponseCode();
+
+                // not ok ? (partial content is accepted for range request)
+                if ((code != HttpURLConnection.HTTP_OK) && (code != HttpURLConnection.HTTP_PARTIAL))
                 {
                     if (displayError)
                     {
@@ -23,7 +23,7 @@ import icy.file.FileUtil;
 import icy.file.xml.XMLPersistent;
 import icy.file.xml.XMLPersistentHelper;
 import icy.image.ImageUtil;
-import icy.network.NetworkUtil;
+import icy.network.HttpCache;
 import icy.network.URLUtil;
 import icy.plugin.abstract_.Plugin;
 import icy.plugin.interface_.PluginImageAnalysis;
@@ -35,6 +35,8 @@ import icy.util.StringUtil;
 import icy.util.XMLUtil;
 
 import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -383,6 +385,7 @@ public class PluginDescriptor implements XMLPersistent
     }
 
     private static final String ID_JAR_URL = "jar_url";
+    private static final String ID_JAR_CHECKSUM = "jar_checksum";
     private static final String ID_IMAGE_URL = "image_url";
     private static final String ID_ICON_URL = "icon_url";
     private static final String ID_AUTHOR = "author";
@@ -402,6 +405,7 @@ public class PluginDescriptor implements XMLPersistent
     private PluginIdent ident;
     private String xmlUrl;
     private String jarUrl;
+    private String jarChecksum;
     String imageUrl;
     String iconUrl;
     private String author;
@@ -615,6 +619,7 @@ public class PluginDescriptor implements XMLPersistent
         name = "";
         ident = new PluginIdent();
         jarUrl = "";
+        jarChecksum = "";
         imageUrl = "";
         iconUrl = "";
         author = "";
@@ -728,7 +733,7 @@ public class PluginDescriptor implements XMLPersistent
             return true;
 
         // retrieve document
-        final Document document = XMLUtil.loadDocument(xmlUrl, repository.getAuthenticationInfo(), true);
+        final Document document = XMLUtil.loadDocument(xmlUrl, repository.getAuthenticationInfo(), true, true);
 
         if (document != null)
         {
@@ -837,14 +842,26 @@ public class PluginDescriptor implements XMLPersistent
         return getVersion().isBeta();
     }
 
+    /**
+     * Load image from specified URL (retrieved through the {@link HttpCache})
+     */
+    private BufferedImage loadCachedImage(URL url)
+    {
+        final File file = HttpCache.getFile(url, (repository != null) ? repository.getAuthenticationInfo() : null,
+                false);
+
+        if (file != null)
+            return ImageUtil.load(file, false);
+
+        return null;
+    }
+
     void loadIcon(URL url)
     {
         // load icon
         if (url != null)
             icon = ResourceUtil.getImageIcon(
-                    ImageUtil.load(NetworkUtil.getInputStream(url,
-                            (repository != null) ? repository.getAuthenticationInfo() : null, true, false), false),
-                    ICON_SIZE);
+                    loadCachedImage(url), ICON_SIZE);
         // get default icon
         if (icon == null)
             icon = DEFAULT_ICON;
@@ -855,9 +872,7 @@ public class PluginDescriptor implements XMLPersistent
         // load image
         if (url != null)
             image = ImageUtil.scale(
-                    ImageUtil.load(NetworkUtil.getInputStream(url,
-                            (repository != null) ? repository.getAuthenticationInfo() : null, true, false), false),
-                    IMAGE_SIZE, IMAGE_SIZE);
+                    loadCachedImage(url), IMAGE_SIZE, IMAGE_SIZE);
         // get default image
         if (image == null)
             image = DEFAULT_IMAGE;
@@ -897,6 +912,7 @@ public class PluginDescriptor implements XMLPersistent
         name = XMLUtil.getElementValue(node, ID_NAME, "");
         xmlUrl = XMLUtil.getElementValue(node, ID_URL, "");
         jarUrl = XMLUtil.getElementValue(node, ID_JAR_URL, "");
+        jarChecksum = XMLUtil.getElementValue(node, ID_JAR_CHECKSUM, "");
         imageUrl = XMLUtil.getElementValue(node, ID_IMAGE_URL, "");
         iconUrl = XMLUtil.getElementValue(node, ID_ICON_URL, "");
         author = XMLUtil.getElementValue(node, ID_AUTHOR, "");
@@ -939,6 +955,8 @@ public class PluginDescriptor implements XMLPersistent
         XMLUtil.setElementValue(node, ID_NAME, name);
         XMLUtil.setElementValue(node, ID_URL, xmlUrl);
         XMLUtil.setElementValue(node, ID_JAR_URL, jarUrl);
+        if (!StringUtil.isEmpty(jarChecksum))
+            XMLUtil.setElementValue(node, ID_JAR_CHECKSUM, jarChecksum);
         XMLUtil.setElementValue(node, ID_IMAGE_URL, imageUrl);
         XMLUtil.setElementValue(node, ID_ICON_URL, iconUrl);
         XMLUtil.setElementValue(node, ID_AUTHOR, author);
@@ -1244,6 +1262,15 @@ public class PluginDescriptor implements XMLPersistent
         this.jarUrl = jarUrl;
     }
 
+    /**
+     * @return the JAR file checksum (see {@link icy.file.FileUtil#getChecksum(java.io.File)}), empty
+     *         if unknown
+     */
+    public String getJarChecksum()
+    {
+        return jarChecksum;
+    }
+
     /**
      * @return the imageUrl
      */
@@ -24,6 +24,7 @@ import icy.gui.frame.progress.CancelableProgressFrame;
 import icy.gui.frame.progress.FailedAnnounceFrame;
 import icy.gui.frame.progress.ProgressFrame;
 import icy.gui.frame.progress.SuccessfullAnnounceFrame;
+import icy.network.Downloader;
 import icy.network.NetworkUtil;
 import icy.plugin.PluginDescriptor.PluginIdent;
 import icy.preferences.RepositoryPreferences.RepositoryInfo;
@@ -32,8 +33,10 @@ import icy.system.thread.ThreadUtil;
 import icy.update.Updater;
 import icy.util.StringUtil;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.EventListener;
+import java.util.HashMap;
 import java.util.List;
 
 import javax.swing.event.EventListenerList;
@@ -67,6 +70,12 @@ public class PluginInstaller implements Runnable
 
     private static final String ERROR_DOWNLOAD = "Error while downloading ";
     private static final String ERROR_SAVE = "Error while saving";
+
+    /**
+     * directory where plugin files are downloaded before being installed (inside application
+     * directory so files can be renamed to their final location)
+     */
+    private static final String PREFETCH_DIRECTORY = "cache" + FileUtil.separator + "plugins";
     // private static final String INSTALL_CANCELED = "Plugin installation canceled by user.";
 
     /**
@@ -93,6 +102,10 @@ public class PluginInstaller implements Runnable
      */
     private final ArrayList<PluginDescriptor> installingPlugins;
     private final ArrayList<PluginDescriptor> desinstallingPlugin;
+    /**
+     * prefetched files (destination path --> downloaded file)
+     */
+    private final HashMap<String, File> prefetchedFiles;
 
     /**
      * static class
@@ -108,6 +121,7 @@ public class PluginInstaller implements Runnable
 
         installingPlugins = new ArrayList<PluginDescriptor>();
         desinstallingPlugin = new ArrayList<PluginDescriptor>();
+        prefetchedFiles = new HashMap<String, File>();
 
         // launch installer thread
         new Thread(this, "Plugin installer").start();
@@ -332,6 +346,73 @@ public class PluginInstaller implements Runnable
         return "";
     }
 
+    /**
+     * Returns login and password to use for the specified plugin repository ({null, null} if no
+     * authentication is needed)
+     */
+    private static String[] getAuthentication(PluginDescriptor plugin)
+    {
+        final RepositoryInfo repos = plugin.getRepository();
+
+        // use authentication
+        if ((repos != null) && repos.isAuthenticationEnabled())
+            return new String[] {repos.getLogin(), repos.getPassword()};
+
+        return new String[] {null, null};
+    }
+
+    /**
+     * Download files of the specified plugins concurrently in the prefetch directory so
+     * installation then only has to move them.<br>
+     * Files which cannot be prefetched are simply downloaded again during installation.
+     */
+    private void prefetch(List<PluginDescriptor> plugins, CancelableProgressFrame taskFrame)
+    {
+        final Downloader downloader = new Downloader();
+        final HashMap<Downloader.Download, String> destinations = new HashMap<Downloader.Download, String>();
+        int index = 0;
+
+        for (PluginDescriptor plugin : plugins)
+        {
+            // already installed --> go to next one
+            if (PluginLoader.isLoaded(plugin, false))
+                continue;
+
+            // ensure descriptor is loaded
+            plugin.loadDescriptor();
+
+            final String[] auth = getAuthentication(plugin);
+            final String dir = PREFETCH_DIRECTORY + FileUtil.separator + (index++) + FileUtil.separator;
+            final String[][] files = new String[][] {
+                    {plugin.getJarUrl(), plugin.getJarFilename(), plugin.getJarChecksum()},
+                    {plugin.getUrl(), plugin.getXMLFilename(), null},
+                    {plugin.getIconUrl(), plugin.getIconFilename(), null},
+                    {plugin.getImageUrl(), plugin.getImageFilename(), null}};
+
+            for (String[] file : files)
+            {
+                if (StringUtil.isEmpty(file[0]))
+                    continue;
+
+                final File dest = new File(dir + FileUtil.getFileName(file[1]));
+                destinations.put(downloader.add(file[0], auth[0], auth[1], dest, file[2]), file[1]);
+            }
+        }
+
+        if (destinations.isEmpty())
+            return;
+
+        if (taskFrame != null)
+            taskFrame.setMessage("Downloading " + index + " plugin(s)...");
+
+        // errors are not displayed here as failed files are downloaded again during installation
+        downloader.download(taskFrame, false);
+
+        for (Downloader.Download download : downloader.getDownloads())
+            if (download.isSucceed())
+                prefetchedFiles.put(destinations.get(download), download.getDestination());
+    }
+
     /**
      * Return an empty string if no error else return error message
      */
@@ -345,35 +426,24 @@ public class PluginInstaller implements Runnable
         // ensure descriptor is loaded
         plugin.loadDescriptor();
 
-        final RepositoryInfo repos = plugin.getRepository();
-        final String login;
-        final String pass;
-
-        // use authentication
-        if ((repos != null) && repos.isAuthenticationEnabled())
-        {
-            login = repos.getLogin();
-            pass = repos.getPassword();
-        }
-        else
-        {
-            login = null;
-            pass = null;
-        }
+        final String[] auth = getAuthentication(plugin);
+        final String login = auth[0];
+        final String pass = auth[1];
 
         // download and save JAR file
-        result = downloadAndSave(plugin.getJarUrl(), plugin.getJarFilename(), login, pass, true, taskFrame);
+        result = downloadAndSave(plugin.getJarUrl(), plugin.getJarFilename(), plugin.getJarChecksum(), login, pass,
+                true, taskFrame);
         if (!StringUtil.isEmpty(result))
             return result;
 
         // download and save XML file
-        result = downloadAndSave(plugin.getUrl(), plugin.getXMLFilename(), login, pass, true, taskFrame);
+        result = downloadAndSave(plugin.getUrl(), plugin.getXMLFilename(), null, login, pass, true, taskFrame);
         if (!StringUtil.isEmpty(result))
             return result;
 
         // download and save icon & image files
-        downloadAndSave(plugin.getIconUrl(), plugin.getIconFilename(), login, pass, false, taskFrame);
-        downloadAndSave(plugin.getImageUrl(), plugin.getImageFilename(), login, pass, false, taskFrame);
+        downloadAndSave(plugin.getIconUrl(), plugin.getIconFilename(), null, login, pass, false, taskFrame);
+        downloadAndSave(plugin.getImageUrl(), plugin.getImageFilename(), null, login, pass, false, taskFrame);
 
         return "";
     }
@@ -381,25 +451,103 @@ public class PluginInstaller implements Runnable
     /**
      * Return an empty string if no error else return error message
      */
-    private String downloadAndSave(String downloadPath, String savePath, String login, String pass,
+    private String downloadAndSave(String downloadPath, String savePath, String checksum, String login, String pass,
             boolean displayError, ProgressFrame taskFrame)
     {
-        // load data
-        final byte[] data = NetworkUtil.download(downloadPath, login, pass, taskFrame, displayError);
-        if (data == null)
-            return ERROR_DOWNLOAD + downloadPath;
+        final File file = new File(FileUtil.getGenericPath(savePath));
+        final File prefetched = prefetchedFiles.remove(savePath);
 
-        // save data
-        if (!FileUtil.save(savePath, data, displayError))
+        // already downloaded (and verified) --> just move it
+        if ((prefetched != null) && prefetched.exists())
+        {
+            if (!moveFile(prefetched, file))
+            {
+                System.err.println("Can't write '" + savePath + "' !");
+                System.err.println("File may be locked or you don't own the rights to write files here.");
+                return ERROR_SAVE + savePath;
+            }
+
+            return null;
+        }
+
+        // destination directory should be writable
+        if (!FileUtil.ensureParentDirExist(file))
         {
             System.err.println("Can't write '" + savePath + "' !");
             System.err.println("File may be locked or you don't own the rights to write files here.");
             return ERROR_SAVE + savePath;
         }
 
+        // stream data directly to file (previous file is only replaced on download completion)
+        if (!NetworkUtil.download(downloadPath, login, pass, file, checksum, taskFrame, displayError))
+        {
+            // existing file can't be replaced
+            if (file.exists() && !file.canWrite())
+            {
+                System.err.println("Can't write '" + savePath + "' !");
+                System.err.println("File may be locked or you don't own the rights to write files here.");
+                return ERROR_SAVE + savePath;
+            }
+
+            return ERROR_DOWNLOAD + downloadPath;
+        }
+
         return null;
     }
 
+    /**
+     * Move the <code>src</code> file to <code>dst</code>.<br>
+     * The file is first moved (or copied if it can't be renamed) next to the destination, the
+     * previous destination file is then only replaced when the new one is ready, it is restored if
+     * the replacement fails.
+     * 
+     * @return <code>false</code> if the operation failed (destination is unchanged in this case)
+     */
+    private static boolean moveFile(File src, File dst)
+    {
+        if (!FileUtil.ensureParentDirExist(dst))
+            return false;
+
+        final File newFile = new File(dst.getPath() + ".new");
+        final File oldFile = new File(dst.getPath() + ".old");
+
+        FileUtil.delete(newFile, false);
+        // rename won't work across file systems --> copy
+        if (!src.renameTo(newFile))
+        {
+            if (!FileUtil.copy(src, newFile, true, false))
+            {
+                FileUtil.delete(newFile, false);
+                return false;
+            }
+
+            FileUtil.delete(src, false);
+        }
+
+        // keep previous file until the new one is in place
+        if (dst.exists())
+        {
+            FileUtil.delete(oldFile, false);
+            if (!dst.renameTo(oldFile))
+            {
+                FileUtil.delete(newFile, false);
+                return false;
+            }
+        }
+
+        if (!newFile.renameTo(dst))
+        {
+            // restore previous file
+            oldFile.renameTo(dst);
+            FileUtil.delete(newFile, false);
+            return false;
+        }
+
+        FileUtil.delete(oldFile, false);
+
+        return true;
+    }
+
     private boolean deletePlugin(PluginDescriptor plugin)
     {
         if (!FileUtil.delete(plugin.getJarFilename(), false))
@@ -677,6 +825,9 @@ public class PluginInstaller implements Runnable
             // clear backup folder
             FileUtil.delete(Updater.BACKUP_DIRECTORY, true);
 
+            // download all plugins files concurrently first
+            prefetch(installingPlugins, taskFrame);
+
             // now we can proceed the installation itself
             for (PluginDescriptor plugin : installingPlugins)
             {
@@ -803,6 +954,9 @@ public class PluginInstaller implements Runnable
         {
             // installation end
             installingPlugins.clear();
+            // remove remaining prefetched files
+            prefetchedFiles.clear();
+            FileUtil.delete(PREFETCH_DIRECTORY, true);
             if (taskFrame != null)
                 taskFrame.close();
         }
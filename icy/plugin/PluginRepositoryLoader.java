@@ -19,7 +19,9 @@
 package icy.plugin;
 
 import icy.main.Icy;
+import icy.network.HttpCache;
 import icy.network.NetworkUtil;
+import icy.network.URLUtil;
 import icy.plugin.PluginDescriptor.PluginIdent;
 import icy.plugin.PluginDescriptor.PluginNameSorter;
 import icy.plugin.PluginDescriptor.PluginOnlineIdent;
@@ -63,8 +65,8 @@ public class PluginRepositoryLoader
         @Override
         public void run()
         {
-            // no internet connection ?
-            if (!NetworkUtil.hasInternetAccess())
+            // no internet connection and nothing in cache ? (index is served from cache when offline)
+            if (!HttpCache.isNetworkAvailable() && !hasCachedIndex())
             {
                 failed = true;
                 return;
@@ -119,13 +121,8 @@ public class PluginRepositoryLoader
                 // reload requested --> stop current loading
                 if (processor.hasWaitingTasks())
                     return;
-                // internet connection lost --> failed
-                if (!NetworkUtil.hasInternetAccess())
-                {
-                    failed = true;
-                    return;
-                }
 
+                // served from cache if internet connection is lost
                 plugin.loadDescriptor();
             }
 
@@ -145,13 +142,8 @@ public class PluginRepositoryLoader
                 // reload requested --> stop current loading
                 if (processor.hasWaitingTasks())
                     return;
-                // internet connection lost --> failed
-                if (!NetworkUtil.hasInternetAccess())
-                {
-                    failed = true;
-                    return;
-                }
 
+                // served from cache if internet connection is lost
                 plugin.loadImages();
                 // notify change
                 changed(plugin);
@@ -212,17 +204,39 @@ public class PluginRepositoryLoader
     }
 
     /**
-     * Return the plugins identifier list from a repository URL
+     * Returns the plugin list request URL for the specified repository
      */
-    public static ArrayList<PluginOnlineIdent> getPluginIdents(RepositoryInfo repos)
+    static String getIndexLocation(RepositoryInfo repos)
     {
         // prepare parameters for plugin list request
         final HashMap<String, String> values = new HashMap<String, String>();
 
         values.put(NetworkUtil.ID_KERNELVERSION, Icy.version.toString());
 
-        final Document document = XMLUtil.loadDocument(
-                repos.getLocation() + "?" + NetworkUtil.getContentString(values), repos.getAuthenticationInfo(), false);
+        return repos.getLocation() + "?" + NetworkUtil.getContentString(values);
+    }
+
+    /**
+     * Returns true if at least one of the active repositories index is available in the cache.
+     */
+    static boolean hasCachedIndex()
+    {
+        for (RepositoryInfo repoInfo : RepositoryPreferences.getRepositeries())
+            if (repoInfo.isEnabled() && HttpCache.isCached(URLUtil.getURL(getIndexLocation(repoInfo))))
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Return the plugins identifier list from a repository URL.<br>
+     * The repository index is retrieved through the {@link HttpCache} so it is only downloaded
+     * again when it changed and the cached copy is used when network is not available.
+     */
+    public static ArrayList<PluginOnlineIdent> getPluginIdents(RepositoryInfo repos)
+    {
+        final Document document = XMLUtil.loadDocument(getIndexLocation(repos), repos.getAuthenticationInfo(), true,
+                false);
 
         if (document != null)
         {
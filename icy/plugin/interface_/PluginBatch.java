@@ -0,0 +1,46 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.plugin.interface_;
+
+import icy.sequence.Sequence;
+
+/**
+ * Plugin Batch interface.<br>
+ * <br>
+ * A plugin implementing this interface can be used by the batch engine (see
+ * {@link icy.main.BatchEngine}) to process a list of image files.<br>
+ * A new plugin instance is created for each processed sequence and several instances can run
+ * concurrently so the process should not rely on the active sequence nor on any global state.
+ * 
+ * @author Stephane
+ */
+public interface PluginBatch
+{
+    /**
+     * Process the specified sequence and returns the result sequence to save.<br>
+     * The returned sequence can be the input sequence itself if it has been modified in place.<br>
+     * Returns <code>null</code> if there is nothing to save.
+     * 
+     * @param sequence
+     *        the sequence to process
+     * @throws Exception
+     *         if an error occurred during the process (reported as a failure in the batch report)
+     */
+    public Sequence process(Sequence sequence) throws Exception;
+}
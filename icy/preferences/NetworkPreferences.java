@@ -42,6 +42,8 @@ public class NetworkPreferences
     private static final String ID_PROXY_FTP_PORT = "proxyFTPPort";
     private static final String ID_PROXY_SOCKS_HOST = "proxySOCKSHost";
     private static final String ID_PROXY_SOCKS_PORT = "proxySOCKSPort";
+    private static final String ID_MAX_DOWNLOADS = "maxDownloads";
+    private static final String ID_OFFLINE = "offline";
 
     /**
      * preferences
@@ -151,4 +153,36 @@ public class NetworkPreferences
     {
         preferences.putInt(ID_PROXY_SOCKS_PORT, value);
     }
+
+    /**
+     * Returns the maximum number of concurrent downloads (updates and plugins installation)
+     */
+    public static int getMaxDownloads()
+    {
+        return preferences.getInt(ID_MAX_DOWNLOADS, 4);
+    }
+
+    /**
+     * Set the maximum number of concurrent downloads (updates and plugins installation)
+     */
+    public static void setMaxDownloads(int value)
+    {
+        preferences.putInt(ID_MAX_DOWNLOADS, value);
+    }
+
+    /**
+     * Returns true if offline mode is enabled (only cached online resources are used)
+     */
+    public static boolean getOffline()
+    {
+        return preferences.getBoolean(ID_OFFLINE, false);
+    }
+
+    /**
+     * Enable / disable offline mode (only cached online resources are used)
+     */
+    public static void setOffline(boolean value)
+    {
+        preferences.putBoolean(ID_OFFLINE, value);
+    }
 }
@@ -19,7 +19,6 @@
 package icy.roi;
 
 import icy.type.TypeUtil;
-import icy.type.collection.array.DynamicArray;
 
 import java.awt.Point;
 import java.awt.Rectangle;
@@ -37,108 +36,63 @@ import java.util.List;
  */
 public class BooleanMask2D implements Cloneable
 {
-    private static class Component
+    /**
+     * Returns the union of all (non null) mask bounds.
+     */
+    private static Rectangle getUnionBounds(List<BooleanMask2D> masks)
     {
-        public DynamicArray.Int points;
-        public List<Component> children;
-        private Component root;
-
-        public Component()
-        {
-            points = new DynamicArray.Int(0);
-            children = new ArrayList<Component>();
-            root = this;
-        }
-
-        public void addPoint(int x, int y)
-        {
-            points.addSingle(x);
-            points.addSingle(y);
-        }
-
-        public void addComponent(Component c)
-        {
-            final Component croot = c.root;
-
-            if (croot != root)
-            {
-                children.add(croot);
-                croot.setRoot(root);
-            }
-        }
-
-        public boolean isRoot()
-        {
-            return root == this;
-        }
-
-        private void setRoot(Component value)
-        {
-            root = value;
-
-            final int size = children.size();
-            for (int c = 0; c < size; c++)
-                children.get(c).setRoot(value);
-        }
-
-        public int getTotalSize()
-        {
-            int result = points.getSize();
-
-            final int size = children.size();
-            for (int c = 0; c < size; c++)
-                result += children.get(c).getTotalSize();
-
-            return result;
-        }
+        Rectangle result = null;
 
-        public int[] getAllPoints()
+        for (BooleanMask2D bm : masks)
         {
-            final int[] result = new int[getTotalSize()];
+            if ((bm == null) || bm.bounds.isEmpty())
+                continue;
 
-            // get all point
-            getAllPoints(result, 0);
-
-            return result;
+            if (result == null)
+                result = new Rectangle(bm.bounds);
+            else
+                result.add(bm.bounds);
         }
 
-        private int getAllPoints(int[] result, int offset)
-        {
-            final int[] intPoints = points.asArray();
-
-            System.arraycopy(intPoints, 0, result, offset, intPoints.length);
-
-            int off = offset + intPoints.length;
-            final int csize = children.size();
-            for (int c = 0; c < csize; c++)
-                off = children.get(c).getAllPoints(result, off);
-
-            return off;
-        }
+        return result;
     }
 
     /**
-     * Build global boolean mask from union of all specified mask
+     * Build global boolean mask from union of all specified mask.<br>
+     * The result is computed in a single pass over the global bounds (no intermediate mask).
      */
     public static BooleanMask2D getUnion(List<BooleanMask2D> masks)
     {
-        BooleanMask2D result = null;
+        final Rectangle union = getUnionBounds(masks);
+
+        // return an empty BooleanMask2D instead of null
+        if (union == null)
+            return new BooleanMask2D();
+
+        final boolean[] mask = new boolean[union.width * union.height];
 
         // compute global union boolean mask of all ROI2D
         for (BooleanMask2D bm : masks)
         {
-            // update global mask
-            if (result == null)
-                result = new BooleanMask2D(bm.bounds, bm.mask);
-            else
-                result = getUnion(result, bm);
-        }
+            if ((bm == null) || bm.bounds.isEmpty())
+                continue;
 
-        // return an empty BooleanMask2D instead of null
-        if (result == null)
-            result = new BooleanMask2D();
+            final Rectangle bounds = bm.bounds;
+            final boolean[] src = bm.mask;
+            int offDst = ((bounds.y - union.y) * union.width) + (bounds.x - union.x);
+            int offSrc = 0;
 
-        return result;
+            for (int y = 0; y < bounds.height; y++)
+            {
+                for (int x = 0; x < bounds.width; x++)
+                    if (src[offSrc++])
+                        mask[offDst + x] = true;
+
+                offDst += union.width;
+            }
+        }
+
+        return new BooleanMask2D(union, mask);
     }
 
     /**
@@ -214,27 +168,59 @@ public class BooleanMask2D implements Cloneable
     }
 
     /**
-     * Build global boolean mask from intersection of all specified mask
+     * Build global boolean mask from intersection of all specified mask.<br>
+     * The result is computed in a single pass over the common bounds: we count the number of
+     * mask covering each pixel (a pixel is kept if all masks cover it).
      */
     public static BooleanMask2D getIntersection(List<BooleanMask2D> masks)
     {
-        BooleanMask2D result = null;
+        Rectangle intersection = null;
+        int numMask = 0;
 
-        // compute global intersect boolean mask of all ROI2D
         for (BooleanMask2D bm : masks)
         {
-            // update global mask
-            if (result == null)
-                result = new BooleanMask2D(bm.bounds, bm.mask);
+            // a null mask is an empty mask
+            if (bm == null)
+                return new BooleanMask2D();
+
+            if (intersection == null)
+                intersection = new Rectangle(bm.bounds);
             else
-                result = getIntersection(result, bm);
+                intersection = intersection.intersection(bm.bounds);
+
+            numMask++;
         }
 
         // return an empty BooleanMask2D instead of null
-        if (result == null)
-            result = new BooleanMask2D();
+        if ((intersection == null) || intersection.isEmpty())
+            return new BooleanMask2D();
 
-        return result;
+        final int[] count = new int[intersection.width * intersection.height];
+
+        // compute coverage of all masks on the intersection bounds
+        for (BooleanMask2D bm : masks)
+        {
+            final Rectangle bounds = bm.bounds;
+            final boolean[] src = bm.mask;
+            int offDst = 0;
+            int offSrc = ((intersection.y - bounds.y) * bounds.width) + (intersection.x - bounds.x);
+
+            for (int y = 0; y < intersection.height; y++)
+            {
+                for (int x = 0; x < intersection.width; x++, offDst++)
+                    if (src[offSrc + x])
+                        count[offDst]++;
+
+                offSrc += bounds.width;
+            }
+        }
+
+        final boolean[] mask = new boolean[count.length];
+
+        for (int i = 0; i < mask.length; i++)
+            mask[i] = (count[i] == numMask);
+
+        return new BooleanMask2D(intersection, mask);
     }
 
     /**
@@ -297,27 +283,41 @@ public class BooleanMask2D implements Cloneable
     }
 
     /**
-     * Build global boolean mask from exclusive union of all specified mask
+     * Build global boolean mask from exclusive union of all specified mask.<br>
+     * The result is computed in a single pass over the global bounds (no intermediate mask).
      */
     public static BooleanMask2D getExclusiveUnion(List<BooleanMask2D> masks)
     {
-        BooleanMask2D result = null;
+        final Rectangle union = getUnionBounds(masks);
+
+        // return an empty BooleanMask2D instead of null
+        if (union == null)
+            return new BooleanMask2D();
 
-        // compute global exclusive union boolean mask of all ROI2D
+        final boolean[] mask = new boolean[union.width * union.height];
+
+        // compute global exclusive union boolean mask of all ROI2D (coverage parity)
         for (BooleanMask2D bm : masks)
         {
-            // update global mask
-            if (result == null)
-                result = new BooleanMask2D(bm.bounds, bm.mask);
-            else
-                result = getExclusiveUnion(result, bm);
-        }
+            if ((bm == null) || bm.bounds.isEmpty())
+                continue;
 
-        // return an empty BooleanMask2D instead of null
-        if (result == null)
-            result = new BooleanMask2D();
+            final Rectangle bounds = bm.bounds;
+            final boolean[] src = bm.mask;
+            int offDst = ((bounds.y - union.y) * union.width) + (bounds.x - union.x);
+            int offSrc = 0;
 
-        return result;
+            for (int y = 0; y < bounds.height; y++)
+            {
+                for (int x = 0; x < bounds.width; x++)
+                    if (src[offSrc++])
+                        mask[offDst + x] = !mask[offDst + x];
+
+                offDst += union.width;
+            }
+        }
+
+        return new BooleanMask2D(union, mask);
     }
 
     /**
@@ -955,101 +955,6 @@ public class BooleanMask2D implements Cloneable
         return result;
     }
 
-    /**
-     * Return a 2D array of integer representing points of each component of the current mask.<br>
-     * A component is basically an isolated object which does not touch any other objects.<br>
-     * Internal use only.
-     */
-    protected List<Component> getComponentsPointsInternal()
-    {
-        final List<Component> components = new ArrayList<Component>();
-        final int w = bounds.width;
-        final int minx = bounds.x;
-        final int miny = bounds.y;
-
-        // cache
-        final Component[] line0 = new Component[w + 2];
-        final Component[] line1 = new Component[w + 2];
-
-        Arrays.fill(line0, null);
-        Arrays.fill(line1, null);
-
-        Component[] prevLine = line0;
-        Component[] currLine = line1;
-
-        Component left;
-        Component top;
-        Component topleft;
-
-        int offset = 0;
-        for (int y = 0; y < bounds.height; y++)
-        {
-            // prepare previous cache
-            topleft = null;
-            left = null;
-
-            for (int x = 0; x < w; x++)
-            {
-                top = prevLine[x + 1];
-
-                // we have a component pixel
-                if (mask[offset++])
-                {
-                    if (topleft != null)
-                    {
-                        // mix component
-                        if ((left != null) && (left != topleft))
-                            topleft.addComponent(left);
-
-                        left = topleft;
-                    }
-                    else if (top != null)
-                    {
-                        // mix component
-                        if ((left != null) && (left != top))
-                            top.addComponent(left);
-
-                        left = top;
-                    }
-                    else if (left == null)
-                    {
-                        // new component
-                        left = new Component();
-                        components.add(left);
-                    }
-
-                    // add pixel to component
-                    left.addPoint(x + minx, y + miny);
-                }
-                else
-                {
-                    // mix component
-                    if ((left != null) && (top != null) && (left != top))
-                        top.addComponent(left);
-
-                    left = null;
-                }
-
-                topleft = top;
-                // set current component index line cache
-                currLine[x + 1] = left;
-            }
-
-            Component[] pl = prevLine;
-            prevLine = currLine;
-            currLine = pl;
-        }
-
-        final List<Component> result = new ArrayList<Component>();
-
-        // remove partial components
-        for (Component component : components)
-            if (component.isRoot())
-                result.add(component);
-
-        return result;
-    }
-
     /**
      * Compute and return a 2D array of {@link Point} representing points of each component of the
      * current mask.<br>
@@ -1134,12 +1039,12 @@ public class BooleanMask2D implements Cloneable
         if (bounds.isEmpty())
             return new int[0][0];
 
-        final List<Component> components = getComponentsPointsInternal();
-        final int[][] result = new int[components.size()][];
+        final BooleanMask2D[] components = getComponents();
+        final int[][] result = new int[components.length][];
 
-        // convert list of point to Point array
+        // convert component mask to point array
         for (int i = 0; i < result.length; i++)
-            result[i] = components.get(i).getAllPoints();
+            result[i] = components[i].getPointsAsIntArray();
 
         return result;
     }
@@ -1147,21 +1052,17 @@ public class BooleanMask2D implements Cloneable
     /**
      * Return an array of boolean mask representing each independent component of the current
      * mask.<br>
-     * A component is basically an isolated object which does not touch any other objects.
+     * A component is basically an isolated object which does not touch any other objects
+     * (8-connectivity).
+     * 
+     * @see ConnectedComponents
      */
     public BooleanMask2D[] getComponents()
     {
         if (bounds.isEmpty())
             return new BooleanMask2D[0];
 
-        final int[][] componentsPoints = getComponentsPointsAsIntArray();
-        final List<BooleanMask2D> result = new ArrayList<BooleanMask2D>();
-
-        // convert array of point to boolean mask
-        for (int[] componentPoints : componentsPoints)
-            result.add(new BooleanMask2D(componentPoints));
-
-        return result.toArray(new BooleanMask2D[result.size()]);
+        return ConnectedComponents.label(this, ConnectedComponents.CONNECTIVITY_8).getBooleanMasks2D();
     }
 
     /**
@@ -1182,6 +1083,65 @@ public class BooleanMask2D implements Cloneable
         return TypeUtil.toPoint(getContourPointsAsIntArray());
     }
 
+    /**
+     * Returns the number of points contained in the mask.<br>
+     * This is equivalent to <code>getPointsAsIntArray().length / 2</code> but the point array
+     * is not built.
+     */
+    public int getNumberOfPoints()
+    {
+        int result = 0;
+
+        for (boolean b : mask)
+            if (b)
+                result++;
+
+        return result;
+    }
+
+    /**
+     * Returns the number of contour points of the mask.<br>
+     * This is equivalent to <code>getContourPointsAsIntArray().length / 2</code> but the point
+     * array is not built.
+     */
+    public int getNumberOfContourPoints()
+    {
+        if (isEmpty())
+            return 0;
+
+        final int w = bounds.width;
+        final int h = bounds.height;
+
+        // special case
+        if ((w == 1) && (h == 1))
+            return mask[0] ? 1 : 0;
+
+        int result = 0;
+        int offset = 0;
+
+        for (int y = 0; y < h; y++)
+        {
+            for (int x = 0; x < w; x++, offset++)
+            {
+                // not a component pixel
+                if (!mask[offset])
+                    continue;
+
+                // single column / row mask only consider vertical / horizontal neighbors
+                final boolean leftRight = (w == 1)
+                        || ((x > 0) && (x < (w - 1)) && mask[offset - 1] && mask[offset + 1]);
+                final boolean topBottom = (h == 1)
+                        || ((y > 0) && (y < (h - 1)) && mask[offset - w] && mask[offset + w]);
+
+                // current pixel is a border ?
+                if (!(leftRight && topBottom))
+                    result++;
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Return an array of integer containing the contour points of the mask.<br>
      * <code>result.length</code> = number of point * 2<br>
@@ -1,10 +1,14 @@
 package icy.roi;
 
+import icy.system.thread.Parallel;
+import icy.system.thread.Parallel.ForBody;
 import icy.type.collection.array.DynamicArray;
 import icy.type.point.Point3D;
 import icy.type.rectangle.Rectangle3D;
 
 import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
@@ -252,6 +256,141 @@ public class BooleanMask3D implements Cloneable
         return new BooleanMask3D();
     }
 
+    // Internal use only
+    private static final int OP_UNION = 0;
+    private static final int OP_INTERSECTION = 1;
+    private static final int OP_EXCLUSIVE_UNION = 2;
+
+    // Internal use only
+    private static BooleanMask2D doMerge2D(List<BooleanMask2D> masks, int op)
+    {
+        switch (op)
+        {
+            case OP_INTERSECTION:
+                return BooleanMask2D.getIntersection(masks);
+            case OP_EXCLUSIVE_UNION:
+                return BooleanMask2D.getExclusiveUnion(masks);
+            default:
+                return BooleanMask2D.getUnion(masks);
+        }
+    }
+
+    // Internal use only
+    private static BooleanMask3D doMerge(final List<BooleanMask3D> masks, final int op)
+    {
+        Rectangle3D.Integer b = null;
+
+        for (BooleanMask3D bm : masks)
+        {
+            if (bm == null)
+            {
+                // a null mask is an empty mask
+                if (op == OP_INTERSECTION)
+                    return new BooleanMask3D();
+
+                continue;
+            }
+
+            if (b == null)
+                b = bm.bounds;
+            else if (op == OP_INTERSECTION)
+                b = (Rectangle3D.Integer) b.createIntersection(bm.bounds);
+            else
+                b = (Rectangle3D.Integer) b.createUnion(bm.bounds);
+        }
+
+        if ((b == null) || b.isEmpty())
+            return new BooleanMask3D();
+
+        final Rectangle3D.Integer bounds = b;
+        final BooleanMask2D[] mask;
+
+        // special case of infinite Z dimension
+        if (bounds.sizeZ == Integer.MAX_VALUE)
+        {
+            final List<BooleanMask2D> masks2D = new ArrayList<BooleanMask2D>();
+
+            for (BooleanMask3D bm : masks)
+            {
+                if (bm == null)
+                    continue;
+
+                // we can allow merge ROI only if they all have infinite Z dimension
+                if (bm.bounds.sizeZ != Integer.MAX_VALUE)
+                    throw new UnsupportedOperationException(
+                            "Cannot merge an infinite Z dimension ROI with a finite Z dimension ROI");
+
+                masks2D.add(bm.mask.firstEntry().getValue());
+            }
+
+            mask = new BooleanMask2D[] {doMerge2D(masks2D, op)};
+        }
+        else
+        {
+            mask = new BooleanMask2D[bounds.sizeZ];
+
+            // process each slice in parallel
+            Parallel.forEach(0, bounds.sizeZ, new ForBody()
+            {
+                @Override
+                public void run(int from, int to)
+                {
+                    final List<BooleanMask2D> masks2D = new ArrayList<BooleanMask2D>();
+
+                    for (int z = from; z < to; z++)
+                    {
+                        boolean missing = false;
+
+                        masks2D.clear();
+                        for (BooleanMask3D bm : masks)
+                        {
+                            final BooleanMask2D m2d = (bm != null) ? bm.getMask2D(z + bounds.z) : null;
+
+                            if (m2d != null)
+                                masks2D.add(m2d);
+                            else
+                                missing = true;
+                        }
+
+                        if (masks2D.isEmpty() || (missing && (op == OP_INTERSECTION)))
+                            mask[z] = null;
+                        else
+                            mask[z] = doMerge2D(masks2D, op);
+                    }
+                }
+            });
+        }
+
+        return new BooleanMask3D(bounds, mask);
+    }
+
+    /**
+     * Build global boolean mask from union of all specified mask.<br>
+     * Each Z slice is computed in a single pass (slices are processed in parallel).
+     */
+    public static BooleanMask3D getUnion(List<BooleanMask3D> masks)
+    {
+        return doMerge(masks, OP_UNION);
+    }
+
+    /**
+     * Build global boolean mask from intersection of all specified mask.<br>
+     * Each Z slice is computed in a single pass (slices are processed in parallel).
+     */
+    public static BooleanMask3D getIntersection(List<BooleanMask3D> masks)
+    {
+        return doMerge(masks, OP_INTERSECTION);
+    }
+
+    /**
+     * Build global boolean mask from exclusive union of all specified mask.<br>
+     * Each Z slice is computed in a single pass (slices are processed in parallel).
+     */
+    public static BooleanMask3D getExclusiveUnion(List<BooleanMask3D> masks)
+    {
+        return doMerge(masks, OP_EXCLUSIVE_UNION);
+    }
+
     /**
      * Build resulting mask from the subtraction of mask2 from mask1:
      * 
@@ -316,9 +455,13 @@ public class BooleanMask3D implements Cloneable
      */
     public Rectangle3D.Integer bounds;
     /**
-     * Boolean mask 2D array.
+     * Boolean mask 2D array (Z slice map, stored as contiguous array when dense enough).
      */
     public final TreeMap<Integer, BooleanMask2D> mask;
+    /**
+     * {@link #mask} as slice map (same instance)
+     */
+    private final SliceMap<BooleanMask2D> sliceMap;
 
     /**
      * Build a new 3D boolean mask with specified bounds and 2D mask array.<br>
@@ -329,7 +472,8 @@ public class BooleanMask3D implements Cloneable
         super();
 
         this.bounds = bounds;
-        this.mask = new TreeMap<Integer, BooleanMask2D>();
+        sliceMap = new SliceMap<BooleanMask2D>();
+        this.mask = sliceMap;
 
         // special case of infinite Z dim
         if (bounds.sizeZ == Integer.MAX_VALUE)
@@ -349,7 +493,8 @@ public class BooleanMask3D implements Cloneable
     {
         super();
 
-        mask = new TreeMap<Integer, BooleanMask2D>();
+        sliceMap = new SliceMap<BooleanMask2D>();
+        mask = sliceMap;
 
         if ((points == null) || (points.length == 0))
             bounds = new Rectangle3D.Integer();
@@ -416,7 +561,8 @@ public class BooleanMask3D implements Cloneable
     {
         super();
 
-        mask = new TreeMap<Integer, BooleanMask2D>();
+        sliceMap = new SliceMap<BooleanMask2D>();
+        mask = sliceMap;
 
         if ((points == null) || (points.length == 0))
             bounds = new Rectangle3D.Integer();
@@ -490,7 +636,23 @@ public class BooleanMask3D implements Cloneable
         if (bounds.sizeZ == Integer.MAX_VALUE)
             return mask.firstEntry().getValue();
 
-        return mask.get(Integer.valueOf(z));
+        return sliceMap.getSlice(z);
+    }
+
+    /**
+     * Returns the 2D boolean masks for the <code>[minZ, maxZ]</code> Z range as a contiguous
+     * array (<code>result[z - minZ]</code> is <code>null</code> if there is no mask at position Z).
+     * <br>
+     * This is useful to iterate over neighbor slices (dilation / erosion kind operations).
+     */
+    public BooleanMask2D[] getMasks2D(int minZ, int maxZ)
+    {
+        final BooleanMask2D[] result = new BooleanMask2D[Math.max(0, (maxZ - minZ) + 1)];
+
+        for (int z = 0; z < result.length; z++)
+            result[z] = getMask2D(minZ + z);
+
+        return result;
     }
 
     /**
@@ -837,6 +999,19 @@ public class BooleanMask3D implements Cloneable
             for (Entry<Integer, BooleanMask2D> entry : mask.entrySet())
                 result.add(toInt3D(entry.getValue().getPointsAsIntArray(), entry.getKey().intValue()));
         }
+        else if (sliceMap.isDense())
+        {
+            final int firstZ = mask.firstKey().intValue();
+            final BooleanMask2D[] slices = getMasks2D(firstZ, mask.lastKey().intValue());
+            final int last = slices.length - 1;
+
+            // work directly on the contiguous slice array
+            result.add(toInt3D(slices[0].getPointsAsIntArray(), firstZ));
+            for (int z = 1; z < last; z++)
+                if (slices[z] != null)
+                    result.add(toInt3D(slices[z].getContourPointsAsIntArray(), firstZ + z));
+            result.add(toInt3D(slices[last].getPointsAsIntArray(), firstZ + last));
+        }
         else
         {
             final Entry<Integer, BooleanMask2D> firstEntry = mask.firstEntry();
@@ -855,6 +1030,66 @@ public class BooleanMask3D implements Cloneable
         return result.asArray();
     }
 
+    /**
+     * Returns the number of points contained in the mask.<br>
+     * This is equivalent to <code>getPointsAsIntArray().length / 3</code> but the point array
+     * is not built.
+     */
+    public long getNumberOfPoints()
+    {
+        long result = 0;
+
+        for (BooleanMask2D mask2D : mask.values())
+            result += mask2D.getNumberOfPoints();
+
+        return result;
+    }
+
+    /**
+     * Returns the number of contour/surface points of the mask.<br>
+     * This is equivalent to <code>getContourPointsAsIntArray().length / 3</code> but the point
+     * array is not built.
+     * 
+     * @see #getContourPointsAsIntArray()
+     */
+    public long getNumberOfContourPoints()
+    {
+        long result = 0;
+
+        // perimeter = first slice volume + inter slices perimeter + last slice volume
+        if (mask.size() <= 2)
+        {
+            for (BooleanMask2D mask2D : mask.values())
+                result += mask2D.getNumberOfPoints();
+        }
+        else if (sliceMap.isDense())
+        {
+            final BooleanMask2D[] slices = getMasks2D(mask.firstKey().intValue(), mask.lastKey().intValue());
+            final int last = slices.length - 1;
+
+            // work directly on the contiguous slice array
+            result += slices[0].getNumberOfPoints();
+            for (int z = 1; z < last; z++)
+                if (slices[z] != null)
+                    result += slices[z].getNumberOfContourPoints();
+            result += slices[last].getNumberOfPoints();
+        }
+        else
+        {
+            final Entry<Integer, BooleanMask2D> firstEntry = mask.firstEntry();
+            final Entry<Integer, BooleanMask2D> lastEntry = mask.lastEntry();
+
+            result += firstEntry.getValue().getNumberOfPoints();
+
+            for (BooleanMask2D mask2D : mask.subMap(firstEntry.getKey(), false, lastEntry.getKey(), false).values())
+                result += mask2D.getNumberOfContourPoints();
+
+            result += lastEntry.getValue().getNumberOfPoints();
+        }
+
+        return result;
+    }
+
     /**
      * Return an array of {@link icy.type.point.Point3D.Integer} representing all points of the
      * current 3D mask.<br>
@@ -865,6 +1100,39 @@ public class BooleanMask3D implements Cloneable
         return Point3D.Integer.toPoint3D(getPointsAsIntArray());
     }
 
+    /**
+     * Return an array of boolean mask representing each independent component of the current
+     * mask.<br>
+     * A component is basically an isolated object which does not touch any other objects
+     * (26-connectivity).
+     * 
+     * @see ConnectedComponents
+     */
+    public BooleanMask3D[] getComponents()
+    {
+        if (isEmpty())
+            return new BooleanMask3D[0];
+
+        // special case of infinite Z dim
+        if (bounds.sizeZ == Integer.MAX_VALUE)
+        {
+            final BooleanMask2D[] components = mask.firstEntry().getValue().getComponents();
+            final BooleanMask3D[] result = new BooleanMask3D[components.length];
+
+            for (int i = 0; i < components.length; i++)
+            {
+                final Rectangle r = components[i].bounds;
+
+                result[i] = new BooleanMask3D(new Rectangle3D.Integer(r.x, r.y, bounds.z, r.width, r.height,
+                        bounds.sizeZ), new BooleanMask2D[] {components[i]});
+            }
+
+            return result;
+        }
+
+        return ConnectedComponents.label(this, ConnectedComponents.CONNECTIVITY_26).getBooleanMasks3D();
+    }
+
     /**
      * Return an array of integer representing all points of the current 3D mask.<br>
      * <code>result.length</code> = number of point * 3<br>
@@ -1035,6 +1035,54 @@ public class BooleanMask5D
         return result.asArray();
     }
 
+    /**
+     * Returns the number of points contained in the mask.<br>
+     * This is equivalent to <code>getPointsAsIntArray().length / 5</code> but the point array
+     * is not built.
+     */
+    public long getNumberOfPoints()
+    {
+        long result = 0;
+
+        for (BooleanMask4D subMask : mask.values())
+            result += subMask.getNumberOfPoints();
+
+        return result;
+    }
+
+    /**
+     * Returns the number of contour points of the mask.<br>
+     * This is equivalent to <code>getContourPointsAsIntArray().length / 5</code> but the point
+     * array is not built.
+     * 
+     * @see #getContourPointsAsIntArray()
+     */
+    public long getNumberOfContourPoints()
+    {
+        long result = 0;
+
+        // perimeter = first slice volume + inter slices perimeter + last slice volume
+        if (mask.size() <= 2)
+        {
+            for (BooleanMask4D subMask : mask.values())
+                result += subMask.getNumberOfPoints();
+        }
+        else
+        {
+            final Entry<Integer, BooleanMask4D> firstEntry = mask.firstEntry();
+            final Entry<Integer, BooleanMask4D> lastEntry = mask.lastEntry();
+
+            result += firstEntry.getValue().getNumberOfPoints();
+
+            for (BooleanMask4D subMask : mask.subMap(firstEntry.getKey(), false, lastEntry.getKey(), false).values())
+                result += subMask.getNumberOfContourPoints();
+
+            result += lastEntry.getValue().getNumberOfPoints();
+        }
+
+        return result;
+    }
+
     /**
      * Return an array of {@link icy.type.point.Point5D.Integer} representing all points of the
      * current 5D mask.<br>
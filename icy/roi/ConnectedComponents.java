@@ -0,0 +1,764 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import icy.image.IcyBufferedImage;
+import icy.sequence.Sequence;
+import icy.system.thread.Parallel;
+import icy.system.thread.Parallel.ForBody;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+import icy.type.rectangle.Rectangle3D;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import plugins.kernel.roi.roi2d.ROI2DArea;
+import plugins.kernel.roi.roi3d.ROI3DArea;
+
+/**
+ * Connected component labeling engine.<br>
+ * The input (2D / 3D boolean mask or thresholded sequence) is cut in tiles (planes or bands of
+ * rows) which are scanned in parallel to extract the row runs, then runs are merged with their
+ * neighbor runs (in the same tile or in the neighbor tiles) in parallel using a lock free
+ * union-find structure.<br>
+ * Components are labeled from 1 in raster order (Z, Y then X) and can be exported as an integer
+ * label {@link Sequence}, as boolean masks or as {@link ROI2DArea} / {@link ROI3DArea} list.<br>
+ * Example:
+ * 
+ * <pre>
+ * final ConnectedComponents cc = ConnectedComponents.label(sequence, 0, 0, 128d, ConnectedComponents.CONNECTIVITY_26);
+ * final List&lt;ROI&gt; rois = cc.getROIs();
+ * </pre>
+ * 
+ * @author Stephane
+ */
+public class ConnectedComponents
+{
+    /**
+     * 2D connectivity (planes are labeled independently)
+     */
+    public static final int CONNECTIVITY_4 = 4;
+    public static final int CONNECTIVITY_8 = 8;
+    /**
+     * 3D connectivity
+     */
+    public static final int CONNECTIVITY_6 = 6;
+    public static final int CONNECTIVITY_26 = 26;
+
+    /**
+     * Runs of a band of rows of a plane.
+     */
+    private static class Tile
+    {
+        final int z;
+        final int y;
+        final int height;
+        // index of the first run of each row (local to the tile)
+        final int[] rowOffset;
+        // run start and end (inclusive) X position
+        int[] start;
+        int[] end;
+        int size;
+        // global index of the first run of the tile
+        int offset;
+
+        Tile(int z, int y, int height)
+        {
+            super();
+
+            this.z = z;
+            this.y = y;
+            this.height = height;
+            rowOffset = new int[height + 1];
+            start = new int[64];
+            end = new int[64];
+            size = 0;
+            offset = 0;
+        }
+
+        /**
+         * Adds runs of the specified row data.
+         * 
+         * @param data
+         *        row data
+         * @param off
+         *        offset of the row in data
+         * @param len
+         *        row length
+         * @param shift
+         *        X position of the first row pixel
+         */
+        void addRuns(boolean[] data, int off, int len, int shift)
+        {
+            final int last = off + len;
+            int x = off;
+
+            while (x < last)
+            {
+                while ((x < last) && !data[x])
+                    x++;
+                if (x == last)
+                    break;
+
+                final int s = x;
+                while ((x < last) && data[x])
+                    x++;
+
+                add((s - off) + shift, (x - 1 - off) + shift);
+            }
+        }
+
+        void add(int s, int e)
+        {
+            if (size == start.length)
+            {
+                final int newLen = size * 2;
+                final int[] ns = new int[newLen];
+                final int[] ne = new int[newLen];
+
+                System.arraycopy(start, 0, ns, 0, size);
+                System.arraycopy(end, 0, ne, 0, size);
+                start = ns;
+                end = ne;
+            }
+
+            start[size] = s;
+            end[size] = e;
+            size++;
+        }
+    }
+
+    /**
+     * Fill runs of a tile from the source data.
+     */
+    private static interface TileReader
+    {
+        public void read(Tile tile);
+    }
+
+    // labeling bounds
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    // 3D source (ROI / label image Z position are set)
+    private final boolean source3D;
+    // T position of source sequence (-1 if not defined)
+    private final int t;
+    private final int connectivity;
+
+    private final Tile[] tiles;
+    private final int bandsPerPlane;
+    private final int bandHeight;
+    // component label of each run
+    private int[] labels;
+    private int numComponents;
+
+    private ConnectedComponents(int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ, boolean source3D,
+            int t, int connectivity)
+    {
+        super();
+
+        if ((connectivity != CONNECTIVITY_4) && (connectivity != CONNECTIVITY_8) && (connectivity != CONNECTIVITY_6)
+                && (connectivity != CONNECTIVITY_26))
+            throw new IllegalArgumentException("Unsupported connectivity: " + connectivity);
+
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.source3D = source3D;
+        this.t = t;
+        this.connectivity = connectivity;
+
+        // enough tiles to keep all processors busy
+        final int wanted = Parallel.getParallelism() * 4;
+        if (sizeZ >= wanted)
+            bandsPerPlane = 1;
+        else
+            bandsPerPlane = Math.max(1, Math.min(sizeY, wanted / Math.max(1, sizeZ)));
+
+        bandHeight = Math.max(1, (sizeY + (bandsPerPlane - 1)) / bandsPerPlane);
+
+        final List<Tile> result = new ArrayList<Tile>();
+        for (int z = 0; z < sizeZ; z++)
+        {
+            for (int b = 0; b < bandsPerPlane; b++)
+            {
+                final int y = b * bandHeight;
+                result.add(new Tile(z, y, Math.max(0, Math.min(bandHeight, sizeY - y))));
+            }
+        }
+
+        tiles = result.toArray(new Tile[result.size()]);
+        labels = new int[0];
+        numComponents = 0;
+    }
+
+    /**
+     * Labels connected components of the specified 2D mask.
+     * 
+     * @param connectivity
+     *        {@link #CONNECTIVITY_4} or {@link #CONNECTIVITY_8}
+     */
+    public static ConnectedComponents label(final BooleanMask2D mask, int connectivity)
+    {
+        final Rectangle bounds = mask.bounds;
+        final ConnectedComponents result = new ConnectedComponents(bounds.x, bounds.y, 0, bounds.width, bounds.height,
+                1, false, -1, connectivity);
+
+        result.process(new TileReader()
+        {
+            @Override
+            public void read(Tile tile)
+            {
+                final int w = bounds.width;
+
+                for (int r = 0; r < tile.height; r++)
+                {
+                    tile.rowOffset[r] = tile.size;
+                    tile.addRuns(mask.mask, (tile.y + r) * w, w, 0);
+                }
+                tile.rowOffset[tile.height] = tile.size;
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Labels connected components of the specified 3D mask.
+     * 
+     * @param connectivity
+     *        {@link #CONNECTIVITY_6} or {@link #CONNECTIVITY_26} for 3D labeling,
+     *        {@link #CONNECTIVITY_4} or {@link #CONNECTIVITY_8} to label each plane independently
+     */
+    public static ConnectedComponents label(BooleanMask3D mask, int connectivity)
+    {
+        final Rectangle3D.Integer bounds = mask.bounds;
+
+        if (bounds.sizeZ == Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Cannot label a mask with infinite Z dimension.");
+
+        final BooleanMask2D[] slices = new BooleanMask2D[bounds.sizeZ];
+        for (Entry<Integer, BooleanMask2D> entry : mask.mask.entrySet())
+            slices[entry.getKey().intValue() - bounds.z] = entry.getValue();
+
+        final ConnectedComponents result = new ConnectedComponents(bounds.x, bounds.y, bounds.z, bounds.sizeX,
+                bounds.sizeY, bounds.sizeZ, true, -1, connectivity);
+
+        result.process(new TileReader()
+        {
+            @Override
+            public void read(Tile tile)
+            {
+                final BooleanMask2D slice = slices[tile.z];
+
+                for (int r = 0; r < tile.height; r++)
+                {
+                    tile.rowOffset[r] = tile.size;
+
+                    if (slice != null)
+                    {
+                        final Rectangle sb = slice.bounds;
+                        final int y = (tile.y + r + bounds.y) - sb.y;
+
+                        if ((y >= 0) && (y < sb.height))
+                            tile.addRuns(slice.mask, y * sb.width, sb.width, sb.x - bounds.x);
+                    }
+                }
+                tile.rowOffset[tile.height] = tile.size;
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Labels connected components of the specified sequence volume (at position T, C) thresholded
+     * with the given value (pixels with value &gt;= threshold are considered as object).
+     * 
+     * @param connectivity
+     *        {@link #CONNECTIVITY_6} or {@link #CONNECTIVITY_26} for 3D labeling,
+     *        {@link #CONNECTIVITY_4} or {@link #CONNECTIVITY_8} to label each plane independently
+     */
+    public static ConnectedComponents label(final Sequence sequence, int t, final int c, final double threshold,
+            int connectivity)
+    {
+        final int w = sequence.getSizeX();
+        final int sizeZ = sequence.getSizeZ(t);
+        final IcyBufferedImage[] images = new IcyBufferedImage[sizeZ];
+
+        for (int z = 0; z < sizeZ; z++)
+            images[z] = sequence.getImage(t, z);
+
+        final ConnectedComponents result = new ConnectedComponents(0, 0, 0, w, sequence.getSizeY(), sizeZ, true, t,
+                connectivity);
+
+        result.process(new TileReader()
+        {
+            @Override
+            public void read(Tile tile)
+            {
+                final IcyBufferedImage image = images[tile.z];
+                final Object data = (image != null) ? image.getDataXY(c) : null;
+                final boolean signed = (image != null) && image.isSignedDataType();
+                final double[] values = new double[w];
+                final boolean[] row = new boolean[w];
+
+                for (int r = 0; r < tile.height; r++)
+                {
+                    tile.rowOffset[r] = tile.size;
+
+                    if (data != null)
+                    {
+                        Array1DUtil.arrayToDoubleArray(data, (tile.y + r) * w, values, 0, w, signed);
+                        for (int x = 0; x < w; x++)
+                            row[x] = values[x] >= threshold;
+
+                        tile.addRuns(row, 0, w, 0);
+                    }
+                }
+                tile.rowOffset[tile.height] = tile.size;
+            }
+        });
+
+        return result;
+    }
+
+    private void process(final TileReader reader)
+    {
+        // extract runs
+        Parallel.forEach(0, tiles.length, new ForBody()
+        {
+            @Override
+            public void run(int from, int to)
+            {
+                for (int i = from; i < to; i++)
+                    reader.read(tiles[i]);
+            }
+        });
+
+        int numRuns = 0;
+        for (Tile tile : tiles)
+        {
+            tile.offset = numRuns;
+            numRuns += tile.size;
+        }
+
+        final AtomicIntegerArray parent = new AtomicIntegerArray(numRuns);
+        for (int i = 0; i < numRuns; i++)
+            parent.set(i, i);
+
+        // merge runs with their neighbors
+        Parallel.forEach(0, tiles.length, new ForBody()
+        {
+            @Override
+            public void run(int from, int to)
+            {
+                for (int i = from; i < to; i++)
+                    merge(tiles[i], parent);
+            }
+        });
+
+        // parent is always a previous run so its label is already known
+        labels = new int[numRuns];
+        numComponents = 0;
+        for (int i = 0; i < numRuns; i++)
+        {
+            final int p = parent.get(i);
+
+            if (p == i)
+                labels[i] = ++numComponents;
+            else
+                labels[i] = labels[p];
+        }
+    }
+
+    /**
+     * Merge runs of the specified tile with their neighbor runs in the previous row and previous
+     * plane.
+     */
+    void merge(Tile tile, AtomicIntegerArray parent)
+    {
+        final int d2 = ((connectivity == CONNECTIVITY_8) || (connectivity == CONNECTIVITY_26)) ? 1 : 0;
+        final boolean merge3D = (connectivity == CONNECTIVITY_6) || (connectivity == CONNECTIVITY_26);
+        final boolean full3D = connectivity == CONNECTIVITY_26;
+
+        for (int r = 0; r < tile.height; r++)
+        {
+            final int y = tile.y + r;
+
+            if (y > 0)
+                mergeRows(tile, r, tile.z, y - 1, d2, parent);
+
+            if (merge3D && (tile.z > 0))
+            {
+                mergeRows(tile, r, tile.z - 1, y, d2, parent);
+
+                if (full3D)
+                {
+                    if (y > 0)
+                        mergeRows(tile, r, tile.z - 1, y - 1, 1, parent);
+                    if (y < (sizeY - 1))
+                        mergeRows(tile, r, tile.z - 1, y + 1, 1, parent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge runs of row <code>ra</code> of tile <code>ta</code> with runs of row (z, y).
+     * 
+     * @param d
+     *        1 if diagonal neighbors are connected, 0 otherwise
+     */
+    private void mergeRows(Tile ta, int ra, int z, int y, int d, AtomicIntegerArray parent)
+    {
+        final Tile tb = tiles[(z * bandsPerPlane) + (y / bandHeight)];
+        final int rb = y - tb.y;
+        final int[] sa = ta.start;
+        final int[] ea = ta.end;
+        final int[] sb = tb.start;
+        final int[] eb = tb.end;
+        final int ia1 = ta.rowOffset[ra + 1];
+        final int ib1 = tb.rowOffset[rb + 1];
+        int ia = ta.rowOffset[ra];
+        int ib = tb.rowOffset[rb];
+
+        while ((ia < ia1) && (ib < ib1))
+        {
+            if ((ea[ia] + d) < sb[ib])
+                ia++;
+            else if ((eb[ib] + d) < sa[ia])
+                ib++;
+            else
+            {
+                union(parent, ta.offset + ia, tb.offset + ib);
+
+                // advance the run ending first
+                if (ea[ia] < eb[ib])
+                    ia++;
+                else
+                    ib++;
+            }
+        }
+    }
+
+    private static int find(AtomicIntegerArray parent, int i)
+    {
+        int p = parent.get(i);
+
+        while (p != i)
+        {
+            final int gp = parent.get(p);
+
+            // path halving
+            if (gp != p)
+                parent.compareAndSet(i, p, gp);
+
+            i = p;
+            p = gp;
+        }
+
+        return i;
+    }
+
+    private static void union(AtomicIntegerArray parent, int a, int b)
+    {
+        while (true)
+        {
+            final int ra = find(parent, a);
+            final int rb = find(parent, b);
+
+            if (ra == rb)
+                return;
+
+            // always link to the smallest root so root is the first run in raster order
+            if (ra < rb)
+            {
+                if (parent.compareAndSet(rb, rb, ra))
+                    return;
+            }
+            else if (parent.compareAndSet(ra, ra, rb))
+                return;
+        }
+    }
+
+    /**
+     * Returns the number of connected components.
+     */
+    public int getNumberOfComponents()
+    {
+        return numComponents;
+    }
+
+    /**
+     * Returns the label image as an integer {@link Sequence} (0 is background, components are
+     * labeled from 1).<br>
+     * The sequence covers the labeling bounds (which are the sequence bounds when labeling a
+     * sequence).
+     */
+    public Sequence getLabelSequence()
+    {
+        final IcyBufferedImage[] images = new IcyBufferedImage[sizeZ];
+
+        Parallel.forEach(0, sizeZ, new ForBody()
+        {
+            @Override
+            public void run(int from, int to)
+            {
+                for (int z = from; z < to; z++)
+                {
+                    final IcyBufferedImage image = new IcyBufferedImage(sizeX, sizeY, 1, DataType.INT);
+                    final int[] data = image.getDataXYAsInt(0);
+
+                    for (int b = 0; b < bandsPerPlane; b++)
+                    {
+                        final Tile tile = tiles[(z * bandsPerPlane) + b];
+
+                        for (int r = 0; r < tile.height; r++)
+                        {
+                            final int off = (tile.y + r) * sizeX;
+
+                            for (int i = tile.rowOffset[r]; i < tile.rowOffset[r + 1]; i++)
+                            {
+                                final int label = labels[tile.offset + i];
+
+                                for (int x = tile.start[i]; x <= tile.end[i]; x++)
+                                    data[off + x] = label;
+                            }
+                        }
+                    }
+
+                    image.dataChanged();
+                    images[z] = image;
+                }
+            }
+        });
+
+        final Sequence result = new Sequence("Labels");
+
+        result.beginUpdate();
+        try
+        {
+            for (int z = 0; z < sizeZ; z++)
+                result.setImage(0, z, images[z]);
+        }
+        finally
+        {
+            result.endUpdate();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the mask of each component (in label order) as 3D boolean mask.
+     */
+    public BooleanMask3D[] getBooleanMasks3D()
+    {
+        final int[] firstZ = new int[numComponents];
+        final BooleanMask2D[][] masks = getComponentMasks(firstZ);
+        final BooleanMask3D[] result = new BooleanMask3D[masks.length];
+
+        for (int l = 0; l < masks.length; l++)
+            result[l] = toBooleanMask3D(masks[l], firstZ[l]);
+
+        return result;
+    }
+
+    /**
+     * Build the 3D mask from the component slices starting at <code>firstZ</code> (relative to the
+     * labeled area).
+     */
+    private BooleanMask3D toBooleanMask3D(BooleanMask2D[] slices, int firstZ)
+    {
+        // all slices have the same XY bounds
+        final Rectangle r = slices[0].bounds;
+
+        return new BooleanMask3D(new Rectangle3D.Integer(r.x, r.y, minZ + firstZ, r.width, r.height, slices.length),
+                slices);
+    }
+
+    /**
+     * Returns the mask of each component (in label order) as 2D boolean mask.<br>
+     * Should be used only for 2D labeling (when a component lies on several planes only its first
+     * plane is returned).
+     */
+    public BooleanMask2D[] getBooleanMasks2D()
+    {
+        final BooleanMask2D[][] masks = getComponentMasks(new int[numComponents]);
+        final BooleanMask2D[] result = new BooleanMask2D[masks.length];
+
+        for (int l = 0; l < masks.length; l++)
+            result[l] = masks[l][0];
+
+        return result;
+    }
+
+    /**
+     * Returns the component ROIs (in label order): {@link ROI2DArea} for 2D labeling and
+     * {@link ROI3DArea} for 3D labeling.
+     */
+    public List<ROI> getROIs()
+    {
+        final boolean roi3D = (connectivity == CONNECTIVITY_6) || (connectivity == CONNECTIVITY_26);
+        final int[] firstZ = new int[numComponents];
+        final BooleanMask2D[][] masks = getComponentMasks(firstZ);
+        final ROI[] result = new ROI[masks.length];
+
+        Parallel.forRange(0, masks.length, 0, new ForBody()
+        {
+            @Override
+            public void run(int from, int to)
+            {
+                for (int l = from; l < to; l++)
+                {
+                    final BooleanMask2D[] slices = masks[l];
+
+                    if (roi3D && source3D)
+                    {
+                        final ROI3DArea roi = new ROI3DArea(toBooleanMask3D(slices, firstZ[l]));
+
+                        if (t != -1)
+                            roi.setT(t);
+
+                        result[l] = roi;
+                    }
+                    else
+                    {
+                        final ROI2DArea roi = new ROI2DArea(slices[0]);
+
+                        if (source3D)
+                            roi.setZ(minZ + firstZ[l]);
+                        if (t != -1)
+                            roi.setT(t);
+
+                        result[l] = roi;
+                    }
+                }
+            }
+        });
+
+        final List<ROI> rois = new ArrayList<ROI>(result.length);
+        for (ROI roi : result)
+            rois.add(roi);
+
+        return rois;
+    }
+
+    /**
+     * Build the 2D mask of each plane of each component, from its first plane to its last one.
+     * 
+     * @param firstZ
+     *        filled with the first plane of each component (relative to the labeled area)
+     */
+    private BooleanMask2D[][] getComponentMasks(int[] firstZ)
+    {
+        final int n = numComponents;
+        final int[] bx0 = new int[n + 1];
+        final int[] bx1 = new int[n + 1];
+        final int[] by0 = new int[n + 1];
+        final int[] by1 = new int[n + 1];
+        final int[] bz0 = new int[n + 1];
+        final int[] bz1 = new int[n + 1];
+
+        Arrays.fill(bx0, Integer.MAX_VALUE);
+        Arrays.fill(by0, Integer.MAX_VALUE);
+        Arrays.fill(bz0, Integer.MAX_VALUE);
+        Arrays.fill(bx1, Integer.MIN_VALUE);
+        Arrays.fill(by1, Integer.MIN_VALUE);
+        Arrays.fill(bz1, Integer.MIN_VALUE);
+
+        // component bounds
+        for (Tile tile : tiles)
+        {
+            for (int r = 0; r < tile.height; r++)
+            {
+                final int y = tile.y + r;
+
+                for (int i = tile.rowOffset[r]; i < tile.rowOffset[r + 1]; i++)
+                {
+                    final int l = labels[tile.offset + i];
+
+                    bx0[l] = Math.min(bx0[l], tile.start[i]);
+                    bx1[l] = Math.max(bx1[l], tile.end[i]);
+                    by0[l] = Math.min(by0[l], y);
+                    by1[l] = Math.max(by1[l], y);
+                    bz0[l] = Math.min(bz0[l], tile.z);
+                    bz1[l] = Math.max(bz1[l], tile.z);
+                }
+            }
+        }
+
+        final BooleanMask2D[][] result = new BooleanMask2D[n][];
+
+        for (int l = 1; l <= n; l++)
+        {
+            final BooleanMask2D[] slices = new BooleanMask2D[(bz1[l] - bz0[l]) + 1];
+            final Rectangle r = new Rectangle(minX + bx0[l], minY + by0[l], (bx1[l] - bx0[l]) + 1,
+                    (by1[l] - by0[l]) + 1);
+
+            for (int z = 0; z < slices.length; z++)
+                slices[z] = new BooleanMask2D(new Rectangle(r), new boolean[r.width * r.height]);
+
+            result[l - 1] = slices;
+            firstZ[l - 1] = bz0[l];
+        }
+
+        // fill masks (tiles write different rows)
+        Parallel.forEach(0, tiles.length, new ForBody()
+        {
+            @Override
+            public void run(int from, int to)
+            {
+                for (int t = from; t < to; t++)
+                {
+                    final Tile tile = tiles[t];
+
+                    for (int r = 0; r < tile.height; r++)
+                    {
+                        final int y = tile.y + r;
+
+                        for (int i = tile.rowOffset[r]; i < tile.rowOffset[r + 1]; i++)
+                        {
+                            final int l = labels[tile.offset + i];
+                            final BooleanMask2D mask = result[l - 1][tile.z - bz0[l]];
+                            final int off = ((y - by0[l]) * mask.bounds.width) - bx0[l];
+
+                            Arrays.fill(mask.mask, off + tile.start[i], off + tile.end[i] + 1, true);
+                        }
+                    }
+                }
+            }
+        });
+
+        return result;
+    }
+}
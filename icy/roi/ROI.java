@@ -833,6 +833,12 @@ public abstract class ROI implements ChangeListener, XMLPersistent
     protected boolean boundsInvalid;
     protected boolean numberOfContourPointsInvalid;
     protected boolean numberOfPointsInvalid;
+    /**
+     * ROI content change version (cached properties are computed for a given version)
+     */
+    protected volatile long changeVersion;
+    protected long numberOfContourPointsVersion;
+    protected long numberOfPointsVersion;
 
     /**
      * listeners
@@ -862,6 +868,9 @@ public abstract class ROI implements ChangeListener, XMLPersistent
         boundsInvalid = true;
         numberOfPointsInvalid = true;
         numberOfContourPointsInvalid = true;
+        changeVersion = 0L;
+        numberOfPointsVersion = -1L;
+        numberOfContourPointsVersion = -1L;
 
         listeners = new EventListenerList();
         updater = new UpdateEventHandler(this, false);
@@ -2033,10 +2042,14 @@ public abstract class ROI implements ChangeListener, XMLPersistent
      */
     public double getNumberOfContourPoints()
     {
+        final long version = changeVersion;
+
         // we need to recompute the number of edge point
-        if (numberOfContourPointsInvalid)
+        if (numberOfContourPointsInvalid || (numberOfContourPointsVersion != version))
         {
             cachedNumberOfContourPoints = computeNumberOfContourPoints();
+            // computed for this version (ROI may have changed in the meantime)
+            numberOfContourPointsVersion = version;
             numberOfContourPointsInvalid = false;
         }
 
@@ -2057,16 +2070,30 @@ public abstract class ROI implements ChangeListener, XMLPersistent
      */
     public double getNumberOfPoints()
     {
+        final long version = changeVersion;
+
         // we need to recompute the number of point
-        if (numberOfPointsInvalid)
+        if (numberOfPointsInvalid || (numberOfPointsVersion != version))
         {
             cachedNumberOfPoints = computeNumberOfPoints();
+            // computed for this version (ROI may have changed in the meantime)
+            numberOfPointsVersion = version;
             numberOfPointsInvalid = false;
         }
 
         return cachedNumberOfPoints;
     }
 
+    /**
+     * Returns the version of the ROI content.<br>
+     * It is incremented each time the ROI content changes so it can be used as key to cache
+     * values computed from the ROI content.
+     */
+    public long getChangeVersion()
+    {
+        return changeVersion;
+    }
+
     /**
      * @deprecated Only for ROI2D object, Use {@link #getNumberOfContourPoints()} instead.
      */
@@ -2287,6 +2314,7 @@ public abstract class ROI implements ChangeListener, XMLPersistent
         {
             case ROI_CHANGED:
                 // cached properties need to be recomputed
+                changeVersion++;
                 boundsInvalid = true;
                 numberOfContourPointsInvalid = true;
                 numberOfPointsInvalid = true;
@@ -1193,8 +1193,13 @@ public abstract class ROI2D extends ROI
     @Override
     public double computeNumberOfContourPoints()
     {
+        final BooleanMask2D mask = getBooleanMask(true);
+
         // approximation by using number of point of the edge of boolean mask
-        return getBooleanMask(true).getContourPointsAsIntArray().length / getDimension();
+        if (mask == null)
+            return 0d;
+
+        return mask.getNumberOfContourPoints();
     }
 
     /*
@@ -1205,8 +1210,13 @@ public abstract class ROI2D extends ROI
     @Override
     public double computeNumberOfPoints()
     {
+        final BooleanMask2D mask = getBooleanMask(true);
+
         // approximation by using number of point of boolean mask
-        return getBooleanMask(true).getPointsAsIntArray().length / getDimension();
+        if (mask == null)
+            return 0d;
+
+        return mask.getNumberOfPoints();
     }
 
     /**
@@ -636,7 +636,7 @@ public abstract class ROI4D extends ROI
     public double computeNumberOfContourPoints()
     {
         // approximation by using number of point of the edge of boolean mask
-        return getBooleanMask(true).getContourPointsAsIntArray().length / getDimension();
+        return getBooleanMask(true).getNumberOfContourPoints();
     }
 
     /*
@@ -648,7 +648,7 @@ public abstract class ROI4D extends ROI
     public double computeNumberOfPoints()
     {
         // approximation by using number of point of boolean mask
-        return getBooleanMask(true).getPointsAsIntArray().length / getDimension();
+        return getBooleanMask(true).getNumberOfPoints();
     }
     
    
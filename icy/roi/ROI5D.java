@@ -223,7 +223,7 @@ public abstract class ROI5D extends ROI
     public double computeNumberOfContourPoints()
     {
         // approximation by using number of point of the edge of boolean mask
-        return getBooleanMask(true).getContourPointsAsIntArray().length / getDimension();
+        return getBooleanMask(true).getNumberOfContourPoints();
     }
 
     /*
@@ -235,7 +235,7 @@ public abstract class ROI5D extends ROI
     public double computeNumberOfPoints()
     {
         // approximation by using number of point of boolean mask
-        return getBooleanMask(true).getPointsAsIntArray().length / getDimension();
+        return getBooleanMask(true).getNumberOfPoints();
     }
 
 }
@@ -23,12 +23,20 @@ import icy.math.DataIteratorMath;
 import icy.math.MathUtil;
 import icy.sequence.Sequence;
 import icy.sequence.SequenceDataIterator;
+import icy.system.thread.Parallel;
+import icy.system.thread.Parallel.ForBody;
+import icy.system.thread.Parallel.ReduceBody;
 import icy.type.DataIteratorUtil;
 import icy.type.rectangle.Rectangle5D;
+import icy.util.ShapeUtil;
 import icy.util.ShapeUtil.BooleanOperator;
 
+import java.util.Arrays;
 import java.util.List;
 
+import plugins.kernel.roi.roi2d.ROI2DShape;
+import plugins.kernel.roi.roi3d.ROI3DArea;
+
 /**
  * ROI utilities class.
  * 
@@ -337,8 +345,65 @@ public class ROIUtil
         return getSumIntensity(sequence, roi, -1, -1, -1);
     }
 
+    /**
+     * Computes and returns the shape descriptors (moments, fitted ellipse, convex hull, Feret
+     * diameters...) of the specified ROI.<br>
+     * It returns <code>null</code> if the ROI is not a 2D or 3D ROI.
+     * 
+     * @see ShapeDescriptor
+     */
+    public static ShapeDescriptor getShapeDescriptor(ROI roi)
+    {
+        if (roi instanceof ROI2D)
+        {
+            final BooleanMask2D mask = ((ROI2D) roi).getBooleanMask(true);
+
+            if (mask == null)
+                return new ShapeDescriptor();
+
+            // use the real outline length for shape ROI, the mask boundary length otherwise
+            if (roi instanceof ROI2DShape)
+                return ShapeDescriptor.compute(mask, ShapeUtil.getLength(((ROI2DShape) roi).getShape()));
+
+            return ShapeDescriptor.compute(mask);
+        }
+        if (roi instanceof ROI3D)
+            return ShapeDescriptor.compute(((ROI3D) roi).getBooleanMask(true));
+
+        return null;
+    }
+
+    /**
+     * Computes and returns the shape descriptors of the specified ROIs (ROIs are processed in
+     * parallel).<br>
+     * Entries are <code>null</code> for ROIs which are not 2D or 3D ROI.
+     * 
+     * @see #getShapeDescriptor(ROI)
+     */
+    public static ShapeDescriptor[] getShapeDescriptors(final List<? extends ROI> rois)
+    {
+        final ShapeDescriptor[] result = new ShapeDescriptor[rois.size()];
+
+        Parallel.forEach(0, result.length, new ForBody()
+        {
+            @Override
+            public void run(int from, int to)
+            {
+                for (int i = from; i < to; i++)
+                    result[i] = getShapeDescriptor(rois.get(i));
+            }
+        });
+
+        return result;
+    }
+
     /**
      * Merge the specified array of {@link ROI} with the given {@link BooleanOperator}.<br>
+     * <br>
+     * When all ROIs are 2D ROIs lying on the same plane (or 3D ROIs with same T and C position)
+     * their boolean masks are computed in parallel then merged in a single pass (no intermediate
+     * result). Otherwise ROIs are merged by pair with a balanced tree reduction executed in
+     * parallel.
      * 
      * @param rois
      *        ROIs we want to merge.
@@ -350,30 +415,236 @@ public class ROIUtil
     {
         if (rois.size() == 0)
             return null;
+        if (rois.size() == 1)
+            return rois.get(0);
+
+        final ROI result;
+
+        if (isSamePlane2D(rois))
+            result = merge2D(rois, operator);
+        else if (isSamePlane3D(rois))
+            result = merge3D(rois, operator);
+        else
+            result = mergeBalanced(rois, operator);
+
+        return result;
+    }
+
+    /**
+     * Returns true if all ROIs are {@link ROI2D} with the same Z, T, C position.
+     */
+    private static boolean isSamePlane2D(List<ROI> rois)
+    {
+        final ROI first = rois.get(0);
+
+        if (!(first instanceof ROI2D))
+            return false;
 
-        ROI result = rois.get(0);
+        final ROI2D ref = (ROI2D) first;
 
-        for (int i = 1; i < rois.size(); i++)
+        for (ROI roi : rois)
         {
-            final ROI roi = rois.get(i);
+            if (!(roi instanceof ROI2D))
+                return false;
+
+            final ROI2D roi2d = (ROI2D) roi;
+
+            if ((roi2d.getZ() != ref.getZ()) || (roi2d.getT() != ref.getT()) || (roi2d.getC() != ref.getC()))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns true if all ROIs are {@link ROI3D} with the same T, C position.
+     */
+    private static boolean isSamePlane3D(List<ROI> rois)
+    {
+        final ROI first = rois.get(0);
 
-            switch (operator)
+        if (!(first instanceof ROI3D))
+            return false;
+
+        final ROI3D ref = (ROI3D) first;
+
+        for (ROI roi : rois)
+        {
+            if (!(roi instanceof ROI3D))
+                return false;
+
+            final ROI3D roi3d = (ROI3D) roi;
+
+            if ((roi3d.getT() != ref.getT()) || (roi3d.getC() != ref.getC()))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Merge a list of {@link ROI2D} lying on the same plane.
+     */
+    private static ROI merge2D(final List<ROI> rois, BooleanOperator operator)
+    {
+        final BooleanMask2D[] masks = new BooleanMask2D[rois.size()];
+
+        // compute masks in parallel
+        Parallel.forRange(0, masks.length, 0, new ForBody()
+        {
+            @Override
+            public void run(int from, int to)
             {
-                case AND:
-                    result = result.getIntersection(roi);
-                    break;
-                case OR:
-                    result = result.getUnion(roi);
-                    break;
-                case XOR:
-                    result = result.getExclusiveUnion(roi);
-                    break;
+                for (int i = from; i < to; i++)
+                    masks[i] = ((ROI2D) rois.get(i)).getBooleanMask(true);
             }
+        });
+
+        final List<BooleanMask2D> maskList = Arrays.asList(masks);
+        final BooleanMask2D mask;
+
+        switch (operator)
+        {
+            case AND:
+                mask = BooleanMask2D.getIntersection(maskList);
+                break;
+            case XOR:
+                mask = BooleanMask2D.getExclusiveUnion(maskList);
+                break;
+            default:
+                mask = BooleanMask2D.getUnion(maskList);
+                break;
         }
 
+        // optimize bounds of the new created mask
+        mask.optimizeBounds();
+
+        final ROI2D ref = (ROI2D) rois.get(0);
+        final ROI2D result = new plugins.kernel.roi.roi2d.ROI2DArea(mask);
+
+        result.setZ(ref.getZ());
+        result.setT(ref.getT());
+        result.setC(ref.getC());
+        result.setName(getOperationName(operator));
+
         return result;
     }
 
+    /**
+     * Merge a list of {@link ROI3D} with same T, C position.
+     */
+    private static ROI merge3D(final List<ROI> rois, BooleanOperator operator)
+    {
+        final BooleanMask3D[] masks = new BooleanMask3D[rois.size()];
+
+        // compute masks in parallel
+        Parallel.forRange(0, masks.length, 0, new ForBody()
+        {
+            @Override
+            public void run(int from, int to)
+            {
+                for (int i = from; i < to; i++)
+                    masks[i] = ((ROI3D) rois.get(i)).getBooleanMask(true);
+            }
+        });
+
+        final List<BooleanMask3D> maskList = Arrays.asList(masks);
+        final BooleanMask3D mask;
+
+        switch (operator)
+        {
+            case AND:
+                mask = BooleanMask3D.getIntersection(maskList);
+                break;
+            case XOR:
+                mask = BooleanMask3D.getExclusiveUnion(maskList);
+                break;
+            default:
+                mask = BooleanMask3D.getUnion(maskList);
+                break;
+        }
+
+        // optimize bounds of the new created mask
+        mask.optimizeBounds();
+
+        final ROI3D ref = (ROI3D) rois.get(0);
+        final ROI3D result = new ROI3DArea(mask);
+
+        result.setT(ref.getT());
+        result.setC(ref.getC());
+        result.setName(getOperationName(operator));
+
+        return result;
+    }
+
+    /**
+     * Merge ROIs by pair with a balanced tree reduction (parallel).
+     */
+    private static ROI mergeBalanced(final List<ROI> rois, final BooleanOperator operator)
+    {
+        final int grain = (rois.size() + (Parallel.getParallelism() - 1)) / Parallel.getParallelism();
+
+        return Parallel.reduce(0, rois.size(), grain, new ReduceBody<ROI>()
+        {
+            @Override
+            public ROI compute(int from, int to)
+            {
+                return mergeBalanced(rois, from, to, operator);
+            }
+
+            @Override
+            public ROI combine(ROI result1, ROI result2)
+            {
+                return merge(result1, result2, operator);
+            }
+        });
+    }
+
+    /**
+     * Merge ROIs of the <code>[from, to[</code> range with a balanced tree reduction.
+     */
+    static ROI mergeBalanced(List<ROI> rois, int from, int to, BooleanOperator operator)
+    {
+        if ((to - from) == 1)
+            return rois.get(from);
+
+        final int mid = (from + to) >>> 1;
+
+        return merge(mergeBalanced(rois, from, mid, operator), mergeBalanced(rois, mid, to, operator), operator);
+    }
+
+    /**
+     * Merge 2 ROIs with the given {@link BooleanOperator}.
+     */
+    static ROI merge(ROI roi1, ROI roi2, BooleanOperator operator)
+    {
+        switch (operator)
+        {
+            case AND:
+                return roi1.getIntersection(roi2);
+            case XOR:
+                return roi1.getExclusiveUnion(roi2);
+            default:
+                return roi1.getUnion(roi2);
+        }
+    }
+
+    /**
+     * Returns the default name of the ROI resulting from the specified operation.
+     */
+    private static String getOperationName(BooleanOperator operator)
+    {
+        switch (operator)
+        {
+            case AND:
+                return "Intersection";
+            case XOR:
+                return "Exclusive union";
+            default:
+                return "Union";
+        }
+    }
+
     /**
      * Builds and returns a ROI corresponding to the union of the specified ROI list.
      */
@@ -0,0 +1,783 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Map.Entry;
+
+/**
+ * Shape descriptors of a ROI mask: raw, central and Hu moments, fitted ellipse (ellipsoid in 3D),
+ * convex hull, Feret diameters and convexity measures.<br>
+ * All descriptors are computed in a single pass over the mask runs (see {@link #compute(BooleanMask2D, double)}
+ * and {@link #compute(BooleanMask3D)}).<br>
+ * Values are given in pixel unit and in image coordinates where pixel <code>(x, y)</code> covers
+ * the <code>[x, x+1[ x [y, y+1[</code> area.<br>
+ * Descriptors which are not defined for the mask dimension are set to <code>Double.NaN</code>.
+ * 
+ * @author Stephane
+ */
+public class ShapeDescriptor
+{
+    /**
+     * Index of moments in {@link #rawMoments} and {@link #centralMoments} (2D)
+     */
+    public static final int M00 = 0;
+    public static final int M10 = 1;
+    public static final int M01 = 2;
+    public static final int M20 = 3;
+    public static final int M11 = 4;
+    public static final int M02 = 5;
+    public static final int M30 = 6;
+    public static final int M21 = 7;
+    public static final int M12 = 8;
+    public static final int M03 = 9;
+
+    /**
+     * Index of moments in {@link #rawMoments} and {@link #centralMoments} (3D)
+     */
+    public static final int M000 = 0;
+    public static final int M100 = 1;
+    public static final int M010 = 2;
+    public static final int M001 = 3;
+    public static final int M200 = 4;
+    public static final int M020 = 5;
+    public static final int M002 = 6;
+    public static final int M110 = 7;
+    public static final int M101 = 8;
+    public static final int M011 = 9;
+
+    /**
+     * Mask dimension (2 or 3)
+     */
+    public int dimension;
+    /**
+     * Number of pixels (voxels in 3D) of the mask
+     */
+    public double numberOfPoints;
+    /**
+     * Contour length (2D only), in pixel unit
+     */
+    public double perimeter;
+    /**
+     * Mass center
+     */
+    public double massCenterX;
+    public double massCenterY;
+    public double massCenterZ;
+    /**
+     * Raw moments (relative to the mask bounds origin), see M?? constants for order
+     */
+    public double[] rawMoments;
+    /**
+     * Central moments, see M?? constants for order
+     */
+    public double[] centralMoments;
+    /**
+     * The 7 Hu invariant moments (2D only)
+     */
+    public double[] huMoments;
+    /**
+     * Axis length of the fitted ellipse (ellipsoid for 3D mask).<br>
+     * The ellipse has the same second order moments as the mask.
+     */
+    public double majorAxisLength;
+    public double middleAxisLength;
+    public double minorAxisLength;
+    /**
+     * Angle (in radian) between the major axis and the X axis (2D only)
+     */
+    public double orientation;
+    /**
+     * Eccentricity of the fitted ellipse (0 for a circle)
+     */
+    public double eccentricity;
+    /**
+     * Convex hull vertices (2D only), in counter clockwise order (Y axis pointing up)
+     */
+    public Point2D[] convexHull;
+    /**
+     * Convex hull area and perimeter (2D only)
+     */
+    public double convexHullArea;
+    public double convexHullPerimeter;
+    /**
+     * Mask area / convex hull area (2D only)
+     */
+    public double solidity;
+    /**
+     * Convex hull perimeter / mask perimeter (2D only)
+     */
+    public double convexity;
+    /**
+     * Maximum caliper diameter and its direction (angle in radian, 2D only)
+     */
+    public double maxFeretDiameter;
+    public double maxFeretAngle;
+    /**
+     * Minimum caliper diameter and its direction (angle in radian), 2D only
+     */
+    public double minFeretDiameter;
+    public double minFeretAngle;
+
+    public ShapeDescriptor()
+    {
+        super();
+
+        dimension = 2;
+        numberOfPoints = 0d;
+        perimeter = Double.NaN;
+        massCenterX = Double.NaN;
+        massCenterY = Double.NaN;
+        massCenterZ = Double.NaN;
+        rawMoments = new double[10];
+        centralMoments = new double[10];
+        huMoments = new double[7];
+        majorAxisLength = Double.NaN;
+        middleAxisLength = Double.NaN;
+        minorAxisLength = Double.NaN;
+        orientation = Double.NaN;
+        eccentricity = Double.NaN;
+        convexHull = new Point2D[0];
+        convexHullArea = Double.NaN;
+        convexHullPerimeter = Double.NaN;
+        solidity = Double.NaN;
+        convexity = Double.NaN;
+        maxFeretDiameter = Double.NaN;
+        maxFeretAngle = Double.NaN;
+        minFeretDiameter = Double.NaN;
+        minFeretAngle = Double.NaN;
+    }
+
+    /**
+     * Computes shape descriptors of the specified 2D mask.
+     * 
+     * @param mask
+     *        the mask to compute descriptors for
+     * @param perimeter
+     *        contour length of the mask (used for convexity), <code>Double.NaN</code> to use the
+     *        length of the mask boundary (pixel edges)
+     */
+    public static ShapeDescriptor compute(BooleanMask2D mask, double perimeter)
+    {
+        final ShapeDescriptor result = new ShapeDescriptor();
+        final Rectangle bounds = mask.bounds;
+        final int h = bounds.height;
+        final int[] rowMin = new int[h];
+        final int[] rowMax = new int[h];
+        final double[] m = result.rawMoments;
+
+        // single pass over mask runs
+        accumulate(mask, 0, 0, m, rowMin, rowMax);
+
+        result.numberOfPoints = m[M00];
+        if (Double.isNaN(perimeter))
+            result.perimeter = getBoundaryLength(mask);
+        else
+            result.perimeter = perimeter;
+
+        // empty mask
+        if (m[M00] == 0d)
+        {
+            Arrays.fill(result.huMoments, Double.NaN);
+            return result;
+        }
+
+        final double xc = m[M10] / m[M00];
+        final double yc = m[M01] / m[M00];
+        final double[] mu = result.centralMoments;
+
+        result.massCenterX = bounds.x + xc + 0.5d;
+        result.massCenterY = bounds.y + yc + 0.5d;
+
+        mu[M00] = m[M00];
+        mu[M10] = 0d;
+        mu[M01] = 0d;
+        mu[M20] = m[M20] - (xc * m[M10]);
+        mu[M11] = m[M11] - (xc * m[M01]);
+        mu[M02] = m[M02] - (yc * m[M01]);
+        mu[M30] = m[M30] - (3d * xc * m[M20]) + (2d * xc * xc * m[M10]);
+        mu[M21] = m[M21] - (2d * xc * m[M11]) - (yc * m[M20]) + (2d * xc * xc * m[M01]);
+        mu[M12] = m[M12] - (2d * yc * m[M11]) - (xc * m[M02]) + (2d * yc * yc * m[M10]);
+        mu[M03] = m[M03] - (3d * yc * m[M02]) + (2d * yc * yc * m[M01]);
+
+        computeHuMoments(mu, result.huMoments);
+
+        // ellipse fit (1/12 is the variance of the uniform unit pixel)
+        final double a = (mu[M20] / m[M00]) + (1d / 12d);
+        final double b = mu[M11] / m[M00];
+        final double c = (mu[M02] / m[M00]) + (1d / 12d);
+        final double delta = Math.sqrt((((a - c) * (a - c)) / 4d) + (b * b));
+        final double l1 = ((a + c) / 2d) + delta;
+        final double l2 = Math.max(0d, ((a + c) / 2d) - delta);
+
+        result.majorAxisLength = 4d * Math.sqrt(l1);
+        result.minorAxisLength = 4d * Math.sqrt(l2);
+        result.orientation = 0.5d * Math.atan2(2d * b, a - c);
+        result.eccentricity = Math.sqrt(1d - (l2 / l1));
+
+        // convex hull
+        final double[][] hull = getConvexHull(rowMin, rowMax, bounds.x, bounds.y);
+        final double[] hx = hull[0];
+        final double[] hy = hull[1];
+        final int len = hx.length;
+
+        result.convexHull = new Point2D[len];
+        for (int i = 0; i < len; i++)
+            result.convexHull[i] = new Point2D.Double(hx[i], hy[i]);
+
+        double area = 0d;
+        double length = 0d;
+        for (int i = 0, j = len - 1; i < len; j = i++)
+        {
+            area += (hx[j] * hy[i]) - (hx[i] * hy[j]);
+            length += Point2D.distance(hx[j], hy[j], hx[i], hy[i]);
+        }
+
+        result.convexHullArea = Math.abs(area) / 2d;
+        result.convexHullPerimeter = length;
+        result.solidity = m[M00] / result.convexHullArea;
+        if (result.perimeter > 0d)
+            result.convexity = Math.min(1d, length / result.perimeter);
+
+        computeFeret(hx, hy, result);
+
+        return result;
+    }
+
+    /**
+     * Computes shape descriptors of the specified 2D mask.
+     */
+    public static ShapeDescriptor compute(BooleanMask2D mask)
+    {
+        return compute(mask, Double.NaN);
+    }
+
+    /**
+     * Computes shape descriptors of the specified 3D mask.<br>
+     * Moments are computed up to order 2 (Hu moments, orientation, convex hull, solidity,
+     * convexity and minimum Feret diameter are not defined).
+     */
+    public static ShapeDescriptor compute(BooleanMask3D mask)
+    {
+        final ShapeDescriptor result = new ShapeDescriptor();
+        final int ox = mask.bounds.x;
+        final int oy = mask.bounds.y;
+        final int oz = mask.bounds.z;
+        final double[] m = result.rawMoments;
+        final double[] m2 = new double[10];
+        // convex hull vertices of each slice (used for Feret diameter), consecutive slices with
+        // the same hull are merged in a single prism covering [hullZMin, hullZMax[
+        final double[][][] hulls = new double[mask.mask.size()][][];
+        final int[] hullZMin = new int[hulls.length];
+        final int[] hullZMax = new int[hulls.length];
+        int numHull = 0;
+
+        result.dimension = 3;
+        Arrays.fill(result.huMoments, Double.NaN);
+
+        for (Entry<Integer, BooleanMask2D> entry : mask.mask.entrySet())
+        {
+            final BooleanMask2D slice = entry.getValue();
+            final int h = slice.bounds.height;
+            final int[] rowMin = new int[h];
+            final int[] rowMax = new int[h];
+            final double w = entry.getKey().intValue() - oz;
+
+            Arrays.fill(m2, 0d);
+            accumulate(slice, slice.bounds.x - ox, slice.bounds.y - oy, m2, rowMin, rowMax);
+
+            if (m2[M00] == 0d)
+                continue;
+
+            m[M000] += m2[M00];
+            m[M100] += m2[M10];
+            m[M010] += m2[M01];
+            m[M001] += w * m2[M00];
+            m[M200] += m2[M20];
+            m[M020] += m2[M02];
+            m[M002] += w * w * m2[M00];
+            m[M110] += m2[M11];
+            m[M101] += w * m2[M10];
+            m[M011] += w * m2[M01];
+
+            final double[][] hull = getConvexHull(rowMin, rowMax, slice.bounds.x, slice.bounds.y);
+            final int z = entry.getKey().intValue();
+
+            if ((numHull > 0) && (hullZMax[numHull - 1] == z) && Arrays.equals(hulls[numHull - 1][0], hull[0])
+                    && Arrays.equals(hulls[numHull - 1][1], hull[1]))
+                hullZMax[numHull - 1] = z + 1;
+            else
+            {
+                hulls[numHull] = hull;
+                hullZMin[numHull] = z;
+                hullZMax[numHull] = z + 1;
+                numHull++;
+            }
+        }
+
+        result.numberOfPoints = m[M000];
+
+        // empty mask
+        if (m[M000] == 0d)
+            return result;
+
+        final double n = m[M000];
+        final double xc = m[M100] / n;
+        final double yc = m[M010] / n;
+        final double zc = m[M001] / n;
+        final double[] mu = result.centralMoments;
+
+        result.massCenterX = ox + xc + 0.5d;
+        result.massCenterY = oy + yc + 0.5d;
+        result.massCenterZ = oz + zc + 0.5d;
+
+        mu[M000] = n;
+        mu[M200] = m[M200] - (xc * m[M100]);
+        mu[M020] = m[M020] - (yc * m[M010]);
+        mu[M002] = m[M002] - (zc * m[M001]);
+        mu[M110] = m[M110] - (xc * m[M010]);
+        mu[M101] = m[M101] - (xc * m[M001]);
+        mu[M011] = m[M011] - (yc * m[M001]);
+
+        // ellipsoid fit (variance of a solid ellipsoid along an axis of half length r is r^2/5)
+        final double[] eigen = getSymmetricEigenValues((mu[M200] / n) + (1d / 12d), (mu[M020] / n) + (1d / 12d),
+                (mu[M002] / n) + (1d / 12d), mu[M110] / n, mu[M101] / n, mu[M011] / n);
+
+        result.majorAxisLength = 2d * Math.sqrt(5d * eigen[0]);
+        result.middleAxisLength = 2d * Math.sqrt(5d * eigen[1]);
+        result.minorAxisLength = 2d * Math.sqrt(5d * eigen[2]);
+        result.eccentricity = Math.sqrt(1d - (eigen[2] / eigen[0]));
+
+        // maximum Feret diameter from the hull vertices
+        final double[][] hullBounds = new double[numHull][];
+        for (int i = 0; i < numHull; i++)
+            hullBounds[i] = getBounds(hulls[i][0], hulls[i][1]);
+
+        double max = 0d;
+        for (int i = 0; i < numHull; i++)
+        {
+            final double[] hx1 = hulls[i][0];
+            final double[] hy1 = hulls[i][1];
+            final double[] b1 = hullBounds[i];
+
+            for (int j = i; j < numHull; j++)
+            {
+                final double[] hx2 = hulls[j][0];
+                final double[] hy2 = hulls[j][1];
+                final double[] b2 = hullBounds[j];
+                // hulls are sorted on Z
+                final double dz = hullZMax[j] - hullZMin[i];
+                final double dz2 = dz * dz;
+                final double bx = Math.max(b2[2] - b1[0], b1[2] - b2[0]);
+                final double by = Math.max(b2[3] - b1[1], b1[3] - b2[1]);
+
+                // bounding boxes distance is an upper bound of the distance between the hulls
+                if (((bx * bx) + (by * by) + dz2) <= max)
+                    continue;
+
+                for (int k = 0; k < hx1.length; k++)
+                {
+                    final double x = hx1[k];
+                    final double y = hy1[k];
+
+                    for (int l = (i == j) ? k : 0; l < hx2.length; l++)
+                    {
+                        final double dx = hx2[l] - x;
+                        final double dy = hy2[l] - y;
+                        final double d = (dx * dx) + (dy * dy) + dz2;
+
+                        if (d > max)
+                            max = d;
+                    }
+                }
+            }
+        }
+
+        result.maxFeretDiameter = Math.sqrt(max);
+
+        return result;
+    }
+
+    /**
+     * Accumulates raw moments (up to order 3) of the mask runs in <code>m</code> and stores the
+     * first and last set pixel of each mask row in <code>rowMin</code> / <code>rowMax</code> (-1 /
+     * -2 if the row is empty).<br>
+     * (ox, oy) is the offset of the mask bounds relative to the moments origin.
+     */
+    private static void accumulate(BooleanMask2D mask, int ox, int oy, double[] m, int[] rowMin, int[] rowMax)
+    {
+        final boolean[] data = mask.mask;
+        final int w = mask.bounds.width;
+        final int h = mask.bounds.height;
+        int off = 0;
+
+        for (int y = 0; y < h; y++)
+        {
+            final double v = y + oy;
+            final double v2 = v * v;
+            int min = -1;
+            int max = -2;
+            int x = 0;
+
+            while (x < w)
+            {
+                // search run start
+                while ((x < w) && !data[off + x])
+                    x++;
+                if (x == w)
+                    break;
+
+                final int start = x;
+
+                // search run end
+                while ((x < w) && data[off + x])
+                    x++;
+
+                final int end = x - 1;
+
+                if (min == -1)
+                    min = start;
+                max = end;
+
+                // sums of x^p over the run
+                final double a = start + ox;
+                final double b = end + ox;
+                final double n = (b - a) + 1d;
+                final double s1 = ((a + b) * n) / 2d;
+                final double s2 = sum2(b) - sum2(a - 1d);
+                final double s3 = sum3(b) - sum3(a - 1d);
+
+                m[M00] += n;
+                m[M10] += s1;
+                m[M01] += v * n;
+                m[M20] += s2;
+                m[M11] += v * s1;
+                m[M02] += v2 * n;
+                m[M30] += s3;
+                m[M21] += v * s2;
+                m[M12] += v2 * s1;
+                m[M03] += v2 * v * n;
+            }
+
+            rowMin[y] = min;
+            rowMax[y] = max;
+            off += w;
+        }
+    }
+
+    /**
+     * Returns the length of the mask boundary (number of pixel edges between a mask pixel and a
+     * non mask pixel).
+     */
+    private static double getBoundaryLength(BooleanMask2D mask)
+    {
+        final boolean[] data = mask.mask;
+        final int w = mask.bounds.width;
+        final int h = mask.bounds.height;
+        int result = 0;
+        int off = 0;
+
+        for (int y = 0; y < h; y++)
+        {
+            for (int x = 0; x < w; x++, off++)
+            {
+                if (!data[off])
+                    continue;
+
+                if ((x == 0) || !data[off - 1])
+                    result++;
+                if ((x == (w - 1)) || !data[off + 1])
+                    result++;
+                if ((y == 0) || !data[off - w])
+                    result++;
+                if ((y == (h - 1)) || !data[off + w])
+                    result++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns bounds of the specified points as <code>{minX, minY, maxX, maxY}</code>
+     */
+    private static double[] getBounds(double[] x, double[] y)
+    {
+        final double[] result = new double[] {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+                -Double.MAX_VALUE};
+
+        for (int i = 0; i < x.length; i++)
+        {
+            result[0] = Math.min(result[0], x[i]);
+            result[1] = Math.min(result[1], y[i]);
+            result[2] = Math.max(result[2], x[i]);
+            result[3] = Math.max(result[3], y[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns sum of k^2 for k in [0, n]
+     */
+    private static double sum2(double n)
+    {
+        return (n * (n + 1d) * ((2d * n) + 1d)) / 6d;
+    }
+
+    /**
+     * Returns sum of k^3 for k in [0, n]
+     */
+    private static double sum3(double n)
+    {
+        final double s = (n * (n + 1d)) / 2d;
+        return s * s;
+    }
+
+    /**
+     * Computes the convex hull (monotone chain) of the mask pixels from the row extents.<br>
+     * Only the pixel corners of the first and last pixel of each row (and so each horizontal
+     * line) can be hull vertices, they are already sorted on Y so no sort is needed.
+     * 
+     * @return hull vertices as <code>{x[], y[]}</code>
+     */
+    private static double[][] getConvexHull(int[] rowMin, int[] rowMax, int x0, int y0)
+    {
+        final int h = rowMin.length;
+        // sorted points (on y then x)
+        final int[] px = new int[(h + 1) * 2];
+        final int[] py = new int[(h + 1) * 2];
+        int np = 0;
+
+        for (int y = 0; y <= h; y++)
+        {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+
+            // bottom corners of previous row
+            if ((y > 0) && (rowMin[y - 1] >= 0))
+            {
+                min = rowMin[y - 1];
+                max = rowMax[y - 1] + 1;
+            }
+            // top corners of current row
+            if ((y < h) && (rowMin[y] >= 0))
+            {
+                min = Math.min(min, rowMin[y]);
+                max = Math.max(max, rowMax[y] + 1);
+            }
+
+            if (min != Integer.MAX_VALUE)
+            {
+                px[np] = min;
+                py[np++] = y;
+                px[np] = max;
+                py[np++] = y;
+            }
+        }
+
+        final int[] hull = new int[np + 1];
+        int k = 0;
+
+        // lower chain
+        for (int i = 0; i < np; i++)
+        {
+            while ((k >= 2) && (cross(px, py, hull[k - 2], hull[k - 1], i) <= 0))
+                k--;
+            hull[k++] = i;
+        }
+        // upper chain
+        for (int i = np - 2, t = k + 1; i >= 0; i--)
+        {
+            while ((k >= t) && (cross(px, py, hull[k - 2], hull[k - 1], i) <= 0))
+                k--;
+            hull[k++] = i;
+        }
+
+        // last point is the first one
+        final int len = Math.max(0, k - 1);
+        final double[][] result = new double[2][len];
+
+        for (int i = 0; i < len; i++)
+        {
+            result[0][i] = x0 + px[hull[i]];
+            result[1][i] = y0 + py[hull[i]];
+        }
+
+        return result;
+    }
+
+    private static long cross(int[] px, int[] py, int o, int a, int b)
+    {
+        return ((long) (px[a] - px[o]) * (py[b] - py[o])) - ((long) (py[a] - py[o]) * (px[b] - px[o]));
+    }
+
+    /**
+     * Computes maximum and minimum Feret diameters from the convex hull vertices.
+     */
+    private static void computeFeret(double[] hx, double[] hy, ShapeDescriptor result)
+    {
+        final int len = hx.length;
+
+        if (len < 2)
+            return;
+
+        // maximum: farthest vertex pair
+        double max = 0d;
+        double maxAngle = 0d;
+        for (int i = 0; i < len; i++)
+        {
+            for (int j = i + 1; j < len; j++)
+            {
+                final double dx = hx[j] - hx[i];
+                final double dy = hy[j] - hy[i];
+                final double d = (dx * dx) + (dy * dy);
+
+                if (d > max)
+                {
+                    max = d;
+                    maxAngle = Math.atan2(dy, dx);
+                }
+            }
+        }
+
+        // minimum: smallest hull width measured orthogonally to an hull edge (rotating calipers)
+        double min = Double.MAX_VALUE;
+        double minAngle = 0d;
+        int k = 1;
+        for (int i = 0, j = len - 1; i < len; j = i++)
+        {
+            final double ex = hx[i] - hx[j];
+            final double ey = hy[i] - hy[j];
+            final double el = Math.sqrt((ex * ex) + (ey * ey));
+
+            if (el == 0d)
+                continue;
+
+            // advance antipodal vertex while distance to edge increases
+            double d = Math.abs((ex * (hy[k] - hy[j])) - (ey * (hx[k] - hx[j])));
+            for (int n = 0; n < len; n++)
+            {
+                final int next = (k + 1) % len;
+                final double dn = Math.abs((ex * (hy[next] - hy[j])) - (ey * (hx[next] - hx[j])));
+
+                if (dn < d)
+                    break;
+
+                d = dn;
+                k = next;
+            }
+
+            d /= el;
+            if (d < min)
+            {
+                min = d;
+                minAngle = Math.atan2(ex, -ey);
+            }
+        }
+
+        result.maxFeretDiameter = Math.sqrt(max);
+        result.maxFeretAngle = maxAngle;
+        result.minFeretDiameter = min;
+        result.minFeretAngle = minAngle;
+    }
+
+    /**
+     * Computes Hu invariant moments from the central moments.
+     */
+    private static void computeHuMoments(double[] mu, double[] hu)
+    {
+        final double m00 = mu[M00];
+        final double s2 = m00 * m00;
+        final double s3 = Math.pow(m00, 2.5d);
+        final double n20 = mu[M20] / s2;
+        final double n11 = mu[M11] / s2;
+        final double n02 = mu[M02] / s2;
+        final double n30 = mu[M30] / s3;
+        final double n21 = mu[M21] / s3;
+        final double n12 = mu[M12] / s3;
+        final double n03 = mu[M03] / s3;
+
+        final double t1 = n30 + n12;
+        final double t2 = n21 + n03;
+        final double d1 = n30 - (3d * n12);
+        final double d2 = (3d * n21) - n03;
+
+        hu[0] = n20 + n02;
+        hu[1] = ((n20 - n02) * (n20 - n02)) + (4d * n11 * n11);
+        hu[2] = (d1 * d1) + (d2 * d2);
+        hu[3] = (t1 * t1) + (t2 * t2);
+        hu[4] = (d1 * t1 * ((t1 * t1) - (3d * t2 * t2))) + (d2 * t2 * ((3d * t1 * t1) - (t2 * t2)));
+        hu[5] = ((n20 - n02) * ((t1 * t1) - (t2 * t2))) + (4d * n11 * t1 * t2);
+        hu[6] = (d2 * t1 * ((t1 * t1) - (3d * t2 * t2))) - (d1 * t2 * ((3d * t1 * t1) - (t2 * t2)));
+    }
+
+    /**
+     * Returns eigen values (in decreasing order) of the specified symmetric 3x3 matrix.
+     */
+    private static double[] getSymmetricEigenValues(double a11, double a22, double a33, double a12, double a13,
+            double a23)
+    {
+        final double p1 = (a12 * a12) + (a13 * a13) + (a23 * a23);
+        final double[] result = new double[3];
+
+        if (p1 == 0d)
+        {
+            result[0] = a11;
+            result[1] = a22;
+            result[2] = a33;
+            Arrays.sort(result);
+            final double tmp = result[0];
+            result[0] = result[2];
+            result[2] = tmp;
+        }
+        else
+        {
+            final double q = (a11 + a22 + a33) / 3d;
+            final double b11 = a11 - q;
+            final double b22 = a22 - q;
+            final double b33 = a33 - q;
+            final double p = Math.sqrt((((b11 * b11) + (b22 * b22) + (b33 * b33)) + (2d * p1)) / 6d);
+            // det((A - qI) / p) / 2
+            final double det = (b11 * ((b22 * b33) - (a23 * a23))) - (a12 * ((a12 * b33) - (a23 * a13)))
+                    + (a13 * ((a12 * a23) - (b22 * a13)));
+            final double r = det / (2d * p * p * p);
+            final double phi;
+
+            if (r <= -1d)
+                phi = Math.PI / 3d;
+            else if (r >= 1d)
+                phi = 0d;
+            else
+                phi = Math.acos(r) / 3d;
+
+            result[0] = q + (2d * p * Math.cos(phi));
+            result[2] = q + (2d * p * Math.cos(phi + ((2d * Math.PI) / 3d)));
+            result[1] = (3d * q) - result[0] - result[2];
+        }
+
+        // avoid negative values from rounding errors
+        for (int i = 0; i < 3; i++)
+            result[i] = Math.max(0d, result[i]);
+
+        return result;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Z slice map used to store the slices of 3D objects ({@link BooleanMask3D},
+ * {@link plugins.kernel.roi.roi3d.ROI3DStack}).<br>
+ * This is a {@link TreeMap} (sparse form) which also maintains a contiguous slice array (dense
+ * form, starting at the first Z position) when the stack is dense enough, so
+ * {@link #getSlice(int)} is a direct array access without key boxing nor tree lookup.<br>
+ * The dense array is built on demand and invalidated on modification (put, remove, clear...),
+ * removals done through views (iterator, sub map...) are detected from the map size.<br>
+ * Replacing a value through a view entry (<code>Map.Entry.setValue(..)</code>) is not detected,
+ * use {@link #put(Integer, Object)} instead.
+ * 
+ * @author Stephane
+ */
+public class SliceMap<V> extends TreeMap<Integer, V>
+{
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 5165637318409413417L;
+
+    /**
+     * Dense slice array, <code>values == null</code> means we use the sparse form
+     */
+    private static class SliceArray
+    {
+        final int offset;
+        final Object[] values;
+        /**
+         * map size when the array was built
+         */
+        final int size;
+
+        SliceArray(int offset, Object[] values, int size)
+        {
+            super();
+
+            this.offset = offset;
+            this.values = values;
+            this.size = size;
+        }
+    }
+
+    private transient volatile SliceArray sliceArray;
+    private transient volatile int modification;
+
+    public SliceMap()
+    {
+        super();
+
+        sliceArray = null;
+        modification = 0;
+    }
+
+    /**
+     * Returns the slice at given Z position (<code>null</code> if no slice at this position).<br>
+     * This is equivalent to <code>get(Integer.valueOf(z))</code> but faster for dense stacks.
+     */
+    @SuppressWarnings("unchecked")
+    public V getSlice(int z)
+    {
+        final SliceArray sa = getSliceArray();
+
+        // sparse form
+        if (sa.values == null)
+            return get(Integer.valueOf(z));
+
+        final int index = z - sa.offset;
+
+        if ((index < 0) || (index >= sa.values.length))
+            return null;
+
+        return (V) sa.values[index];
+    }
+
+    /**
+     * Returns <code>true</code> if slices are stored in the dense form (contiguous array).
+     */
+    public boolean isDense()
+    {
+        return getSliceArray().values != null;
+    }
+
+    private SliceArray getSliceArray()
+    {
+        final SliceArray sa = sliceArray;
+
+        // not built or a removal has been done through a view
+        if ((sa == null) || (sa.size != size()))
+            return buildSliceArray();
+
+        return sa;
+    }
+
+    private SliceArray buildSliceArray()
+    {
+        final int mod = modification;
+        final int size = size();
+        final SliceArray result;
+
+        if (size == 0)
+            result = new SliceArray(0, new Object[0], 0);
+        else
+        {
+            final int first = firstKey().intValue();
+            final long span = ((long) lastKey().intValue() - first) + 1L;
+
+            // too sparse (more than half empty slices), keep the map form
+            if (span > ((size * 2L) + 16L))
+                result = new SliceArray(0, null, size);
+            else
+            {
+                final Object[] values = new Object[(int) span];
+
+                for (Map.Entry<Integer, V> entry : super.entrySet())
+                    values[entry.getKey().intValue() - first] = entry.getValue();
+
+                result = new SliceArray(first, values, size);
+            }
+        }
+
+        // don't publish if a modification happened in the meantime
+        if (mod == modification)
+            sliceArray = result;
+
+        return result;
+    }
+
+    /**
+     * Invalidate the slice array, called after the modification so a slice array built
+     * concurrently is not published.
+     */
+    private void invalidate()
+    {
+        modification++;
+        sliceArray = null;
+    }
+
+    @Override
+    public V put(Integer key, V value)
+    {
+        final V result = super.put(key, value);
+
+        invalidate();
+
+        return result;
+    }
+
+    @Override
+    public void putAll(Map<? extends Integer, ? extends V> map)
+    {
+        super.putAll(map);
+        invalidate();
+    }
+
+    @Override
+    public V remove(Object key)
+    {
+        final V result = super.remove(key);
+
+        invalidate();
+
+        return result;
+    }
+
+    @Override
+    public void clear()
+    {
+        super.clear();
+        invalidate();
+    }
+
+    @Override
+    public Map.Entry<Integer, V> pollFirstEntry()
+    {
+        final Map.Entry<Integer, V> result = super.pollFirstEntry();
+
+        invalidate();
+
+        return result;
+    }
+
+    @Override
+    public Map.Entry<Integer, V> pollLastEntry()
+    {
+        final Map.Entry<Integer, V> result = super.pollLastEntry();
+
+        invalidate();
+
+        return result;
+    }
+}
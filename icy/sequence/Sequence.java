@@ -26,6 +26,7 @@ import icy.image.IcyBufferedImage;
 import icy.image.IcyBufferedImageEvent;
 import icy.image.IcyBufferedImageListener;
 import icy.image.IcyBufferedImageUtil;
+import icy.image.ImageMemoryAccountant;
 import icy.image.colormodel.IcyColorModel;
 import icy.image.colormodel.IcyColorModelEvent;
 import icy.image.colormodel.IcyColorModelListener;
@@ -5203,6 +5204,8 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
 
         // add listener to image
         image.addListener(this);
+        // image data memory is now attributed to this sequence
+        ImageMemoryAccountant.setOwner(image, this);
 
         // notify changed
         dataChanged(image, SequenceEventType.ADDED);
@@ -5232,11 +5235,13 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
 
             // remove listener from old image
             oldImage.removeListener(this);
+            ImageMemoryAccountant.releaseOwner(oldImage, this);
             // notify about old image remove
             dataChanged(oldImage, SequenceEventType.REMOVED);
 
             // add listener to new image
             newImage.addListener(this);
+            ImageMemoryAccountant.setOwner(newImage, this);
             // notify about new image added
             dataChanged(newImage, SequenceEventType.ADDED);
         }
@@ -5260,6 +5265,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
 
         // remove listener from image
         image.removeListener(this);
+        ImageMemoryAccountant.releaseOwner(image, this);
 
         // notify changed
         dataChanged(image, SequenceEventType.REMOVED);
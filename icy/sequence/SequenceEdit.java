@@ -18,11 +18,24 @@
  */
 package icy.sequence;
 
+import icy.image.IcyBufferedImage;
 import icy.roi.ROI;
+import icy.system.IcyExceptionHandler;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+import icy.type.collection.array.ArrayUtil;
+import icy.type.collection.array.ByteArrayConvert;
+import icy.undo.CompressedBlockStore;
 import icy.undo.IcyUndoableEdit;
+import icy.util.StringUtil;
 
 import java.awt.Image;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
 
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
@@ -297,4 +310,373 @@ public class SequenceEdit extends IcyUndoableEdit
         }
     }
 
+    /**
+     * Sequence pixel data edit.<br>
+     * Only modified tiles are kept (old and new data) and they are stored compressed (see
+     * {@link CompressedBlockStore}) so large stacks can be modified with undo support without
+     * doubling memory usage.<br>
+     * Usage:
+     * 
+     * <pre>
+     * final DataEdit edit = new DataEdit(sequence, &quot;My filter&quot;);
+     * // record the planes we are going to modify
+     * edit.record(t, z);
+     * // ... modify data ...
+     * // compute modified tiles and add the edit to the sequence undo manager
+     * edit.end();
+     * </pre>
+     * 
+     * @author Stephane
+     */
+    public static class DataEdit extends SequenceEdit
+    {
+        /**
+         * tile size (in pixel)
+         */
+        public static final int TILE_SIZE = 128;
+
+        static class Tile
+        {
+            final int t;
+            final int z;
+            final int c;
+            final int x;
+            final int y;
+            final int w;
+            final int h;
+            final int sizeX;
+            final int sizeY;
+            int oldData;
+            int newData;
+            long crc;
+
+            Tile(int t, int z, int c, int x, int y, int w, int h, int sizeX, int sizeY)
+            {
+                super();
+
+                this.t = t;
+                this.z = z;
+                this.c = c;
+                this.x = x;
+                this.y = y;
+                this.w = w;
+                this.h = h;
+                this.sizeX = sizeX;
+                this.sizeY = sizeY;
+                oldData = -1;
+                newData = -1;
+                crc = 0L;
+            }
+        }
+
+        Sequence sequence;
+        final String name;
+        CompressedBlockStore store;
+        final List<Tile> tiles;
+        final Set<String> recordedPlanes;
+        boolean recording;
+        byte[] buffer;
+        byte[] buffer2;
+
+        public DataEdit(Sequence sequence, String name)
+        {
+            super(sequence);
+
+            this.sequence = sequence;
+            this.name = name;
+            store = new CompressedBlockStore();
+            tiles = new ArrayList<Tile>();
+            recordedPlanes = new HashSet<String>();
+            recording = true;
+            buffer = null;
+            buffer2 = null;
+        }
+
+        /**
+         * Extract data of the specified tile from the plane data array as raw bytes.
+         */
+        static byte[] getTileData(Object plane, Tile tile, byte[] out)
+        {
+            final DataType dataType = ArrayUtil.getDataType(plane);
+            final Object tileData = Array1DUtil.createArray(dataType, tile.w * tile.h);
+            final int len = tile.w * tile.h * dataType.getSize();
+            final byte[] result = ((out == null) || (out.length < len)) ? new byte[len] : out;
+
+            for (int j = 0; j < tile.h; j++)
+                System.arraycopy(plane, ((tile.y + j) * tile.sizeX) + tile.x, tileData, j * tile.w, tile.w);
+
+            return ByteArrayConvert.toByteArray(tileData, 0, result, 0, len, false);
+        }
+
+        /**
+         * Write raw bytes of the specified tile into the plane data array.
+         */
+        static void setTileData(byte[] in, Object plane, Tile tile)
+        {
+            final DataType dataType = ArrayUtil.getDataType(plane);
+            final Object tileData = Array1DUtil.createArray(dataType, tile.w * tile.h);
+
+            ByteArrayConvert.byteArrayTo(in, 0, tileData, 0, tile.w * tile.h * dataType.getSize(), false);
+
+            for (int j = 0; j < tile.h; j++)
+                System.arraycopy(tileData, j * tile.w, plane, ((tile.y + j) * tile.sizeX) + tile.x, tile.w);
+        }
+
+        static int getTileLength(Object plane, Tile tile)
+        {
+            return tile.w * tile.h * ArrayUtil.getDataType(plane).getSize();
+        }
+
+        static long getCRC(byte[] data, int len)
+        {
+            final CRC32 crc = new CRC32();
+
+            crc.update(data, 0, len);
+
+            return crc.getValue();
+        }
+
+        /**
+         * Record the current data of the specified plane and channel (before modification).
+         * 
+         * @param c
+         *        channel index (-1 = all channels)
+         */
+        public synchronized void record(int t, int z, int c)
+        {
+            if (!recording)
+                throw new IllegalStateException("DataEdit.record(..): edit already ended.");
+
+            final IcyBufferedImage image = sequence.getImage(t, z);
+
+            if (image == null)
+                return;
+
+            final int sizeX = image.getSizeX();
+            final int sizeY = image.getSizeY();
+            final int startC = (c == -1) ? 0 : c;
+            final int endC = (c == -1) ? image.getSizeC() - 1 : c;
+
+            for (int ch = startC; ch <= endC; ch++)
+            {
+                // already recorded
+                if (!recordedPlanes.add(t + ":" + z + ":" + ch))
+                    continue;
+
+                final Object plane = image.getDataXY(ch);
+
+                for (int y = 0; y < sizeY; y += TILE_SIZE)
+                {
+                    for (int x = 0; x < sizeX; x += TILE_SIZE)
+                    {
+                        final Tile tile = new Tile(t, z, ch, x, y, Math.min(TILE_SIZE, sizeX - x), Math.min(
+                                TILE_SIZE, sizeY - y), sizeX, sizeY);
+                        final int len = getTileLength(plane, tile);
+
+                        buffer = getTileData(plane, tile, buffer);
+                        tile.crc = getCRC(buffer, len);
+                        tile.oldData = store.add(buffer, 0, len);
+                        tiles.add(tile);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Record the current data of the specified plane (before modification).
+         */
+        public void record(int t, int z)
+        {
+            record(t, z, -1);
+        }
+
+        /**
+         * Record the current data of the whole sequence (before modification).
+         */
+        public void recordAll()
+        {
+            for (int t = 0; t < sequence.getSizeT(); t++)
+                for (int z = 0; z < sequence.getSizeZ(t); z++)
+                    record(t, z, -1);
+        }
+
+        /**
+         * Ends the recording: compares recorded data with current data, only keeps modified tiles
+         * then add this edit to the sequence undo manager.
+         * 
+         * @return <code>false</code> if no data has been modified (edit is then discarded)
+         */
+        public synchronized boolean end()
+        {
+            if (!recording)
+                return false;
+
+            recording = false;
+            recordedPlanes.clear();
+
+            final CompressedBlockStore newStore = new CompressedBlockStore();
+            final List<Tile> modified = new ArrayList<Tile>();
+
+            try
+            {
+                for (Tile tile : tiles)
+                {
+                    final IcyBufferedImage image = sequence.getImage(tile.t, tile.z);
+
+                    // image removed or changed --> can't restore this tile
+                    if (!isCompatible(image, tile))
+                        continue;
+
+                    final Object plane = image.getDataXY(tile.c);
+                    final int len = getTileLength(plane, tile);
+
+                    buffer = getTileData(plane, tile, buffer);
+
+                    // quick check for unmodified tile
+                    if (getCRC(buffer, len) == tile.crc)
+                    {
+                        buffer2 = store.get(tile.oldData, buffer2);
+
+                        if (equals(buffer, buffer2, len))
+                            continue;
+                    }
+
+                    tile.oldData = store.copy(tile.oldData, newStore);
+                    tile.newData = newStore.add(buffer, 0, len);
+                    modified.add(tile);
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("DataEdit.end(): cannot read recorded data, undo is not available.");
+                IcyExceptionHandler.showErrorMessage(e, false);
+                modified.clear();
+            }
+
+            store.release();
+            store = newStore;
+            tiles.clear();
+            tiles.addAll(modified);
+            buffer = null;
+            buffer2 = null;
+
+            if (tiles.isEmpty())
+            {
+                die();
+                return false;
+            }
+
+            sequence.undoManager.addEdit(this);
+
+            return true;
+        }
+
+        private static boolean isCompatible(IcyBufferedImage image, Tile tile)
+        {
+            return (image != null) && (image.getSizeX() == tile.sizeX) && (image.getSizeY() == tile.sizeY)
+                    && (tile.c < image.getSizeC());
+        }
+
+        private static boolean equals(byte[] a, byte[] b, int len)
+        {
+            for (int i = 0; i < len; i++)
+                if (a[i] != b[i])
+                    return false;
+
+            return true;
+        }
+
+        /**
+         * Returns the number of modified tiles.
+         */
+        public synchronized int getModifiedTileCount()
+        {
+            return recording ? 0 : tiles.size();
+        }
+
+        /**
+         * Restore old or new data of modified tiles.
+         */
+        private void restore(boolean newData)
+        {
+            final Set<IcyBufferedImage> images = new HashSet<IcyBufferedImage>();
+
+            sequence.beginUpdate();
+            try
+            {
+                byte[] data = null;
+
+                for (Tile tile : tiles)
+                {
+                    final IcyBufferedImage image = sequence.getImage(tile.t, tile.z);
+
+                    if (!isCompatible(image, tile))
+                        continue;
+
+                    data = store.get(newData ? tile.newData : tile.oldData, data);
+                    setTileData(data, image.getDataXY(tile.c), tile);
+                    images.add(image);
+                }
+
+                // notify data changes
+                for (IcyBufferedImage image : images)
+                    image.dataChanged();
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("DataEdit: cannot read stored data (" + e.getMessage() + ")");
+            }
+            finally
+            {
+                sequence.endUpdate();
+            }
+        }
+
+        @Override
+        public synchronized void undo() throws CannotUndoException
+        {
+            super.undo();
+
+            restore(false);
+        }
+
+        @Override
+        public synchronized void redo() throws CannotRedoException
+        {
+            super.redo();
+
+            restore(true);
+        }
+
+        @Override
+        public synchronized long getSize()
+        {
+            return store.getMemorySize();
+        }
+
+        @Override
+        public synchronized long releaseMemory()
+        {
+            return store.spill();
+        }
+
+        @Override
+        public synchronized void die()
+        {
+            super.die();
+
+            store.release();
+            tiles.clear();
+            sequence = null;
+        }
+
+        @Override
+        public String getPresentationName()
+        {
+            if (StringUtil.isEmpty(name))
+                return "Data modified";
+
+            return name;
+        }
+    }
 }
@@ -20,6 +20,8 @@ package icy.system;
 
 import icy.gui.dialog.MessageDialog;
 import icy.gui.plugin.PluginErrorReport;
+import icy.image.ImageMemoryAccountant;
+import icy.image.ImageMemoryAccountant.MemoryPressure;
 import icy.main.Icy;
 import icy.math.UnitUtil;
 import icy.network.NetworkUtil;
@@ -199,6 +201,9 @@ public class IcyExceptionHandler implements UncaughtExceptionHandler
         {
             if (t instanceof OutOfMemoryError)
             {
+                // ask caches to release memory
+                ImageMemoryAccountant.fireMemoryPressure(MemoryPressure.CRITICAL, 0L);
+
                 if ((current - lastErrorDialog) > ERROR_ANTISPAM_TIME)
                 {
                     // handle out of memory error differently
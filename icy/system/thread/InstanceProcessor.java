@@ -18,13 +18,51 @@
  */
 package icy.system.thread;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Future;
 
 /**
+ * Processor which coalesces tasks: a task instance (or a task key) is never waiting more than
+ * once.<br>
+ * Coalescing is done in constant time through the waiting tasks index so it stays cheap even when
+ * many events are submitted.
+ * 
  * @author Stephane
  */
 public class InstanceProcessor extends Processor
 {
+    /**
+     * Runnable wrapper for keyed tasks, the wrapped task can be replaced while waiting.
+     */
+    private static class KeyedRunnable implements Runnable
+    {
+        final Object key;
+        volatile Runnable task;
+
+        public KeyedRunnable(Object key, Runnable task)
+        {
+            super();
+
+            this.key = key;
+            this.task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            final Runnable r = task;
+
+            if (r != null)
+                r.run();
+        }
+    }
+
+    /**
+     * waiting keyed tasks
+     */
+    private final Map<Object, KeyedRunnable> keyedTasks;
+
     /**
      * Create an InstanceProcessor
      */
@@ -32,6 +70,8 @@ public class InstanceProcessor extends Processor
     {
         super(maxWaiting, 1, priority);
 
+        keyedTasks = new HashMap<Object, KeyedRunnable>();
+
         setDefaultThreadName("InstanceProcessor");
     }
 
@@ -54,9 +94,98 @@ public class InstanceProcessor extends Processor
     @Override
     protected synchronized <T> Future<T> submit(FutureTaskAdapter<T> task)
     {
-        // we remove pending task if any
+        // we remove pending task if any (the task is queued again at the end)
         removeFirstWaitingTask(task);
 
         return super.submit(task);
     }
+
+    /**
+     * Submit a task identified by the specified key.<br>
+     * If a task with the same key is still waiting then it is replaced by the new one (it keeps its
+     * place in queue) and its <tt>Future</tt> is returned, so only the last submitted task of a key
+     * is executed.
+     * 
+     * @param key
+     *        task key (compared with <code>equals</code>)
+     * @param task
+     *        the task to submit
+     * @param onEDT
+     *        if set to <code>true</code> the task will be executed on the Swing EDT.
+     * @return a Future representing pending completion of the task (<code>null</code> if the task
+     *         was rejected)
+     */
+    public Future<?> submit(Object key, Runnable task, boolean onEDT)
+    {
+        if ((key == null) || (task == null))
+            throw new NullPointerException();
+
+        synchronized (keyedTasks)
+        {
+            final KeyedRunnable pending = keyedTasks.get(key);
+
+            if (pending != null)
+            {
+                final FutureTaskAdapter<?> future = getFirstWaitingTask(pending);
+
+                // replace waiting task
+                if ((future != null) && !future.isCancelled())
+                {
+                    pending.task = task;
+                    return future;
+                }
+            }
+
+            final KeyedRunnable keyedTask = new KeyedRunnable(key, task);
+
+            keyedTasks.put(key, keyedTask);
+
+            final Future<?> result = submit(keyedTask, onEDT);
+
+            if (result == null)
+                keyedTasks.remove(key);
+
+            return result;
+        }
+    }
+
+    /**
+     * Submit a task identified by the specified key (see {@link #submit(Object, Runnable, boolean)}
+     * ).
+     */
+    public Future<?> submit(Object key, Runnable task)
+    {
+        return submit(key, task, false);
+    }
+
+    /**
+     * Return true if a task with the specified key is waiting for execution.
+     */
+    public boolean hasWaitingKeyedTask(Object key)
+    {
+        synchronized (keyedTasks)
+        {
+            return keyedTasks.containsKey(key);
+        }
+    }
+
+    @Override
+    protected void taskDequeued(FutureTaskAdapter<?> task)
+    {
+        super.taskDequeued(task);
+
+        final Runnable runnable = task.getRunnable();
+
+        // keyed task is not waiting anymore --> next submission creates a new task
+        if (runnable instanceof KeyedRunnable)
+        {
+            final KeyedRunnable keyedTask = (KeyedRunnable) runnable;
+
+            synchronized (keyedTasks)
+            {
+                if (keyedTasks.get(keyedTask.key) == keyedTask)
+                    keyedTasks.remove(keyedTask.key);
+            }
+        }
+    }
 }
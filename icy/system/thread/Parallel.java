@@ -0,0 +1,579 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.system.thread;
+
+import icy.common.listener.ProgressListener;
+import icy.system.SystemUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Structured data parallelism helpers (parallel for / parallel reduce over an index range).<br>
+ * <br>
+ * All parallel operations share a single worker pool sized once for the machine (one worker per
+ * available processor) so nested parallel calls don't oversubscribe the CPU:
+ * <ul>
+ * <li>the range is cut in chunks which are dynamically claimed by the calling thread and by the
+ * idle workers (a fast thread simply takes more chunks)</li>
+ * <li>the calling thread always processes chunks itself so a parallel call never waits for a busy
+ * pool (nested calls from a worker just run on the threads which are free)</li>
+ * </ul>
+ * Bodies can be executed by any thread, including the calling one: when you call a synchronous
+ * method from the EDT the body may run on the EDT and the GUI is frozen until completion. Use
+ * {@link #submitFor(int, int, int, ForBody, ProgressListener, Runnable)} from the EDT instead,
+ * the completion callback is then executed on the EDT.<br>
+ * A body must never synchronously wait for the EDT (<code>ThreadUtil.invokeNow(..)</code>).<br>
+ * If the waiting thread is interrupted, chunks not yet started are skipped and a
+ * {@link CancellationException} is thrown once the running ones are done (the thread interrupt
+ * state is kept) so partial results are never returned silently.<br>
+ * <br>
+ * Example:
+ * 
+ * <pre>
+ * Parallel.forRange(0, sizeZ, 1, new ForBody()
+ * {
+ *     public void run(int from, int to)
+ *     {
+ *         for (int z = from; z &lt; to; z++)
+ *             process(z);
+ *     }
+ * });
+ * </pre>
+ * 
+ * @author Stephane
+ */
+public class Parallel
+{
+    /**
+     * Body of a parallel for: process the <code>[from, to[</code> index range.
+     */
+    public interface ForBody
+    {
+        public void run(int from, int to);
+    }
+
+    /**
+     * Body of a parallel reduce: compute the partial result of the <code>[from, to[</code> index
+     * range then combine partial results (partial results are combined in range order).
+     */
+    public interface ReduceBody<T>
+    {
+        public T compute(int from, int to);
+
+        public T combine(T result1, T result2);
+    }
+
+    /**
+     * A running parallel operation.
+     */
+    public static class Task<T>
+    {
+        final int from;
+        final int grain;
+        final int numChunks;
+        final long length;
+        final ForBody forBody;
+        final ReduceBody<T> reduceBody;
+        final Object[] results;
+        final ProgressListener progressListener;
+        final Runnable completion;
+
+        final AtomicInteger nextChunk;
+        final AtomicInteger doneChunks;
+        final AtomicLong doneItems;
+        final List<Future<?>> helpers;
+        volatile boolean canceled;
+        volatile boolean interrupted;
+        volatile Throwable error;
+
+        Task(int from, int to, int grain, ForBody forBody, ReduceBody<T> reduceBody,
+                ProgressListener progressListener, Runnable completion)
+        {
+            super();
+
+            this.from = from;
+            // computed in long as (to - from) can overflow int
+            length = Math.max(0L, (long) to - (long) from);
+            this.grain = getGrain(length, grain);
+            numChunks = (int) ((length + (this.grain - 1)) / this.grain);
+            this.forBody = forBody;
+            this.reduceBody = reduceBody;
+            if (reduceBody != null)
+                results = new Object[numChunks];
+            else
+                results = null;
+            this.progressListener = progressListener;
+            this.completion = completion;
+
+            nextChunk = new AtomicInteger(0);
+            doneChunks = new AtomicInteger(0);
+            doneItems = new AtomicLong(0L);
+            helpers = new ArrayList<Future<?>>();
+            canceled = false;
+            interrupted = false;
+            error = null;
+        }
+
+        /**
+         * Claim and process chunks until there is none left.
+         * 
+         * @param interruptible
+         *        cancel the operation if the current thread is interrupted (waiting thread)
+         */
+        void runChunks(boolean interruptible)
+        {
+            final Task<?> previous = currentTask.get();
+
+            currentTask.set(this);
+            try
+            {
+                int chunk;
+
+                while ((chunk = nextChunk.getAndIncrement()) < numChunks)
+                {
+                    final int start = (int) (from + ((long) chunk * grain));
+                    final int end = (int) Math.min(from + length, (long) start + grain);
+
+                    if (interruptible && !canceled && Thread.currentThread().isInterrupted())
+                    {
+                        interrupted = true;
+                        canceled = true;
+                    }
+
+                    // canceled --> just consume remaining chunks
+                    if (!canceled)
+                    {
+                        try
+                        {
+                            if (reduceBody != null)
+                                results[chunk] = reduceBody.compute(start, end);
+                            else
+                                forBody.run(start, end);
+                        }
+                        catch (Throwable t)
+                        {
+                            // keep first error and stop
+                            if (error == null)
+                                error = t;
+                            canceled = true;
+                        }
+                    }
+
+                    chunkDone(end - start);
+                }
+            }
+            finally
+            {
+                currentTask.set(previous);
+            }
+        }
+
+        private void chunkDone(int size)
+        {
+            final long done = doneItems.addAndGet(size);
+
+            if ((progressListener != null) && !canceled)
+            {
+                if (!progressListener.notifyProgress(done, length))
+                    canceled = true;
+            }
+
+            if (doneChunks.incrementAndGet() == numChunks)
+                completed();
+        }
+
+        private void completed()
+        {
+            synchronized (this)
+            {
+                notifyAll();
+            }
+
+            // remove helpers which did not start
+            synchronized (helpers)
+            {
+                for (Future<?> f : helpers)
+                    if (f instanceof Runnable)
+                        getProcessor().remove((Runnable) f);
+            }
+
+            if (completion != null)
+                ThreadUtil.invokeLater(completion);
+        }
+
+        /**
+         * Cancel the operation: chunks not yet started won't be processed.<br>
+         * Long bodies can poll {@link Parallel#isCanceled()} to stop earlier.
+         */
+        public void cancel()
+        {
+            canceled = true;
+        }
+
+        /**
+         * Returns <code>true</code> if the operation has been canceled (explicitly, from the
+         * progress listener, by an interrupt of the waiting thread or because of an exception).
+         */
+        public boolean isCanceled()
+        {
+            return canceled;
+        }
+
+        /**
+         * Returns <code>true</code> if all chunks are processed (or skipped if canceled).
+         */
+        public boolean isDone()
+        {
+            return doneChunks.get() >= numChunks;
+        }
+
+        /**
+         * Returns the exception thrown by a body if any.
+         */
+        public Throwable getError()
+        {
+            return error;
+        }
+
+        /**
+         * Wait for completion.<br>
+         * The calling thread helps processing remaining chunks.<br>
+         * If a body thrown an exception, it is thrown again from here.
+         * 
+         * @throws CancellationException
+         *         if the calling thread has been interrupted before all chunks were started
+         *         (remaining chunks are skipped), the interrupt state is kept
+         */
+        public void waitCompletion()
+        {
+            boolean waitInterrupted = false;
+
+            // help
+            runChunks(true);
+
+            // then wait for chunks processed by helpers
+            synchronized (this)
+            {
+                while (!isDone())
+                {
+                    try
+                    {
+                        wait(10);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // all chunks are already started, just wait for them
+                        waitInterrupted = true;
+                    }
+                }
+            }
+
+            // restore interrupt state for the caller
+            if (waitInterrupted)
+                Thread.currentThread().interrupt();
+
+            final Throwable t = error;
+
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            if (t != null)
+                throw new RuntimeException(t);
+
+            if (interrupted)
+                throw new CancellationException("Parallel operation interrupted");
+        }
+
+        /**
+         * Wait for completion and returns the combined result of a reduce operation (or
+         * <code>null</code> if canceled).
+         * 
+         * @throws CancellationException
+         *         if the calling thread has been interrupted while waiting
+         */
+        @SuppressWarnings("unchecked")
+        public T getResult()
+        {
+            waitCompletion();
+
+            if (canceled || (results == null))
+                return null;
+
+            T result = null;
+
+            for (int i = 0; i < results.length; i++)
+            {
+                if (i == 0)
+                    result = (T) results[0];
+                else
+                    result = reduceBody.combine(result, (T) results[i]);
+            }
+
+            return result;
+        }
+
+        /**
+         * Submit helpers to the shared pool.
+         * 
+         * @param atLeastOne
+         *        submit at least one helper even if the pool is busy (asynchronous execution)
+         */
+        void start(boolean atLeastOne)
+        {
+            final Processor processor = getProcessor();
+            // the calling thread works too unless we are asynchronous
+            int num = Math.min(atLeastOne ? numChunks : numChunks - 1, getIdleWorkers(processor));
+
+            if (atLeastOne)
+                num = Math.max(1, num);
+
+            final Runnable helper = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    runChunks(false);
+                }
+            };
+
+            synchronized (helpers)
+            {
+                for (int i = 0; i < num; i++)
+                {
+                    final Future<?> f = processor.submit(helper);
+
+                    // pool full
+                    if (f == null)
+                        break;
+
+                    helpers.add(f);
+                }
+            }
+
+            // no helper at all and nobody else to process --> start a dedicated thread
+            if (atLeastOne && helpers.isEmpty() && (numChunks > 0))
+            {
+                if (!ThreadUtil.bgRun(helper))
+                    helper.run();
+            }
+        }
+    }
+
+    /**
+     * shared worker pool
+     */
+    private static Processor processor = null;
+
+    /**
+     * task being executed by the current thread
+     */
+    static final ThreadLocal<Task<?>> currentTask = new ThreadLocal<Task<?>>();
+
+    static synchronized Processor getProcessor()
+    {
+        if (processor == null)
+        {
+            processor = new Processor(Processor.DEFAULT_MAX_WAITING, getParallelism());
+            processor.setDefaultThreadName("Parallel worker");
+        }
+
+        return processor;
+    }
+
+    static int getIdleWorkers(Processor processor)
+    {
+        return Math.max(0,
+                processor.getMaximumPoolSize() - (processor.getActiveCount() + processor.getWaitingTasksCount()));
+    }
+
+    /**
+     * Returns the number of threads used for parallel operations (number of available processors).
+     */
+    public static int getParallelism()
+    {
+        return Math.max(1, SystemUtil.getAvailableProcessors());
+    }
+
+    /**
+     * Returns <code>true</code> if the parallel operation executed by the current thread has been
+     * canceled (can be polled from a body).
+     */
+    public static boolean isCanceled()
+    {
+        final Task<?> task = currentTask.get();
+
+        if (task == null)
+            return false;
+
+        return task.isCanceled();
+    }
+
+    /**
+     * Returns the effective chunk size for the specified range length.<br>
+     * If <code>grain</code> is &lt;= 0 a default grain giving about 4 chunks per worker is used.
+     */
+    static int getGrain(long length, int grain)
+    {
+        if (grain > 0)
+            return grain;
+
+        return (int) Math.max(1L, length / (getParallelism() * 4L));
+    }
+
+    /**
+     * Execute the body over the <code>[from, to[</code> range in parallel and wait for
+     * completion.
+     * 
+     * @param grain
+     *        chunk size (number of index processed by a body call), &lt;= 0 for automatic
+     * @param progressListener
+     *        notified (from any thread) each time a chunk is done, returning <code>false</code>
+     *        cancels the operation (can be <code>null</code>)
+     * @return <code>false</code> if the operation has been canceled from the progress listener
+     * @throws CancellationException
+     *         if the calling thread has been interrupted (the range is not entirely processed)
+     */
+    public static boolean forRange(int from, int to, int grain, ForBody body, ProgressListener progressListener)
+    {
+        final Task<Object> task = new Task<Object>(from, to, grain, body, null, progressListener, null);
+
+        task.start(false);
+        task.waitCompletion();
+
+        return !task.isCanceled();
+    }
+
+    /**
+     * Execute the body over the <code>[from, to[</code> range in parallel and wait for
+     * completion.
+     * 
+     * @param grain
+     *        chunk size (number of index processed by a body call), &lt;= 0 for automatic
+     * @throws CancellationException
+     *         if the calling thread has been interrupted (the range is not entirely processed)
+     */
+    public static void forRange(int from, int to, int grain, ForBody body)
+    {
+        forRange(from, to, grain, body, null);
+    }
+
+    /**
+     * Execute the body for each index of the <code>[from, to[</code> range in parallel (one index
+     * per body call, typically plane indices) and wait for completion.
+     * 
+     * @throws CancellationException
+     *         if the calling thread has been interrupted (the range is not entirely processed)
+     */
+    public static void forEach(int from, int to, ForBody body)
+    {
+        forRange(from, to, 1, body, null);
+    }
+
+    /**
+     * Compute a reduce operation over the <code>[from, to[</code> range in parallel.
+     * 
+     * @param grain
+     *        chunk size (number of index processed by a compute call), &lt;= 0 for automatic
+     * @param progressListener
+     *        notified (from any thread) each time a chunk is done, returning <code>false</code>
+     *        cancels the operation (can be <code>null</code>)
+     * @return combined result or <code>null</code> if the range is empty or the operation has
+     *         been canceled from the progress listener
+     * @throws CancellationException
+     *         if the calling thread has been interrupted
+     */
+    public static <T> T reduce(int from, int to, int grain, ReduceBody<T> body, ProgressListener progressListener)
+    {
+        final Task<T> task = new Task<T>(from, to, grain, null, body, progressListener, null);
+
+        task.start(false);
+
+        return task.getResult();
+    }
+
+    /**
+     * Compute a reduce operation over the <code>[from, to[</code> range in parallel.
+     * 
+     * @param grain
+     *        chunk size (number of index processed by a compute call), &lt;= 0 for automatic
+     * @return combined result or <code>null</code> if the range is empty
+     */
+    public static <T> T reduce(int from, int to, int grain, ReduceBody<T> body)
+    {
+        return reduce(from, to, grain, body, null);
+    }
+
+    /**
+     * Start a parallel for in background and returns immediately (safe to use from the EDT).
+     * 
+     * @param grain
+     *        chunk size (number of index processed by a body call), &lt;= 0 for automatic
+     * @param progressListener
+     *        notified (from any thread) each time a chunk is done, returning <code>false</code>
+     *        cancels the operation (can be <code>null</code>)
+     * @param completion
+     *        executed on the EDT when the operation is done or canceled (can be
+     *        <code>null</code>)
+     * @return the task to cancel / wait for the operation
+     */
+    public static Task<Object> submitFor(int from, int to, int grain, ForBody body,
+            ProgressListener progressListener, Runnable completion)
+    {
+        final Task<Object> task = new Task<Object>(from, to, grain, body, null, progressListener, completion);
+
+        // empty range
+        if (task.numChunks == 0)
+        {
+            if (completion != null)
+                ThreadUtil.invokeLater(completion);
+        }
+        else
+            task.start(true);
+
+        return task;
+    }
+
+    /**
+     * Start a parallel reduce in background and returns immediately (safe to use from the EDT).<br>
+     * Use {@link Task#getResult()} to retrieve the result.
+     * 
+     * @see #submitFor(int, int, int, ForBody, ProgressListener, Runnable)
+     */
+    public static <T> Task<T> submitReduce(int from, int to, int grain, ReduceBody<T> body,
+            ProgressListener progressListener, Runnable completion)
+    {
+        final Task<T> task = new Task<T>(from, to, grain, null, body, progressListener, completion);
+
+        if (task.numChunks == 0)
+        {
+            if (completion != null)
+                ThreadUtil.invokeLater(completion);
+        }
+        else
+            task.start(true);
+
+        return task;
+    }
+}
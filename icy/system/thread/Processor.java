@@ -23,7 +23,11 @@ import icy.system.SystemUtil;
 
 import java.util.ArrayList;
 import java.util.EventListener;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
@@ -31,6 +35,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -50,6 +55,33 @@ public class Processor extends ThreadPoolExecutor
         public void processDone(Processor source, Runnable runnable);
     }
 
+    /**
+     * Keep waiting tasks index up to date for rejected tasks then delegate to the wanted handler.
+     */
+    class ProcessorRejectedExecutionHandler implements RejectedExecutionHandler
+    {
+        final RejectedExecutionHandler handler;
+
+        public ProcessorRejectedExecutionHandler(RejectedExecutionHandler handler)
+        {
+            super();
+
+            this.handler = handler;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+        {
+            if (r instanceof FutureTaskAdapter<?>)
+                taskDequeued((FutureTaskAdapter<?>) r);
+
+            statistics.addRejected();
+
+            if (handler != null)
+                handler.rejectedExecution(r, executor);
+        }
+    }
+
     class ProcessorThreadFactory implements ThreadFactory
     {
         @Override
@@ -138,6 +170,12 @@ public class Processor extends ThreadPoolExecutor
         private final Runnable runnable;
         private final Callable<T> callable;
 
+        /**
+         * submission and execution start time (only set when monitoring is enabled)
+         */
+        long submitTime;
+        long startTime;
+
         public FutureTaskAdapter(Runnable runnable, T result, boolean onEDT)
         {
             super(new RunnableAdapter(runnable, onEDT), result);
@@ -168,6 +206,17 @@ public class Processor extends ThreadPoolExecutor
         {
             return callable;
         }
+
+        /**
+         * Returns the task instance (<tt>Runnable</tt> or <tt>Callable</tt>) this adapter wraps.
+         */
+        public Object getTask()
+        {
+            if (callable != null)
+                return callable;
+
+            return runnable;
+        }
     }
 
     /**
@@ -198,10 +247,30 @@ public class Processor extends ThreadPoolExecutor
 
     /**
      * internal
+     * 
+     * @deprecated not anymore used (waiting tasks are now exactly tracked)
      */
+    @Deprecated
     protected Runnable waitingExecution;
+    /**
+     * @deprecated not anymore used (waiting tasks are now exactly tracked)
+     */
+    @Deprecated
     protected long lastAdd;
 
+    /**
+     * submitted tasks which did not yet start (queued or handed to a starting thread)
+     */
+    private final Set<FutureTaskAdapter<?>> waitingTasks;
+    /**
+     * waiting tasks indexed by task instance (<tt>Runnable</tt> or <tt>Callable</tt>)
+     */
+    private final Map<Object, List<FutureTaskAdapter<?>>> waitingTasksIndex;
+    /**
+     * execution statistics
+     */
+    private final ProcessorStatistics statistics;
+
     /**
      * Create a new Processor with specified number of maximum waiting and processing tasks.<br>
      * 
@@ -215,7 +284,13 @@ public class Processor extends ThreadPoolExecutor
     {
         super(maxProcessing, maxProcessing, 1000L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(maxWaiting));
 
+        waitingTasks = new HashSet<FutureTaskAdapter<?>>();
+        // task instances are compared by reference
+        waitingTasksIndex = new IdentityHashMap<Object, List<FutureTaskAdapter<?>>>();
+        statistics = new ProcessorStatistics();
+
         setThreadFactory(new ProcessorThreadFactory());
+        setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
         allowCoreThreadTimeOut(true);
         setKeepAliveTime(2, TimeUnit.SECONDS);
 
@@ -224,6 +299,8 @@ public class Processor extends ThreadPoolExecutor
         listeners = new EventListenerList();
 
         waitingExecution = null;
+
+        ProcessorMonitor.register(this);
     }
 
     /**
@@ -291,11 +368,99 @@ public class Processor extends ThreadPoolExecutor
     @Override
     public boolean remove(Runnable task)
     {
-        // don't forget to remove the reference here
-        if (waitingExecution == task)
-            waitingExecution = null;
+        final boolean result = super.remove(task);
+
+        if (result && (task instanceof FutureTaskAdapter<?>))
+            taskDequeued((FutureTaskAdapter<?>) task);
+
+        return result;
+    }
+
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler)
+    {
+        if (handler instanceof ProcessorRejectedExecutionHandler)
+            super.setRejectedExecutionHandler(handler);
+        else
+            super.setRejectedExecutionHandler(new ProcessorRejectedExecutionHandler(handler));
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        final List<Runnable> result = super.shutdownNow();
+
+        for (Runnable r : result)
+            if (r instanceof FutureTaskAdapter<?>)
+                taskDequeued((FutureTaskAdapter<?>) r);
+
+        return result;
+    }
+
+    /**
+     * Called when a task has been submitted (it is waiting for execution).
+     */
+    protected void taskQueued(FutureTaskAdapter<?> task)
+    {
+        if (ProcessorMonitor.isEnabled())
+            task.submitTime = System.nanoTime();
+
+        synchronized (waitingTasks)
+        {
+            if (waitingTasks.add(task))
+            {
+                final Object key = task.getTask();
+                List<FutureTaskAdapter<?>> tasks = waitingTasksIndex.get(key);
+
+                if (tasks == null)
+                {
+                    tasks = new ArrayList<FutureTaskAdapter<?>>(1);
+                    waitingTasksIndex.put(key, tasks);
+                }
+
+                tasks.add(task);
+            }
+        }
+    }
+
+    /**
+     * Called when a waiting task leaves the waiting state (execution started, task removed or
+     * rejected).
+     */
+    protected void taskDequeued(FutureTaskAdapter<?> task)
+    {
+        synchronized (waitingTasks)
+        {
+            if (waitingTasks.remove(task))
+            {
+                final Object key = task.getTask();
+                final List<FutureTaskAdapter<?>> tasks = waitingTasksIndex.get(key);
+
+                if (tasks != null)
+                {
+                    tasks.remove(task);
+                    if (tasks.isEmpty())
+                        waitingTasksIndex.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first waiting task for the specified task instance (<tt>Runnable</tt> or
+     * <tt>Callable</tt>) or <code>null</code> if there is none.
+     */
+    protected FutureTaskAdapter<?> getFirstWaitingTask(Object task)
+    {
+        synchronized (waitingTasks)
+        {
+            final List<FutureTaskAdapter<?>> tasks = waitingTasksIndex.get(task);
 
-        return super.remove(task);
+            if (tasks == null)
+                return null;
+
+            return tasks.get(0);
+        }
     }
 
     /**
@@ -354,6 +519,9 @@ public class Processor extends ThreadPoolExecutor
         if (task == null)
             throw new NullPointerException();
 
+        // index it first as the task can start before execute() returns
+        taskQueued(task);
+
         try
         {
             execute(task);
@@ -369,7 +537,6 @@ public class Processor extends ThreadPoolExecutor
             }
         }
 
-        waitingExecution = task;
         return task;
     }
 
@@ -524,6 +691,16 @@ public class Processor extends ThreadPoolExecutor
         this.defaultThreadName = defaultThreadName;
     }
 
+    /**
+     * Returns execution statistics of this processor.<br>
+     * Timing statistics are only recorded when {@link ProcessorMonitor#isEnabled()} is
+     * <code>true</code>.
+     */
+    public ProcessorStatistics getStatistics()
+    {
+        return statistics;
+    }
+
     /**
      * Get the number of free slot in queue
      */
@@ -559,18 +736,27 @@ public class Processor extends ThreadPoolExecutor
     }
 
     /**
-     * Return waiting tasks for the specified Runnable instance
+     * Return waiting tasks for the specified task instance
      */
-    protected List<FutureTaskAdapter<?>> getWaitingTasks(Runnable task)
+    private List<FutureTaskAdapter<?>> getWaitingTasksFor(Object task)
     {
-        final List<FutureTaskAdapter<?>> result = new ArrayList<Processor.FutureTaskAdapter<?>>();
+        synchronized (waitingTasks)
+        {
+            final List<FutureTaskAdapter<?>> tasks = waitingTasksIndex.get(task);
 
-        // scan all tasks
-        for (FutureTaskAdapter<?> f : getWaitingTasks())
-            if (f.getRunnable() == task)
-                result.add(f);
+            if (tasks == null)
+                return new ArrayList<FutureTaskAdapter<?>>();
 
-        return result;
+            return new ArrayList<FutureTaskAdapter<?>>(tasks);
+        }
+    }
+
+    /**
+     * Return waiting tasks for the specified Runnable instance
+     */
+    protected List<FutureTaskAdapter<?>> getWaitingTasks(Runnable task)
+    {
+        return getWaitingTasksFor(task);
     }
 
     /**
@@ -578,31 +764,34 @@ public class Processor extends ThreadPoolExecutor
      */
     protected List<FutureTaskAdapter<?>> getWaitingTasks(Callable<?> task)
     {
-        final List<FutureTaskAdapter<?>> result = new ArrayList<Processor.FutureTaskAdapter<?>>();
+        return getWaitingTasksFor(task);
+    }
 
-        // scan all tasks
-        for (FutureTaskAdapter<?> f : getWaitingTasks())
-            if (f.getCallable() == task)
-                result.add(f);
+    /**
+     * Return the number of task waiting for the specified task instance
+     */
+    private int getWaitingTasksCountFor(Object task)
+    {
+        synchronized (waitingTasks)
+        {
+            final List<FutureTaskAdapter<?>> tasks = waitingTasksIndex.get(task);
 
-        return result;
+            if (tasks == null)
+                return 0;
+
+            return tasks.size();
+        }
     }
 
     /**
-     * Return the number of waiting task
+     * Return the number of waiting task (submitted tasks which did not yet start)
      */
     public int getWaitingTasksCount()
     {
-        final int result = getQueue().size();
-
-        // TODO : be sure that waitingExecution pass to null when task has been taken in account.
-        // Queue can be empty right after a task submission.
-        // For this particular case we return 1 if a task has been submitted
-        // and not taken in account with a timeout of 1 second.
-        if ((result == 0) && ((waitingExecution != null) && ((System.currentTimeMillis() - lastAdd) < 1000)))
-            return 1;
-
-        return result;
+        synchronized (waitingTasks)
+        {
+            return waitingTasks.size();
+        }
     }
 
     /**
@@ -622,13 +811,7 @@ public class Processor extends ThreadPoolExecutor
      */
     public int getWaitingTasksCount(Runnable task)
     {
-        int result = 0;
-
-        for (FutureTaskAdapter<?> f : getWaitingTasks())
-            if (f.getRunnable() == task)
-                result++;
-
-        return result;
+        return getWaitingTasksCountFor(task);
     }
 
     /**
@@ -636,13 +819,7 @@ public class Processor extends ThreadPoolExecutor
      */
     public int getWaitingTasksCount(Callable<?> task)
     {
-        int result = 0;
-
-        for (FutureTaskAdapter<?> f : getWaitingTasks())
-            if (f.getCallable() == task)
-                result++;
-
-        return result;
+        return getWaitingTasksCountFor(task);
     }
 
     /**
@@ -671,12 +848,7 @@ public class Processor extends ThreadPoolExecutor
      */
     public boolean hasWaitingTasks(Runnable task)
     {
-        // scan all tasks
-        for (FutureTaskAdapter<?> f : getWaitingTasks())
-            if (f.getRunnable() == task)
-                return true;
-
-        return false;
+        return getWaitingTasksCountFor(task) > 0;
     }
 
     /**
@@ -685,12 +857,7 @@ public class Processor extends ThreadPoolExecutor
      */
     public boolean hasWaitingTasks(Callable<?> task)
     {
-        // scan all tasks
-        for (FutureTaskAdapter<?> f : getWaitingTasks())
-            if (f.getCallable() == task)
-                return true;
-
-        return false;
+        return getWaitingTasksCountFor(task) > 0;
     }
 
     /**
@@ -726,15 +893,7 @@ public class Processor extends ThreadPoolExecutor
      */
     public boolean removeFirstWaitingTask(Runnable task)
     {
-        synchronized (getQueue())
-        {
-            // remove first task of specified instance
-            for (FutureTaskAdapter<?> f : getWaitingTasks())
-                if (f.getRunnable() == task)
-                    return remove(f);
-        }
-
-        return false;
+        return removeFirstWaitingTaskFor(task);
     }
 
     /**
@@ -742,13 +901,15 @@ public class Processor extends ThreadPoolExecutor
      */
     public boolean removeFirstWaitingTask(Callable<?> task)
     {
-        synchronized (getQueue())
-        {
-            // remove first task of specified instance
-            for (FutureTaskAdapter<?> f : getWaitingTasks())
-                if (f.getCallable() == task)
-                    return remove(f);
-        }
+        return removeFirstWaitingTaskFor(task);
+    }
+
+    private boolean removeFirstWaitingTaskFor(Object task)
+    {
+        // use index so we don't have to scan the whole queue
+        for (FutureTaskAdapter<?> f : getWaitingTasksFor(task))
+            if (remove(f))
+                return true;
 
         return false;
     }
@@ -804,13 +965,17 @@ public class Processor extends ThreadPoolExecutor
      */
     public void removeAllWaitingTasks()
     {
-        waitingExecution = null;
+        final List<Runnable> removed = new ArrayList<Runnable>();
 
         synchronized (getQueue())
         {
             // remove all tasks
-            getQueue().clear();
+            getQueue().drainTo(removed);
         }
+
+        for (Runnable r : removed)
+            if (r instanceof FutureTaskAdapter<?>)
+                taskDequeued((FutureTaskAdapter<?>) r);
     }
 
     /**
@@ -893,6 +1058,16 @@ public class Processor extends ThreadPoolExecutor
     {
         super.afterExecute(r, t);
 
+        if (r instanceof FutureTaskAdapter<?>)
+        {
+            final FutureTaskAdapter<?> task = (FutureTaskAdapter<?>) r;
+
+            // record timing (start time is only set when monitoring was enabled)
+            if (task.startTime != 0L)
+                statistics.addExecution(task.getTask(), task.startTime - task.submitTime, System.nanoTime()
+                        - task.startTime);
+        }
+
         // notify we just achieved a process
         fireDoneEvent((FutureTaskAdapter<?>) r);
     }
@@ -902,8 +1077,16 @@ public class Processor extends ThreadPoolExecutor
     {
         super.beforeExecute(t, r);
 
-        // ok we can remove reference...
-        waitingExecution = null;
+        if (r instanceof FutureTaskAdapter<?>)
+        {
+            final FutureTaskAdapter<?> task = (FutureTaskAdapter<?>) r;
+
+            // task is not waiting anymore
+            taskDequeued(task);
+
+            if ((task.submitTime != 0L) && ProcessorMonitor.isEnabled())
+                task.startTime = System.nanoTime();
+        }
     }
 
 }
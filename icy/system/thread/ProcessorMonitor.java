@@ -0,0 +1,288 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.system.thread;
+
+import icy.system.thread.ProcessorStatistics.TaskStatistics;
+import icy.system.thread.ProcessorStatistics.TimeHistogram;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Keep trace of all {@link Processor} instances and give access to their execution statistics.<br>
+ * Task timing is disabled by default (it only costs a volatile read per task then), it can be
+ * enabled from {@link #setEnabled(boolean)}, with the <code>icy.processorMonitor</code> system
+ * property or from JMX (<code>icy:type=ProcessorMonitor</code>).
+ * 
+ * @author Stephane
+ */
+public class ProcessorMonitor
+{
+    public static final String JMX_NAME = "icy:type=ProcessorMonitor";
+    public static final String PROPERTY_ENABLED = "icy.processorMonitor";
+
+    static class ProcessorMonitorBean implements ProcessorMonitorMBean
+    {
+        @Override
+        public boolean isEnabled()
+        {
+            return ProcessorMonitor.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean value)
+        {
+            ProcessorMonitor.setEnabled(value);
+        }
+
+        @Override
+        public int getProcessorCount()
+        {
+            return getProcessors().size();
+        }
+
+        @Override
+        public int getActiveCount()
+        {
+            return getTotalActiveCount();
+        }
+
+        @Override
+        public int getWaitingCount()
+        {
+            return getTotalWaitingCount();
+        }
+
+        @Override
+        public long getRejectedCount()
+        {
+            return getTotalRejectedCount();
+        }
+
+        @Override
+        public String[] getProcessorReport()
+        {
+            final List<String> result = ProcessorMonitor.getProcessorReport();
+            return result.toArray(new String[result.size()]);
+        }
+
+        @Override
+        public String[] getTaskReport()
+        {
+            final List<String> result = ProcessorMonitor.getTaskReport();
+            return result.toArray(new String[result.size()]);
+        }
+
+        @Override
+        public void reset()
+        {
+            ProcessorMonitor.reset();
+        }
+    }
+
+    /**
+     * alive processors
+     */
+    private static final Map<Processor, Object> processors = new WeakHashMap<Processor, Object>();
+    /**
+     * timing enabled flag
+     */
+    private static volatile boolean enabled = Boolean.getBoolean(PROPERTY_ENABLED);
+    /**
+     * JMX registration done
+     */
+    private static boolean mbeanRegistered = false;
+
+    /**
+     * Returns <code>true</code> if task timing statistics are recorded.
+     */
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Enable / disable task timing statistics.
+     */
+    public static void setEnabled(boolean value)
+    {
+        enabled = value;
+    }
+
+    /**
+     * Register a processor so it appears in the monitor (done by the processor itself).
+     */
+    static void register(Processor processor)
+    {
+        synchronized (processors)
+        {
+            processors.put(processor, null);
+
+            // register the JMX bean with the first processor
+            if (!mbeanRegistered)
+            {
+                mbeanRegistered = true;
+                registerMBean();
+            }
+        }
+    }
+
+    private static void registerMBean()
+    {
+        try
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(JMX_NAME);
+
+            if (!server.isRegistered(name))
+                server.registerMBean(new StandardMBean(new ProcessorMonitorBean(), ProcessorMonitorMBean.class),
+                        name);
+        }
+        catch (Throwable t)
+        {
+            // JMX is optional
+            System.err.println("ProcessorMonitor: cannot register JMX bean (" + t.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Returns all alive processors.
+     */
+    public static List<Processor> getProcessors()
+    {
+        synchronized (processors)
+        {
+            final List<Processor> result = new ArrayList<Processor>();
+
+            for (Processor processor : processors.keySet())
+                if ((processor != null) && !processor.isTerminated())
+                    result.add(processor);
+
+            return result;
+        }
+    }
+
+    /**
+     * Returns total number of executing tasks.
+     */
+    public static int getTotalActiveCount()
+    {
+        int result = 0;
+
+        for (Processor processor : getProcessors())
+            result += processor.getActiveCount();
+
+        return result;
+    }
+
+    /**
+     * Returns total number of waiting tasks.
+     */
+    public static int getTotalWaitingCount()
+    {
+        int result = 0;
+
+        for (Processor processor : getProcessors())
+            result += processor.getWaitingTasksCount();
+
+        return result;
+    }
+
+    /**
+     * Returns total number of rejected tasks.
+     */
+    public static long getTotalRejectedCount()
+    {
+        long result = 0;
+
+        for (Processor processor : getProcessors())
+            result += processor.getStatistics().getRejectedCount();
+
+        return result;
+    }
+
+    /**
+     * Clear statistics of all processors.
+     */
+    public static void reset()
+    {
+        for (Processor processor : getProcessors())
+            processor.getStatistics().reset();
+    }
+
+    /**
+     * Returns one line per processor (tab separated values, first line is the header).
+     */
+    public static List<String> getProcessorReport()
+    {
+        final List<String> result = new ArrayList<String>();
+
+        result.add("processor\tactive\tmax\twaiting\tcompleted\trejected");
+        for (Processor processor : getProcessors())
+        {
+            result.add(processor.getDefaultThreadName() + "\t" + processor.getActiveCount() + "\t"
+                    + processor.getMaximumPoolSize() + "\t" + processor.getWaitingTasksCount() + "\t"
+                    + processor.getCompletedTaskCount() + "\t" + processor.getStatistics().getRejectedCount());
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns one line per processor and task class (tab separated values, first line is the
+     * header).<br>
+     * Times are given in milli second, percentiles are estimated from histograms.
+     */
+    public static List<String> getTaskReport()
+    {
+        final List<String> result = new ArrayList<String>();
+
+        result.add("processor\ttask\tcount\tqueue mean\tqueue p95\tqueue max\texec mean\texec p95\texec max\texec total");
+        for (Processor processor : getProcessors())
+        {
+            for (TaskStatistics stats : processor.getStatistics().getTaskStatistics())
+            {
+                final TimeHistogram queue = stats.getQueueTime();
+                final TimeHistogram exec = stats.getExecutionTime();
+
+                result.add(processor.getDefaultThreadName() + "\t" + stats.getTaskClassName() + "\t"
+                        + stats.getCount() + "\t" + toMs(queue.getMean()) + "\t" + toMs(queue.getPercentile(95d))
+                        + "\t" + toMs(queue.getMax()) + "\t" + toMs(exec.getMean()) + "\t"
+                        + toMs(exec.getPercentile(95d)) + "\t" + toMs(exec.getMax()) + "\t" + toMs(exec.getTotal()));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Convert nano second to milli second (3 decimals)
+     */
+    public static double toMs(double nanos)
+    {
+        return Math.round(nanos / 1000d) / 1000d;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.system.thread;
+
+/**
+ * JMX interface of the {@link ProcessorMonitor}.
+ * 
+ * @author Stephane
+ */
+public interface ProcessorMonitorMBean
+{
+    /**
+     * Returns <code>true</code> if task timing statistics are recorded
+     */
+    public boolean isEnabled();
+
+    /**
+     * Enable / disable task timing statistics
+     */
+    public void setEnabled(boolean value);
+
+    /**
+     * Returns number of alive processors
+     */
+    public int getProcessorCount();
+
+    /**
+     * Returns total number of tasks currently executing
+     */
+    public int getActiveCount();
+
+    /**
+     * Returns total number of tasks currently waiting for execution
+     */
+    public int getWaitingCount();
+
+    /**
+     * Returns total number of rejected tasks
+     */
+    public long getRejectedCount();
+
+    /**
+     * Returns one line per processor (tab separated values, first line is the header)
+     */
+    public String[] getProcessorReport();
+
+    /**
+     * Returns one line per processor and task class (tab separated values, first line is the
+     * header)
+     */
+    public String[] getTaskReport();
+
+    /**
+     * Clear all statistics
+     */
+    public void reset();
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.system.thread;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution statistics of a {@link Processor}.<br>
+ * Queue latency (time spent waiting before execution) and execution time are recorded per task
+ * class so we can find out which tasks are flooding or starving a processor.<br>
+ * Timing is only recorded when {@link ProcessorMonitor#isEnabled()} is <code>true</code>, rejected
+ * tasks are always counted.
+ * 
+ * @author Stephane
+ */
+public class ProcessorStatistics
+{
+    /**
+     * Number of bins in time histograms.<br>
+     * Bin 0 contains values below 1 micro second and bin <code>i</code> contains values in
+     * [2^(i-1), 2^i[ micro second (last bin contains all values above).
+     */
+    public static final int HISTOGRAM_SIZE = 32;
+
+    /**
+     * Logarithmic time histogram.
+     */
+    public static class TimeHistogram
+    {
+        final long[] bins;
+        long count;
+        long total;
+        long max;
+
+        public TimeHistogram()
+        {
+            super();
+
+            bins = new long[HISTOGRAM_SIZE];
+            count = 0;
+            total = 0;
+            max = 0;
+        }
+
+        public TimeHistogram(TimeHistogram histo)
+        {
+            super();
+
+            bins = histo.bins.clone();
+            count = histo.count;
+            total = histo.total;
+            max = histo.max;
+        }
+
+        /**
+         * Returns bin index for the specified time (in nano second)
+         */
+        public static int getBin(long nanos)
+        {
+            final long us = nanos / 1000L;
+
+            if (us <= 0)
+                return 0;
+
+            return Math.min(HISTOGRAM_SIZE - 1, 64 - Long.numberOfLeadingZeros(us));
+        }
+
+        /**
+         * Returns upper bound (in nano second) of the specified bin
+         */
+        public static long getBinUpperBound(int bin)
+        {
+            if (bin >= (HISTOGRAM_SIZE - 1))
+                return Long.MAX_VALUE;
+
+            return (1L << bin) * 1000L;
+        }
+
+        /**
+         * Add a time value (in nano second)
+         */
+        public void add(long nanos)
+        {
+            final long value = Math.max(0L, nanos);
+
+            bins[getBin(value)]++;
+            count++;
+            total += value;
+            if (value > max)
+                max = value;
+        }
+
+        /**
+         * Returns histogram bins
+         */
+        public long[] getBins()
+        {
+            return bins.clone();
+        }
+
+        /**
+         * Returns number of recorded values
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Returns total recorded time (in nano second)
+         */
+        public long getTotal()
+        {
+            return total;
+        }
+
+        /**
+         * Returns maximum recorded time (in nano second)
+         */
+        public long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * Returns mean recorded time (in nano second)
+         */
+        public double getMean()
+        {
+            if (count == 0)
+                return 0d;
+
+            return (double) total / (double) count;
+        }
+
+        /**
+         * Returns an estimation (bin upper bound) of the specified percentile (in nano second).
+         * 
+         * @param percent
+         *        wanted percentile (in [0..100] range)
+         */
+        public long getPercentile(double percent)
+        {
+            if (count == 0)
+                return 0L;
+
+            final long limit = (long) Math.ceil((count * Math.min(100d, Math.max(0d, percent))) / 100d);
+            long sum = 0;
+
+            for (int i = 0; i < HISTOGRAM_SIZE; i++)
+            {
+                sum += bins[i];
+                if (sum >= limit)
+                    return Math.min(max, getBinUpperBound(i));
+            }
+
+            return max;
+        }
+    }
+
+    /**
+     * Statistics for a given task class.
+     */
+    public static class TaskStatistics
+    {
+        final String taskClassName;
+        final TimeHistogram queueTime;
+        final TimeHistogram executionTime;
+
+        public TaskStatistics(String taskClassName)
+        {
+            super();
+
+            this.taskClassName = taskClassName;
+            queueTime = new TimeHistogram();
+            executionTime = new TimeHistogram();
+        }
+
+        public TaskStatistics(TaskStatistics stats)
+        {
+            super();
+
+            taskClassName = stats.taskClassName;
+            queueTime = new TimeHistogram(stats.queueTime);
+            executionTime = new TimeHistogram(stats.executionTime);
+        }
+
+        /**
+         * Returns the class name of the task (<code>Runnable</code> or <code>Callable</code>)
+         */
+        public String getTaskClassName()
+        {
+            return taskClassName;
+        }
+
+        /**
+         * Returns the queue latency histogram (time between submission and execution start)
+         */
+        public TimeHistogram getQueueTime()
+        {
+            return queueTime;
+        }
+
+        /**
+         * Returns the execution time histogram
+         */
+        public TimeHistogram getExecutionTime()
+        {
+            return executionTime;
+        }
+
+        /**
+         * Returns number of executed tasks
+         */
+        public long getCount()
+        {
+            return executionTime.getCount();
+        }
+    }
+
+    /**
+     * statistics per task class name
+     */
+    private final Map<String, TaskStatistics> tasks;
+    /**
+     * number of rejected tasks
+     */
+    private final AtomicLong rejected;
+
+    public ProcessorStatistics()
+    {
+        super();
+
+        tasks = new HashMap<String, TaskStatistics>();
+        rejected = new AtomicLong(0L);
+    }
+
+    /**
+     * Record a task execution.
+     * 
+     * @param task
+     *        the executed task instance (<code>Runnable</code> or <code>Callable</code>)
+     * @param queueNanos
+     *        time spent in queue (in nano second)
+     * @param executionNanos
+     *        execution time (in nano second)
+     */
+    public void addExecution(Object task, long queueNanos, long executionNanos)
+    {
+        final String name = (task == null) ? "null" : task.getClass().getName();
+
+        synchronized (tasks)
+        {
+            TaskStatistics stats = tasks.get(name);
+
+            if (stats == null)
+            {
+                stats = new TaskStatistics(name);
+                tasks.put(name, stats);
+            }
+
+            stats.queueTime.add(queueNanos);
+            stats.executionTime.add(executionNanos);
+        }
+    }
+
+    /**
+     * Record a rejected task.
+     */
+    public void addRejected()
+    {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Returns number of rejected tasks
+     */
+    public long getRejectedCount()
+    {
+        return rejected.get();
+    }
+
+    /**
+     * Returns a snapshot of statistics for each task class.
+     */
+    public List<TaskStatistics> getTaskStatistics()
+    {
+        final List<TaskStatistics> result = new ArrayList<TaskStatistics>();
+
+        synchronized (tasks)
+        {
+            for (TaskStatistics stats : tasks.values())
+                result.add(new TaskStatistics(stats));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns total number of recorded executions
+     */
+    public long getExecutionCount()
+    {
+        long result = 0;
+
+        synchronized (tasks)
+        {
+            for (TaskStatistics stats : tasks.values())
+                result += stats.getCount();
+        }
+
+        return result;
+    }
+
+    /**
+     * Clear all statistics
+     */
+    public void reset()
+    {
+        synchronized (tasks)
+        {
+            tasks.clear();
+        }
+
+        rejected.set(0L);
+    }
+}
@@ -360,21 +360,36 @@ public class ThreadUtil
     }
 
     /**
-     * Retrieve the instance processor to use for specified runnable.
+     * Add single background processing (normal priority) of specified Runnable identified by the
+     * given key.<br>
+     * If a task with the same key is already pending in waiting background process then it is
+     * replaced by this one (only the last submitted task of a key is executed).<br>
+     * Return <code>false</code> if background process queue is full.
      */
-    private static InstanceProcessor getInstanceProcessor(Runnable runnable)
+    public static boolean bgRunSingle(Object key, Runnable runnable, boolean onEDT)
     {
-        // get processor index from the hash code
-        return instanceProcessors[runnable.hashCode() % instanceProcessors.length];
+        return (getInstanceProcessor(key).submit(key, runnable, onEDT) != null);
     }
 
     /**
-     * Retrieve the instance processor to use for specified callable.
+     * Add single background processing (normal priority) of specified Runnable identified by the
+     * given key.<br>
+     * If a task with the same key is already pending in waiting background process then it is
+     * replaced by this one (only the last submitted task of a key is executed).<br>
+     * Return <code>false</code> if background process queue is full.
      */
-    private static InstanceProcessor getInstanceProcessor(Callable<?> callable)
+    public static boolean bgRunSingle(Object key, Runnable runnable)
     {
-        // get processor index from the hash code
-        return instanceProcessors[callable.hashCode() % instanceProcessors.length];
+        return bgRunSingle(key, runnable, false);
+    }
+
+    /**
+     * Retrieve the instance processor to use for specified task (or task key).
+     */
+    private static InstanceProcessor getInstanceProcessor(Object task)
+    {
+        // get processor index from the hash code (which can be negative)
+        return instanceProcessors[(task.hashCode() & Integer.MAX_VALUE) % instanceProcessors.length];
     }
 
     /**
@@ -411,6 +426,28 @@ public class ThreadUtil
         return getInstanceProcessor(callable).hasWaitingTasks(callable);
     }
 
+    /**
+     * Return true if a task with the specified key is waiting to be processed<br>
+     * in single scheme background processing.
+     */
+    public static boolean hasWaitingBgSingleTask(Object key)
+    {
+        return getInstanceProcessor(key).hasWaitingKeyedTask(key);
+    }
+
+    /**
+     * Return the number of background tasks waiting to be processed.
+     */
+    public static int getWaitingBgTaskCount()
+    {
+        int result = bgProcessor.getWaitingTasksCount();
+
+        for (InstanceProcessor ip : instanceProcessors)
+            result += ip.getWaitingTasksCount();
+
+        return result;
+    }
+
     /**
      * Return the number of active background tasks.
      */
@@ -20,7 +20,14 @@ package icy.type.collection.array;
 
 import icy.type.DataType;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
+ * Conversion between raw byte arrays (as provided by image readers) and typed data arrays.<br>
+ * Contiguous conversions are done in bulk through {@link ByteBuffer} views while strided
+ * (interleaved) conversions use the absolute {@link ByteBuffer} accessors.
+ * 
  * @author Stephane
  */
 public class ByteArrayConvert
@@ -102,6 +109,17 @@ public class ByteArrayConvert
         return ArrayUtil.getCopyLength(array, offset) * ArrayUtil.getDataType(array).getSize();
     }
 
+    /**
+     * Returns the {@link ByteOrder} corresponding to the specified endianness.
+     */
+    public static ByteOrder getByteOrder(boolean littleEndian)
+    {
+        if (littleEndian)
+            return ByteOrder.LITTLE_ENDIAN;
+
+        return ByteOrder.BIG_ENDIAN;
+    }
+
     /**
      * Read a byte from the input byte array at specified position.
      */
@@ -381,14 +399,25 @@ public class ByteArrayConvert
         final int len = getCopyLengthInBytes(in, inOffset, adjInStep, out, outOffset, outStep, byteLength) / 2;
         final short[] result = Array1DUtil.allocIfNull(out, outOffset + (len * outStep));
 
-        int inOff = inOffset;
-        int outOff = outOffset;
+        final ByteBuffer bb = ByteBuffer.wrap(in).order(getByteOrder(little));
 
-        for (int i = 0; i < len; i++)
+        // contiguous data --> bulk conversion through buffer view
+        if ((len > 0) && (inStep == 1) && (outStep == 1))
         {
-            result[outOff] = readShort(in, inOff, little);
-            inOff += adjInStep;
-            outOff += outStep;
+            bb.position(inOffset);
+            bb.asShortBuffer().get(result, outOffset, len);
+        }
+        else
+        {
+            int inOff = inOffset;
+            int outOff = outOffset;
+
+            for (int i = 0; i < len; i++)
+            {
+                result[outOff] = bb.getShort(inOff);
+                inOff += adjInStep;
+                outOff += outStep;
+            }
         }
 
         return result;
@@ -471,14 +500,25 @@ public class ByteArrayConvert
         final int len = getCopyLengthInBytes(in, inOffset, adjInStep, out, outOffset, outStep, byteLength) / 4;
         final int[] result = Array1DUtil.allocIfNull(out, outOffset + (len * outStep));
 
-        int inOff = inOffset;
-        int outOff = outOffset;
+        final ByteBuffer bb = ByteBuffer.wrap(in).order(getByteOrder(little));
 
-        for (int i = 0; i < len; i++)
+        // contiguous data --> bulk conversion through buffer view
+        if ((len > 0) && (inStep == 1) && (outStep == 1))
         {
-            result[outOff] = readInt(in, inOff, little);
-            inOff += adjInStep;
-            outOff += outStep;
+            bb.position(inOffset);
+            bb.asIntBuffer().get(result, outOffset, len);
+        }
+        else
+        {
+            int inOff = inOffset;
+            int outOff = outOffset;
+
+            for (int i = 0; i < len; i++)
+            {
+                result[outOff] = bb.getInt(inOff);
+                inOff += adjInStep;
+                outOff += outStep;
+            }
         }
 
         return result;
@@ -561,14 +601,25 @@ public class ByteArrayConvert
         final int len = getCopyLengthInBytes(in, inOffset, adjInStep, out, outOffset, outStep, byteLength) / 8;
         final long[] result = Array1DUtil.allocIfNull(out, outOffset + (len * outStep));
 
-        int inOff = inOffset;
-        int outOff = outOffset;
+        final ByteBuffer bb = ByteBuffer.wrap(in).order(getByteOrder(little));
 
-        for (int i = 0; i < len; i++)
+        // contiguous data --> bulk conversion through buffer view
+        if ((len > 0) && (inStep == 1) && (outStep == 1))
+        {
+            bb.position(inOffset);
+            bb.asLongBuffer().get(result, outOffset, len);
+        }
+        else
         {
-            result[outOff] = readLong(in, inOff, little);
-            inOff += adjInStep;
-            outOff += outStep;
+            int inOff = inOffset;
+            int outOff = outOffset;
+
+            for (int i = 0; i < len; i++)
+            {
+                result[outOff] = bb.getLong(inOff);
+                inOff += adjInStep;
+                outOff += outStep;
+            }
         }
 
         return result;
@@ -651,14 +702,25 @@ public class ByteArrayConvert
         final int len = getCopyLengthInBytes(in, inOffset, adjInStep, out, outOffset, outStep, byteLength) / 4;
         final float[] result = Array1DUtil.allocIfNull(out, outOffset + (len * outStep));
 
-        int inOff = inOffset;
-        int outOff = outOffset;
+        final ByteBuffer bb = ByteBuffer.wrap(in).order(getByteOrder(little));
 
-        for (int i = 0; i < len; i++)
+        // contiguous data --> bulk conversion through buffer view
+        if ((len > 0) && (inStep == 1) && (outStep == 1))
         {
-            result[outOff] = readFloat(in, inOff, little);
-            inOff += adjInStep;
-            outOff += outStep;
+            bb.position(inOffset);
+            bb.asFloatBuffer().get(result, outOffset, len);
+        }
+        else
+        {
+            int inOff = inOffset;
+            int outOff = outOffset;
+
+            for (int i = 0; i < len; i++)
+            {
+                result[outOff] = bb.getFloat(inOff);
+                inOff += adjInStep;
+                outOff += outStep;
+            }
         }
 
         return result;
@@ -741,14 +803,25 @@ public class ByteArrayConvert
         final int len = getCopyLengthInBytes(in, inOffset, adjInStep, out, outOffset, outStep, byteLength) / 8;
         final double[] result = Array1DUtil.allocIfNull(out, outOffset + (len * outStep));
 
-        int inOff = inOffset;
-        int outOff = outOffset;
+        final ByteBuffer bb = ByteBuffer.wrap(in).order(getByteOrder(little));
 
-        for (int i = 0; i < len; i++)
+        // contiguous data --> bulk conversion through buffer view
+        if ((len > 0) && (inStep == 1) && (outStep == 1))
         {
-            result[outOff] = readDouble(in, inOff, little);
-            inOff += adjInStep;
-            outOff += outStep;
+            bb.position(inOffset);
+            bb.asDoubleBuffer().get(result, outOffset, len);
+        }
+        else
+        {
+            int inOff = inOffset;
+            int outOff = outOffset;
+
+            for (int i = 0; i < len; i++)
+            {
+                result[outOff] = bb.getDouble(inOff);
+                inOff += adjInStep;
+                outOff += outStep;
+            }
         }
 
         return result;
@@ -831,14 +904,25 @@ public class ByteArrayConvert
         final int len = getCopyLengthInBytes(in, inOffset, inStep, out, outOffset, adjOutStep, byteLength);
         final byte[] result = Array1DUtil.allocIfNull(out, outOffset + (len * adjOutStep));
 
-        int inOff = inOffset;
-        int outOff = outOffset;
+        final ByteBuffer bb = ByteBuffer.wrap(result).order(getByteOrder(little));
 
-        for (int i = 0; i < len; i++)
+        // contiguous data --> bulk conversion through buffer view
+        if ((len > 0) && (inStep == 1) && (outStep == 1))
+        {
+            bb.position(outOffset);
+            bb.asShortBuffer().put(in, inOffset, len);
+        }
+        else
         {
-            writeShort(result, outOff, in[inOff], little);
-            inOff += inStep;
-            outOff += adjOutStep;
+            int inOff = inOffset;
+            int outOff = outOffset;
+
+            for (int i = 0; i < len; i++)
+            {
+                bb.putShort(outOff, in[inOff]);
+                inOff += inStep;
+                outOff += adjOutStep;
+            }
         }
 
         return result;
@@ -871,14 +955,25 @@ public class ByteArrayConvert
         final int len = getCopyLengthInBytes(in, inOffset, inStep, out, outOffset, adjOutStep, byteLength);
         final byte[] result = Array1DUtil.allocIfNull(out, outOffset + (len * adjOutStep));
 
-        int inOff = inOffset;
-        int outOff = outOffset;
+        final ByteBuffer bb = ByteBuffer.wrap(result).order(getByteOrder(little));
 
-        for (int i = 0; i < len; i++)
+        // contiguous data --> bulk conversion through buffer view
+        if ((len > 0) && (inStep == 1) && (outStep == 1))
         {
-            writeInt(result, outOff, in[inOff], little);
-            inOff += inStep;
-            outOff += adjOutStep;
+            bb.position(outOffset);
+            bb.asIntBuffer().put(in, inOffset, len);
+        }
+        else
+        {
+            int inOff = inOffset;
+            int outOff = outOffset;
+
+            for (int i = 0; i < len; i++)
+            {
+                bb.putInt(outOff, in[inOff]);
+                inOff += inStep;
+                outOff += adjOutStep;
+            }
         }
 
         return result;
@@ -911,14 +1006,25 @@ public class ByteArrayConvert
         final int len = getCopyLengthInBytes(in, inOffset, inStep, out, outOffset, adjOutStep, byteLength);
         final byte[] result = Array1DUtil.allocIfNull(out, outOffset + (len * adjOutStep));
 
-        int inOff = inOffset;
-        int outOff = outOffset;
+        final ByteBuffer bb = ByteBuffer.wrap(result).order(getByteOrder(little));
 
-        for (int i = 0; i < len; i++)
+        // contiguous data --> bulk conversion through buffer view
+        if ((len > 0) && (inStep == 1) && (outStep == 1))
+        {
+            bb.position(outOffset);
+            bb.asLongBuffer().put(in, inOffset, len);
+        }
+        else
         {
-            writeLong(result, outOff, in[inOff], little);
-            inOff += inStep;
-            outOff += adjOutStep;
+            int inOff = inOffset;
+            int outOff = outOffset;
+
+            for (int i = 0; i < len; i++)
+            {
+                bb.putLong(outOff, in[inOff]);
+                inOff += inStep;
+                outOff += adjOutStep;
+            }
         }
 
         return result;
@@ -951,14 +1057,25 @@ public class ByteArrayConvert
         final int len = getCopyLengthInBytes(in, inOffset, inStep, out, outOffset, adjOutStep, byteLength);
         final byte[] result = Array1DUtil.allocIfNull(out, outOffset + (len * adjOutStep));
 
-        int inOff = inOffset;
-        int outOff = outOffset;
+        final ByteBuffer bb = ByteBuffer.wrap(result).order(getByteOrder(little));
 
-        for (int i = 0; i < len; i++)
+        // contiguous data --> bulk conversion through buffer view
+        if ((len > 0) && (inStep == 1) && (outStep == 1))
         {
-            writeFloat(result, outOff, in[inOff], little);
-            inOff += inStep;
-            outOff += adjOutStep;
+            bb.position(outOffset);
+            bb.asFloatBuffer().put(in, inOffset, len);
+        }
+        else
+        {
+            int inOff = inOffset;
+            int outOff = outOffset;
+
+            for (int i = 0; i < len; i++)
+            {
+                bb.putFloat(outOff, in[inOff]);
+                inOff += inStep;
+                outOff += adjOutStep;
+            }
         }
 
         return result;
@@ -991,14 +1108,25 @@ public class ByteArrayConvert
         final int len = getCopyLengthInBytes(in, inOffset, inStep, out, outOffset, adjOutStep, byteLength);
         final byte[] result = Array1DUtil.allocIfNull(out, outOffset + (len * adjOutStep));
 
-        int inOff = inOffset;
-        int outOff = outOffset;
+        final ByteBuffer bb = ByteBuffer.wrap(result).order(getByteOrder(little));
 
-        for (int i = 0; i < len; i++)
+        // contiguous data --> bulk conversion through buffer view
+        if ((len > 0) && (inStep == 1) && (outStep == 1))
         {
-            writeDouble(result, outOff, in[inOff], little);
-            inOff += inStep;
-            outOff += adjOutStep;
+            bb.position(outOffset);
+            bb.asDoubleBuffer().put(in, inOffset, len);
+        }
+        else
+        {
+            int inOff = inOffset;
+            int outOff = outOffset;
+
+            for (int i = 0; i < len; i++)
+            {
+                bb.putDouble(outOff, in[inOff]);
+                inOff += inStep;
+                outOff += adjOutStep;
+            }
         }
 
         return result;
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.undo;
+
+import icy.file.FileUtil;
+import icy.system.IcyExceptionHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Store of compressed data blocks used by undoable edits to keep data at low memory cost.<br>
+ * Blocks are compressed in memory and can be spilled to a temporary file when memory is needed
+ * (see {@link #spill()}).<br>
+ * Call {@link #release()} when the store is not anymore needed (delete the temporary file).
+ * 
+ * @author Stephane
+ */
+public class CompressedBlockStore
+{
+    /**
+     * compressed block (in memory or in file)
+     */
+    private static class Block
+    {
+        final int rawLength;
+        byte[] data;
+        long fileOffset;
+        int fileLength;
+
+        Block(int rawLength, byte[] data)
+        {
+            super();
+
+            this.rawLength = rawLength;
+            this.data = data;
+            fileOffset = -1L;
+            fileLength = 0;
+        }
+    }
+
+    private final List<Block> blocks;
+    private final Deflater deflater;
+    private final Inflater inflater;
+    private byte[] buffer;
+    private long memorySize;
+    private long fileSize;
+    private File file;
+    private RandomAccessFile raf;
+
+    public CompressedBlockStore()
+    {
+        super();
+
+        blocks = new ArrayList<Block>();
+        // pixel data compress well enough with fast compression
+        deflater = new Deflater(Deflater.BEST_SPEED);
+        inflater = new Inflater();
+        buffer = new byte[0];
+        memorySize = 0L;
+        fileSize = 0L;
+        file = null;
+        raf = null;
+    }
+
+    /**
+     * Compress and store the specified block of data.
+     * 
+     * @return index of the stored block
+     */
+    public synchronized int add(byte[] data, int offset, int length)
+    {
+        // compressed data should not be larger than that
+        final int maxLen = length + (length / 16) + 64;
+
+        if (buffer.length < maxLen)
+            buffer = new byte[maxLen];
+
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+
+        int len = 0;
+        while (!deflater.finished())
+        {
+            if (len == buffer.length)
+            {
+                final byte[] newBuffer = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, newBuffer, 0, len);
+                buffer = newBuffer;
+            }
+
+            len += deflater.deflate(buffer, len, buffer.length - len);
+        }
+
+        final byte[] compressed = new byte[len];
+        System.arraycopy(buffer, 0, compressed, 0, len);
+
+        blocks.add(new Block(length, compressed));
+        memorySize += len;
+
+        return blocks.size() - 1;
+    }
+
+    /**
+     * Compress and store the specified block of data.
+     * 
+     * @return index of the stored block
+     */
+    public int add(byte[] data)
+    {
+        return add(data, 0, data.length);
+    }
+
+    /**
+     * Returns the uncompressed length of the specified block.
+     */
+    public synchronized int getLength(int index)
+    {
+        return blocks.get(index).rawLength;
+    }
+
+    /**
+     * Returns the number of stored blocks.
+     */
+    public synchronized int getBlockCount()
+    {
+        return blocks.size();
+    }
+
+    /**
+     * Uncompress the specified block in the <code>out</code> array (allocated if
+     * <code>null</code> or too small) and returns it.
+     */
+    public synchronized byte[] get(int index, byte[] out) throws IOException
+    {
+        final Block block = blocks.get(index);
+        final byte[] result;
+
+        if ((out == null) || (out.length < block.rawLength))
+            result = new byte[block.rawLength];
+        else
+            result = out;
+
+        final byte[] compressed = getCompressed(block);
+
+        inflater.reset();
+        inflater.setInput(compressed);
+        try
+        {
+            int len = 0;
+            while (len < block.rawLength)
+            {
+                final int n = inflater.inflate(result, len, block.rawLength - len);
+
+                if ((n == 0) && (inflater.finished() || inflater.needsInput()))
+                    break;
+
+                len += n;
+            }
+
+            if (len != block.rawLength)
+                throw new IOException("Corrupted block #" + index);
+        }
+        catch (DataFormatException e)
+        {
+            throw new IOException("Corrupted block #" + index + " (" + e.getMessage() + ")");
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns compressed data of the specified block.
+     */
+    private byte[] getCompressed(Block block) throws IOException
+    {
+        if (block.data != null)
+            return block.data;
+
+        // read back from file
+        final byte[] result = new byte[block.fileLength];
+        raf.seek(block.fileOffset);
+        raf.readFully(result);
+
+        return result;
+    }
+
+    /**
+     * Copy the specified block in another store (without recompression).
+     * 
+     * @return index of the block in the destination store
+     */
+    public synchronized int copy(int index, CompressedBlockStore dest) throws IOException
+    {
+        final Block block = blocks.get(index);
+        final byte[] compressed = getCompressed(block);
+
+        synchronized (dest)
+        {
+            dest.blocks.add(new Block(block.rawLength, compressed));
+            dest.memorySize += compressed.length;
+
+            return dest.blocks.size() - 1;
+        }
+    }
+
+    /**
+     * Remove the last stored block (only the last one can be removed).
+     */
+    public synchronized void removeLast()
+    {
+        if (blocks.isEmpty())
+            return;
+
+        final Block block = blocks.remove(blocks.size() - 1);
+
+        if (block.data != null)
+            memorySize -= block.data.length;
+    }
+
+    /**
+     * Returns the memory (in bytes) used by compressed blocks.
+     */
+    public synchronized long getMemorySize()
+    {
+        return memorySize;
+    }
+
+    /**
+     * Returns the disk space (in bytes) used by spilled blocks.
+     */
+    public synchronized long getFileSize()
+    {
+        return fileSize;
+    }
+
+    /**
+     * Move all in memory blocks to a temporary file.
+     * 
+     * @return the amount of memory released (in bytes)
+     */
+    public synchronized long spill()
+    {
+        if (memorySize == 0L)
+            return 0L;
+
+        try
+        {
+            if (raf == null)
+            {
+                final File dir = new File(FileUtil.getTempDirectory());
+                file = File.createTempFile("icy_undo", ".tmp", dir);
+                file.deleteOnExit();
+                raf = new RandomAccessFile(file, "rw");
+            }
+
+            long released = 0L;
+
+            for (Block block : blocks)
+            {
+                if (block.data != null)
+                {
+                    raf.seek(fileSize);
+                    raf.write(block.data);
+
+                    block.fileOffset = fileSize;
+                    block.fileLength = block.data.length;
+                    fileSize += block.data.length;
+                    released += block.data.length;
+                    block.data = null;
+                }
+            }
+
+            memorySize -= released;
+
+            return released;
+        }
+        catch (IOException e)
+        {
+            // cannot spill, keep data in memory
+            System.err.println("CompressedBlockStore.spill() failed, data are kept in memory.");
+            IcyExceptionHandler.showErrorMessage(e, false);
+            return 0L;
+        }
+    }
+
+    /**
+     * Release all blocks and delete the temporary file if any.
+     */
+    public synchronized void release()
+    {
+        blocks.clear();
+        memorySize = 0L;
+        fileSize = 0L;
+        buffer = new byte[0];
+        deflater.end();
+        inflater.end();
+
+        if (raf != null)
+        {
+            try
+            {
+                raf.close();
+            }
+            catch (IOException e)
+            {
+                // ignore
+            }
+
+            raf = null;
+        }
+        if (file != null)
+        {
+            file.delete();
+            file = null;
+        }
+    }
+}
@@ -18,6 +18,8 @@
  */
 package icy.undo;
 
+import icy.system.SystemUtil;
+
 import java.util.ArrayList;
 
 import javax.swing.UIManager;
@@ -60,6 +62,7 @@ public class IcyUndoManager extends AbstractUndoableEdit implements IcyUndoableE
      */
     protected int indexOfNextAdd;
     protected int limit;
+    protected long sizeLimit;
 
     public IcyUndoManager(Object owner)
     {
@@ -70,6 +73,8 @@ public class IcyUndoManager extends AbstractUndoableEdit implements IcyUndoableE
         listeners = new EventListenerList();
         indexOfNextAdd = 0;
         limit = 100;
+        // default memory budget
+        sizeLimit = SystemUtil.getJavaMaxMemory() / 4;
         edits.ensureCapacity(limit);
     }
 
@@ -104,7 +109,7 @@ public class IcyUndoManager extends AbstractUndoableEdit implements IcyUndoableE
     public synchronized void discardAllEdits()
     {
         // send die to all edits
-        for (int i = edits.size(); i >= 0; i--)
+        for (int i = edits.size() - 1; i >= 0; i--)
             edits.get(i).die();
 
         clear();
@@ -162,6 +167,72 @@ public class IcyUndoManager extends AbstractUndoableEdit implements IcyUndoableE
         }
     }
 
+    /**
+     * Returns the maximum amount of memory (in bytes) edits of this {@code UndoManager} can retain.
+     * A value less than 0 indicates the memory is not limited.
+     * 
+     * @see #setSizeLimit(long)
+     */
+    public synchronized long getSizeLimit()
+    {
+        return sizeLimit;
+    }
+
+    /**
+     * Sets the maximum amount of memory (in bytes) edits of this {@code UndoManager} can retain. A
+     * value less than 0 indicates the memory is not limited.<br>
+     * When the limit is exceeded, edits are first asked to release memory (see
+     * {@link IcyUndoableEdit#releaseMemory()}) then the farthest edits are discarded (the last
+     * added edit is always kept). The default is 1/4 of the maximum java memory.
+     */
+    public synchronized void setSizeLimit(long value)
+    {
+        sizeLimit = value;
+        trimForSizeLimit();
+    }
+
+    /**
+     * Returns the amount of memory (in bytes) retained by edits.
+     */
+    public synchronized long getSize()
+    {
+        long result = 0L;
+
+        for (IcyUndoableEdit edit : edits)
+            result += edit.getSize();
+
+        return result;
+    }
+
+    /**
+     * Reduces the memory retained by edits so it fits in the size limit.
+     */
+    protected void trimForSizeLimit()
+    {
+        if (sizeLimit < 0)
+            return;
+
+        long size = getSize();
+
+        // first ask edits to release memory (oldest first)
+        for (int i = 0; (i < edits.size()) && (size > sizeLimit); i++)
+            size -= edits.get(i).releaseMemory();
+
+        // then discard redoable edits (farthest first) and oldest edits
+        while ((size > sizeLimit) && (edits.size() > 1))
+        {
+            final int index;
+
+            if (indexOfNextAdd < edits.size())
+                index = edits.size() - 1;
+            else
+                index = 0;
+
+            size -= edits.get(index).getSize();
+            trimEdits(index, index);
+        }
+    }
+
     /**
      * Removes edits in the specified range.
      * All edits in the given range (inclusive, and in reverse order)
@@ -471,8 +542,9 @@ public class IcyUndoManager extends AbstractUndoableEdit implements IcyUndoableE
         // make sure the indexOfNextAdd is pointed at the right place
         indexOfNextAdd = edits.size();
 
-        // enforce the limit
+        // enforce the limits
         trimForLimit();
+        trimForSizeLimit();
 
         // notify change
         fireChangeEvent();
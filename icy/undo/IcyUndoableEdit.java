@@ -232,6 +232,27 @@ public abstract class IcyUndoableEdit implements UndoableEdit
         return true;
     }
 
+    /**
+     * Returns the amount of memory (in bytes) retained by this edit.<br>
+     * Used by {@link IcyUndoManager} to enforce its memory limit, this default implementation
+     * returns 0.
+     */
+    public long getSize()
+    {
+        return 0L;
+    }
+
+    /**
+     * Try to reduce the memory retained by this edit (for instance by moving data to disk).<br>
+     * This default implementation does nothing and returns 0.
+     * 
+     * @return the amount of memory released (in bytes)
+     */
+    public long releaseMemory()
+    {
+        return 0L;
+    }
+
     /**
      * This default implementation returns "". Used by <code>getUndoPresentationName</code> and
      * <code>getRedoPresentationName</code> to
@@ -45,6 +45,7 @@ public class ElementDescriptor implements XMLPersistent
     private static final String ID_DIRECTORY = "directory";
     private static final String ID_FILENUMBER = "fileNumber";
     private static final String ID_DATEMODIF = "datemodif";
+    private static final String ID_CHECKSUM = "checksum";
     private static final String ID_LOCALPATH = "localpath";
     private static final String ID_ONLINEPATH = "onlinepath";
     private static final String ID_CHANGESLOG = "changeslog";
@@ -84,6 +85,11 @@ public class ElementDescriptor implements XMLPersistent
          */
         private int fileNumber;
 
+        /**
+         * content checksum (see {@link FileUtil#getChecksum(File)}), empty if unknown
+         */
+        private String checksum;
+
         /**
          * 
          */
@@ -109,6 +115,7 @@ public class ElementDescriptor implements XMLPersistent
             writable = elementFile.writable;
             directory = elementFile.directory;
             fileNumber = elementFile.fileNumber;
+            checksum = elementFile.checksum;
         }
 
         @Override
@@ -125,6 +132,7 @@ public class ElementDescriptor implements XMLPersistent
             writable = XMLUtil.getElementBooleanValue(node, ID_WRITE, false);
             directory = XMLUtil.getElementBooleanValue(node, ID_DIRECTORY, false);
             fileNumber = XMLUtil.getElementIntValue(node, ID_FILENUMBER, 1);
+            checksum = XMLUtil.getElementValue(node, ID_CHECKSUM, "");
 
             return true;
         }
@@ -157,6 +165,8 @@ public class ElementDescriptor implements XMLPersistent
                     XMLUtil.addElement(node, ID_DIRECTORY, Boolean.toString(directory));
                     XMLUtil.addElement(node, ID_FILENUMBER, Integer.toString(fileNumber));
                 }
+                if (!StringUtil.isEmpty(checksum))
+                    XMLUtil.addElement(node, ID_CHECKSUM, checksum);
             }
 
             return true;
@@ -236,6 +246,26 @@ public class ElementDescriptor implements XMLPersistent
             return fileNumber;
         }
 
+        /**
+         * @return the content checksum (empty if unknown)
+         */
+        public String getChecksum()
+        {
+            return checksum;
+        }
+
+        /**
+         * Returns <code>true</code> if the local file content matches the checksum of this element
+         * file (always <code>false</code> if checksum is unknown or for directory and link).
+         */
+        public boolean isSameContent()
+        {
+            if (StringUtil.isEmpty(checksum) || directory || link)
+                return false;
+
+            return FileUtil.checkChecksum(new File(localPath), checksum);
+        }
+
         /**
          * @param dateModif
          *        the dateModif to set
@@ -290,6 +320,15 @@ public class ElementDescriptor implements XMLPersistent
             this.fileNumber = fileNumber;
         }
 
+        /**
+         * @param checksum
+         *        the content checksum to set
+         */
+        public void setChecksum(String checksum)
+        {
+            this.checksum = checksum;
+        }
+
         /**
          * Return true if the specified ElementFile is the same than current one.<br>
          * 
@@ -632,8 +671,10 @@ public class ElementDescriptor implements XMLPersistent
             final ElementFile onlineFile = result.files.get(i);
             final ElementFile localFile = localElement.getElementFile(onlineFile.getLocalPath());
 
-            // same file ? --> remove it (no need to be updated)
-            if ((localFile != null) && onlineFile.isSame(localFile, false, compareValidDateOnly))
+            // same file (or same content when checksum is known) ? --> remove it (no need to be
+            // updated)
+            if ((localFile != null)
+                    && (onlineFile.isSame(localFile, false, compareValidDateOnly) || onlineFile.isSameContent()))
                 result.files.remove(i);
         }
 
@@ -670,6 +711,7 @@ public class ElementDescriptor implements XMLPersistent
                 localFile.setLink(updateFile.isLink());
                 localFile.setWritable(updateFile.isWritable());
                 localFile.setDirectory(updateFile.isDirectory());
+                localFile.setChecksum(updateFile.getChecksum());
             }
         }
     }
@@ -18,6 +18,7 @@
  */
 package icy.update;
 
+import icy.common.listener.ProgressListener;
 import icy.file.FileUtil;
 import icy.gui.frame.ActionFrame;
 import icy.gui.frame.progress.AnnounceFrame;
@@ -27,6 +28,7 @@ import icy.gui.frame.progress.FailedAnnounceFrame;
 import icy.gui.frame.progress.ProgressFrame;
 import icy.gui.util.GuiUtil;
 import icy.main.Icy;
+import icy.network.Downloader;
 import icy.network.NetworkUtil;
 import icy.network.URLUtil;
 import icy.preferences.ApplicationPreferences;
@@ -40,6 +42,7 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.concurrent.TimeUnit;
 
@@ -146,8 +149,8 @@ public class IcyUpdater
     {
         wantUpdate = false;
 
-        // delete update directory to avoid partial update
-        FileUtil.delete(Updater.UPDATE_DIRECTORY, true);
+        // clean update directory to avoid partial update
+        cleanUpdateDirectory();
 
         final ArrayList<ElementDescriptor> toUpdate;
         final ProgressFrame checkingFrame;
@@ -167,8 +170,8 @@ public class IcyUpdater
                     ApplicationPreferences.getUpdateRepositoryBase() + ApplicationPreferences.getUpdateRepositoryFile()
                             + "?" + params, Updater.UPDATE_NAME, checkingFrame, showProgress))
             {
-                // remove partially downloaded files
-                FileUtil.delete(Updater.UPDATE_DIRECTORY, true);
+                // remove downloaded files
+                cleanUpdateDirectory();
                 return;
             }
 
@@ -338,32 +341,12 @@ public class IcyUpdater
             downloadingFrame = null;
         try
         {
-            // get total number of files to process
-            int numFile = 0;
-            for (ElementDescriptor element : elements)
-                numFile += element.getFiles().size();
-
-            if (downloadingFrame != null)
-                downloadingFrame.setLength(numFile);
+            final Downloader downloader = new Downloader();
 
-            int curFile = 0;
             for (ElementDescriptor element : elements)
             {
                 for (ElementFile elementFile : element.getFiles())
                 {
-                    curFile++;
-
-                    if (downloadingFrame != null)
-                    {
-                        // update progress frame message and position
-                        downloadingFrame.setMessage("Downloading updates " + curFile + " / " + numFile);
-
-                        final String toolTip = "Downloading " + element.getName() + " : "
-                                + FileUtil.getFileName(elementFile.getLocalPath());
-                        // update progress frame tooltip
-                        downloadingFrame.setToolTipText(toolTip);
-                    }
-
                     // symbolic link file ?
                     if (elementFile.isLink())
                     {
@@ -372,29 +355,52 @@ public class IcyUpdater
                                 Updater.UPDATE_DIRECTORY + FileUtil.separator + elementFile.getLocalPath(),
                                 elementFile.getOnlinePath()))
                         {
-                            // remove partially downloaded files
-                            FileUtil.delete(Updater.UPDATE_DIRECTORY, true);
+                            // remove downloaded files
+                            cleanUpdateDirectory();
                             return false;
                         }
                     }
-                    else
+                    // local file need to be updated (checksum is used when available) --> download
+                    // new file
+                    else if (Updater.needUpdate(elementFile))
                     {
-                        // local file need to be updated --> download new file
-                        if (Updater.needUpdate(elementFile.getLocalPath(), elementFile.getDateModif()))
-                        {
-                            // error (or cancel) while downloading ?
-                            if (!downloadAndSaveForUpdate(URLUtil.getNetworkURLString(
-                                    ApplicationPreferences.getUpdateRepositoryBase(), elementFile.getOnlinePath()),
-                                    elementFile.getLocalPath(), downloadingFrame, showProgress))
-                            {
-                                // remove partially downloaded files
-                                FileUtil.delete(Updater.UPDATE_DIRECTORY, true);
-                                return false;
-                            }
-                        }
+                        final String downloadPath = URLUtil.getNetworkURLString(
+                                ApplicationPreferences.getUpdateRepositoryBase(), elementFile.getOnlinePath());
+                        String saveFilename = Updater.UPDATE_DIRECTORY + FileUtil.separator;
+
+                        if (StringUtil.isEmpty(elementFile.getLocalPath()))
+                            saveFilename += URLUtil.getURLFileName(downloadPath, true);
+                        else
+                            saveFilename += elementFile.getLocalPath();
+
+                        downloader.add(downloadPath, null, null, new File(saveFilename), elementFile.getChecksum());
                     }
                 }
             }
+
+            final int numFile = downloader.getDownloads().size();
+
+            // download files concurrently (data is verified against checksum when available)
+            if (!downloader.download(new ProgressListener()
+            {
+                @Override
+                public boolean notifyProgress(double position, double length)
+                {
+                    if (downloadingFrame == null)
+                        return true;
+
+                    // update progress frame message and position
+                    downloadingFrame.setMessage("Downloading updates " + downloader.getDoneCount() + " / "
+                            + numFile);
+
+                    return downloadingFrame.notifyProgress(position, length);
+                }
+            }, showProgress))
+            {
+                // remove downloaded files (partial ones are kept so they can be resumed)
+                cleanUpdateDirectory();
+                return false;
+            }
         }
         finally
         {
@@ -406,16 +412,20 @@ public class IcyUpdater
         return true;
     }
 
+    /**
+     * Delete the update directory content except partially downloaded files so an interrupted
+     * download can be resumed on next update.
+     */
+    private static void cleanUpdateDirectory()
+    {
+        for (String path : FileUtil.getFiles(Updater.UPDATE_DIRECTORY, null, true, false, false))
+            if (!NetworkUtil.isPartialDownloadFile(path))
+                FileUtil.delete(path, false);
+    }
+
     private static boolean downloadAndSaveForUpdate(String downloadPath, String savePath, ProgressFrame frame,
             boolean displayError)
     {
-        // get data
-        final byte[] data;
-
-        data = NetworkUtil.download(downloadPath, frame, displayError);
-        if (data == null)
-            return false;
-
         // build save filename
         String saveFilename = Updater.UPDATE_DIRECTORY + FileUtil.separator;
 
@@ -424,10 +434,8 @@ public class IcyUpdater
         else
             saveFilename += savePath;
 
-        if (!FileUtil.save(saveFilename, data, displayError))
-            return false;
-
-        return true;
+        // stream data to file
+        return NetworkUtil.download(downloadPath, null, null, new File(saveFilename), frame, displayError);
     }
 
     /**
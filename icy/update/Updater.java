@@ -19,6 +19,7 @@
 package icy.update;
 
 import icy.file.FileUtil;
+import icy.network.NetworkUtil;
 import icy.update.ElementDescriptor.ElementFile;
 import icy.util.StringUtil;
 import icy.util.XMLUtil;
@@ -275,8 +276,10 @@ public class Updater
         {
             final String filename = FileUtil.getFileName(path);
 
-            // check if we have others files other than updater and XML definitions
-            if ((!filename.equals(UPDATER_NAME)) && (!filename.equals(UPDATE_NAME)))
+            // check if we have others files other than updater, XML definitions and partial
+            // downloads
+            if ((!filename.equals(UPDATER_NAME)) && (!filename.equals(UPDATE_NAME))
+                    && !NetworkUtil.isPartialDownloadFile(filename))
                 return true;
         }
 
@@ -364,8 +367,14 @@ public class Updater
             if (!ZipUtil.extract(zipName))
                 return false;
         }
+        // verify downloaded file before replacing the local one
+        else if (!verify(file))
+        {
+            System.err.println("Updater.udpateFile('" + localPath + "') failed : checksum mismatch !");
+            return false;
+        }
 
-        if (updateFile(localPath, file.getDateModif()))
+        if (updateFile(localPath, file.getDateModif(), file.getChecksum()))
         {
             final File dest = new File(localPath);
 
@@ -403,13 +412,44 @@ public class Updater
         return true;
     }
 
+    /**
+     * Return true if the update file (in Update directory) of the specified element file matches its
+     * checksum.<br>
+     * Also returns true if checksum is unknown or if there is no update file for this element.
+     */
+    public static boolean verify(ElementFile file)
+    {
+        final String checksum = file.getChecksum();
+
+        if (StringUtil.isEmpty(checksum) || file.isDirectory() || file.isLink())
+            return true;
+
+        final File updateFile = new File(UPDATE_DIRECTORY + FileUtil.separator + file.getLocalPath());
+
+        // not downloaded (local file content is already up to date)
+        if (!updateFile.exists())
+            return true;
+
+        return FileUtil.checkChecksum(updateFile, checksum);
+    }
+
     /**
      * Update the specified local file
      */
     public static boolean updateFile(String localPath, long dateModif)
+    {
+        return updateFile(localPath, dateModif, null);
+    }
+
+    /**
+     * Update the specified local file.<br>
+     * If <code>checksum</code> is specified, local file is not updated when its content already
+     * matches the checksum.
+     */
+    public static boolean updateFile(String localPath, long dateModif, String checksum)
     {
         // no update needed
-        if (!needUpdate(localPath, dateModif))
+        if (!needUpdate(localPath, dateModif, checksum))
             return true;
 
         // backup file
@@ -446,6 +486,37 @@ public class Updater
         return (!localFile.exists()) || (dateModif == 0L) || (localFile.lastModified() != dateModif);
     }
 
+    /**
+     * Return true if specified file is different from the update file (in Update directory).<br>
+     * When <code>checksum</code> is specified the local file content is compared against it so an
+     * unchanged file is not updated even if its modification date is different.
+     */
+    public static boolean needUpdate(String localPath, long dateModif, String checksum)
+    {
+        if (!needUpdate(localPath, dateModif))
+            return false;
+
+        final File localFile = new File(localPath);
+
+        // same content ? --> no need to update
+        if (!StringUtil.isEmpty(checksum) && localFile.isFile() && FileUtil.checkChecksum(localFile, checksum))
+            return false;
+
+        return true;
+    }
+
+    /**
+     * Return true if specified element file is different from the update file (in Update
+     * directory).
+     */
+    public static boolean needUpdate(ElementFile file)
+    {
+        if (file.isDirectory() || file.isLink())
+            return needUpdate(file.getLocalPath(), file.getDateModif());
+
+        return needUpdate(file.getLocalPath(), file.getDateModif(), file.getChecksum());
+    }
+
     /**
      * Process to restoration (in case the update failed)
      */
@@ -28,6 +28,7 @@ import java.awt.geom.CubicCurve2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
 import java.awt.geom.QuadCurve2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RectangularShape;
@@ -478,4 +479,46 @@ public class ShapeUtil
         });
     }
 
+    /**
+     * Return the outline length of the specified shape (curves are flattened)
+     */
+    public static double getLength(Shape shape)
+    {
+        final PathIterator pathIt = shape.getPathIterator(null, 0.01d);
+        final double crd[] = new double[6];
+        double result = 0d;
+        double startX = 0d;
+        double startY = 0d;
+        double lastX = 0d;
+        double lastY = 0d;
+
+        while (!pathIt.isDone())
+        {
+            switch (pathIt.currentSegment(crd))
+            {
+                case PathIterator.SEG_MOVETO:
+                    startX = crd[0];
+                    startY = crd[1];
+                    lastX = startX;
+                    lastY = startY;
+                    break;
+
+                case PathIterator.SEG_LINETO:
+                    result += Point2D.distance(lastX, lastY, crd[0], crd[1]);
+                    lastX = crd[0];
+                    lastY = crd[1];
+                    break;
+
+                case PathIterator.SEG_CLOSE:
+                    result += Point2D.distance(lastX, lastY, startX, startY);
+                    lastX = startX;
+                    lastY = startY;
+                    break;
+            }
+
+            pathIt.next();
+        }
+
+        return result;
+    }
 }
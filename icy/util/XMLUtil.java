@@ -20,6 +20,7 @@ package icy.util;
 
 import icy.file.FileUtil;
 import icy.network.AuthenticationInfo;
+import icy.network.HttpCache;
 import icy.network.NetworkUtil;
 import icy.network.URLUtil;
 import icy.system.IcyExceptionHandler;
@@ -216,6 +217,17 @@ public class XMLUtil
      * Return null if no document can be loaded.
      */
     public static Document loadDocument(String path, AuthenticationInfo auth, boolean showError)
+    {
+        return loadDocument(path, auth, false, showError);
+    }
+
+    /**
+     * Load XML Document from specified path with specified authentication.<br>
+     * If <code>useCache</code> is <code>true</code> network document is retrieved through the
+     * {@link HttpCache}.<br>
+     * Return null if no document can be loaded.
+     */
+    public static Document loadDocument(String path, AuthenticationInfo auth, boolean useCache, boolean showError)
     {
         if (StringUtil.isEmpty(path))
         {
@@ -229,7 +241,7 @@ public class XMLUtil
 
         // load from URL
         if ((url != null) && URLUtil.isNetworkURL(url))
-            return loadDocument(url, auth, showError);
+            return loadDocument(url, auth, useCache, showError);
 
         // try to load from file instead (no authentication needed then)
         return loadDocument(new File(path), showError);
@@ -303,6 +315,32 @@ public class XMLUtil
      */
     public static Document loadDocument(URL url, AuthenticationInfo auth, boolean showError)
     {
+        return loadDocument(url, auth, false, showError);
+    }
+
+    /**
+     * Load XML Document from specified URL with authentication informations.<br>
+     * If <code>useCache</code> is <code>true</code> the document is retrieved through the
+     * {@link HttpCache} (conditional request, cached copy used when network is not available).<br>
+     * Return null if no document can be loaded.
+     */
+    public static Document loadDocument(URL url, AuthenticationInfo auth, boolean useCache, boolean showError)
+    {
+        if (useCache && (url != null) && URLUtil.isNetworkURL(url))
+        {
+            final File file = HttpCache.getFile(url, auth, showError);
+
+            if (file == null)
+            {
+                if (showError)
+                    System.err.println("XMLUtil.loadDocument('" + url + "') error :");
+
+                return null;
+            }
+
+            return loadDocument(file, showError);
+        }
+
         final DocumentBuilder builder = createDocumentBuilder();
 
         if (builder != null)
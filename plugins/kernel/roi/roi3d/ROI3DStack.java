@@ -27,6 +27,7 @@ import icy.roi.ROI2D;
 import icy.roi.ROI3D;
 import icy.roi.ROIEvent;
 import icy.roi.ROIListener;
+import icy.roi.SliceMap;
 import icy.sequence.Sequence;
 import icy.system.IcyExceptionHandler;
 import icy.type.point.Point5D;
@@ -60,7 +61,11 @@ public class ROI3DStack<R extends ROI2D> extends ROI3D implements ROIListener, I
 {
     public static final String PROPERTY_USECHILDCOLOR = "useChildColor";
 
-    protected final TreeMap<Integer, R> slices = new TreeMap<Integer, R>();
+    /**
+     * slices stored in a {@link SliceMap} (dense slice access)
+     */
+    private final SliceMap<R> sliceMap = new SliceMap<R>();
+    protected final TreeMap<Integer, R> slices = sliceMap;
 
     protected final Class<R> roiClass;
     protected boolean useChildColor;
@@ -312,7 +317,7 @@ public class ROI3DStack<R extends ROI2D> extends ROI3D implements ROIListener, I
      */
     public R getSlice(int z)
     {
-        return slices.get(Integer.valueOf(z));
+        return sliceMap.getSlice(z);
     }
 
     /**
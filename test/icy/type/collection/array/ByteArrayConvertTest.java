@@ -0,0 +1,328 @@
+/*
+ * Copyright 2010-2013 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.type.collection.array;
+
+import static org.junit.Assert.assertEquals;
+import icy.type.DataType;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that the {@link ByteArrayConvert} bulk (ByteBuffer based) conversions give the same
+ * result as the per element conversion (using {@link ByteArrayConvert#readShort(byte[], int, boolean)},
+ * {@link ByteArrayConvert#writeShort(byte[], int, short, boolean)}...) for all data types, both
+ * byte orders, contiguous and strided data and offsets near array ends.<br>
+ * Some offsets near array ends give a copy length which does not fit in the array: both versions
+ * should then fail (exception type can differ).
+ * 
+ * @author Stephane
+ */
+public class ByteArrayConvertTest
+{
+    private static final DataType[] TYPES = {DataType.BYTE, DataType.SHORT, DataType.INT, DataType.LONG,
+            DataType.FLOAT, DataType.DOUBLE};
+    /**
+     * {inStep, outStep} couples (first one uses the bulk path)
+     */
+    private static final int[][] STEPS = { {1, 1}, {3, 1}, {1, 2}, {2, 3}};
+    private static final int LEN = 64;
+
+    private final Random random = new Random(20130101L);
+
+    /**
+     * Returns offsets to test for an array of specified length: start, middle and near the end.
+     */
+    private static int[] getOffsets(int len)
+    {
+        return new int[] {0, 1, len / 2, len - 3, len - 1};
+    }
+
+    /**
+     * Per element version of {@link ByteArrayConvert#byteArrayTo(byte[], int, int, Object, int, int, int, boolean)}
+     */
+    private static void referenceByteArrayTo(byte[] in, int inOffset, int inStep, Object out, int outOffset,
+            int outStep, int byteLength, boolean little)
+    {
+        final DataType dataType = ArrayUtil.getDataType(out);
+        final int size = dataType.getSize();
+        final int adjInStep = inStep * size;
+        final int len = ByteArrayConvert.getCopyLengthInBytes(in, inOffset, adjInStep, out, outOffset, outStep,
+                byteLength) / size;
+        int inOff = inOffset;
+        int outOff = outOffset;
+
+        for (int i = 0; i < len; i++)
+        {
+            switch (dataType)
+            {
+                case BYTE:
+                    ((byte[]) out)[outOff] = ByteArrayConvert.readByte(in, inOff);
+                    break;
+                case SHORT:
+                    ((short[]) out)[outOff] = ByteArrayConvert.readShort(in, inOff, little);
+                    break;
+                case INT:
+                    ((int[]) out)[outOff] = ByteArrayConvert.readInt(in, inOff, little);
+                    break;
+                case LONG:
+                    ((long[]) out)[outOff] = ByteArrayConvert.readLong(in, inOff, little);
+                    break;
+                case FLOAT:
+                    ((float[]) out)[outOff] = ByteArrayConvert.readFloat(in, inOff, little);
+                    break;
+                case DOUBLE:
+                    ((double[]) out)[outOff] = ByteArrayConvert.readDouble(in, inOff, little);
+                    break;
+                default:
+                    break;
+            }
+
+            inOff += adjInStep;
+            outOff += outStep;
+        }
+    }
+
+    /**
+     * Per element version of {@link ByteArrayConvert#toByteArray(Object, int, int, byte[], int, int, int, boolean)}
+     */
+    private static void referenceToByteArray(Object in, int inOffset, int inStep, byte[] out, int outOffset,
+            int outStep, int byteLength, boolean little)
+    {
+        final DataType dataType = ArrayUtil.getDataType(in);
+        final int adjOutStep = outStep * dataType.getSize();
+        final int len = ByteArrayConvert.getCopyLengthInBytes(in, inOffset, inStep, out, outOffset, adjOutStep,
+                byteLength);
+        int inOff = inOffset;
+        int outOff = outOffset;
+
+        for (int i = 0; i < len; i++)
+        {
+            switch (dataType)
+            {
+                case BYTE:
+                    ByteArrayConvert.writeByte(out, outOff, ((byte[]) in)[inOff]);
+                    break;
+                case SHORT:
+                    ByteArrayConvert.writeShort(out, outOff, ((short[]) in)[inOff], little);
+                    break;
+                case INT:
+                    ByteArrayConvert.writeInt(out, outOff, ((int[]) in)[inOff], little);
+                    break;
+                case LONG:
+                    ByteArrayConvert.writeLong(out, outOff, ((long[]) in)[inOff], little);
+                    break;
+                case FLOAT:
+                    ByteArrayConvert.writeFloat(out, outOff, ((float[]) in)[inOff], little);
+                    break;
+                case DOUBLE:
+                    ByteArrayConvert.writeDouble(out, outOff, ((double[]) in)[inOff], little);
+                    break;
+                default:
+                    break;
+            }
+
+            inOff += inStep;
+            outOff += adjOutStep;
+        }
+    }
+
+    private byte[] createRandomBytes(int len)
+    {
+        final byte[] result = new byte[len];
+
+        random.nextBytes(result);
+
+        return result;
+    }
+
+    /**
+     * Returns a typed array filled with random bits (so it also contains NaN and infinite values).
+     */
+    private Object createRandomArray(DataType dataType, int len)
+    {
+        final Object result = Array1DUtil.createArray(dataType, len);
+
+        referenceByteArrayTo(createRandomBytes(len * dataType.getSize()), 0, 1, result, 0, 1, -1, false);
+
+        return result;
+    }
+
+    private static Object copy(Object array)
+    {
+        final int len = ArrayUtil.getLength(array);
+        final Object result = Array1DUtil.createArray(ArrayUtil.getDataType(array), len);
+
+        System.arraycopy(array, 0, result, 0, len);
+
+        return result;
+    }
+
+    /**
+     * Compare arrays content on their bits.
+     */
+    private static void assertSameBits(String message, Object expected, Object actual)
+    {
+        final int size = ArrayUtil.getDataType(expected).getSize();
+        final byte[] e = new byte[ArrayUtil.getLength(expected) * size];
+        final byte[] a = new byte[ArrayUtil.getLength(actual) * size];
+
+        referenceToByteArray(expected, 0, 1, e, 0, 1, -1, false);
+        referenceToByteArray(actual, 0, 1, a, 0, 1, -1, false);
+
+        assertEquals(message + " (length)", e.length, a.length);
+        for (int i = 0; i < e.length; i++)
+            assertEquals(message + " (byte " + i + ")", e[i], a[i]);
+    }
+
+    @Test
+    public void testByteArrayTo()
+    {
+        for (DataType dataType : TYPES)
+        {
+            for (boolean little : new boolean[] {false, true})
+            {
+                for (int[] steps : STEPS)
+                {
+                    final int inStep = steps[0];
+                    final int outStep = steps[1];
+                    final byte[] in = createRandomBytes(LEN * dataType.getSize() * inStep);
+
+                    for (int inOffset : getOffsets(in.length))
+                    {
+                        for (int outOffset : getOffsets(LEN))
+                        {
+                            final String message = dataType + (little ? " little" : " big") + " step " + inStep
+                                    + "/" + outStep + " offset " + inOffset + "/" + outOffset;
+                            final Object init = createRandomArray(dataType, LEN);
+                            final Object expected = copy(init);
+                            final Object actual = copy(init);
+                            boolean expectedFail = false;
+                            boolean actualFail = false;
+
+                            try
+                            {
+                                referenceByteArrayTo(in, inOffset, inStep, expected, outOffset, outStep, -1, little);
+                            }
+                            catch (RuntimeException e)
+                            {
+                                expectedFail = true;
+                            }
+                            try
+                            {
+                                ByteArrayConvert.byteArrayTo(in, inOffset, inStep, actual, outOffset, outStep, -1,
+                                        little);
+                            }
+                            catch (RuntimeException e)
+                            {
+                                actualFail = true;
+                            }
+
+                            assertEquals(message + " (failure)", expectedFail, actualFail);
+                            if (!expectedFail)
+                                assertSameBits(message, expected, actual);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testToByteArray()
+    {
+        for (DataType dataType : TYPES)
+        {
+            for (boolean little : new boolean[] {false, true})
+            {
+                for (int[] steps : STEPS)
+                {
+                    final int inStep = steps[0];
+                    final int outStep = steps[1];
+                    final Object in = createRandomArray(dataType, LEN * inStep);
+                    // output smaller than input so the copy is limited by the output
+                    final int outLen = (LEN / 2) * dataType.getSize() * outStep;
+
+                    for (int inOffset : getOffsets(LEN * inStep))
+                    {
+                        for (int outOffset : getOffsets(outLen))
+                        {
+                            final String message = dataType + (little ? " little" : " big") + " step " + inStep
+                                    + "/" + outStep + " offset " + inOffset + "/" + outOffset;
+                            final byte[] init = createRandomBytes(outLen);
+                            final byte[] expected = init.clone();
+                            final byte[] actual = init.clone();
+                            boolean expectedFail = false;
+                            boolean actualFail = false;
+
+                            try
+                            {
+                                referenceToByteArray(in, inOffset, inStep, expected, outOffset, outStep, -1, little);
+                            }
+                            catch (RuntimeException e)
+                            {
+                                expectedFail = true;
+                            }
+                            try
+                            {
+                                ByteArrayConvert.toByteArray(in, inOffset, inStep, actual, outOffset, outStep, -1,
+                                        little);
+                            }
+                            catch (RuntimeException e)
+                            {
+                                actualFail = true;
+                            }
+
+                            assertEquals(message + " (failure)", expectedFail, actualFail);
+                            if (!expectedFail)
+                                assertSameBits(message, expected, actual);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testByteLength()
+    {
+        // explicit byte length on contiguous and strided data
+        for (DataType dataType : TYPES)
+        {
+            final int size = dataType.getSize();
+
+            for (boolean little : new boolean[] {false, true})
+            {
+                for (int[] steps : STEPS)
+                {
+                    final byte[] in = createRandomBytes(LEN * size * steps[0]);
+                    final int byteLength = (LEN / 4) * size;
+                    final Object expected = Array1DUtil.createArray(dataType, LEN * steps[1]);
+                    final Object actual = Array1DUtil.createArray(dataType, LEN * steps[1]);
+
+                    referenceByteArrayTo(in, size, steps[0], expected, 1, steps[1], byteLength, little);
+                    ByteArrayConvert.byteArrayTo(in, size, steps[0], actual, 1, steps[1], byteLength, little);
+
+                    assertSameBits(dataType + (little ? " little" : " big") + " byte length", expected, actual);
+                }
+            }
+        }
+    }
+}